@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// OpenGL ES 2.0 fallback for object_instanced.vert. The mesh is replicated MAX_INSTANCES times in
+// the vertex buffer, and each copy carries its index into the uniform arrays below.
+
+uniform mat4 u_View;
+uniform mat4 u_ViewProjection;
+uniform vec4 u_LightDirection; // Model space, w must be zero.
+uniform mat4 u_ModelMatrices[MAX_INSTANCES];
+uniform vec4 u_ObjColors[MAX_INSTANCES];
+
+attribute vec4 a_Position;
+attribute vec3 a_Normal;
+attribute vec2 a_TexCoord;
+attribute float a_InstanceIndex;
+
+varying vec3 v_ViewPosition;
+varying vec3 v_ViewNormal;
+varying vec2 v_TexCoord;
+varying vec3 v_ViewLightDirection;
+varying vec4 v_ObjColor;
+
+void main() {
+    int instance = int(a_InstanceIndex);
+    mat4 model = u_ModelMatrices[instance];
+    mat4 modelView = u_View * model;
+    v_ViewPosition = (modelView * a_Position).xyz;
+    v_ViewNormal = normalize((modelView * vec4(a_Normal, 0.0)).xyz);
+    v_ViewLightDirection = normalize((modelView * u_LightDirection).xyz);
+    v_TexCoord = a_TexCoord;
+    v_ObjColor = u_ObjColors[instance];
+    gl_Position = u_ViewProjection * (model * a_Position);
+}
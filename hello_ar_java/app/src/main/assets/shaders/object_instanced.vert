@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Draws many copies of the object in one call. The model matrix and color are per-instance
+// vertex attributes (glVertexAttribDivisor), so this requires an OpenGL ES 3.0 context.
+
+uniform mat4 u_View;
+uniform mat4 u_ViewProjection;
+uniform vec4 u_LightDirection; // Model space, w must be zero.
+
+attribute vec4 a_Position;
+attribute vec3 a_Normal;
+attribute vec2 a_TexCoord;
+attribute mat4 a_ModelMatrix;
+attribute vec4 a_ObjColor;
+
+varying vec3 v_ViewPosition;
+varying vec3 v_ViewNormal;
+varying vec2 v_TexCoord;
+varying vec3 v_ViewLightDirection;
+varying vec4 v_ObjColor;
+
+void main() {
+    mat4 modelView = u_View * a_ModelMatrix;
+    v_ViewPosition = (modelView * a_Position).xyz;
+    v_ViewNormal = normalize((modelView * vec4(a_Normal, 0.0)).xyz);
+    v_ViewLightDirection = normalize((modelView * u_LightDirection).xyz);
+    v_TexCoord = a_TexCoord;
+    v_ObjColor = a_ObjColor;
+    gl_Position = u_ViewProjection * (a_ModelMatrix * a_Position);
+}
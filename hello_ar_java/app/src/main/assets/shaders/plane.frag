@@ -18,9 +18,16 @@ uniform sampler2D u_Texture;
 uniform vec4 u_dotColor;
 uniform vec4 u_lineColor;
 uniform vec4 u_gridControl;  // dotThreshold, lineThreshold, lineFadeShrink, occlusionShrink
+// Occlusion below which fragments are discarded, so that the outline of a plane drawn with the
+// stencil test, where it fades out completely, does not hide the planes behind it. Zero when
+// occlusion uses the alpha channel.
+uniform float u_occlusionDiscard;
 varying vec3 v_TexCoordAlpha;
 
 void main() {
+  if (v_TexCoordAlpha.z * u_gridControl.w < u_occlusionDiscard) {
+    discard;
+  }
   vec4 control = texture2D(u_Texture, v_TexCoordAlpha.xy);
   float dotScale = v_TexCoordAlpha.z;
   float lineFade = max(0.0, u_gridControl.z * v_TexCoordAlpha.z - (u_gridControl.z - 1.0));
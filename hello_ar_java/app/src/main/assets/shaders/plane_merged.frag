@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+precision highp float;
+uniform sampler2D u_Texture;
+uniform vec4 u_gridControl;  // dotThreshold, lineThreshold, lineFadeShrink, occlusionShrink
+// Occlusion below which fragments are discarded, so that the outline of a plane drawn with the
+// stencil test, where it fades out completely, does not hide the planes behind it. Zero when
+// occlusion uses the alpha channel.
+uniform float u_occlusionDiscard;
+varying vec3 v_TexCoordAlpha;
+varying vec4 v_Color;  // Line and dot color of the plane.
+
+void main() {
+  if (v_TexCoordAlpha.z * u_gridControl.w < u_occlusionDiscard) {
+    discard;
+  }
+  vec4 control = texture2D(u_Texture, v_TexCoordAlpha.xy);
+  float dotScale = v_TexCoordAlpha.z;
+  float lineFade = max(0.0, u_gridControl.z * v_TexCoordAlpha.z - (u_gridControl.z - 1.0));
+  vec3 color = (control.r * dotScale > u_gridControl.x) ? v_Color.rgb
+             : (control.g > u_gridControl.y)            ? v_Color.rgb * lineFade
+                                                        : (v_Color.rgb * 0.25 * lineFade) ;
+  gl_FragColor = vec4(color, v_TexCoordAlpha.z * u_gridControl.w);
+}
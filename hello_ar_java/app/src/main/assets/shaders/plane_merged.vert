@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Draws many planes at once. Vertices are already in world space, and their texture coordinates
+// already hold the grid projection and rotation of their plane.
+uniform mat4 u_ViewProjection;
+
+attribute vec3 a_Position;
+attribute vec3 a_TexCoordAlpha; // (u, v, alpha)
+attribute vec4 a_Color;
+
+varying vec3 v_TexCoordAlpha;
+varying vec4 v_Color;
+
+void main() {
+   v_TexCoordAlpha = a_TexCoordAlpha;
+   v_Color = a_Color;
+   gl_Position = u_ViewProjection * vec4(a_Position, 1.0);
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.gl;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES calls made by the renderers. Each method has the signature and meaning of the
+ * {@code android.opengl.GLES20} or {@code GLES30} method of the same name.
+ *
+ * <p>{@link AndroidGl} forwards the calls to OpenGL ES. {@link NoOpGl} ignores them, so that the
+ * renderers can run on a JVM without a GPU, and {@link RecordingGl} counts them, on top of either.
+ * Only depends on {@code java.nio}; enum values are the {@code GLES20} constants.
+ */
+public interface Gl {
+  // State.
+
+  void glActiveTexture(int texture);
+
+  void glBlendFunc(int sfactor, int dfactor);
+
+  void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha);
+
+  void glColorMask(boolean red, boolean green, boolean blue, boolean alpha);
+
+  void glDepthMask(boolean flag);
+
+  void glDisable(int cap);
+
+  void glEnable(int cap);
+
+  void glStencilFunc(int func, int ref, int mask);
+
+  void glStencilOp(int fail, int zfail, int zpass);
+
+  void glUseProgram(int program);
+
+  void glViewport(int x, int y, int width, int height);
+
+  // Shaders and programs.
+
+  void glAttachShader(int program, int shader);
+
+  void glCompileShader(int shader);
+
+  int glCreateProgram();
+
+  int glCreateShader(int type);
+
+  void glDeleteProgram(int program);
+
+  void glDeleteShader(int shader);
+
+  void glDetachShader(int program, int shader);
+
+  void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary);
+
+  String glGetProgramInfoLog(int program);
+
+  void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+  String glGetShaderInfoLog(int shader);
+
+  void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+  void glLinkProgram(int program);
+
+  void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+
+  void glProgramParameteri(int program, int pname, int value);
+
+  void glShaderSource(int shader, String string);
+
+  // Buffers and textures.
+
+  void glBindBuffer(int target, int buffer);
+
+  void glBindTexture(int target, int texture);
+
+  void glBufferData(int target, int size, Buffer data, int usage);
+
+  void glBufferSubData(int target, int offset, int size, Buffer data);
+
+  void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data);
+
+  void glDeleteBuffers(int n, int[] buffers, int offset);
+
+  void glDeleteTextures(int n, int[] textures, int offset);
+
+  void glGenBuffers(int n, int[] buffers, int offset);
+
+  void glGenTextures(int n, int[] textures, int offset);
+
+  void glGenerateMipmap(int target);
+
+  void glTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int format,
+      int type,
+      Buffer pixels);
+
+  void glTexParameteri(int target, int pname, int param);
+
+  // Vertex attributes and uniforms.
+
+  void glDisableVertexAttribArray(int index);
+
+  void glEnableVertexAttribArray(int index);
+
+  int glGetAttribLocation(int program, String name);
+
+  int glGetUniformLocation(int program, String name);
+
+  void glUniform1f(int location, float x);
+
+  void glUniform1i(int location, int x);
+
+  void glUniform3f(int location, float x, float y, float z);
+
+  void glUniform4f(int location, float x, float y, float z, float w);
+
+  void glUniform4fv(int location, int count, float[] v, int offset);
+
+  void glUniformMatrix2fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glVertexAttribDivisor(int index, int divisor);
+
+  void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer pointer);
+
+  void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset);
+
+  // Drawing.
+
+  void glClear(int mask);
+
+  void glClearColor(float red, float green, float blue, float alpha);
+
+  void glDrawArrays(int mode, int first, int count);
+
+  void glDrawElements(int mode, int count, int type, int offset);
+
+  void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount);
+
+  // Queries.
+
+  int glGetError();
+
+  void glGetIntegerv(int pname, int[] params, int offset);
+
+  String glGetString(int name);
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.gl;
+
+import android.opengl.GLES20;
+import java.nio.Buffer;
+
+/**
+ * Ignores every call, so that renderers can run on a JVM without a GPU or an Android device.
+ *
+ * <p>Queries answer like a minimal OpenGL ES 3.0 context with a stencil buffer: generated names are
+ * unique, shaders compile, programs link, locations are 0 and there are never errors. There are
+ * no program binary formats. Wrap it in a {@link RecordingGl} to count what the renderers would
+ * have drawn.
+ */
+public final class NoOpGl implements Gl {
+  private static final String NAME = "NoOpGl";
+  private static final String VERSION = "OpenGL ES 3.0 NoOpGl";
+
+  // Last name returned by the glGen* and glCreate* methods. Names are never reused.
+  private int lastName;
+
+  public NoOpGl() {}
+
+  @Override
+  public void glActiveTexture(int texture) {}
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {}
+
+  @Override
+  public void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {}
+
+  @Override
+  public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {}
+
+  @Override
+  public void glDepthMask(boolean flag) {}
+
+  @Override
+  public void glDisable(int cap) {}
+
+  @Override
+  public void glEnable(int cap) {}
+
+  @Override
+  public void glStencilFunc(int func, int ref, int mask) {}
+
+  @Override
+  public void glStencilOp(int fail, int zfail, int zpass) {}
+
+  @Override
+  public void glUseProgram(int program) {}
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {}
+
+  @Override
+  public void glAttachShader(int program, int shader) {}
+
+  @Override
+  public void glCompileShader(int shader) {}
+
+  @Override
+  public int glCreateProgram() {
+    return ++lastName;
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    return ++lastName;
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {}
+
+  @Override
+  public void glDeleteShader(int shader) {}
+
+  @Override
+  public void glDetachShader(int program, int shader) {}
+
+  @Override
+  public void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary) {
+    length[lengthOffset] = 0;
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    return "";
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    params[offset] = pname == GLES20.GL_LINK_STATUS ? GLES20.GL_TRUE : 0;
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    return "";
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    params[offset] = pname == GLES20.GL_COMPILE_STATUS ? GLES20.GL_TRUE : 0;
+  }
+
+  @Override
+  public void glLinkProgram(int program) {}
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {}
+
+  @Override
+  public void glProgramParameteri(int program, int pname, int value) {}
+
+  @Override
+  public void glShaderSource(int shader, String string) {}
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {}
+
+  @Override
+  public void glBindTexture(int target, int texture) {}
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {}
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {}
+
+  @Override
+  public void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data) {}
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {}
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {}
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    generateNames(n, buffers, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    generateNames(n, textures, offset);
+  }
+
+  @Override
+  public void glGenerateMipmap(int target) {}
+
+  @Override
+  public void glTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int format,
+      int type,
+      Buffer pixels) {}
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {}
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {}
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {}
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    return 0;
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    return 0;
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {}
+
+  @Override
+  public void glUniform1i(int location, int x) {}
+
+  @Override
+  public void glUniform3f(int location, float x, float y, float z) {}
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {}
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {}
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {}
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {}
+
+  @Override
+  public void glVertexAttribDivisor(int index, int divisor) {}
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer pointer) {}
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {}
+
+  @Override
+  public void glClear(int mask) {}
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {}
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {}
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {}
+
+  @Override
+  public void glDrawElementsInstanced(
+      int mode, int count, int type, int offset, int instanceCount) {}
+
+  @Override
+  public int glGetError() {
+    return GLES20.GL_NO_ERROR;
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    switch (pname) {
+      case GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS:
+        // The minimum of OpenGL ES 3.0.
+        params[offset] = 256;
+        break;
+      case GLES20.GL_STENCIL_BITS:
+        params[offset] = 8;
+        break;
+      default:
+        params[offset] = 0;
+        break;
+    }
+  }
+
+  @Override
+  public String glGetString(int name) {
+    switch (name) {
+      case GLES20.GL_VERSION:
+        return VERSION;
+      case GLES20.GL_EXTENSIONS:
+        return "";
+      default:
+        return NAME;
+    }
+  }
+
+  private void generateNames(int n, int[] names, int offset) {
+    for (int i = 0; i < n; ++i) {
+      names[offset + i] = ++lastName;
+    }
+  }
+}
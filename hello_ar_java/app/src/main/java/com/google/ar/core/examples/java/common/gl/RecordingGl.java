@@ -0,0 +1,610 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.gl;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import java.nio.Buffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Counts the calls of a frame before forwarding them to another {@link Gl}: draw calls, state
+ * changes, bytes uploaded to buffers and textures, and redundant binds.
+ *
+ * <p>State changes are the calls that set a capability, the blend, mask, stencil, viewport or clear
+ * color state, the program, the active texture unit, or a buffer or texture binding. A bind is
+ * redundant when the program, buffer or texture is already bound, which is tracked for the array
+ * and element array buffers and for 2D and external textures. Bindings are unknown until first
+ * set, so the context may have been used before.
+ *
+ * <p>Counts are accumulated until {@link #endFrame()}, which makes them the last frame's. Recording
+ * does not allocate and must happen on the OpenGL thread; {@link #formatLastFrame()} may be called
+ * on any thread, and formats the counts of one frame. After the context is lost, {@link #reset()}
+ * forgets the bindings of the old one.
+ */
+public final class RecordingGl implements Gl {
+  /**
+   * Whether the app records its OpenGL calls. A compile-time constant, false in release builds, so
+   * that they make their calls directly and code guarded by it is removed by the compiler.
+   */
+  public static final boolean ENABLED = GlConfig.RECORDING_ENABLED;
+
+  private static final int UNKNOWN = -1;
+  private static final int MAX_TEXTURE_UNITS = 32;
+
+  private final Gl delegate;
+
+  // Counts of the current frame.
+  private int drawCallCount;
+  private int stateChangeCount;
+  private int redundantBindCount;
+  private long uploadedBytes;
+
+  // Counts of the last frame, read on other threads. endFrame makes the sequence number odd while
+  // it writes them, so that readers can tell a consistent snapshot from one being written.
+  private volatile int lastFrameSequence;
+  private volatile int lastFrameDrawCallCount;
+  private volatile int lastFrameStateChangeCount;
+  private volatile int lastFrameRedundantBindCount;
+  private volatile long lastFrameUploadedBytes;
+
+  // Bound objects, or UNKNOWN.
+  private int program;
+  private int arrayBuffer;
+  private int elementArrayBuffer;
+  private int activeTextureUnit;
+  private final int[] textures2d = new int[MAX_TEXTURE_UNITS];
+  private final int[] texturesExternal = new int[MAX_TEXTURE_UNITS];
+
+  /**
+   * @param delegate Where calls are forwarded, such as an {@link AndroidGl} or a {@link NoOpGl}.
+   */
+  public RecordingGl(Gl delegate) {
+    this.delegate = delegate;
+    reset();
+  }
+
+  /**
+   * Forgets the tracked bindings, as for a new context. Must be called when the context is
+   * recreated, such as in {@code onSurfaceCreated}.
+   */
+  public void reset() {
+    program = UNKNOWN;
+    arrayBuffer = UNKNOWN;
+    elementArrayBuffer = UNKNOWN;
+    activeTextureUnit = 0;
+    Arrays.fill(textures2d, UNKNOWN);
+    Arrays.fill(texturesExternal, UNKNOWN);
+  }
+
+  /** Ends the current frame: its counts become the last frame's, and counting starts over. */
+  public void endFrame() {
+    int sequence = lastFrameSequence;
+    lastFrameSequence = sequence + 1;
+    lastFrameDrawCallCount = drawCallCount;
+    lastFrameStateChangeCount = stateChangeCount;
+    lastFrameRedundantBindCount = redundantBindCount;
+    lastFrameUploadedBytes = uploadedBytes;
+    lastFrameSequence = sequence + 2;
+    drawCallCount = 0;
+    stateChangeCount = 0;
+    redundantBindCount = 0;
+    uploadedBytes = 0;
+  }
+
+  /** Returns how many draw calls the last frame issued. Instanced draws count once. */
+  public int getLastFrameDrawCallCount() {
+    return lastFrameDrawCallCount;
+  }
+
+  /** Returns how many state changes the last frame made, redundant binds included. */
+  public int getLastFrameStateChangeCount() {
+    return lastFrameStateChangeCount;
+  }
+
+  /** Returns how many binds of the last frame bound what was already bound. */
+  public int getLastFrameRedundantBindCount() {
+    return lastFrameRedundantBindCount;
+  }
+
+  /** Returns how many bytes the last frame uploaded to buffers and textures. */
+  public long getLastFrameUploadedBytes() {
+    return lastFrameUploadedBytes;
+  }
+
+  /** Returns the counts of the last frame on one line. May be called on any thread. */
+  public String formatLastFrame() {
+    int drawCalls;
+    int stateChanges;
+    int redundantBinds;
+    long uploaded;
+    int sequence;
+    do {
+      sequence = lastFrameSequence;
+      drawCalls = lastFrameDrawCallCount;
+      stateChanges = lastFrameStateChangeCount;
+      redundantBinds = lastFrameRedundantBindCount;
+      uploaded = lastFrameUploadedBytes;
+      // Odd while endFrame writes, and changed if it did in between.
+    } while ((sequence & 1) != 0 || sequence != lastFrameSequence);
+    return String.format(
+        Locale.US,
+        "gl: %d draws, %d state changes (%d redundant binds), %.1f KiB uploaded",
+        drawCalls,
+        stateChanges,
+        redundantBinds,
+        uploaded / 1024.0);
+  }
+
+  // State.
+
+  @Override
+  public void glActiveTexture(int texture) {
+    stateChangeCount++;
+    activeTextureUnit = texture - GLES20.GL_TEXTURE0;
+    delegate.glActiveTexture(texture);
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    stateChangeCount++;
+    delegate.glBlendFunc(sfactor, dfactor);
+  }
+
+  @Override
+  public void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+    stateChangeCount++;
+    delegate.glBlendFuncSeparate(srcRGB, dstRGB, srcAlpha, dstAlpha);
+  }
+
+  @Override
+  public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+    stateChangeCount++;
+    delegate.glColorMask(red, green, blue, alpha);
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    stateChangeCount++;
+    delegate.glDepthMask(flag);
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    stateChangeCount++;
+    delegate.glDisable(cap);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    stateChangeCount++;
+    delegate.glEnable(cap);
+  }
+
+  @Override
+  public void glStencilFunc(int func, int ref, int mask) {
+    stateChangeCount++;
+    delegate.glStencilFunc(func, ref, mask);
+  }
+
+  @Override
+  public void glStencilOp(int fail, int zfail, int zpass) {
+    stateChangeCount++;
+    delegate.glStencilOp(fail, zfail, zpass);
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    stateChangeCount++;
+    if (this.program == program) {
+      redundantBindCount++;
+    }
+    this.program = program;
+    delegate.glUseProgram(program);
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    stateChangeCount++;
+    delegate.glViewport(x, y, width, height);
+  }
+
+  // Shaders and programs.
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    delegate.glAttachShader(program, shader);
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    delegate.glCompileShader(shader);
+  }
+
+  @Override
+  public int glCreateProgram() {
+    return delegate.glCreateProgram();
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    return delegate.glCreateShader(type);
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    // The name may be reused once the program is no longer in use; a bind of the new program must
+    // not count as redundant.
+    if (this.program == program) {
+      this.program = UNKNOWN;
+    }
+    delegate.glDeleteProgram(program);
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    delegate.glDeleteShader(shader);
+  }
+
+  @Override
+  public void glDetachShader(int program, int shader) {
+    delegate.glDetachShader(program, shader);
+  }
+
+  @Override
+  public void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary) {
+    delegate.glGetProgramBinary(
+        program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    return delegate.glGetProgramInfoLog(program);
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    delegate.glGetProgramiv(program, pname, params, offset);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    return delegate.glGetShaderInfoLog(shader);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    delegate.glGetShaderiv(shader, pname, params, offset);
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    delegate.glLinkProgram(program);
+  }
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+    delegate.glProgramBinary(program, binaryFormat, binary, length);
+  }
+
+  @Override
+  public void glProgramParameteri(int program, int pname, int value) {
+    delegate.glProgramParameteri(program, pname, value);
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    delegate.glShaderSource(shader, string);
+  }
+
+  // Buffers and textures.
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    stateChangeCount++;
+    if (target == GLES20.GL_ARRAY_BUFFER) {
+      if (arrayBuffer == buffer) {
+        redundantBindCount++;
+      }
+      arrayBuffer = buffer;
+    } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+      if (elementArrayBuffer == buffer) {
+        redundantBindCount++;
+      }
+      elementArrayBuffer = buffer;
+    }
+    delegate.glBindBuffer(target, buffer);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    stateChangeCount++;
+    int[] bound = boundTextures(target);
+    if (bound != null) {
+      if (bound[activeTextureUnit] == texture) {
+        redundantBindCount++;
+      }
+      bound[activeTextureUnit] = texture;
+    }
+    delegate.glBindTexture(target, texture);
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    // Without data, the buffer is only allocated.
+    if (data != null) {
+      uploadedBytes += size;
+    }
+    delegate.glBufferData(target, size, data, usage);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    uploadedBytes += size;
+    delegate.glBufferSubData(target, offset, size, data);
+  }
+
+  @Override
+  public void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data) {
+    uploadedBytes += imageSize;
+    delegate.glCompressedTexImage2D(
+        target, level, internalformat, width, height, border, imageSize, data);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    // Deleting a bound buffer unbinds it.
+    for (int i = 0; i < n; ++i) {
+      int buffer = buffers[offset + i];
+      if (arrayBuffer == buffer) {
+        arrayBuffer = 0;
+      }
+      if (elementArrayBuffer == buffer) {
+        elementArrayBuffer = 0;
+      }
+    }
+    delegate.glDeleteBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {
+    // Deleting a bound texture unbinds it.
+    for (int i = 0; i < n; ++i) {
+      int texture = textures[offset + i];
+      for (int unit = 0; unit < MAX_TEXTURE_UNITS; ++unit) {
+        if (textures2d[unit] == texture) {
+          textures2d[unit] = 0;
+        }
+        if (texturesExternal[unit] == texture) {
+          texturesExternal[unit] = 0;
+        }
+      }
+    }
+    delegate.glDeleteTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    delegate.glGenBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    delegate.glGenTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glGenerateMipmap(int target) {
+    delegate.glGenerateMipmap(target);
+  }
+
+  @Override
+  public void glTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int format,
+      int type,
+      Buffer pixels) {
+    // Without pixels, the level is only allocated.
+    if (pixels != null) {
+      uploadedBytes += (long) width * height * bytesPerTexel(format, type);
+    }
+    delegate.glTexImage2D(
+        target, level, internalformat, width, height, border, format, type, pixels);
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    delegate.glTexParameteri(target, pname, param);
+  }
+
+  // Vertex attributes and uniforms.
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    delegate.glDisableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    delegate.glEnableVertexAttribArray(index);
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    return delegate.glGetAttribLocation(program, name);
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    return delegate.glGetUniformLocation(program, name);
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    delegate.glUniform1f(location, x);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    delegate.glUniform1i(location, x);
+  }
+
+  @Override
+  public void glUniform3f(int location, float x, float y, float z) {
+    delegate.glUniform3f(location, x, y, z);
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {
+    delegate.glUniform4f(location, x, y, z, w);
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {
+    delegate.glUniform4fv(location, count, v, offset);
+  }
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    delegate.glUniformMatrix2fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    delegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glVertexAttribDivisor(int index, int divisor) {
+    delegate.glVertexAttribDivisor(index, divisor);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer pointer) {
+    delegate.glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {
+    delegate.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+  }
+
+  // Drawing.
+
+  @Override
+  public void glClear(int mask) {
+    delegate.glClear(mask);
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    stateChangeCount++;
+    delegate.glClearColor(red, green, blue, alpha);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    drawCallCount++;
+    delegate.glDrawArrays(mode, first, count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    drawCallCount++;
+    delegate.glDrawElements(mode, count, type, offset);
+  }
+
+  @Override
+  public void glDrawElementsInstanced(
+      int mode, int count, int type, int offset, int instanceCount) {
+    drawCallCount++;
+    delegate.glDrawElementsInstanced(mode, count, type, offset, instanceCount);
+  }
+
+  // Queries.
+
+  @Override
+  public int glGetError() {
+    return delegate.glGetError();
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    delegate.glGetIntegerv(pname, params, offset);
+  }
+
+  @Override
+  public String glGetString(int name) {
+    return delegate.glGetString(name);
+  }
+
+  // Returns the size of a texel of the given format and type, in bytes.
+  private static int bytesPerTexel(int format, int type) {
+    if (type != GLES20.GL_UNSIGNED_BYTE) {
+      // The packed 16-bit types.
+      return 2;
+    }
+    switch (format) {
+      case GLES20.GL_RGBA:
+        return 4;
+      case GLES20.GL_RGB:
+        return 3;
+      case GLES20.GL_LUMINANCE_ALPHA:
+        return 2;
+      default:
+        return 1;
+    }
+  }
+
+  // Returns the bindings of a texture target, by texture unit, or null if it is not tracked.
+  private int[] boundTextures(int target) {
+    if (activeTextureUnit < 0 || activeTextureUnit >= MAX_TEXTURE_UNITS) {
+      return null;
+    }
+    switch (target) {
+      case GLES20.GL_TEXTURE_2D:
+        return textures2d;
+      case GLES11Ext.GL_TEXTURE_EXTERNAL_OES:
+        return texturesExternal;
+      default:
+        return null;
+    }
+  }
+}
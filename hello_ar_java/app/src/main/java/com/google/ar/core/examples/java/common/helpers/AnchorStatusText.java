@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Text describing which anchors are in view, and the nearest one.
+ *
+ * <p>Every frame is described with {@link #beginFrame}, {@link #addVisibleAnchor} and {@link
+ * #setNearestAnchor}. {@link #hasChanged} then tells whether it differs from what was last
+ * formatted by {@link #format}. Neither allocates once the arrays have grown to the number of
+ * anchors in view. Has no Android dependencies, so that it can be replayed off the device.
+ */
+public final class AnchorStatusText {
+  private static final int NO_ANCHOR = -1;
+
+  // State of the current frame. Distances are kept in millimeters, the precision shown.
+  private int[] visibleIds = new int[16];
+  private int visibleCount;
+  private int nearestId = NO_ANCHOR;
+  private long nearestMillimeters;
+
+  // State last formatted. A negative count forces the first frame to be formatted.
+  private int[] formattedIds = new int[16];
+  private int formattedCount = -1;
+  private int formattedNearestId = NO_ANCHOR;
+  private long formattedNearestMillimeters;
+
+  public AnchorStatusText() {}
+
+  /** Starts describing a frame, with no anchor in view. */
+  public void beginFrame() {
+    visibleCount = 0;
+    nearestId = NO_ANCHOR;
+    nearestMillimeters = 0;
+  }
+
+  /** Adds an anchor in view, by the number shown to the user. */
+  public void addVisibleAnchor(int id) {
+    if (visibleCount == visibleIds.length) {
+      visibleIds = Arrays.copyOf(visibleIds, 2 * visibleCount);
+    }
+    visibleIds[visibleCount++] = id;
+  }
+
+  /** Sets the anchor nearest to the camera, and its distance. */
+  public void setNearestAnchor(int id, float distanceMeters) {
+    nearestId = id;
+    nearestMillimeters = Math.round(distanceMeters * 1000.0);
+  }
+
+  /** Returns whether the current frame would be shown differently from the last formatted one. */
+  public boolean hasChanged() {
+    if (visibleCount != formattedCount
+        || nearestId != formattedNearestId
+        || nearestMillimeters != formattedNearestMillimeters) {
+      return true;
+    }
+    for (int i = 0; i < visibleCount; ++i) {
+      if (visibleIds[i] != formattedIds[i]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Replaces the content of {@code text} with the description of the current frame. */
+  public void format(StringBuilder text) {
+    if (formattedIds.length < visibleCount) {
+      formattedIds = Arrays.copyOf(formattedIds, visibleIds.length);
+    }
+    System.arraycopy(visibleIds, 0, formattedIds, 0, visibleCount);
+    formattedCount = visibleCount;
+    formattedNearestId = nearestId;
+    formattedNearestMillimeters = nearestMillimeters;
+
+    text.setLength(0);
+    if (formattedCount == 0) {
+      text.append("I don't see any markers on the screen :(");
+      return;
+    }
+    text.append("I'm seeing Anchor: ");
+    for (int i = 0; i < formattedCount; ++i) {
+      if (i > 0) {
+        text.append(", ");
+      }
+      text.append(formattedIds[i]);
+    }
+    if (formattedNearestId != NO_ANCHOR) {
+      long fraction = formattedNearestMillimeters % 1000;
+      text.append("\nNearest Anchor: ").append(formattedNearestId);
+      text.append("\nAt ").append(formattedNearestMillimeters / 1000).append('.');
+      text.append(fraction < 100 ? (fraction < 10 ? "00" : "0") : "").append(fraction);
+      text.append(" meters away.");
+    }
+  }
+}
@@ -19,6 +19,7 @@ import android.support.design.widget.BaseTransientBottomBar;
 import android.support.design.widget.Snackbar;
 import android.view.View;
 import android.widget.TextView;
+import com.google.ar.core.examples.java.common.profiling.TraceRecorder;
 
 /**
  * Helper to manage the sample snackbar. Hides the Android boilerplate code, and exposes simpler
@@ -26,6 +27,8 @@ import android.widget.TextView;
  */
 public final class SnackbarHelper {
   private static final int BACKGROUND_COLOR = 0xbf323232;
+  private static final int TRACE_SHOW = TraceRecorder.registerEvent("snackbar show");
+  private static final int TRACE_HIDE = TraceRecorder.registerEvent("snackbar hide");
   private Snackbar messageSnackbar;
   private enum DismissBehavior { HIDE, SHOW, FINISH };
   private int maxLines = 2;
@@ -61,10 +64,12 @@ public final class SnackbarHelper {
         new Runnable() {
           @Override
           public void run() {
+            TraceRecorder.begin(TRACE_HIDE);
             if (messageSnackbar != null) {
               messageSnackbar.dismiss();
             }
             messageSnackbar = null;
+            TraceRecorder.end(TRACE_HIDE);
           }
         });
   }
@@ -79,6 +84,7 @@ public final class SnackbarHelper {
         new Runnable() {
           @Override
           public void run() {
+            TraceRecorder.begin(TRACE_SHOW);
             messageSnackbar =
                 Snackbar.make(
                     activity.findViewById(android.R.id.content),
@@ -111,6 +117,7 @@ public final class SnackbarHelper {
                         .findViewById(android.support.design.R.id.snackbar_text))
                 .setMaxLines(maxLines);
             messageSnackbar.show();
+            TraceRecorder.end(TRACE_SHOW);
           }
         });
   }
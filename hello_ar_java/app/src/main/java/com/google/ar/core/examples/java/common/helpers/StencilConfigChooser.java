@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.helpers;
+
+import android.opengl.EGL14;
+import android.opengl.GLSurfaceView;
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * Chooses an OpenGL ES 2.0 config with 8 bits per color channel and a 16-bit depth buffer, like
+ * {@code setEGLConfigChooser(8, 8, 8, 8, 16, stencilSize)}, but with a stencil buffer only if the
+ * device has such a config. Otherwise the config has no stencil buffer, rather than the surface
+ * failing to be created, and renderers check {@code GL_STENCIL_BITS} to do without it.
+ */
+public final class StencilConfigChooser implements GLSurfaceView.EGLConfigChooser {
+  private static final int COLOR_SIZE = 8;
+  private static final int DEPTH_SIZE = 16;
+
+  private final int stencilSize;
+
+  /** @param stencilSize Preferred number of stencil bits. */
+  public StencilConfigChooser(int stencilSize) {
+    this.stencilSize = stencilSize;
+  }
+
+  @Override
+  public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display) {
+    EGLConfig config = chooseConfig(egl, display, stencilSize);
+    if (config == null) {
+      config = chooseConfig(egl, display, 0);
+    }
+    if (config == null) {
+      throw new IllegalArgumentException("No RGBA8888 config with a 16-bit depth buffer");
+    }
+    return config;
+  }
+
+  // Returns the first config with exactly 8 bits per color channel and at least the given depth
+  // and stencil bits, or null if there is none. eglChooseConfig also returns deeper color formats,
+  // and sorts them first.
+  private static EGLConfig chooseConfig(EGL10 egl, EGLDisplay display, int stencilSize) {
+    int[] attributes = {
+      EGL10.EGL_RED_SIZE, COLOR_SIZE,
+      EGL10.EGL_GREEN_SIZE, COLOR_SIZE,
+      EGL10.EGL_BLUE_SIZE, COLOR_SIZE,
+      EGL10.EGL_ALPHA_SIZE, COLOR_SIZE,
+      EGL10.EGL_DEPTH_SIZE, DEPTH_SIZE,
+      EGL10.EGL_STENCIL_SIZE, stencilSize,
+      EGL10.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+      EGL10.EGL_NONE
+    };
+    int[] configCount = new int[1];
+    if (!egl.eglChooseConfig(display, attributes, null, 0, configCount)) {
+      throw new IllegalArgumentException("eglChooseConfig failed");
+    }
+    if (configCount[0] <= 0) {
+      return null;
+    }
+    EGLConfig[] configs = new EGLConfig[configCount[0]];
+    if (!egl.eglChooseConfig(display, attributes, configs, configs.length, configCount)) {
+      throw new IllegalArgumentException("eglChooseConfig failed");
+    }
+    int[] value = new int[1];
+    for (EGLConfig config : configs) {
+      if (getAttribute(egl, display, config, EGL10.EGL_RED_SIZE, value) == COLOR_SIZE
+          && getAttribute(egl, display, config, EGL10.EGL_GREEN_SIZE, value) == COLOR_SIZE
+          && getAttribute(egl, display, config, EGL10.EGL_BLUE_SIZE, value) == COLOR_SIZE
+          && getAttribute(egl, display, config, EGL10.EGL_ALPHA_SIZE, value) == COLOR_SIZE) {
+        return config;
+      }
+    }
+    return null;
+  }
+
+  private static int getAttribute(
+      EGL10 egl, EGLDisplay display, EGLConfig config, int attribute, int[] value) {
+    return egl.eglGetConfigAttrib(display, config, attribute, value) ? value[0] : 0;
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.logging;
+
+import android.util.Log;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logging facade with per-tag levels, and a cheap path for messages logged every frame.
+ *
+ * <p>Ordinary messages go straight to {@link Log} when their tag's level allows them. Tags without
+ * a level set use {@code Log.VERBOSE} in debug builds and {@code Log.INFO} in release builds.
+ *
+ * <p>Hot path messages are registered once with {@link #register}, which returns an id. Logging
+ * one with {@link #hot} then only stores the id and two numeric arguments in a preallocated ring
+ * buffer; a background thread formats and prints them a few times per second. Each message can
+ * be rate-limited, in which case repeats within the interval are counted and reported with the
+ * next one printed. Hot path calls should be guarded by {@link #HOT_PATH_ENABLED} so that release
+ * builds compile them out:
+ *
+ * <pre>
+ * if (RenderLog.HOT_PATH_ENABLED) {
+ *   RenderLog.hot(LOG_ANCHORS_IN_VIEW, count);
+ * }
+ * </pre>
+ *
+ * <p>{@link #hot} must always be called from the same thread, typically the rendering thread.
+ * Every other method may be called from any thread.
+ */
+public final class RenderLog {
+  private static final String TAG = RenderLog.class.getSimpleName();
+
+  /**
+   * Whether hot path messages are logged. A compile-time constant, false in release builds, so
+   * that code guarded by it is removed by the compiler.
+   */
+  public static final boolean HOT_PATH_ENABLED = LogConfig.HOT_PATH_ENABLED;
+
+  private static final int MAX_MESSAGES = 256;
+  // Records of {message id, repeats suppressed before it, argument 0, argument 1}.
+  private static final int RECORD_SIZE = 4;
+  private static final int RING_RECORDS = 1024;
+  private static final long DRAIN_INTERVAL_MILLIS = 200;
+
+  private static final Map<String, Integer> tagLevels = new ConcurrentHashMap<>();
+
+  // Registered hot path messages, indexed by id.
+  private static final String[] messageTags = new String[MAX_MESSAGES];
+  private static final int[] messageLevels = new int[MAX_MESSAGES];
+  private static final String[] messageFormats = new String[MAX_MESSAGES];
+  private static final long[] messageIntervalNanos = new long[MAX_MESSAGES];
+  // Replaced by a modified copy on every change, so that hot() sees complete updates made by
+  // other threads.
+  private static volatile boolean[] messageEnabled = new boolean[MAX_MESSAGES];
+  private static volatile int messageCount;
+
+  // Owned by the thread calling hot().
+  private static final long[] lastLoggedNanos = new long[MAX_MESSAGES];
+  private static final long[] suppressedCounts = new long[MAX_MESSAGES];
+
+  // Single producer, single consumer ring of records. Positions only grow.
+  private static final long[] ring = new long[RING_RECORDS * RECORD_SIZE];
+  private static final AtomicLong writePosition = new AtomicLong();
+  private static final AtomicLong readPosition = new AtomicLong();
+  private static final AtomicLong droppedCount = new AtomicLong();
+
+  private static Thread drainThread;
+
+  private RenderLog() {}
+
+  /** Sets the lowest level logged for a tag, one of the {@link Log} priorities. */
+  public static void setLevel(String tag, int level) {
+    tagLevels.put(tag, level);
+    synchronized (RenderLog.class) {
+      boolean[] enabled = messageEnabled.clone();
+      for (int i = 0; i < messageCount; ++i) {
+        if (messageTags[i].equals(tag)) {
+          enabled[i] = level <= messageLevels[i];
+        }
+      }
+      messageEnabled = enabled;
+    }
+  }
+
+  /** Returns whether messages of the given level are logged for the tag. */
+  public static boolean isLoggable(String tag, int level) {
+    Integer tagLevel = tagLevels.get(tag);
+    return level >= (tagLevel != null ? tagLevel : LogConfig.DEFAULT_LEVEL);
+  }
+
+  public static void e(String tag, String message) {
+    if (isLoggable(tag, Log.ERROR)) {
+      Log.e(tag, message);
+    }
+  }
+
+  public static void e(String tag, String message, Throwable throwable) {
+    if (isLoggable(tag, Log.ERROR)) {
+      Log.e(tag, message, throwable);
+    }
+  }
+
+  public static void w(String tag, String message) {
+    if (isLoggable(tag, Log.WARN)) {
+      Log.w(tag, message);
+    }
+  }
+
+  public static void w(String tag, String message, Throwable throwable) {
+    if (isLoggable(tag, Log.WARN)) {
+      Log.w(tag, message, throwable);
+    }
+  }
+
+  public static void i(String tag, String message) {
+    if (isLoggable(tag, Log.INFO)) {
+      Log.i(tag, message);
+    }
+  }
+
+  public static void d(String tag, String message) {
+    if (isLoggable(tag, Log.DEBUG)) {
+      Log.d(tag, message);
+    }
+  }
+
+  public static void v(String tag, String message) {
+    if (isLoggable(tag, Log.VERBOSE)) {
+      Log.v(tag, message);
+    }
+  }
+
+  /**
+   * Registers a hot path message, typically in a static initializer.
+   *
+   * @param tag Tag of the message.
+   * @param level Priority of the message, one of the {@link Log} priorities.
+   * @param format {@link String#format} pattern of the message, given the two {@code long}
+   *     arguments of {@link #hot}.
+   * @param minIntervalMillis Minimum time between two printed instances of the message. Zero
+   *     prints every one.
+   * @return The id to pass to {@link #hot}. The first registration starts the thread printing
+   *     hot path messages, unless {@link #HOT_PATH_ENABLED} is false.
+   */
+  public static synchronized int register(
+      String tag, int level, String format, long minIntervalMillis) {
+    int id = messageCount;
+    if (id == MAX_MESSAGES) {
+      throw new IllegalStateException("Too many hot path messages");
+    }
+    messageTags[id] = tag;
+    messageLevels[id] = level;
+    messageFormats[id] = format;
+    messageIntervalNanos[id] = minIntervalMillis * 1_000_000L;
+    lastLoggedNanos[id] = Long.MIN_VALUE / 2;
+    // Publishes the message to the logging thread, then to the draining thread.
+    boolean[] enabled = messageEnabled.clone();
+    enabled[id] = isLoggable(tag, level);
+    messageEnabled = enabled;
+    messageCount = id + 1;
+    // Release builds never log hot path messages, so there is nothing to drain.
+    if (HOT_PATH_ENABLED && drainThread == null) {
+      drainThread = new Thread(RenderLog::drainLoop, TAG);
+      drainThread.setDaemon(true);
+      drainThread.start();
+    }
+    return id;
+  }
+
+  public static void hot(int message) {
+    hot(message, 0, 0);
+  }
+
+  public static void hot(int message, long arg0) {
+    hot(message, arg0, 0);
+  }
+
+  /** Logs a registered message with its arguments, without formatting it or allocating. */
+  public static void hot(int message, long arg0, long arg1) {
+    if (!messageEnabled[message]) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (now - lastLoggedNanos[message] < messageIntervalNanos[message]) {
+      suppressedCounts[message]++;
+      return;
+    }
+    long position = writePosition.get();
+    if (position - readPosition.get() >= RING_RECORDS) {
+      droppedCount.incrementAndGet();
+      return;
+    }
+    lastLoggedNanos[message] = now;
+    int offset = (int) (position % RING_RECORDS) * RECORD_SIZE;
+    ring[offset] = message;
+    ring[offset + 1] = suppressedCounts[message];
+    ring[offset + 2] = arg0;
+    ring[offset + 3] = arg1;
+    suppressedCounts[message] = 0;
+    // Ordered store, so that the record is complete when the drain thread sees the position.
+    writePosition.lazySet(position + 1);
+  }
+
+  /** Prints the hot path messages logged so far. Called periodically by the drain thread. */
+  public static synchronized void flush() {
+    long position = readPosition.get();
+    long end = writePosition.get();
+    for (; position < end; ++position) {
+      int offset = (int) (position % RING_RECORDS) * RECORD_SIZE;
+      int message = (int) ring[offset];
+      long suppressed = ring[offset + 1];
+      String text =
+          String.format(Locale.US, messageFormats[message], ring[offset + 2], ring[offset + 3]);
+      if (suppressed > 0) {
+        text += " (" + suppressed + " similar suppressed)";
+      }
+      readPosition.lazySet(position + 1);
+      Log.println(messageLevels[message], messageTags[message], text);
+    }
+    long dropped = droppedCount.getAndSet(0);
+    if (dropped > 0) {
+      Log.w(TAG, dropped + " hot path messages dropped; the log buffer was full.");
+    }
+  }
+
+  private static void drainLoop() {
+    while (true) {
+      flush();
+      try {
+        Thread.sleep(DRAIN_INTERVAL_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.math;
+
+/**
+ * Operations on 4x4 matrices stored in column-major order, like {@code android.opengl.Matrix},
+ * in caller-provided arrays at the given offsets.
+ *
+ * <p>Unlike {@code android.opengl.Matrix}, nothing is allocated, and results may overlap the
+ * arguments: every method reads its arguments before writing the result. The batch methods apply
+ * the same operation to consecutive matrices or points, in simple counted loops without calls or
+ * branches, which the JIT compilers of ART and HotSpot unroll and vectorize.
+ */
+public final class Mat4 {
+  /** Number of floats in a matrix. */
+  public static final int FLOATS = 16;
+
+  private Mat4() {}
+
+  /** Sets {@code m} to the identity matrix. */
+  public static void setIdentity(float[] m, int offset) {
+    for (int i = 0; i < FLOATS; ++i) {
+      m[offset + i] = 0;
+    }
+    m[offset] = 1;
+    m[offset + 5] = 1;
+    m[offset + 10] = 1;
+    m[offset + 15] = 1;
+  }
+
+  /** Computes {@code result = lhs * rhs}, like {@code Matrix.multiplyMM()}. */
+  public static void multiply(
+      float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    multiplyBatch(result, resultOffset, lhs, lhsOffset, rhs, rhsOffset, 1);
+  }
+
+  /**
+   * Computes {@code result[i] = lhs * rhs[i]} for {@code count} consecutive matrices, for example
+   * the model-view-projection matrices of many models from one view-projection matrix.
+   */
+  public static void multiplyBatch(
+      float[] result,
+      int resultOffset,
+      float[] lhs,
+      int lhsOffset,
+      float[] rhs,
+      int rhsOffset,
+      int count) {
+    float l0 = lhs[lhsOffset];
+    float l1 = lhs[lhsOffset + 1];
+    float l2 = lhs[lhsOffset + 2];
+    float l3 = lhs[lhsOffset + 3];
+    float l4 = lhs[lhsOffset + 4];
+    float l5 = lhs[lhsOffset + 5];
+    float l6 = lhs[lhsOffset + 6];
+    float l7 = lhs[lhsOffset + 7];
+    float l8 = lhs[lhsOffset + 8];
+    float l9 = lhs[lhsOffset + 9];
+    float l10 = lhs[lhsOffset + 10];
+    float l11 = lhs[lhsOffset + 11];
+    float l12 = lhs[lhsOffset + 12];
+    float l13 = lhs[lhsOffset + 13];
+    float l14 = lhs[lhsOffset + 14];
+    float l15 = lhs[lhsOffset + 15];
+    // Each column of the product only depends on the same column of rhs, which is read before
+    // being overwritten, so result may be rhs.
+    int columns = 4 * count;
+    for (int c = 0; c < columns; ++c) {
+      int r = rhsOffset + 4 * c;
+      int o = resultOffset + 4 * c;
+      float x = rhs[r];
+      float y = rhs[r + 1];
+      float z = rhs[r + 2];
+      float w = rhs[r + 3];
+      result[o] = l0 * x + l4 * y + l8 * z + l12 * w;
+      result[o + 1] = l1 * x + l5 * y + l9 * z + l13 * w;
+      result[o + 2] = l2 * x + l6 * y + l10 * z + l14 * w;
+      result[o + 3] = l3 * x + l7 * y + l11 * z + l15 * w;
+    }
+  }
+
+  /**
+   * Computes {@code result = m * v} for a 4 component vector, like {@code Matrix.multiplyMV()}.
+   */
+  public static void multiplyVector(
+      float[] result, int resultOffset, float[] m, int matrixOffset, float[] v, int vectorOffset) {
+    float x = v[vectorOffset];
+    float y = v[vectorOffset + 1];
+    float z = v[vectorOffset + 2];
+    float w = v[vectorOffset + 3];
+    int o = matrixOffset;
+    result[resultOffset] = m[o] * x + m[o + 4] * y + m[o + 8] * z + m[o + 12] * w;
+    result[resultOffset + 1] = m[o + 1] * x + m[o + 5] * y + m[o + 9] * z + m[o + 13] * w;
+    result[resultOffset + 2] = m[o + 2] * x + m[o + 6] * y + m[o + 10] * z + m[o + 14] * w;
+    result[resultOffset + 3] = m[o + 3] * x + m[o + 7] * y + m[o + 11] * z + m[o + 15] * w;
+  }
+
+  /**
+   * Transforms {@code count} consecutive points, stored as {@code (x, y, z)}, by an affine matrix
+   * such as a model or view matrix. The last row of {@code m} is ignored.
+   */
+  public static void transformPoints(
+      float[] result,
+      int resultOffset,
+      float[] m,
+      int matrixOffset,
+      float[] points,
+      int pointOffset,
+      int count) {
+    float m0 = m[matrixOffset];
+    float m1 = m[matrixOffset + 1];
+    float m2 = m[matrixOffset + 2];
+    float m4 = m[matrixOffset + 4];
+    float m5 = m[matrixOffset + 5];
+    float m6 = m[matrixOffset + 6];
+    float m8 = m[matrixOffset + 8];
+    float m9 = m[matrixOffset + 9];
+    float m10 = m[matrixOffset + 10];
+    float m12 = m[matrixOffset + 12];
+    float m13 = m[matrixOffset + 13];
+    float m14 = m[matrixOffset + 14];
+    for (int i = 0; i < count; ++i) {
+      int p = pointOffset + 3 * i;
+      int o = resultOffset + 3 * i;
+      float x = points[p];
+      float y = points[p + 1];
+      float z = points[p + 2];
+      result[o] = m0 * x + m4 * y + m8 * z + m12;
+      result[o + 1] = m1 * x + m5 * y + m9 * z + m13;
+      result[o + 2] = m2 * x + m6 * y + m10 * z + m14;
+    }
+  }
+
+  /** Computes {@code result = m * scale(s, s, s)}, scaling the model before {@code m}. */
+  public static void scale(float[] result, int resultOffset, float[] m, int matrixOffset, float s) {
+    scaleBatch(result, resultOffset, m, matrixOffset, s, 1);
+  }
+
+  /** Computes {@code result[i] = m[i] * scale(s, s, s)} for {@code count} consecutive matrices. */
+  public static void scaleBatch(
+      float[] result, int resultOffset, float[] m, int matrixOffset, float s, int count) {
+    for (int i = 0; i < count; ++i) {
+      int r = resultOffset + FLOATS * i;
+      int o = matrixOffset + FLOATS * i;
+      for (int j = 0; j < 12; ++j) {
+        result[r + j] = m[o + j] * s;
+      }
+      result[r + 12] = m[o + 12];
+      result[r + 13] = m[o + 13];
+      result[r + 14] = m[o + 14];
+      result[r + 15] = m[o + 15];
+    }
+  }
+
+  /**
+   * Inverts a rigid transformation, a rotation followed by a translation, such as the matrix of a
+   * {@code Pose}. Cheaper than {@code Matrix.invertM()}, but only valid for such matrices.
+   */
+  public static void invertRigid(float[] result, int resultOffset, float[] m, int matrixOffset) {
+    int o = matrixOffset;
+    float r0 = m[o];
+    float r1 = m[o + 1];
+    float r2 = m[o + 2];
+    float r4 = m[o + 4];
+    float r5 = m[o + 5];
+    float r6 = m[o + 6];
+    float r8 = m[o + 8];
+    float r9 = m[o + 9];
+    float r10 = m[o + 10];
+    float tx = m[o + 12];
+    float ty = m[o + 13];
+    float tz = m[o + 14];
+    // The inverse rotation is the transpose, and the inverse translation is -transpose(R) * t.
+    int r = resultOffset;
+    result[r] = r0;
+    result[r + 1] = r4;
+    result[r + 2] = r8;
+    result[r + 3] = 0;
+    result[r + 4] = r1;
+    result[r + 5] = r5;
+    result[r + 6] = r9;
+    result[r + 7] = 0;
+    result[r + 8] = r2;
+    result[r + 9] = r6;
+    result[r + 10] = r10;
+    result[r + 11] = 0;
+    result[r + 12] = -(r0 * tx + r1 * ty + r2 * tz);
+    result[r + 13] = -(r4 * tx + r5 * ty + r6 * tz);
+    result[r + 14] = -(r8 * tx + r9 * ty + r10 * tz);
+    result[r + 15] = 1;
+  }
+}
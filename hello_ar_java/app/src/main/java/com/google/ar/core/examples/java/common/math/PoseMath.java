@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.math;
+
+/**
+ * Operations on poses stored as {@code (tx, ty, tz, qx, qy, qz, qw)} in caller-provided arrays:
+ * a translation and a unit rotation quaternion, as written by {@code Pose.getTranslation()} and
+ * {@code Pose.getRotationQuaternion()}.
+ *
+ * <p>Like {@link Mat4}, nothing is allocated, and the batch methods are simple counted loops over
+ * consecutive poses, which the JIT can unroll and vectorize.
+ */
+public final class PoseMath {
+  /** Number of floats in a pose. */
+  public static final int FLOATS = 7;
+
+  private PoseMath() {}
+
+  /** Writes the matrix of a pose, like {@code Pose.toMatrix()}. */
+  public static void toMatrix(float[] poses, int poseOffset, float[] m, int matrixOffset) {
+    toMatrices(poses, poseOffset, m, matrixOffset, 1);
+  }
+
+  /** Writes the matrices of {@code count} consecutive poses to consecutive matrices. */
+  public static void toMatrices(
+      float[] poses, int poseOffset, float[] m, int matrixOffset, int count) {
+    for (int i = 0; i < count; ++i) {
+      int p = poseOffset + FLOATS * i;
+      int o = matrixOffset + Mat4.FLOATS * i;
+      float qx = poses[p + 3];
+      float qy = poses[p + 4];
+      float qz = poses[p + 5];
+      float qw = poses[p + 6];
+      m[o] = 1 - 2 * (qy * qy + qz * qz);
+      m[o + 1] = 2 * (qx * qy + qw * qz);
+      m[o + 2] = 2 * (qx * qz - qw * qy);
+      m[o + 3] = 0;
+      m[o + 4] = 2 * (qx * qy - qw * qz);
+      m[o + 5] = 1 - 2 * (qx * qx + qz * qz);
+      m[o + 6] = 2 * (qy * qz + qw * qx);
+      m[o + 7] = 0;
+      m[o + 8] = 2 * (qx * qz + qw * qy);
+      m[o + 9] = 2 * (qy * qz - qw * qx);
+      m[o + 10] = 1 - 2 * (qx * qx + qy * qy);
+      m[o + 11] = 0;
+      m[o + 12] = poses[p];
+      m[o + 13] = poses[p + 1];
+      m[o + 14] = poses[p + 2];
+      m[o + 15] = 1;
+    }
+  }
+
+  /**
+   * Returns the component of {@code (dx, dy, dz)} along the Y axis of a rotation, that is the
+   * normal distance of a point from a plane whose pose has that rotation, when {@code d} is the
+   * vector from the plane's origin to the point.
+   */
+  public static float distanceAlongY(
+      float qx, float qy, float qz, float qw, float dx, float dy, float dz) {
+    // Second column of the rotation matrix.
+    float normalX = 2 * (qx * qy - qw * qz);
+    float normalY = 1 - 2 * (qx * qx + qz * qz);
+    float normalZ = 2 * (qy * qz + qw * qx);
+    return dx * normalX + dy * normalY + dz * normalZ;
+  }
+
+  /**
+   * Computes the normal distance of a point, such as the camera, from {@code count} consecutive
+   * plane poses, like {@code PlaneRenderer.calculateDistanceToPlane()}. The Y axis of each pose
+   * must be the normal of its plane. Distances are negative when the point is behind the plane.
+   */
+  public static void planeDistances(
+      float[] poses,
+      int poseOffset,
+      int count,
+      float x,
+      float y,
+      float z,
+      float[] distances,
+      int distanceOffset) {
+    for (int i = 0; i < count; ++i) {
+      int p = poseOffset + FLOATS * i;
+      distances[distanceOffset + i] =
+          distanceAlongY(
+              poses[p + 3],
+              poses[p + 4],
+              poses[p + 5],
+              poses[p + 6],
+              x - poses[p],
+              y - poses[p + 1],
+              z - poses[p + 2]);
+    }
+  }
+}
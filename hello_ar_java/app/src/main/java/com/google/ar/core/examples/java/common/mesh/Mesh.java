@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.mesh;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Triangle mesh ready to be uploaded to OpenGL.
+ *
+ * <p>Vertices are interleaved as {@code position.xyz, normal.xyz, texCoord.uv}, all 32-bit floats,
+ * {@link #VERTEX_STRIDE} bytes per vertex. Indices are unsigned 16-bit values when the mesh has at
+ * most 65536 vertices, and unsigned 32-bit values otherwise. Both buffers are in native byte order
+ * and can be passed to {@code glBufferData} as they are.
+ */
+public final class Mesh {
+  /** Number of floats per interleaved vertex. */
+  public static final int FLOATS_PER_VERTEX = 3 + 3 + 2;
+  /** Size of one interleaved vertex, in bytes. */
+  public static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * 4;
+  /** Byte offset of the position within a vertex. */
+  public static final int POSITION_OFFSET = 0;
+  /** Byte offset of the normal within a vertex. */
+  public static final int NORMAL_OFFSET = 3 * 4;
+  /** Byte offset of the texture coordinate within a vertex. */
+  public static final int TEX_COORD_OFFSET = 6 * 4;
+
+  /** Largest vertex count that can be addressed with 16-bit indices. */
+  public static final int MAX_SHORT_INDEXED_VERTICES = 0x10000;
+
+  private final ByteBuffer vertices;
+  private final ByteBuffer indices;
+  private final int vertexCount;
+  private final int indexCount;
+  private final int bytesPerIndex;
+  private final float boundingRadius;
+
+  /**
+   * Creates a mesh over existing buffers. The buffers are not copied; their position and limit
+   * must span exactly the vertex and index data.
+   */
+  public Mesh(
+      ByteBuffer vertices,
+      ByteBuffer indices,
+      int vertexCount,
+      int indexCount,
+      int bytesPerIndex,
+      float boundingRadius) {
+    if (bytesPerIndex != 2 && bytesPerIndex != 4) {
+      throw new IllegalArgumentException("Unsupported index size: " + bytesPerIndex);
+    }
+    this.vertices = vertices;
+    this.indices = indices;
+    this.vertexCount = vertexCount;
+    this.indexCount = indexCount;
+    this.bytesPerIndex = bytesPerIndex;
+    this.boundingRadius = boundingRadius;
+  }
+
+  /** Returns the interleaved vertex data, {@link #VERTEX_STRIDE} bytes per vertex. */
+  public ByteBuffer getVertices() {
+    return vertices;
+  }
+
+  /** Returns the triangle indices, {@link #getBytesPerIndex()} bytes each. */
+  public ByteBuffer getIndices() {
+    return indices;
+  }
+
+  public int getVertexCount() {
+    return vertexCount;
+  }
+
+  public int getIndexCount() {
+    return indexCount;
+  }
+
+  /** Returns 2 for unsigned short indices and 4 for unsigned int indices. */
+  public int getBytesPerIndex() {
+    return bytesPerIndex;
+  }
+
+  /** Returns the index at the given position, as an unsigned value. */
+  public int getIndex(int i) {
+    int byteOffset = indices.position() + i * bytesPerIndex;
+    return bytesPerIndex == 2 ? indices.getShort(byteOffset) & 0xffff : indices.getInt(byteOffset);
+  }
+
+  /** Returns the radius of the sphere around the model origin that contains every vertex. */
+  public float getBoundingRadius() {
+    return boundingRadius;
+  }
+}
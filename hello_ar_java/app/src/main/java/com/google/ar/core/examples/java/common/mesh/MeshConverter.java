@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.mesh;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Converts OBJ models to {@link Mesh}es and binary mesh files. Used by the {@code convertMeshes}
+ * Gradle task at build time. Models that are only available at run time are read with {@link
+ * ObjParser} instead.
+ */
+public final class MeshConverter {
+  private MeshConverter() {}
+
+  /** Reads an OBJ model and converts it to a mesh. */
+  public static Mesh fromObj(InputStream objInputStream) throws IOException {
+    return fromObj(ObjReader.read(objInputStream));
+  }
+
+  /**
+   * Converts an OBJ model to a mesh. The model is triangulated and made single-indexed first, so
+   * that every vertex has exactly one position, normal and texture coordinate.
+   */
+  public static Mesh fromObj(Obj obj) {
+    obj = ObjUtils.convertToRenderable(obj);
+    return fromArrays(
+        ObjData.getVerticesArray(obj),
+        ObjData.getNormalsArray(obj),
+        ObjData.getTexCoordsArray(obj, 2),
+        ObjData.getFaceVertexIndicesArray(obj, 3));
+  }
+
+  /**
+   * Interleaves single-indexed triangle geometry into a mesh.
+   *
+   * @param positions Positions, 3 floats per vertex.
+   * @param normals Normals, 3 floats per vertex. Missing normals are written as zero.
+   * @param texCoords Texture coordinates, 2 floats per vertex. Missing ones are written as zero.
+   * @param triangleIndices Vertex indices, 3 per triangle.
+   */
+  public static Mesh fromArrays(
+      float[] positions, float[] normals, float[] texCoords, int[] triangleIndices) {
+    int vertexCount = positions.length / 3;
+    boolean hasTexCoords = texCoords.length >= vertexCount * 2;
+    boolean hasNormals = normals.length >= vertexCount * 3;
+    ByteBuffer vertices =
+        ByteBuffer.allocateDirect(vertexCount * Mesh.VERTEX_STRIDE).order(ByteOrder.nativeOrder());
+    FloatBuffer interleaved = vertices.asFloatBuffer();
+    float maxDistanceSquared = 0;
+    for (int v = 0; v < vertexCount; ++v) {
+      float x = positions[3 * v];
+      float y = positions[3 * v + 1];
+      float z = positions[3 * v + 2];
+      maxDistanceSquared = Math.max(maxDistanceSquared, x * x + y * y + z * z);
+      interleaved.put(x).put(y).put(z);
+      if (hasNormals) {
+        interleaved.put(normals, 3 * v, 3);
+      } else {
+        interleaved.put(0).put(0).put(0);
+      }
+      if (hasTexCoords) {
+        interleaved.put(texCoords, 2 * v, 2);
+      } else {
+        interleaved.put(0).put(0);
+      }
+    }
+
+    int indexCount = triangleIndices.length;
+    int bytesPerIndex = vertexCount <= Mesh.MAX_SHORT_INDEXED_VERTICES ? 2 : 4;
+    ByteBuffer indices =
+        ByteBuffer.allocateDirect(indexCount * bytesPerIndex).order(ByteOrder.nativeOrder());
+    for (int i = 0; i < indexCount; ++i) {
+      if (bytesPerIndex == 2) {
+        indices.putShort((short) triangleIndices[i]);
+      } else {
+        indices.putInt(triangleIndices[i]);
+      }
+    }
+    indices.rewind();
+
+    return new Mesh(
+        vertices,
+        indices,
+        vertexCount,
+        indexCount,
+        bytesPerIndex,
+        (float) Math.sqrt(maxDistanceSquared));
+  }
+
+  /** Converts an OBJ file to a binary mesh file, creating parent directories as needed. */
+  public static void convert(File objFile, File meshFile) throws IOException {
+    Mesh mesh;
+    try (InputStream in = new FileInputStream(objFile)) {
+      mesh = fromObj(in);
+    }
+    File parent = meshFile.getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Could not create " + parent);
+    }
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(meshFile))) {
+      MeshFile.write(mesh, out);
+    }
+  }
+
+  /** Command line entry point: {@code MeshConverter <input.obj> <output.mesh>}. */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: MeshConverter <input.obj> <output.mesh>");
+      System.exit(1);
+    }
+    convert(new File(args[0]), new File(args[1]));
+  }
+}
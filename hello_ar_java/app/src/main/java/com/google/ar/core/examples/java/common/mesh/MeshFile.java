@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.mesh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Reads and writes the binary mesh format produced at build time from OBJ assets.
+ *
+ * <p>A mesh file is little-endian and laid out as follows:
+ *
+ * <pre>
+ *   offset  size                      content
+ *   0       4                         magic, "AMSH"
+ *   4       4                         format version, {@value #VERSION}
+ *   8       4                         vertex count
+ *   12      4                         index count
+ *   16      4                         bytes per index, 2 or 4
+ *   20      4                         bounding radius, float
+ *   24      8                         reserved, zero
+ *   32      vertexCount * 32          interleaved vertices, see {@link Mesh}
+ *   ...     indexCount * bytesPerIndex  indices
+ * </pre>
+ *
+ * <p>Because the payload already has the layout OpenGL expects, {@link #read(ByteBuffer)} only
+ * validates the header and slices the input; nothing is parsed or copied on little-endian devices.
+ */
+public final class MeshFile {
+  /** File name extension of binary mesh assets. */
+  public static final String EXTENSION = ".mesh";
+
+  // "AMSH" read as a little-endian int.
+  private static final int MAGIC = 'A' | 'M' << 8 | 'S' << 16 | 'H' << 24;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 32;
+
+  private MeshFile() {}
+
+  /**
+   * Returns the name of the binary mesh built from the given OBJ file name, by replacing its
+   * extension.
+   */
+  public static String meshNameFor(String objName) {
+    int dot = objName.lastIndexOf('.');
+    int slash = objName.lastIndexOf('/');
+    String base = dot > slash ? objName.substring(0, dot) : objName;
+    return base + EXTENSION;
+  }
+
+  /**
+   * Wraps a mesh file held in memory, typically a memory-mapped asset. The returned mesh shares
+   * the content of {@code data}, which must stay valid while the mesh is used.
+   *
+   * @throws IOException if the data is not a mesh file of a supported version.
+   */
+  public static Mesh read(ByteBuffer data) throws IOException {
+    ByteBuffer header = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int start = header.position();
+    if (header.remaining() < HEADER_SIZE || header.getInt(start) != MAGIC) {
+      throw new IOException("Not a mesh file");
+    }
+    int version = header.getInt(start + 4);
+    if (version != VERSION) {
+      throw new IOException("Unsupported mesh file version " + version);
+    }
+    int vertexCount = header.getInt(start + 8);
+    int indexCount = header.getInt(start + 12);
+    int bytesPerIndex = header.getInt(start + 16);
+    float boundingRadius = header.getFloat(start + 20);
+    if (vertexCount < 0 || indexCount < 0 || (bytesPerIndex != 2 && bytesPerIndex != 4)) {
+      throw new IOException("Corrupt mesh file header");
+    }
+
+    long vertexBytes = (long) vertexCount * Mesh.VERTEX_STRIDE;
+    long indexBytes = (long) indexCount * bytesPerIndex;
+    if (HEADER_SIZE + vertexBytes + indexBytes > header.remaining()) {
+      throw new IOException("Truncated mesh file");
+    }
+    int verticesStart = start + HEADER_SIZE;
+    int indicesStart = verticesStart + (int) vertexBytes;
+    ByteBuffer vertices = slice(data, verticesStart, (int) vertexBytes);
+    ByteBuffer indices = slice(data, indicesStart, (int) indexBytes);
+    if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+      vertices = swapBytes(vertices, 4);
+      indices = swapBytes(indices, bytesPerIndex);
+    }
+    return new Mesh(vertices, indices, vertexCount, indexCount, bytesPerIndex, boundingRadius);
+  }
+
+  /** Writes a mesh in the binary mesh format. The stream is not closed. */
+  public static void write(Mesh mesh, OutputStream out) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.putInt(mesh.getVertexCount());
+    header.putInt(mesh.getIndexCount());
+    header.putInt(mesh.getBytesPerIndex());
+    header.putFloat(mesh.getBoundingRadius());
+    header.putInt(0);
+    header.putInt(0);
+    header.flip();
+
+    ByteBuffer vertices = mesh.getVertices().duplicate();
+    ByteBuffer indices = mesh.getIndices().duplicate();
+    if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+      vertices = swapBytes(vertices, 4);
+      indices = swapBytes(indices, mesh.getBytesPerIndex());
+    }
+
+    WritableByteChannel channel = Channels.newChannel(out);
+    writeFully(channel, header);
+    writeFully(channel, vertices);
+    writeFully(channel, indices);
+  }
+
+  private static ByteBuffer slice(ByteBuffer data, int position, int length) {
+    ByteBuffer view = data.duplicate();
+    view.limit(position + length);
+    view.position(position);
+    return view.slice().order(ByteOrder.nativeOrder());
+  }
+
+  // Returns a copy of the buffer with the byte order of each element of the given size reversed.
+  private static ByteBuffer swapBytes(ByteBuffer source, int elementSize) {
+    ByteBuffer swapped =
+        ByteBuffer.allocateDirect(source.remaining()).order(ByteOrder.nativeOrder());
+    int start = source.position();
+    for (int i = 0; i < source.remaining(); i += elementSize) {
+      for (int b = 0; b < elementSize; ++b) {
+        swapped.put(i + b, source.get(start + i + elementSize - 1 - b));
+      }
+    }
+    return swapped;
+  }
+
+  private static void writeFully(WritableByteChannel channel, ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
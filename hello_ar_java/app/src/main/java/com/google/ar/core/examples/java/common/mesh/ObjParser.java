@@ -0,0 +1,686 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.mesh;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses Wavefront OBJ geometry from a {@link ByteBuffer}, typically a memory-mapped file, for
+ * models that were not converted at build time.
+ *
+ * <p>The input is split at line boundaries into chunks that are parsed in parallel on a fork-join
+ * pool. Numbers are parsed directly from the bytes, and positions, texture coordinates, normals and
+ * face indices go straight into primitive arrays. Materials, groups and all other statements are
+ * ignored.
+ *
+ * <p>The result is identical to reading the file with {@code ObjReader}, making it renderable with
+ * {@code ObjUtils.convertToRenderable} and flattening it with {@code ObjData}: polygons are
+ * triangulated as fans, vertices used with more than one texture coordinate or normal are
+ * duplicated in the same order, and attributes are reindexed by vertex.
+ */
+public final class ObjParser {
+  // Chunks are at least this large, so that small files are parsed on the calling thread.
+  private static final int MIN_CHUNK_BYTES = 64 * 1024;
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  // Face corner attribute that is not present, as in "f 1//1".
+  private static final int ABSENT = Integer.MIN_VALUE;
+
+  // Numbers with more significant digits than this are handed to Float.parseFloat.
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+  private static final double[] POWERS_OF_TEN = new double[23];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private final ForkJoinPool pool;
+
+  /** Creates a parser that runs on the common fork-join pool. */
+  public ObjParser() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  public ObjParser(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /** Flattened, single-indexed triangle geometry of an OBJ file. */
+  public static final class Result {
+    private final float[] vertices;
+    private final float[] texCoords;
+    private final float[] normals;
+    private final int[] faceVertexIndices;
+
+    Result(float[] vertices, float[] texCoords, float[] normals, int[] faceVertexIndices) {
+      this.vertices = vertices;
+      this.texCoords = texCoords;
+      this.normals = normals;
+      this.faceVertexIndices = faceVertexIndices;
+    }
+
+    /** Returns the positions, 3 floats per vertex. */
+    public float[] getVertices() {
+      return vertices;
+    }
+
+    /** Returns the texture coordinates, 2 floats per vertex, or an empty array if none. */
+    public float[] getTexCoords() {
+      return texCoords;
+    }
+
+    /** Returns the normals, 3 floats per vertex, or an empty array if there are none. */
+    public float[] getNormals() {
+      return normals;
+    }
+
+    /** Returns the vertex indices, 3 per triangle. */
+    public int[] getFaceVertexIndices() {
+      return faceVertexIndices;
+    }
+
+    public int getVertexCount() {
+      return vertices.length / 3;
+    }
+
+    /** Converts the geometry to an interleaved {@link Mesh}. */
+    public Mesh toMesh() {
+      return MeshConverter.fromArrays(vertices, normals, texCoords, faceVertexIndices);
+    }
+  }
+
+  /**
+   * Parses OBJ data. Reads the bytes between the buffer's position and limit, without changing
+   * either.
+   *
+   * @throws IOException if the data is malformed or a face refers to a missing element.
+   */
+  public Result parse(ByteBuffer data) throws IOException {
+    Chunk[] chunks = split(data);
+    try {
+      pool.invoke(new ParseChunks(chunks, 0, chunks.length));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    // Element counts before each chunk, to resolve absolute and relative indices.
+    int vertexCount = 0;
+    int texCoordCount = 0;
+    int normalCount = 0;
+    int triangleCount = 0;
+    for (Chunk chunk : chunks) {
+      chunk.vertexBase = vertexCount;
+      chunk.texCoordBase = texCoordCount;
+      chunk.normalBase = normalCount;
+      chunk.triangleBase = triangleCount;
+      vertexCount += chunk.positions.size / 3;
+      texCoordCount += chunk.texCoords.size / 2;
+      normalCount += chunk.normals.size / 3;
+      triangleCount += chunk.triangleCount;
+    }
+
+    Triangles triangles = new Triangles(triangleCount, vertexCount, texCoordCount, normalCount);
+    try {
+      pool.invoke(new TriangulateChunks(chunks, triangles, 0, chunks.length));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    float[] positions = new float[vertexCount * 3];
+    float[] texCoords = new float[texCoordCount * 2];
+    float[] normals = new float[normalCount * 3];
+    for (Chunk chunk : chunks) {
+      chunk.positions.copyTo(positions, chunk.vertexBase * 3);
+      chunk.texCoords.copyTo(texCoords, chunk.texCoordBase * 2);
+      chunk.normals.copyTo(normals, chunk.normalBase * 3);
+    }
+    return makeRenderable(triangles, positions, texCoords, normals);
+  }
+
+  private Chunk[] split(ByteBuffer data) {
+    int start = data.position();
+    int end = data.limit();
+    int maxChunks = Math.max(1, pool.getParallelism() * CHUNKS_PER_THREAD);
+    int chunkCount = Math.max(1, Math.min(maxChunks, (end - start) / MIN_CHUNK_BYTES));
+    int chunkBytes = (end - start) / chunkCount;
+
+    Chunk[] chunks = new Chunk[chunkCount];
+    int chunkStart = start;
+    for (int i = 0; i < chunkCount; ++i) {
+      int chunkEnd = i == chunkCount - 1 ? end : Math.max(chunkStart, start + (i + 1) * chunkBytes);
+      // Move the boundary past the end of the line it falls in.
+      while (chunkEnd < end && chunkEnd > start && data.get(chunkEnd - 1) != '\n') {
+        chunkEnd++;
+      }
+      chunks[i] = new Chunk(data, chunkStart, chunkEnd);
+      chunkStart = chunkEnd;
+    }
+    return chunks;
+  }
+
+  /**
+   * Applies the steps of {@code ObjUtils.convertToRenderable} after triangulation: vertices used
+   * with different texture coordinates, then with different normals, are duplicated, and the
+   * attributes are reordered to be indexed by vertex.
+   */
+  private static Result makeRenderable(
+      Triangles triangles, float[] positions, float[] texCoords, float[] normals) {
+    int[] vertexIndices = triangles.vertexIndices;
+    int vertexCount = positions.length / 3;
+    // Original position of every vertex, including duplicates.
+    IntArray positionIndices = new IntArray(vertexCount);
+    for (int i = 0; i < vertexCount; ++i) {
+      positionIndices.add(i);
+    }
+
+    boolean hasTexCoords = makeUnique(vertexIndices, triangles.texCoordIndices, positionIndices);
+    boolean hasNormals = makeUnique(vertexIndices, triangles.normalIndices, positionIndices);
+    vertexCount = positionIndices.size;
+
+    float[] outPositions = new float[vertexCount * 3];
+    for (int v = 0; v < vertexCount; ++v) {
+      System.arraycopy(positions, positionIndices.values[v] * 3, outPositions, v * 3, 3);
+    }
+    float[] outTexCoords =
+        hasTexCoords
+            ? reindex(vertexIndices, triangles.texCoordIndices, vertexCount, texCoords, 2)
+            : new float[0];
+    float[] outNormals =
+        hasNormals
+            ? reindex(vertexIndices, triangles.normalIndices, vertexCount, normals, 3)
+            : new float[0];
+    return new Result(outPositions, outTexCoords, outNormals, vertexIndices);
+  }
+
+  /**
+   * Gives every vertex a single attribute index. A corner that uses a vertex with a different
+   * attribute than its first use gets a new copy of that vertex.
+   *
+   * @return Whether any corner has the attribute.
+   */
+  private static boolean makeUnique(
+      int[] vertexIndices, int[] attributeIndices, IntArray positionIndices) {
+    int vertexCount = positionIndices.size;
+    int[] usedAttribute = new int[vertexCount];
+    Arrays.fill(usedAttribute, ABSENT);
+    boolean found = false;
+    for (int c = 0; c < vertexIndices.length; ++c) {
+      int attribute = attributeIndices[c];
+      if (attribute == ABSENT) {
+        continue;
+      }
+      found = true;
+      int vertex = vertexIndices[c];
+      int used = usedAttribute[vertex];
+      if (used == ABSENT) {
+        usedAttribute[vertex] = attribute;
+      } else if (used != attribute) {
+        vertexIndices[c] = positionIndices.size;
+        positionIndices.add(positionIndices.values[vertex]);
+      }
+    }
+    return found;
+  }
+
+  private static float[] reindex(
+      int[] vertexIndices, int[] attributeIndices, int vertexCount, float[] values, int size) {
+    // Vertices that no corner assigns an attribute to use the first one.
+    int[] attributeOfVertex = new int[vertexCount];
+    for (int c = 0; c < vertexIndices.length; ++c) {
+      if (attributeIndices[c] != ABSENT) {
+        attributeOfVertex[vertexIndices[c]] = attributeIndices[c];
+      }
+    }
+    float[] result = new float[vertexCount * size];
+    for (int v = 0; v < vertexCount; ++v) {
+      System.arraycopy(values, attributeOfVertex[v] * size, result, v * size, size);
+    }
+    return result;
+  }
+
+  /** Triangle corners of the whole file, with global indices. */
+  private static final class Triangles {
+    final int[] vertexIndices;
+    final int[] texCoordIndices;
+    final int[] normalIndices;
+    final int vertexCount;
+    final int texCoordCount;
+    final int normalCount;
+
+    Triangles(int triangleCount, int vertexCount, int texCoordCount, int normalCount) {
+      vertexIndices = new int[triangleCount * 3];
+      texCoordIndices = new int[triangleCount * 3];
+      normalIndices = new int[triangleCount * 3];
+      this.vertexCount = vertexCount;
+      this.texCoordCount = texCoordCount;
+      this.normalCount = normalCount;
+    }
+  }
+
+  private static final class ParseChunks extends RecursiveAction {
+    private static final long serialVersionUID = 0L;
+
+    private final Chunk[] chunks;
+    private final int from;
+    private final int to;
+
+    ParseChunks(Chunk[] chunks, int from, int to) {
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        try {
+          chunks[from].parse();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      ForkJoinTask.invokeAll(
+          new ParseChunks(chunks, from, middle), new ParseChunks(chunks, middle, to));
+    }
+  }
+
+  private static final class TriangulateChunks extends RecursiveAction {
+    private static final long serialVersionUID = 0L;
+
+    private final Chunk[] chunks;
+    private final Triangles triangles;
+    private final int from;
+    private final int to;
+
+    TriangulateChunks(Chunk[] chunks, Triangles triangles, int from, int to) {
+      this.chunks = chunks;
+      this.triangles = triangles;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        try {
+          chunks[from].triangulate(triangles);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      ForkJoinTask.invokeAll(
+          new TriangulateChunks(chunks, triangles, from, middle),
+          new TriangulateChunks(chunks, triangles, middle, to));
+    }
+  }
+
+  /** A range of whole lines and the elements parsed from it. */
+  private static final class Chunk {
+    private final ByteBuffer data;
+    private final int start;
+    private final int end;
+    private int position;
+
+    final FloatArray positions = new FloatArray();
+    final FloatArray texCoords = new FloatArray();
+    final FloatArray normals = new FloatArray();
+    // Number of corners of each face, and the attribute indices of each corner. Positive OBJ
+    // indices are stored zero-based; negative ones are stored relative to this chunk and listed
+    // in the matching relative* array so that the chunk's base can be added later.
+    final IntArray faceSizes = new IntArray();
+    final IntArray cornerVertices = new IntArray();
+    final IntArray cornerTexCoords = new IntArray();
+    final IntArray cornerNormals = new IntArray();
+    final IntArray relativeVertices = new IntArray();
+    final IntArray relativeTexCoords = new IntArray();
+    final IntArray relativeNormals = new IntArray();
+    int triangleCount;
+
+    int vertexBase;
+    int texCoordBase;
+    int normalBase;
+    int triangleBase;
+
+    Chunk(ByteBuffer data, int start, int end) {
+      this.data = data;
+      this.start = start;
+      this.end = end;
+    }
+
+    void parse() throws IOException {
+      position = start;
+      while (position < end) {
+        skipSpaces();
+        if (position >= end) {
+          break;
+        }
+        byte first = data.get(position);
+        byte second = position + 1 < end ? data.get(position + 1) : (byte) '\n';
+        if (first == 'v') {
+          if (isSpace(second)) {
+            position += 1;
+            parseFloats(positions, 3);
+          } else if (second == 't' && isSpaceAt(position + 2)) {
+            position += 2;
+            parseFloats(texCoords, 2);
+          } else if (second == 'n' && isSpaceAt(position + 2)) {
+            position += 2;
+            parseFloats(normals, 3);
+          }
+        } else if (first == 'f' && isSpace(second)) {
+          position += 1;
+          parseFace();
+        }
+        skipLine();
+      }
+    }
+
+    // Reads count numbers into the array, padding missing ones with zero. Extra values, such as
+    // the w component of a vertex, are ignored.
+    private void parseFloats(FloatArray array, int count) throws IOException {
+      for (int i = 0; i < count; ++i) {
+        skipSpaces();
+        array.add(atEndOfLine() ? 0 : parseFloat());
+      }
+    }
+
+    private void parseFace() throws IOException {
+      int corners = 0;
+      while (true) {
+        skipSpaces();
+        if (atEndOfLine()) {
+          break;
+        }
+        int corner = cornerVertices.size;
+        cornerVertices.add(parseIndex(positions.size / 3, relativeVertices, corner));
+        int texCoord = ABSENT;
+        int normal = ABSENT;
+        if (position < end && data.get(position) == '/') {
+          position++;
+          if (position < end && data.get(position) != '/') {
+            texCoord = parseIndex(texCoords.size / 2, relativeTexCoords, corner);
+          }
+          if (position < end && data.get(position) == '/') {
+            position++;
+            normal = parseIndex(normals.size / 3, relativeNormals, corner);
+          }
+        }
+        cornerTexCoords.add(texCoord);
+        cornerNormals.add(normal);
+        corners++;
+      }
+      faceSizes.add(corners);
+      triangleCount += Math.max(0, corners - 2);
+    }
+
+    private int parseIndex(int elementsSoFar, IntArray relativeCorners, int corner)
+        throws IOException {
+      boolean negative = false;
+      if (position < end && data.get(position) == '-') {
+        negative = true;
+        position++;
+      }
+      int value = 0;
+      int digits = 0;
+      while (position < end) {
+        int digit = data.get(position) - '0';
+        if (digit < 0 || digit > 9) {
+          break;
+        }
+        value = value * 10 + digit;
+        digits++;
+        position++;
+      }
+      if (digits == 0 || value == 0) {
+        throw new IOException("Invalid face index at byte " + position);
+      }
+      if (negative) {
+        relativeCorners.add(corner);
+        return elementsSoFar - value;
+      }
+      return value - 1;
+    }
+
+    /**
+     * Parses a decimal number. Values whose digits fit in a double's mantissa and whose exponent
+     * is small are computed exactly and rounded once; others fall back to {@link
+     * Float#parseFloat}, so the result always equals {@code Float.parseFloat}.
+     */
+    private float parseFloat() throws IOException {
+      int numberStart = position;
+      boolean negative = false;
+      byte b = data.get(position);
+      if (b == '-' || b == '+') {
+        negative = b == '-';
+        position++;
+      }
+      long mantissa = 0;
+      int exponent = 0;
+      int digits = 0;
+      boolean exact = true;
+      boolean seenPoint = false;
+      while (position < end) {
+        b = data.get(position);
+        if (b >= '0' && b <= '9') {
+          if (mantissa < MAX_EXACT_MANTISSA / 10) {
+            mantissa = mantissa * 10 + (b - '0');
+            if (seenPoint) {
+              exponent--;
+            }
+          } else {
+            exact = false;
+          }
+          digits++;
+        } else if (b == '.' && !seenPoint) {
+          seenPoint = true;
+        } else {
+          break;
+        }
+        position++;
+      }
+      if (position < end && (data.get(position) == 'e' || data.get(position) == 'E')) {
+        position++;
+        boolean negativeExponent = false;
+        if (position < end && (data.get(position) == '-' || data.get(position) == '+')) {
+          negativeExponent = data.get(position) == '-';
+          position++;
+        }
+        int value = 0;
+        int exponentDigits = 0;
+        while (position < end && data.get(position) >= '0' && data.get(position) <= '9') {
+          value = Math.min(value * 10 + (data.get(position) - '0'), 10000);
+          exponentDigits++;
+          position++;
+        }
+        if (exponentDigits == 0) {
+          exact = false;
+        }
+        exponent += negativeExponent ? -value : value;
+      }
+      if (position < end && !isSpace(data.get(position)) && data.get(position) != '\n'
+          && data.get(position) != '\r') {
+        // Something like "nan" or "1.0f": let the platform decide.
+        exact = false;
+        while (position < end && !isSpace(data.get(position)) && data.get(position) != '\n') {
+          position++;
+        }
+      }
+      if (digits == 0) {
+        exact = false;
+      }
+
+      if (exact && exponent >= -22 && exponent <= 22) {
+        double value =
+            exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        float rounded = (float) value;
+        if (!isFloatMidpoint(value, rounded)) {
+          return negative ? -rounded : rounded;
+        }
+      }
+      return parseFloatSlowly(numberStart, position);
+    }
+
+    // Whether value lies exactly halfway between two floats, where rounding the already rounded
+    // double again could differ from rounding the decimal number directly.
+    private static boolean isFloatMidpoint(double value, float rounded) {
+      if (value == rounded || Float.isInfinite(rounded)) {
+        return Float.isInfinite(rounded);
+      }
+      float neighbor = value > rounded ? Math.nextUp(rounded) : Math.nextDown(rounded);
+      return ((double) rounded + neighbor) / 2 == value;
+    }
+
+    private float parseFloatSlowly(int from, int to) throws IOException {
+      byte[] bytes = new byte[to - from];
+      for (int i = 0; i < bytes.length; ++i) {
+        bytes[i] = data.get(from + i);
+      }
+      String text = new String(bytes, StandardCharsets.US_ASCII).trim();
+      try {
+        return Float.parseFloat(text);
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid number \"" + text + "\" at byte " + from, e);
+      }
+    }
+
+    /** Resolves indices against the chunk bases and writes this chunk's triangles. */
+    void triangulate(Triangles triangles) throws IOException {
+      int[] vertices = cornerVertices.values;
+      int[] texCoords = cornerTexCoords.values;
+      int[] normals = cornerNormals.values;
+      addBase(vertices, relativeVertices, vertexBase);
+      addBase(texCoords, relativeTexCoords, texCoordBase);
+      addBase(normals, relativeNormals, normalBase);
+
+      int out = triangleBase * 3;
+      int corner = 0;
+      for (int f = 0; f < faceSizes.size; ++f) {
+        int size = faceSizes.values[f];
+        for (int k = 1; k + 1 < size; ++k) {
+          out = putCorner(triangles, out, corner);
+          out = putCorner(triangles, out, corner + k);
+          out = putCorner(triangles, out, corner + k + 1);
+        }
+        corner += size;
+      }
+    }
+
+    private int putCorner(Triangles triangles, int out, int corner) throws IOException {
+      int vertex = cornerVertices.values[corner];
+      int texCoord = cornerTexCoords.values[corner];
+      int normal = cornerNormals.values[corner];
+      if (vertex < 0 || vertex >= triangles.vertexCount) {
+        throw new IOException("Face refers to missing vertex " + (vertex + 1));
+      }
+      if (texCoord != ABSENT && (texCoord < 0 || texCoord >= triangles.texCoordCount)) {
+        throw new IOException("Face refers to missing texture coordinate " + (texCoord + 1));
+      }
+      if (normal != ABSENT && (normal < 0 || normal >= triangles.normalCount)) {
+        throw new IOException("Face refers to missing normal " + (normal + 1));
+      }
+      triangles.vertexIndices[out] = vertex;
+      triangles.texCoordIndices[out] = texCoord;
+      triangles.normalIndices[out] = normal;
+      return out + 1;
+    }
+
+    private static void addBase(int[] indices, IntArray relativeCorners, int base) {
+      for (int i = 0; i < relativeCorners.size; ++i) {
+        indices[relativeCorners.values[i]] += base;
+      }
+    }
+
+    private void skipSpaces() {
+      while (position < end && isSpace(data.get(position))) {
+        position++;
+      }
+    }
+
+    private void skipLine() {
+      while (position < end && data.get(position) != '\n') {
+        position++;
+      }
+      position++;
+    }
+
+    private boolean atEndOfLine() {
+      if (position >= end) {
+        return true;
+      }
+      byte b = data.get(position);
+      return b == '\n' || b == '\r' || b == '#';
+    }
+
+    private boolean isSpaceAt(int index) {
+      return index < end && isSpace(data.get(index));
+    }
+
+    private static boolean isSpace(byte b) {
+      return b == ' ' || b == '\t';
+    }
+  }
+
+  /** Growable float array. */
+  private static final class FloatArray {
+    float[] values = new float[256];
+    int size;
+
+    void add(float value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    void copyTo(float[] destination, int offset) {
+      System.arraycopy(values, 0, destination, offset, size);
+    }
+  }
+
+  /** Growable int array. */
+  private static final class IntArray {
+    int[] values;
+    int size;
+
+    IntArray() {
+      this(256);
+    }
+
+    IntArray(int capacity) {
+      values = new int[Math.max(capacity, 16)];
+    }
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+  }
+}
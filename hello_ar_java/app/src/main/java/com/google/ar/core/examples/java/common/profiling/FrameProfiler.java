@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.profiling;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Times named stages of a frame into one {@link LatencyHistogram} each.
+ *
+ * <p>Stages are registered up front with {@link #addStage}, which returns the id passed to {@link
+ * #begin} and {@link #end} around the stage every frame. Spans of different stages may nest or
+ * overlap, but a stage cannot be begun again before it ends. Recording does not allocate and must
+ * happen on a single thread, typically the rendering thread; reports may be built on any thread.
+ *
+ * <p>Stages are also recorded as {@link TraceRecorder} events while a trace is being recorded.
+ */
+public final class FrameProfiler {
+  private final List<String> names = new ArrayList<>();
+  private final List<LatencyHistogram> histograms = new ArrayList<>();
+  private long[] startNanos = new long[8];
+  private int[] traceEvents = new int[8];
+
+  /** Registers a stage and returns its id. Must be called before recording starts. */
+  public int addStage(String name) {
+    names.add(name);
+    histograms.add(new LatencyHistogram());
+    if (startNanos.length < names.size()) {
+      startNanos = Arrays.copyOf(startNanos, 2 * startNanos.length);
+      traceEvents = Arrays.copyOf(traceEvents, 2 * traceEvents.length);
+    }
+    traceEvents[names.size() - 1] = TraceRecorder.registerEvent(name);
+    return names.size() - 1;
+  }
+
+  public int getStageCount() {
+    return names.size();
+  }
+
+  public String getStageName(int stage) {
+    return names.get(stage);
+  }
+
+  public LatencyHistogram getHistogram(int stage) {
+    return histograms.get(stage);
+  }
+
+  /** Marks the start of a span of the stage. */
+  public void begin(int stage) {
+    TraceRecorder.begin(traceEvents[stage]);
+    startNanos[stage] = System.nanoTime();
+  }
+
+  /** Marks the end of the span of the stage begun last, and records its duration. */
+  public void end(int stage) {
+    histograms.get(stage).record(System.nanoTime() - startNanos[stage]);
+    TraceRecorder.end(traceEvents[stage]);
+  }
+
+  /** Clears every histogram. Must be called on the recording thread. */
+  public void reset() {
+    for (LatencyHistogram histogram : histograms) {
+      histogram.reset();
+    }
+  }
+
+  /** Returns a table of the count, percentiles and maximum of every stage, in milliseconds. */
+  public String formatReport() {
+    StringBuilder report = new StringBuilder();
+    report.append(
+        String.format(
+            Locale.US,
+            "%-12s %7s %6s %6s %6s %6s%n",
+            "stage",
+            "count",
+            "p50",
+            "p95",
+            "p99",
+            "max"));
+    for (int stage = 0; stage < names.size(); ++stage) {
+      LatencyHistogram histogram = histograms.get(stage);
+      report.append(
+          String.format(
+              Locale.US,
+              "%-12s %7d %6.2f %6.2f %6.2f %6.2f%n",
+              names.get(stage),
+              histogram.getCount(),
+              histogram.getPercentileNanos(0.50) / 1e6,
+              histogram.getPercentileNanos(0.95) / 1e6,
+              histogram.getPercentileNanos(0.99) / 1e6,
+              histogram.getMaxNanos() / 1e6));
+    }
+    return report.toString();
+  }
+
+  /** Writes {@link #formatReport()} to a writer, which is not closed. */
+  public void writeReport(Writer writer) throws IOException {
+    writer.write(formatReport());
+    writer.flush();
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.profiling;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds, with log-linear buckets: every power of two is split into
+ * {@code 2^SUB_BUCKET_BITS} buckets, so percentiles are accurate to about 6% from one nanosecond
+ * to about a minute. Longer durations are counted in the last bucket.
+ *
+ * <p>Values are recorded by a single thread without locking or allocating. Other threads may read
+ * the statistics at any time; a read that races with {@link #record} may see it only in part, for
+ * example in the count but not yet in the buckets.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // Values up to 2^MAX_EXPONENT - 1 ns, about 69 seconds, get their own bucket.
+  private static final int MAX_EXPONENT = 36;
+  private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+  // Written by the recording thread only, with ordered stores so that readers see whole values.
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private volatile long count;
+  private volatile long totalNanos;
+  private volatile long maxNanos;
+
+  /** Records a duration. Must always be called from the same thread. */
+  public void record(long nanos) {
+    int bucket = bucketFor(nanos);
+    buckets.lazySet(bucket, buckets.get(bucket) + 1);
+    totalNanos += nanos;
+    if (nanos > maxNanos) {
+      maxNanos = nanos;
+    }
+    count++;
+  }
+
+  /** Clears the histogram. Must be called from the recording thread. */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      buckets.lazySet(i, 0);
+    }
+    count = 0;
+    totalNanos = 0;
+    maxNanos = 0;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  public long getMeanNanos() {
+    long n = count;
+    return n == 0 ? 0 : totalNanos / n;
+  }
+
+  /**
+   * Returns the duration below which the given fraction of the recorded values lie, as the middle
+   * of the bucket it falls in, or 0 if nothing was recorded.
+   *
+   * @param fraction From 0 to 1, for example 0.95 for the 95th percentile.
+   */
+  public long getPercentileNanos(double fraction) {
+    if (fraction >= 1) {
+      return maxNanos;
+    }
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      total += buckets.get(i);
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        return Math.min((lowestValueOf(i) + lowestValueOf(i + 1) - 1) / 2, maxNanos);
+      }
+    }
+    return maxNanos;
+  }
+
+  // Values below SUB_BUCKET_COUNT have a bucket each. Above, the bucket is given by the position
+  // of the highest bit and the SUB_BUCKET_BITS bits after it.
+  private static int bucketFor(long nanos) {
+    if (nanos < SUB_BUCKET_COUNT) {
+      return (int) Math.max(0, nanos);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    if (exponent >= MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (nanos >>> shift) & (SUB_BUCKET_COUNT - 1);
+    return ((shift + 1) << SUB_BUCKET_BITS) | subBucket;
+  }
+
+  private static long lowestValueOf(int bucket) {
+    if (bucket < SUB_BUCKET_COUNT) {
+      return bucket;
+    }
+    int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+    long subBucket = bucket & (SUB_BUCKET_COUNT - 1);
+    return (SUB_BUCKET_COUNT + subBucket) << shift;
+  }
+}
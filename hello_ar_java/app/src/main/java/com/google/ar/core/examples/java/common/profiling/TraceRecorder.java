@@ -0,0 +1,280 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.profiling;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records begin and end events from any thread, and streams them as a Chrome trace, which can be
+ * opened in Perfetto or {@code chrome://tracing}.
+ *
+ * <p>Events are registered once with {@link #registerEvent}, which returns the id passed to {@link
+ * #begin} and {@link #end}. Each thread records into its own preallocated ring buffer, without
+ * locks or allocation; between {@link #start} and {@link #stop}, a background thread drains the
+ * buffers a few times per second and writes the events in the JSON array trace format. The array
+ * is only closed by {@link #stop}, which the viewers do not require, so the trace of a process that
+ * died while recording can still be opened.
+ *
+ * <p>While not recording, {@link #begin} and {@link #end} only read a volatile flag. Events that do
+ * not fit in a thread's buffer are dropped, and reported in the trace as instant events.
+ */
+public final class TraceRecorder {
+  // Events per thread buffer, a power of two.
+  private static final int BUFFER_EVENTS = 8192;
+  private static final long EXPORT_INTERVAL_MILLIS = 100;
+  private static final int PHASE_BEGIN = 0;
+  private static final int PHASE_END = 1;
+
+  private static volatile boolean enabled;
+
+  private static final List<String> eventNames = new ArrayList<>();
+  private static final List<ThreadBuffer> buffers = new CopyOnWriteArrayList<>();
+  private static final AtomicInteger nextTid = new AtomicInteger(1);
+  private static final ThreadLocal<ThreadBuffer> threadBuffer =
+      new ThreadLocal<ThreadBuffer>() {
+        @Override
+        protected ThreadBuffer initialValue() {
+          ThreadBuffer buffer =
+              new ThreadBuffer(Thread.currentThread(), nextTid.getAndIncrement());
+          buffers.add(buffer);
+          return buffer;
+        }
+      };
+
+  // State of the current trace, guarded by the class lock.
+  private static Writer out;
+  private static Thread exportThread;
+  private static long traceStartNanos;
+  private static int traceCount;
+  private static boolean firstEvent;
+  private static IOException exportError;
+  private static final StringBuilder line = new StringBuilder();
+
+  private TraceRecorder() {}
+
+  /** Registers a named event and returns its id. May be called at any time, from any thread. */
+  public static synchronized int registerEvent(String name) {
+    eventNames.add(name);
+    return eventNames.size() - 1;
+  }
+
+  /** Returns whether a trace was started and not stopped yet. */
+  public static synchronized boolean isRecording() {
+    return out != null;
+  }
+
+  /** Marks the start of a span of the event on the calling thread. */
+  public static void begin(int event) {
+    if (enabled) {
+      threadBuffer.get().record(event, PHASE_BEGIN);
+    }
+  }
+
+  /** Marks the end of the span of the event begun last on the calling thread. */
+  public static void end(int event) {
+    if (enabled) {
+      threadBuffer.get().record(event, PHASE_END);
+    }
+  }
+
+  /**
+   * Starts recording, and streaming the trace to a writer. Does nothing if already recording.
+   *
+   * @param writer Destination of the trace, closed by {@link #stop}.
+   */
+  public static synchronized void start(Writer writer) throws IOException {
+    if (out != null) {
+      return;
+    }
+    // Skip what was recorded after the previous trace was stopped.
+    for (ThreadBuffer buffer : buffers) {
+      buffer.readPosition.set(buffer.writePosition.get());
+      buffer.droppedCount.set(0);
+    }
+    writer.write("[\n");
+    out = writer;
+    traceStartNanos = System.nanoTime();
+    traceCount++;
+    firstEvent = true;
+    exportError = null;
+    exportThread = new Thread(TraceRecorder::exportLoop, TraceRecorder.class.getSimpleName());
+    exportThread.setDaemon(true);
+    exportThread.start();
+    enabled = true;
+  }
+
+  /** Stops recording, writes the remaining events and closes the writer. */
+  public static void stop() throws IOException {
+    Thread thread;
+    synchronized (TraceRecorder.class) {
+      if (out == null) {
+        return;
+      }
+      enabled = false;
+      thread = exportThread;
+      exportThread = null;
+      thread.interrupt();
+    }
+    // Joined outside the lock, which the export thread takes to drain.
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (TraceRecorder.class) {
+      Writer writer = out;
+      out = null;
+      try {
+        if (exportError == null) {
+          drain(writer);
+          writer.write("\n]\n");
+        }
+      } finally {
+        writer.close();
+      }
+      if (exportError != null) {
+        throw exportError;
+      }
+    }
+  }
+
+  private static void exportLoop() {
+    while (true) {
+      try {
+        Thread.sleep(EXPORT_INTERVAL_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      synchronized (TraceRecorder.class) {
+        if (out == null || exportError != null) {
+          return;
+        }
+        try {
+          drain(out);
+          out.flush();
+        } catch (IOException e) {
+          // Reported by stop().
+          exportError = e;
+          enabled = false;
+          return;
+        }
+      }
+    }
+  }
+
+  // Writes the events recorded since the last call. Must hold the class lock.
+  private static void drain(Writer writer) throws IOException {
+    for (ThreadBuffer buffer : buffers) {
+      if (buffer.traceCount != traceCount) {
+        buffer.traceCount = traceCount;
+        beginEvent("thread_name", "M", traceStartNanos, buffer.tid);
+        line.append(",\"args\":{\"name\":");
+        appendString(buffer.threadName);
+        line.append("}}");
+        writer.append(line);
+      }
+      long position = buffer.readPosition.get();
+      long end = buffer.writePosition.get();
+      for (; position < end; ++position) {
+        int offset = (int) (position & (BUFFER_EVENTS - 1)) * 2;
+        long timestamp = buffer.events[offset];
+        long type = buffer.events[offset + 1];
+        if (timestamp < traceStartNanos) {
+          continue;
+        }
+        String name = eventNames.get((int) (type >>> 1));
+        beginEvent(name, (type & 1) == PHASE_BEGIN ? "B" : "E", timestamp, buffer.tid);
+        line.append('}');
+        writer.append(line);
+      }
+      buffer.readPosition.lazySet(end);
+
+      long dropped = buffer.droppedCount.getAndSet(0);
+      if (dropped > 0) {
+        beginEvent("trace events dropped", "i", System.nanoTime(), buffer.tid);
+        line.append(",\"s\":\"t\",\"args\":{\"count\":").append(dropped).append("}}");
+        writer.append(line);
+      }
+    }
+  }
+
+  // Starts the JSON object of an event in the line buffer, without closing it.
+  private static void beginEvent(String name, String phase, long timestampNanos, int tid) {
+    line.setLength(0);
+    line.append(firstEvent ? "" : ",\n");
+    firstEvent = false;
+    line.append("{\"name\":");
+    appendString(name);
+    line.append(",\"ph\":\"").append(phase).append("\",\"ts\":");
+    // Microseconds since the start of the trace, with nanosecond precision.
+    long nanos = timestampNanos - traceStartNanos;
+    long fraction = nanos % 1000;
+    line.append(nanos / 1000).append('.');
+    line.append(fraction < 100 ? (fraction < 10 ? "00" : "0") : "").append(fraction);
+    line.append(",\"pid\":1,\"tid\":").append(tid);
+  }
+
+  private static void appendString(String value) {
+    line.append('"');
+    for (int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        line.append('\\').append(c);
+      } else if (c < 0x20) {
+        line.append(String.format("\\u%04x", (int) c));
+      } else {
+        line.append(c);
+      }
+    }
+    line.append('"');
+  }
+
+  /** Ring buffer of one thread's events, as pairs of timestamp and event id shifted by phase. */
+  private static final class ThreadBuffer {
+    final String threadName;
+    final int tid;
+    final long[] events = new long[2 * BUFFER_EVENTS];
+    // Single producer, single consumer. Positions only grow.
+    final AtomicLong writePosition = new AtomicLong();
+    final AtomicLong readPosition = new AtomicLong();
+    final AtomicLong droppedCount = new AtomicLong();
+    // Trace in which the thread was last named, guarded by the class lock.
+    int traceCount;
+
+    ThreadBuffer(Thread thread, int tid) {
+      this.threadName = thread.getName();
+      this.tid = tid;
+    }
+
+    void record(int event, int phase) {
+      long position = writePosition.get();
+      if (position - readPosition.get() >= BUFFER_EVENTS) {
+        droppedCount.incrementAndGet();
+        return;
+      }
+      int offset = (int) (position & (BUFFER_EVENTS - 1)) * 2;
+      events[offset] = System.nanoTime();
+      events[offset + 1] = ((long) event << 1) | phase;
+      // Ordered store, so that the event is complete when the export thread sees the position.
+      writePosition.lazySet(position + 1);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import com.google.ar.core.examples.java.common.spatial.Frustum;
+import java.util.Arrays;
+
+/**
+ * Frustum culling stage for anchored objects.
+ *
+ * <p>Each frame the caller {@link #clear()}s the culler, {@link #add}s the position of every object
+ * it may draw, and calls {@link #cull(float[], float)} once. Positions are kept as structure of
+ * arrays so that the culling loops run over plain float arrays, one frustum plane at a time. The
+ * result is a visibility bitset that the draw loop walks with {@link #nextVisible(int)}.
+ *
+ * <p>Not thread safe.
+ */
+public class AnchorCuller {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private float[] positionX = new float[INITIAL_CAPACITY];
+  private float[] positionY = new float[INITIAL_CAPACITY];
+  private float[] positionZ = new float[INITIAL_CAPACITY];
+  // Smallest signed distance to any frustum plane, per object.
+  private float[] minPlaneDistance = new float[INITIAL_CAPACITY];
+  private long[] visibleBits = new long[INITIAL_CAPACITY / 64];
+  private int count;
+  private int visibleCount;
+
+  private final Frustum frustum = new Frustum();
+
+  public AnchorCuller() {}
+
+  /** Removes all objects. */
+  public void clear() {
+    count = 0;
+    visibleCount = 0;
+  }
+
+  /**
+   * Adds an object at the given world position.
+   *
+   * @return The slot of the object, used with {@link #isVisible(int)} after culling.
+   */
+  public int add(float x, float y, float z) {
+    if (count == positionX.length) {
+      int capacity = count * 2;
+      positionX = Arrays.copyOf(positionX, capacity);
+      positionY = Arrays.copyOf(positionY, capacity);
+      positionZ = Arrays.copyOf(positionZ, capacity);
+      minPlaneDistance = new float[capacity];
+      visibleBits = new long[(capacity + 63) / 64];
+    }
+    positionX[count] = x;
+    positionY[count] = y;
+    positionZ[count] = z;
+    return count++;
+  }
+
+  /** Returns the number of objects added since the last {@link #clear()}. */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Tests every object against the view frustum.
+   *
+   * @param viewProjection A 4x4 view-projection matrix, in column-major order.
+   * @param radius Bounding sphere radius of the drawn model, in meters. Objects whose sphere
+   *     touches the frustum are visible; objects behind the camera never are.
+   * @return The number of visible objects.
+   */
+  public int cull(float[] viewProjection, float radius) {
+    frustum.set(viewProjection);
+    float[] planes = frustum.getPlanes();
+    final int n = count;
+    final float[] xs = positionX;
+    final float[] ys = positionY;
+    final float[] zs = positionZ;
+    final float[] distances = minPlaneDistance;
+
+    Arrays.fill(distances, 0, n, Float.POSITIVE_INFINITY);
+    for (int o = 0; o < Frustum.PLANE_COUNT * 4; o += 4) {
+      final float a = planes[o];
+      final float b = planes[o + 1];
+      final float c = planes[o + 2];
+      final float d = planes[o + 3];
+      for (int i = 0; i < n; ++i) {
+        distances[i] = Math.min(distances[i], a * xs[i] + b * ys[i] + c * zs[i] + d);
+      }
+    }
+
+    int words = (n + 63) >>> 6;
+    Arrays.fill(visibleBits, 0, words, 0L);
+    int visible = 0;
+    final float threshold = -radius;
+    for (int i = 0; i < n; ++i) {
+      if (distances[i] >= threshold) {
+        visibleBits[i >>> 6] |= 1L << i;
+        visible++;
+      }
+    }
+    visibleCount = visible;
+    return visible;
+  }
+
+  /** Returns the number of visible objects found by the last {@link #cull}. */
+  public int getVisibleCount() {
+    return visibleCount;
+  }
+
+  /** Returns whether the object in the given slot passed the last {@link #cull}. */
+  public boolean isVisible(int slot) {
+    return (visibleBits[slot >>> 6] & (1L << slot)) != 0;
+  }
+
+  /**
+   * Returns the first visible slot at or after {@code fromSlot}, or -1 if there is none. Iterate
+   * visible objects with {@code for (int i = nextVisible(0); i >= 0; i = nextVisible(i + 1))}.
+   */
+  public int nextVisible(int fromSlot) {
+    if (fromSlot >= count) {
+      return -1;
+    }
+    int word = fromSlot >>> 6;
+    long bits = visibleBits[word] & (-1L << fromSlot);
+    int words = (count + 63) >>> 6;
+    while (true) {
+      if (bits != 0) {
+        int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+        return slot < count ? slot : -1;
+      }
+      if (++word == words) {
+        return -1;
+      }
+      bits = visibleBits[word];
+    }
+  }
+}
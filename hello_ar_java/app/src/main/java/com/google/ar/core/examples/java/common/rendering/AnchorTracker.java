@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.PoseMath;
+import com.google.ar.core.examples.java.common.spatial.AnchorIndex;
+import java.util.Arrays;
+
+/**
+ * Per-frame bookkeeping of the anchored objects: keeps an {@link AnchorIndex} in sync with the
+ * tracking anchors, culls them with an {@link AnchorCuller}, packs the model matrices and colors of
+ * those in view for {@link ObjectRenderer#drawInstances}, and finds the nearest one in view.
+ *
+ * <p>Each frame the caller {@link #beginFrame()}s, {@link #track}s every tracking anchor, {@link
+ * #remove}s those that stopped tracking, and calls {@link #cull(float[], float)} once. The caller
+ * keeps the handle of each anchor, {@link #NO_HANDLE} while it is not tracking. Anchors have an
+ * integer id, the marker number shown to the user. Poses are in the layout of {@link PoseMath}.
+ *
+ * <p>Nothing is allocated once the arrays have grown to the number of anchors. Not thread safe.
+ */
+public final class AnchorTracker {
+  /** Handle of an anchor that is not tracked. */
+  public static final int NO_HANDLE = -1;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final AnchorIndex index;
+  private final AnchorCuller culler = new AnchorCuller();
+
+  // By handle in the index: the id and color of the anchor.
+  private int[] ids = new int[INITIAL_CAPACITY];
+  private float[] colors = new float[4 * INITIAL_CAPACITY];
+
+  // By slot in the culler: the handle of the anchor, and its model matrix.
+  private int[] slotHandles = new int[INITIAL_CAPACITY];
+  private float[] slotMatrices = new float[Mat4.FLOATS * INITIAL_CAPACITY];
+
+  // The anchors in view, packed for instanced drawing.
+  private int[] visibleIds = new int[INITIAL_CAPACITY];
+  private float[] visibleMatrices = new float[Mat4.FLOATS * INITIAL_CAPACITY];
+  private float[] visibleColors = new float[4 * INITIAL_CAPACITY];
+  private int visibleCount;
+
+  private final float[] viewProjection = new float[Mat4.FLOATS];
+  private float boundingRadius;
+  private final int[] nearestHandle = new int[1];
+  private final float[] nearestDistance = new float[1];
+
+  /**
+   * Creates a tracker without anchors.
+   *
+   * @param cellSize Grid cell size of the anchor index, in meters. See {@link AnchorIndex}.
+   */
+  public AnchorTracker(float cellSize) {
+    index = new AnchorIndex(cellSize);
+  }
+
+  /** Returns the number of tracked anchors. */
+  public int size() {
+    return index.size();
+  }
+
+  /** Forgets the anchors tracked and culled in the previous frame, but not their handles. */
+  public void beginFrame() {
+    culler.clear();
+    visibleCount = 0;
+  }
+
+  /**
+   * Adds a tracking anchor, or moves it to its latest pose, and queues it for culling.
+   *
+   * @param handle The handle returned for the anchor by the last call, or {@link #NO_HANDLE}.
+   * @param id Marker number of the anchor. Only read when it is added.
+   * @param color Color of the anchor, 4 floats. Only read when it is added.
+   * @return The handle of the anchor.
+   */
+  public int track(int handle, int id, float[] color, float[] poses, int poseOffset) {
+    float x = poses[poseOffset];
+    float y = poses[poseOffset + 1];
+    float z = poses[poseOffset + 2];
+    if (handle == NO_HANDLE) {
+      handle = index.add(x, y, z);
+      if (handle == ids.length) {
+        ids = Arrays.copyOf(ids, 2 * handle);
+        colors = Arrays.copyOf(colors, 2 * 4 * handle);
+      }
+      ids[handle] = id;
+      System.arraycopy(color, 0, colors, 4 * handle, 4);
+    } else {
+      index.move(handle, x, y, z);
+    }
+    int slot = culler.add(x, y, z);
+    if (slot == slotHandles.length) {
+      slotHandles = Arrays.copyOf(slotHandles, 2 * slot);
+      slotMatrices = Arrays.copyOf(slotMatrices, 2 * Mat4.FLOATS * slot);
+    }
+    slotHandles[slot] = handle;
+    PoseMath.toMatrix(poses, poseOffset, slotMatrices, Mat4.FLOATS * slot);
+    return handle;
+  }
+
+  /**
+   * Removes an anchor that stopped tracking or was detached, if it is tracked.
+   *
+   * @return {@link #NO_HANDLE}, the new handle of the anchor.
+   */
+  public int remove(int handle) {
+    if (handle != NO_HANDLE) {
+      index.remove(handle);
+    }
+    return NO_HANDLE;
+  }
+
+  /**
+   * Culls the anchors tracked this frame, and packs the model matrices, colors and ids of those in
+   * view.
+   *
+   * @param viewProjection A 4x4 view-projection matrix, in column-major order.
+   * @param boundingRadius Bounding sphere radius of the anchored model, in meters.
+   * @return The number of anchors in view.
+   */
+  public int cull(float[] viewProjection, float boundingRadius) {
+    System.arraycopy(viewProjection, 0, this.viewProjection, 0, Mat4.FLOATS);
+    this.boundingRadius = boundingRadius;
+    int count = culler.cull(viewProjection, boundingRadius);
+    if (visibleIds.length < count) {
+      visibleIds = new int[2 * count];
+      visibleMatrices = new float[2 * Mat4.FLOATS * count];
+      visibleColors = new float[2 * 4 * count];
+    }
+    int i = 0;
+    for (int slot = culler.nextVisible(0); slot >= 0; slot = culler.nextVisible(slot + 1)) {
+      int handle = slotHandles[slot];
+      visibleIds[i] = ids[handle];
+      System.arraycopy(
+          slotMatrices, Mat4.FLOATS * slot, visibleMatrices, Mat4.FLOATS * i, Mat4.FLOATS);
+      System.arraycopy(colors, 4 * handle, visibleColors, 4 * i, 4);
+      i++;
+    }
+    visibleCount = count;
+    return count;
+  }
+
+  /** Returns the number of anchors in view found by the last {@link #cull}. */
+  public int getVisibleCount() {
+    return visibleCount;
+  }
+
+  /** Returns the id of the {@code i}th anchor in view. */
+  public int getVisibleId(int i) {
+    return visibleIds[i];
+  }
+
+  /** Returns the model matrices of the anchors in view, 16 floats each. */
+  public float[] getVisibleMatrices() {
+    return visibleMatrices;
+  }
+
+  /** Returns the colors of the anchors in view, 4 floats each. */
+  public float[] getVisibleColors() {
+    return visibleColors;
+  }
+
+  /**
+   * Finds the anchor in view nearest to a point, with the frustum and radius of the last {@link
+   * #cull}.
+   *
+   * @return The id of the anchor, or -1 if no anchor is in view.
+   */
+  public int findNearestVisible(float x, float y, float z) {
+    if (visibleCount == 0
+        || index.nearest(
+                x, y, z, 1, viewProjection, boundingRadius, nearestHandle, nearestDistance)
+            == 0) {
+      return -1;
+    }
+    return ids[nearestHandle[0]];
+  }
+
+  /** Returns the distance to the anchor last found by {@link #findNearestVisible}, in meters. */
+  public float getNearestDistance() {
+    return nearestDistance[0];
+  }
+}
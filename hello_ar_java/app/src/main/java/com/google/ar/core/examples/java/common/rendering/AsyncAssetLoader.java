@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.os.Process;
+import com.google.ar.core.examples.java.common.logging.RenderLog;
+import com.google.ar.core.examples.java.common.profiling.TraceRecorder;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads assets in two steps: reading and decoding on background threads, then uploading on the
+ * OpenGL thread a little at a time, so that rendering can start before every asset is loaded.
+ *
+ * <p>Uploads are queued as they become ready and run by {@link #runUploads()}, which the renderer
+ * calls once per frame. Each call stops starting new uploads once the frame's upload budget is
+ * spent; an upload that is already running is not interrupted, so a single large one can exceed
+ * the budget.
+ *
+ * <p>Methods other than {@link #load} must be called on the OpenGL thread.
+ */
+public class AsyncAssetLoader {
+  private static final String TAG = AsyncAssetLoader.class.getSimpleName();
+
+  /** Default time spent on uploads per frame, in nanoseconds. */
+  public static final long DEFAULT_UPLOAD_BUDGET_NANOS = 4_000_000L;
+
+  private static final int DEFAULT_THREAD_COUNT = 2;
+
+  private static final int TRACE_READ = TraceRecorder.registerEvent("asset read");
+  private static final int TRACE_UPLOAD = TraceRecorder.registerEvent("asset upload");
+
+  /** Work done on the OpenGL thread with the result of a background read. */
+  public interface Upload<T> {
+    void run(T data) throws IOException;
+  }
+
+  private final ExecutorService executor;
+  private final long uploadBudgetNanos;
+  private final Queue<Runnable> uploads = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  // Incremented by cancelPending(); uploads queued under an older generation are dropped.
+  private volatile int generation;
+
+  public AsyncAssetLoader() {
+    this(DEFAULT_THREAD_COUNT, DEFAULT_UPLOAD_BUDGET_NANOS);
+  }
+
+  /**
+   * @param threadCount Number of background threads reading assets.
+   * @param uploadBudgetNanos Time after which {@link #runUploads()} stops starting uploads, in
+   *     nanoseconds.
+   */
+  public AsyncAssetLoader(int threadCount, long uploadBudgetNanos) {
+    this.uploadBudgetNanos = uploadBudgetNanos;
+    executor =
+        Executors.newFixedThreadPool(
+            threadCount,
+            runnable ->
+                new Thread(
+                    () -> {
+                      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                      runnable.run();
+                    },
+                    TAG));
+  }
+
+  /**
+   * Reads an asset on a background thread and then queues its upload to the OpenGL thread. Failures
+   * are logged and the upload is skipped.
+   *
+   * @param name Name of the asset, for logging.
+   * @param read Reads and decodes the asset. Must not call OpenGL.
+   * @param upload Uploads the result of {@code read}. Runs in {@link #runUploads()}.
+   */
+  public <T> void load(String name, Callable<T> read, Upload<T> upload) {
+    int loadGeneration = generation;
+    pendingCount.incrementAndGet();
+    executor.execute(
+        () -> {
+          T data;
+          TraceRecorder.begin(TRACE_READ);
+          try {
+            data = read.call();
+          } catch (Exception e) {
+            RenderLog.e(TAG, "Failed to read " + name, e);
+            pendingCount.decrementAndGet();
+            return;
+          } finally {
+            TraceRecorder.end(TRACE_READ);
+          }
+          uploads.add(
+              () -> {
+                TraceRecorder.begin(TRACE_UPLOAD);
+                try {
+                  if (loadGeneration == generation) {
+                    upload.run(data);
+                  }
+                } catch (IOException e) {
+                  RenderLog.e(TAG, "Failed to load " + name, e);
+                } finally {
+                  pendingCount.decrementAndGet();
+                  TraceRecorder.end(TRACE_UPLOAD);
+                }
+              });
+        });
+  }
+
+  /**
+   * Runs queued uploads until the upload budget is spent. Call once per frame on the OpenGL
+   * thread.
+   *
+   * @return Whether loads are still pending.
+   */
+  public boolean runUploads() {
+    long startNanos = System.nanoTime();
+    Runnable upload;
+    while (System.nanoTime() - startNanos < uploadBudgetNanos
+        && (upload = uploads.poll()) != null) {
+      upload.run();
+    }
+    return pendingCount.get() > 0;
+  }
+
+  /** Returns the number of loads that have not finished uploading. */
+  public int getPendingCount() {
+    return pendingCount.get();
+  }
+
+  /**
+   * Drops every upload of loads started before this call. Call when the OpenGL context has been
+   * lost, as those uploads would refer to objects of the old context.
+   */
+  public void cancelPending() {
+    generation++;
+  }
+
+  /** Stops the background threads. Loads that have not been read yet are abandoned. */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -20,6 +20,7 @@ import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import com.google.ar.core.Frame;
 import com.google.ar.core.Session;
+import com.google.ar.core.examples.java.common.gl.Gl;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -50,7 +51,20 @@ public class BackgroundRenderer {
   private int quadTexCoordParam;
   private int textureId = -1;
 
-  public BackgroundRenderer() {}
+  // Source of the program. Shared with other renderers when one is supplied.
+  private final GpuAssetCache assetCache;
+  // Where OpenGL calls are made, from the asset cache.
+  private final Gl gl;
+
+  public BackgroundRenderer() {
+    this(new GpuAssetCache());
+  }
+
+  /** Creates a renderer that takes its program from the given cache. */
+  public BackgroundRenderer(GpuAssetCache assetCache) {
+    this.assetCache = assetCache;
+    this.gl = assetCache.getGl();
+  }
 
   public int getTextureId() {
     return textureId;
@@ -66,14 +80,14 @@ public class BackgroundRenderer {
   public void createOnGlThread(Context context) throws IOException {
     // Generate the background texture.
     int[] textures = new int[1];
-    GLES20.glGenTextures(1, textures, 0);
+    gl.glGenTextures(1, textures, 0);
     textureId = textures[0];
     int textureTarget = GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
-    GLES20.glBindTexture(textureTarget, textureId);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+    gl.glBindTexture(textureTarget, textureId);
+    gl.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+    gl.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
 
     int numVertices = 4;
     if (numVertices != QUAD_COORDS.length / COORDS_PER_VERTEX) {
@@ -98,23 +112,36 @@ public class BackgroundRenderer {
     bbTexCoordsTransformed.order(ByteOrder.nativeOrder());
     quadTexCoordTransformed = bbTexCoordsTransformed.asFloatBuffer();
 
-    int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
-    int fragmentShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
+    quadProgram = assetCache.acquireProgram(context, VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME);
+    gl.glUseProgram(quadProgram);
+
+    ShaderUtil.checkGLError(gl, TAG, "Program creation");
 
-    quadProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(quadProgram, vertexShader);
-    GLES20.glAttachShader(quadProgram, fragmentShader);
-    GLES20.glLinkProgram(quadProgram);
-    GLES20.glUseProgram(quadProgram);
+    quadPositionParam = gl.glGetAttribLocation(quadProgram, "a_Position");
+    quadTexCoordParam = gl.glGetAttribLocation(quadProgram, "a_TexCoord");
 
-    ShaderUtil.checkGLError(TAG, "Program creation");
+    ShaderUtil.checkGLError(gl, TAG, "Program parameters");
+  }
 
-    quadPositionParam = GLES20.glGetAttribLocation(quadProgram, "a_Position");
-    quadTexCoordParam = GLES20.glGetAttribLocation(quadProgram, "a_TexCoord");
+  /**
+   * Returns whether the renderer has been created. The camera image is drawn from the first frame,
+   * so {@link #createOnGlThread} is always synchronous.
+   */
+  public boolean isReady() {
+    return textureId != -1;
+  }
 
-    ShaderUtil.checkGLError(TAG, "Program parameters");
+  /**
+   * Deletes the camera texture and returns the shared program to the {@link GpuAssetCache}. Must be
+   * called on the OpenGL thread.
+   */
+  public void release() {
+    if (textureId == -1) {
+      return;
+    }
+    assetCache.releaseProgram(quadProgram);
+    gl.glDeleteTextures(1, new int[] {textureId}, 0);
+    textureId = -1;
   }
 
   /**
@@ -135,19 +162,19 @@ public class BackgroundRenderer {
 
     // No need to test or write depth, the screen quad has arbitrary depth, and is expected
     // to be drawn first.
-    GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-    GLES20.glDepthMask(false);
+    gl.glDisable(GLES20.GL_DEPTH_TEST);
+    gl.glDepthMask(false);
 
-    GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+    gl.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
 
-    GLES20.glUseProgram(quadProgram);
+    gl.glUseProgram(quadProgram);
 
     // Set the vertex positions.
-    GLES20.glVertexAttribPointer(
+    gl.glVertexAttribPointer(
         quadPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadVertices);
 
     // Set the texture coordinates.
-    GLES20.glVertexAttribPointer(
+    gl.glVertexAttribPointer(
         quadTexCoordParam,
         TEXCOORDS_PER_VERTEX,
         GLES20.GL_FLOAT,
@@ -156,20 +183,20 @@ public class BackgroundRenderer {
         quadTexCoordTransformed);
 
     // Enable vertex arrays
-    GLES20.glEnableVertexAttribArray(quadPositionParam);
-    GLES20.glEnableVertexAttribArray(quadTexCoordParam);
+    gl.glEnableVertexAttribArray(quadPositionParam);
+    gl.glEnableVertexAttribArray(quadTexCoordParam);
 
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    gl.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
 
     // Disable vertex arrays
-    GLES20.glDisableVertexAttribArray(quadPositionParam);
-    GLES20.glDisableVertexAttribArray(quadTexCoordParam);
+    gl.glDisableVertexAttribArray(quadPositionParam);
+    gl.glDisableVertexAttribArray(quadTexCoordParam);
 
     // Restore the depth state for further drawing.
-    GLES20.glDepthMask(true);
-    GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+    gl.glDepthMask(true);
+    gl.glEnable(GLES20.GL_DEPTH_TEST);
 
-    ShaderUtil.checkGLError(TAG, "Draw");
+    ShaderUtil.checkGLError(gl, TAG, "Draw");
   }
 
   private static final float[] QUAD_COORDS =
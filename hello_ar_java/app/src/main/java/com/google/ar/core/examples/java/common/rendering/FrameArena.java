@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.util.Arrays;
+
+/**
+ * Frame-scoped pool of scratch matrices and vectors.
+ *
+ * <p>Arrays handed out by the arena stay valid until the next {@link #reset()}, which is expected
+ * once at the start of every frame. The pools grow on demand during the first frames and are reused
+ * afterwards, so a steady-state frame does not allocate. Nested helpers may return their scratch
+ * space early with {@link #mark()} and {@link #release(int)}.
+ *
+ * <p>Not thread safe. An arena must only be used from the thread that renders the frame, typically
+ * the OpenGL thread.
+ */
+public class FrameArena {
+  private static final int INITIAL_POOL_SIZE = 32;
+
+  private float[][] mat4Pool = new float[INITIAL_POOL_SIZE][];
+  private float[][] vec4Pool = new float[INITIAL_POOL_SIZE][];
+  private int mat4Used;
+  private int vec4Used;
+
+  // Number of arrays created since construction. Constant across frames once warmed up.
+  private int allocationCount;
+
+  public FrameArena() {}
+
+  /** Makes every array handed out so far available again. Call once at the start of a frame. */
+  public void reset() {
+    mat4Used = 0;
+    vec4Used = 0;
+  }
+
+  /**
+   * Returns a 4x4 scratch matrix. The contents are undefined; callers must overwrite all 16
+   * elements before reading them.
+   */
+  public float[] mat4() {
+    if (mat4Used == mat4Pool.length) {
+      mat4Pool = Arrays.copyOf(mat4Pool, mat4Pool.length * 2);
+      allocationCount++;
+    }
+    float[] m = mat4Pool[mat4Used];
+    if (m == null) {
+      m = new float[16];
+      mat4Pool[mat4Used] = m;
+      allocationCount++;
+    }
+    mat4Used++;
+    return m;
+  }
+
+  /**
+   * Returns a 4-element scratch vector, also suitable for 2 or 3 component values. The contents
+   * are undefined.
+   */
+  public float[] vec4() {
+    if (vec4Used == vec4Pool.length) {
+      vec4Pool = Arrays.copyOf(vec4Pool, vec4Pool.length * 2);
+      allocationCount++;
+    }
+    float[] v = vec4Pool[vec4Used];
+    if (v == null) {
+      v = new float[4];
+      vec4Pool[vec4Used] = v;
+      allocationCount++;
+    }
+    vec4Used++;
+    return v;
+  }
+
+  /**
+   * Records the current pool position so that scratch arrays taken afterwards can be returned with
+   * {@link #release(int)}.
+   */
+  public int mark() {
+    return (mat4Used << 16) | vec4Used;
+  }
+
+  /** Returns every scratch array taken since the given {@link #mark()} to the pool. */
+  public void release(int mark) {
+    mat4Used = mark >>> 16;
+    vec4Used = mark & 0xffff;
+  }
+
+  /**
+   * Returns the number of arrays the arena has allocated since it was created. Once the frame loop
+   * has warmed up this value must stop changing; a growing count means some code path takes more
+   * scratch space every frame without releasing it.
+   */
+  public int getAllocationCount() {
+    return allocationCount;
+  }
+}
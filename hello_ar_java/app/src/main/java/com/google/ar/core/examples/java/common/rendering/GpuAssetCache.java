@@ -0,0 +1,422 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import com.google.ar.core.examples.java.common.gl.AndroidGl;
+import com.google.ar.core.examples.java.common.gl.Gl;
+import com.google.ar.core.examples.java.common.logging.RenderLog;
+import com.google.ar.core.examples.java.common.mesh.Mesh;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Shares OpenGL programs, textures and meshes loaded from assets between renderers.
+ *
+ * <p>Every {@code acquire} call returns the resource for an asset, loading it on first use, and
+ * must be balanced by the matching {@code release} call. Resources that are no longer referenced
+ * stay resident so that they can be acquired again cheaply; the least recently released textures
+ * and meshes are deleted once their total size exceeds the idle budget. Unreferenced programs are
+ * small and are kept until {@link #evictIdle()}. Linked programs are also stored on disk by a
+ * {@link ProgramBinaryCache}, so that they load quickly after the app restarts.
+ *
+ * <p>The cache also holds the {@link Gl} that the renderers sharing it make their OpenGL calls
+ * through, and creates its resources through the same {@link Gl}.
+ *
+ * <p>Not thread safe. All methods must be called on the OpenGL thread.
+ */
+public class GpuAssetCache {
+  private static final String TAG = GpuAssetCache.class.getSimpleName();
+
+  /** Default size limit of unreferenced textures and meshes, in bytes. */
+  public static final long DEFAULT_IDLE_BUDGET_BYTES = 32L * 1024 * 1024;
+
+  private static final String PROGRAM_BINARY_DIRECTORY = "program_binaries";
+
+  private enum Kind {
+    PROGRAM,
+    TEXTURE,
+    MESH
+  }
+
+  private static final class Entry {
+    final Kind kind;
+    final String key;
+    final int name;
+    final GpuMesh mesh;
+    final long sizeBytes;
+    int refCount;
+
+    Entry(Kind kind, String key, int name, GpuMesh mesh, long sizeBytes) {
+      this.kind = kind;
+      this.key = key;
+      this.name = name;
+      this.mesh = mesh;
+      this.sizeBytes = sizeBytes;
+    }
+  }
+
+  private final Gl gl;
+  private final long idleBudgetBytes;
+
+  private final Map<String, Entry> entriesByKey = new HashMap<>();
+  private final Map<Integer, Entry> programsByName = new HashMap<>();
+  private final Map<Integer, Entry> texturesByName = new HashMap<>();
+  private final Map<GpuMesh, Entry> meshes = new IdentityHashMap<>();
+  // Unreferenced entries, least recently released first.
+  private final LinkedHashMap<String, Entry> idleEntries = new LinkedHashMap<>();
+
+  // Created with the first program, as it needs a Context to find the cache directory.
+  private ProgramBinaryCache programBinaries;
+
+  private long residentBytes;
+  private long idleBytes;
+  private int hitCount;
+  private int missCount;
+
+  public GpuAssetCache() {
+    this(new AndroidGl());
+  }
+
+  /** Creates a cache whose renderers make their OpenGL calls through {@code gl}. */
+  public GpuAssetCache(Gl gl) {
+    this(gl, DEFAULT_IDLE_BUDGET_BYTES);
+  }
+
+  /**
+   * @param idleBudgetBytes Size above which unreferenced textures and meshes are deleted, in
+   *     bytes.
+   */
+  public GpuAssetCache(long idleBudgetBytes) {
+    this(new AndroidGl(), idleBudgetBytes);
+  }
+
+  /**
+   * @param gl Where the renderers sharing this cache, and the cache itself, make their OpenGL
+   *     calls.
+   * @param idleBudgetBytes Size above which unreferenced textures and meshes are deleted, in
+   *     bytes.
+   */
+  public GpuAssetCache(Gl gl, long idleBudgetBytes) {
+    this.gl = gl;
+    this.idleBudgetBytes = idleBudgetBytes;
+  }
+
+  /** Returns the {@link Gl} that the renderers sharing this cache call OpenGL through. */
+  public Gl getGl() {
+    return gl;
+  }
+
+  /** Returns a linked program built from the given vertex and fragment shader assets. */
+  public int acquireProgram(Context context, String vertexShaderName, String fragmentShaderName)
+      throws IOException {
+    return acquireProgram(
+        context,
+        vertexShaderName,
+        fragmentShaderName,
+        Collections.<String, Integer>emptyMap());
+  }
+
+  /**
+   * Returns a linked program built from the given shader assets, with {@code #define}s added to
+   * the vertex shader. Programs with different defines are cached separately.
+   */
+  public int acquireProgram(
+      Context context,
+      String vertexShaderName,
+      String fragmentShaderName,
+      Map<String, Integer> vertexShaderDefines)
+      throws IOException {
+    // Sorted so that the key does not depend on the map's iteration order.
+    String key =
+        "program:"
+            + vertexShaderName
+            + new TreeMap<>(vertexShaderDefines)
+            + ":"
+            + fragmentShaderName;
+    Entry entry = acquire(key);
+    if (entry == null) {
+      int program =
+          createProgram(context, vertexShaderName, fragmentShaderName, vertexShaderDefines);
+      entry = add(new Entry(Kind.PROGRAM, key, program, null, 0));
+      programsByName.put(program, entry);
+    }
+    return entry.name;
+  }
+
+  public void releaseProgram(int program) {
+    release(programsByName.get(program));
+  }
+
+  /** Returns a mipmapped 2D texture loaded with {@link TextureLoader#load}. */
+  public int acquireTexture(Context context, String textureAssetName) throws IOException {
+    Entry entry = acquire(textureKey(textureAssetName));
+    if (entry == null) {
+      int texture = generateTexture();
+      long sizeBytes = TextureLoader.load(gl, context, textureAssetName, texture);
+      entry = addTexture(textureAssetName, texture, sizeBytes);
+    }
+    return entry.name;
+  }
+
+  /**
+   * Returns the texture of an image asset, uploading the given image if it is not resident. Used
+   * when the image has already been read off the OpenGL thread.
+   */
+  public int acquireTexture(String textureAssetName, TextureLoader.Image image) {
+    Entry entry = acquire(textureKey(textureAssetName));
+    if (entry == null) {
+      int texture = generateTexture();
+      entry = addTexture(textureAssetName, texture, TextureLoader.upload(gl, image, texture));
+    }
+    return entry.name;
+  }
+
+  public void releaseTexture(int texture) {
+    release(texturesByName.get(texture));
+  }
+
+  /** Returns the buffers of a model, loaded with {@link MeshLoader#load(Context, String)}. */
+  public GpuMesh acquireMesh(Context context, String objAssetName) throws IOException {
+    Entry entry = acquire(meshKey(objAssetName));
+    if (entry == null) {
+      entry = addMesh(objAssetName, MeshLoader.load(context, objAssetName));
+    }
+    return entry.mesh;
+  }
+
+  /**
+   * Returns the buffers of a model, uploading the given mesh if it is not resident. Used when the
+   * mesh has already been loaded off the OpenGL thread.
+   */
+  public GpuMesh acquireMesh(String objAssetName, Mesh mesh) {
+    Entry entry = acquire(meshKey(objAssetName));
+    if (entry == null) {
+      entry = addMesh(objAssetName, mesh);
+    }
+    return entry.mesh;
+  }
+
+  public void releaseMesh(GpuMesh mesh) {
+    release(meshes.get(mesh));
+  }
+
+  /** Deletes every resource that is not referenced. */
+  public void evictIdle() {
+    trimIdle(0, true);
+  }
+
+  /**
+   * Forgets every resource without deleting it. Call when the OpenGL context has been lost, as
+   * its objects are gone with it and renderers will acquire their resources again.
+   */
+  public void invalidate() {
+    entriesByKey.clear();
+    programsByName.clear();
+    texturesByName.clear();
+    meshes.clear();
+    idleEntries.clear();
+    residentBytes = 0;
+    idleBytes = 0;
+  }
+
+  /** Returns the total size of cached textures and meshes, in bytes. */
+  public long getResidentBytes() {
+    return residentBytes;
+  }
+
+  /** Returns the size of cached textures and meshes that are not referenced, in bytes. */
+  public long getIdleBytes() {
+    return idleBytes;
+  }
+
+  /**
+   * Returns the on-disk cache of linked program binaries, or null if no program has been created
+   * yet.
+   */
+  public ProgramBinaryCache getProgramBinaryCache() {
+    return programBinaries;
+  }
+
+  /** Returns how many acquire calls found their resource already loaded. */
+  public int getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns how many acquire calls had to load their resource. */
+  public int getMissCount() {
+    return missCount;
+  }
+
+  // Returns the entry with an added reference, or null if it has to be loaded.
+  private Entry acquire(String key) {
+    Entry entry = entriesByKey.get(key);
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    if (entry.refCount++ == 0) {
+      idleEntries.remove(key);
+      idleBytes -= entry.sizeBytes;
+    }
+    return entry;
+  }
+
+  private static String textureKey(String textureAssetName) {
+    return "texture:" + textureAssetName;
+  }
+
+  private static String meshKey(String objAssetName) {
+    return "mesh:" + objAssetName;
+  }
+
+  private int generateTexture() {
+    int[] textures = new int[1];
+    gl.glGenTextures(1, textures, 0);
+    return textures[0];
+  }
+
+  private Entry addTexture(String textureAssetName, int texture, long sizeBytes) {
+    Entry entry =
+        add(new Entry(Kind.TEXTURE, textureKey(textureAssetName), texture, null, sizeBytes));
+    texturesByName.put(texture, entry);
+    return entry;
+  }
+
+  private Entry addMesh(String objAssetName, Mesh mesh) {
+    int[] buffers = new int[2];
+    gl.glGenBuffers(2, buffers, 0);
+
+    ByteBuffer vertices = mesh.getVertices();
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+    gl.glBufferData(
+        GLES20.GL_ARRAY_BUFFER, vertices.remaining(), vertices, GLES20.GL_STATIC_DRAW);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+    // Meshes with more than 65536 vertices use 32-bit indices, which OpenGL ES 2.0 only
+    // supports with the OES_element_index_uint extension.
+    ByteBuffer indices = mesh.getIndices();
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+    gl.glBufferData(
+        GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.remaining(), indices, GLES20.GL_STATIC_DRAW);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+    ShaderUtil.checkGLError(gl, TAG, "Mesh buffer load");
+
+    GpuMesh gpuMesh =
+        new GpuMesh(
+            buffers[0],
+            buffers[1],
+            mesh.getVertexCount(),
+            mesh.getIndexCount(),
+            mesh.getBytesPerIndex() == 2 ? GLES20.GL_UNSIGNED_SHORT : GLES20.GL_UNSIGNED_INT,
+            mesh.getBoundingRadius());
+    Entry entry =
+        add(
+            new Entry(
+                Kind.MESH,
+                meshKey(objAssetName),
+                0,
+                gpuMesh,
+                (long) vertices.remaining() + indices.remaining()));
+    meshes.put(gpuMesh, entry);
+    return entry;
+  }
+
+  private Entry add(Entry entry) {
+    entry.refCount = 1;
+    entriesByKey.put(entry.key, entry);
+    residentBytes += entry.sizeBytes;
+    return entry;
+  }
+
+  private void release(Entry entry) {
+    if (entry == null) {
+      // Already gone, e.g. released after invalidate().
+      return;
+    }
+    if (entry.refCount <= 0) {
+      throw new IllegalStateException("Released " + entry.key + " more often than acquired");
+    }
+    if (--entry.refCount == 0) {
+      idleEntries.put(entry.key, entry);
+      idleBytes += entry.sizeBytes;
+      trimIdle(idleBudgetBytes, false);
+    }
+  }
+
+  private void trimIdle(long budgetBytes, boolean includePrograms) {
+    Iterator<Entry> it = idleEntries.values().iterator();
+    while (it.hasNext() && (includePrograms || idleBytes > budgetBytes)) {
+      Entry entry = it.next();
+      if (entry.kind == Kind.PROGRAM && !includePrograms) {
+        continue;
+      }
+      it.remove();
+      delete(entry);
+    }
+  }
+
+  private void delete(Entry entry) {
+    entriesByKey.remove(entry.key);
+    idleBytes -= entry.sizeBytes;
+    residentBytes -= entry.sizeBytes;
+    switch (entry.kind) {
+      case PROGRAM:
+        programsByName.remove(entry.name);
+        gl.glDeleteProgram(entry.name);
+        break;
+      case TEXTURE:
+        texturesByName.remove(entry.name);
+        gl.glDeleteTextures(1, new int[] {entry.name}, 0);
+        break;
+      case MESH:
+        meshes.remove(entry.mesh);
+        gl.glDeleteBuffers(
+            2,
+            new int[] {entry.mesh.getVertexBufferId(), entry.mesh.getIndexBufferId()},
+            0);
+        break;
+    }
+    RenderLog.d(TAG, "Evicted " + entry.key);
+  }
+
+  private int createProgram(
+      Context context,
+      String vertexShaderName,
+      String fragmentShaderName,
+      Map<String, Integer> vertexShaderDefines)
+      throws IOException {
+    if (programBinaries == null) {
+      programBinaries =
+          new ProgramBinaryCache(gl, new File(context.getCacheDir(), PROGRAM_BINARY_DIRECTORY));
+    }
+    return programBinaries.createProgram(
+        TAG,
+        ShaderUtil.readShaderSource(context, vertexShaderName, vertexShaderDefines),
+        ShaderUtil.readShaderSource(
+            context, fragmentShaderName, Collections.<String, Integer>emptyMap()));
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+/**
+ * Vertex and index buffers of a mesh uploaded to OpenGL. Vertices are interleaved as described in
+ * {@link com.google.ar.core.examples.java.common.mesh.Mesh}.
+ *
+ * @see GpuAssetCache#acquireMesh
+ */
+public final class GpuMesh {
+  private final int vertexBufferId;
+  private final int indexBufferId;
+  private final int vertexCount;
+  private final int indexCount;
+  private final int indexType;
+  private final float boundingRadius;
+
+  GpuMesh(
+      int vertexBufferId,
+      int indexBufferId,
+      int vertexCount,
+      int indexCount,
+      int indexType,
+      float boundingRadius) {
+    this.vertexBufferId = vertexBufferId;
+    this.indexBufferId = indexBufferId;
+    this.vertexCount = vertexCount;
+    this.indexCount = indexCount;
+    this.indexType = indexType;
+    this.boundingRadius = boundingRadius;
+  }
+
+  public int getVertexBufferId() {
+    return vertexBufferId;
+  }
+
+  public int getIndexBufferId() {
+    return indexBufferId;
+  }
+
+  public int getVertexCount() {
+    return vertexCount;
+  }
+
+  public int getIndexCount() {
+    return indexCount;
+  }
+
+  /** Returns {@code GL_UNSIGNED_SHORT} or {@code GL_UNSIGNED_INT}. */
+  public int getIndexType() {
+    return indexType;
+  }
+
+  /** Returns the radius of the sphere around the model origin that contains every vertex. */
+  public float getBoundingRadius() {
+    return boundingRadius;
+  }
+}
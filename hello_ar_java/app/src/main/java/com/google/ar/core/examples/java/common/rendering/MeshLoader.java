@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import com.google.ar.core.examples.java.common.logging.RenderLog;
+import com.google.ar.core.examples.java.common.mesh.Mesh;
+import com.google.ar.core.examples.java.common.mesh.MeshFile;
+import com.google.ar.core.examples.java.common.mesh.ObjParser;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loads model meshes from assets.
+ *
+ * <p>The build converts every OBJ asset to a binary mesh next to it (see {@link MeshFile}). Mesh
+ * assets are stored uncompressed in the APK, so they are memory-mapped and handed to OpenGL
+ * without being parsed. When no binary mesh is packaged the OBJ file is parsed with {@link
+ * ObjParser} instead.
+ */
+public final class MeshLoader {
+  private static final String TAG = MeshLoader.class.getSimpleName();
+
+  private static final ObjParser OBJ_PARSER = new ObjParser();
+
+  private MeshLoader() {}
+
+  /**
+   * Loads the mesh of an OBJ asset.
+   *
+   * @param context Context for loading the assets.
+   * @param objAssetName Name of the OBJ file. The binary mesh of the same name is used if present.
+   */
+  public static Mesh load(Context context, String objAssetName) throws IOException {
+    long startNanos = System.nanoTime();
+    AssetManager assets = context.getAssets();
+    String meshAssetName = MeshFile.meshNameFor(objAssetName);
+    Mesh mesh;
+    String source;
+    ByteBuffer meshData = openAsset(assets, meshAssetName);
+    if (meshData != null) {
+      mesh = MeshFile.read(meshData);
+      source = meshAssetName;
+    } else {
+      ByteBuffer objData = openAsset(assets, objAssetName);
+      if (objData == null) {
+        throw new FileNotFoundException(objAssetName);
+      }
+      mesh = OBJ_PARSER.parse(objData).toMesh();
+      source = objAssetName;
+    }
+    logLoadTime(source, mesh, startNanos);
+    return mesh;
+  }
+
+  /**
+   * Loads a mesh from a file, such as a downloaded model. Files named with the {@link
+   * MeshFile#EXTENSION binary mesh extension} are mapped as they are; all others are parsed as OBJ.
+   */
+  public static Mesh load(File file) throws IOException {
+    long startNanos = System.nanoTime();
+    ByteBuffer data;
+    try (FileInputStream in = new FileInputStream(file)) {
+      FileChannel channel = in.getChannel();
+      data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    Mesh mesh =
+        file.getName().endsWith(MeshFile.EXTENSION)
+            ? MeshFile.read(data)
+            : OBJ_PARSER.parse(data).toMesh();
+    logLoadTime(file.getPath(), mesh, startNanos);
+    return mesh;
+  }
+
+  private static void logLoadTime(String source, Mesh mesh, long startNanos) {
+    RenderLog.i(
+        TAG,
+        String.format(
+            "Loaded %s: %d vertices, %d indices in %.2f ms",
+            source,
+            mesh.getVertexCount(),
+            mesh.getIndexCount(),
+            (System.nanoTime() - startNanos) / 1e6));
+  }
+
+  /**
+   * Maps an asset into memory, or returns null if the asset does not exist. Compressed assets
+   * cannot be mapped and are read into a direct buffer instead.
+   */
+  static ByteBuffer openAsset(AssetManager assets, String assetName) throws IOException {
+    AssetFileDescriptor descriptor;
+    try {
+      descriptor = assets.openFd(assetName);
+    } catch (FileNotFoundException e) {
+      // Thrown both for missing assets and for compressed ones, which cannot be mapped.
+      return readAsset(assets, assetName);
+    }
+    try (AssetFileDescriptor fd = descriptor;
+        FileInputStream in = fd.createInputStream()) {
+      // The mapping stays valid after the file is closed.
+      return in.getChannel()
+          .map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+    }
+  }
+
+  private static ByteBuffer readAsset(AssetManager assets, String assetName) throws IOException {
+    InputStream in;
+    try {
+      in = assets.open(assetName);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    RenderLog.d(TAG, assetName + " is compressed in the APK; reading it instead of mapping it.");
+    try {
+      byte[] chunk = new byte[16 * 1024];
+      ByteBuffer data = ByteBuffer.allocateDirect(Math.max(in.available(), chunk.length));
+      int read;
+      while ((read = in.read(chunk)) > 0) {
+        if (data.remaining() < read) {
+          ByteBuffer grown = ByteBuffer.allocateDirect(2 * data.capacity() + read);
+          data.flip();
+          grown.put(data);
+          data = grown;
+        }
+        data.put(chunk, 0, read);
+      }
+      data.flip();
+      return data.order(ByteOrder.nativeOrder());
+    } finally {
+      in.close();
+    }
+  }
+}
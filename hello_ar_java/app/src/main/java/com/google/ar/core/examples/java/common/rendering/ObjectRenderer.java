@@ -15,29 +15,27 @@
 package com.google.ar.core.examples.java.common.rendering;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
-import android.opengl.Matrix;
 import android.util.Log;
 
-import de.javagl.obj.Obj;
-import de.javagl.obj.ObjData;
-import de.javagl.obj.ObjReader;
-import de.javagl.obj.ObjUtils;
+import com.google.ar.core.examples.java.common.gl.Gl;
+import com.google.ar.core.examples.java.common.logging.RenderLog;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.Vec3;
+import com.google.ar.core.examples.java.common.mesh.Mesh;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
 /** Renders an object loaded from an OBJ file in OpenGL. */
 public class ObjectRenderer {
   private static final String TAG = ObjectRenderer.class.getSimpleName();
 
+  private static final int LOG_DRAW = RenderLog.register(TAG, Log.VERBOSE, "Drawing object", 1000);
+
   /**
    * Blend mode.
    *
@@ -53,6 +51,20 @@ public class ObjectRenderer {
   // Shader names.
   private static final String VERTEX_SHADER_NAME = "shaders/object.vert";
   private static final String FRAGMENT_SHADER_NAME = "shaders/object.frag";
+  private static final String INSTANCED_VERTEX_SHADER_NAME = "shaders/object_instanced.vert";
+  private static final String BATCHED_VERTEX_SHADER_NAME = "shaders/object_batched.vert";
+  private static final String INSTANCED_FRAGMENT_SHADER_NAME = "shaders/object_instanced.frag";
+
+  private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
+
+  // Per-instance attributes of the instanced path: a 4x4 model matrix followed by an RGBA color.
+  private static final int FLOATS_PER_INSTANCE = 16 + 4;
+  private static final int BYTES_PER_INSTANCE = BYTES_PER_FLOAT * FLOATS_PER_INSTANCE;
+  private static final int INITIAL_INSTANCE_CAPACITY = 32;
+
+  // Upper bound on instances per draw in the batched path. The uniform arrays for this many
+  // instances take 5 * 16 = 80 of the 128 vertex uniform vectors that OpenGL ES 2.0 guarantees.
+  private static final int MAX_BATCH_INSTANCES = 16;
 
   private static final int COORDS_PER_VERTEX = 3;
   private static final float[] DEFAULT_COLOR = new float[] {0f, 0f, 0f, 0f};
@@ -61,13 +73,18 @@ public class ObjectRenderer {
   private static final float[] LIGHT_DIRECTION = new float[] {0.250f, 0.866f, 0.433f, 0.0f};
   private final float[] viewLightDirection = new float[4];
 
-  // Object vertex buffer variables.
+  // Whether the OpenGL objects have been created. Draw calls do nothing until then.
+  private boolean ready;
+
+  // Object vertex buffer variables. Vertices are interleaved as described in Mesh.
+  private GpuMesh gpuMesh;
   private int vertexBufferId;
-  private int verticesBaseAddress;
-  private int texCoordsBaseAddress;
-  private int normalsBaseAddress;
   private int indexBufferId;
   private int indexCount;
+  private int indexType;
+
+  // Radius of the sphere around the model origin that contains every vertex, in model units.
+  private float boundingRadius;
 
   private int program;
   private final int[] textures = new int[1];
@@ -98,6 +115,44 @@ public class ObjectRenderer {
 
   private BlendMode blendMode = null;
 
+  /** How {@link #drawInstances} submits its instances. */
+  private enum InstancingMode {
+    /** One glDrawElementsInstanced call with per-instance attributes. Needs OpenGL ES 3.0. */
+    INSTANCED,
+    /** One glDrawElements call per batch of instances, using uniform arrays. */
+    BATCHED
+  }
+
+  private InstancingMode instancingMode;
+  private int instancingProgram;
+  private int instancingViewUniform;
+  private int instancingViewProjectionUniform;
+  private int instancingLightDirectionUniform;
+  private int instancingTextureUniform;
+  private int instancingMaterialParametersUniform;
+  private int instancingColorCorrectionParameterUniform;
+  private int instancingPositionAttribute;
+  private int instancingNormalAttribute;
+  private int instancingTexCoordAttribute;
+
+  // INSTANCED mode: per-instance attribute locations and the streamed instance buffer.
+  private int instanceModelMatrixAttribute;
+  private int instanceColorAttribute;
+  private int instanceBufferId;
+  private int instanceBufferCapacity;
+  private FloatBuffer instanceData;
+
+  // BATCHED mode: replicated mesh buffers and the uniform arrays indexed by a_InstanceIndex.
+  private int batchSize;
+  private int batchVertexBufferId;
+  private int batchIndexBufferId;
+  private int batchIndexType;
+  private int batchInstanceIndexBaseAddress;
+  private int batchInstanceIndexAttribute;
+  private int batchModelMatricesUniform;
+  private int batchColorsUniform;
+  private float[] batchModelMatrices = new float[0];
+
   // Temporary matrices allocated here to reduce number of allocations for each frame.
   private final float[] modelMatrix = new float[16];
   private final float[] modelViewMatrix = new float[16];
@@ -109,7 +164,35 @@ public class ObjectRenderer {
   private float specular = 1.0f;
   private float specularPower = 6.0f;
 
-  public ObjectRenderer() {}
+  // Scratch space for per-frame temporaries. Shared with the caller when one is supplied.
+  private final FrameArena arena;
+
+  // Source of programs, textures and meshes. Shared with other renderers when one is supplied.
+  private final GpuAssetCache assetCache;
+  // Where OpenGL calls are made, from the asset cache.
+  private final Gl gl;
+
+  public ObjectRenderer() {
+    this(new FrameArena());
+  }
+
+  /**
+   * Creates a renderer that takes its per-frame temporaries from the given arena. The arena must be
+   * reset by its owner at the start of every frame.
+   */
+  public ObjectRenderer(FrameArena arena) {
+    this(arena, new GpuAssetCache());
+  }
+
+  /**
+   * Creates a renderer that takes its per-frame temporaries from the given arena and its OpenGL
+   * assets from the given cache, so that renderers of the same model share them.
+   */
+  public ObjectRenderer(FrameArena arena, GpuAssetCache assetCache) {
+    this.arena = arena;
+    this.assetCache = assetCache;
+    this.gl = assetCache.getGl();
+  }
 
   /**
    * Creates and initializes OpenGL resources needed for rendering the model.
@@ -120,117 +203,284 @@ public class ObjectRenderer {
    */
   public void createOnGlThread(Context context, String objAssetName, String diffuseTextureAssetName)
       throws IOException {
-    final int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
-    final int fragmentShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
+    create(context, objAssetName, null, diffuseTextureAssetName, null);
+  }
+
+  /**
+   * Starts creating the renderer without blocking: the model and texture are read on a background
+   * thread, and the OpenGL objects are created when {@code loader} runs their upload. Nothing is
+   * drawn until {@link #isReady()}. Must be called on the OpenGL thread.
+   *
+   * @param context Context for loading the shader and below-named model and texture.
+   * @param loader Loader that reads the assets and schedules the upload.
+   * @param objAssetName Name of the OBJ file containing the model geometry.
+   * @param diffuseTextureAssetName Name of the PNG file containing the diffuse texture map.
+   */
+  public void createAsync(
+      Context context,
+      AsyncAssetLoader loader,
+      String objAssetName,
+      String diffuseTextureAssetName) {
+    ready = false;
+    int[] textureFormats = TextureLoader.supportedCompressedFormats(gl);
+    loader.load(
+        objAssetName,
+        () ->
+            new LoadedAssets(
+                MeshLoader.load(context, objAssetName),
+                TextureLoader.read(context, diffuseTextureAssetName, textureFormats)),
+        assets ->
+            create(context, objAssetName, assets.mesh, diffuseTextureAssetName, assets.image));
+  }
 
-    program = GLES20.glCreateProgram();
-    GLES20.glAttachShader(program, vertexShader);
-    GLES20.glAttachShader(program, fragmentShader);
-    GLES20.glLinkProgram(program);
-    GLES20.glUseProgram(program);
+  /** Returns whether the renderer has been created and draws. */
+  public boolean isReady() {
+    return ready;
+  }
 
-    ShaderUtil.checkGLError(TAG, "Program creation");
+  /** Model and texture read off the OpenGL thread by {@link #createAsync}. */
+  private static final class LoadedAssets {
+    final Mesh mesh;
+    final TextureLoader.Image image;
 
-    modelViewUniform = GLES20.glGetUniformLocation(program, "u_ModelView");
-    modelViewProjectionUniform = GLES20.glGetUniformLocation(program, "u_ModelViewProjection");
+    LoadedAssets(Mesh mesh, TextureLoader.Image image) {
+      this.mesh = mesh;
+      this.image = image;
+    }
+  }
 
-    positionAttribute = GLES20.glGetAttribLocation(program, "a_Position");
-    normalAttribute = GLES20.glGetAttribLocation(program, "a_Normal");
-    texCoordAttribute = GLES20.glGetAttribLocation(program, "a_TexCoord");
+  // Creates the OpenGL objects. The mesh and image are loaded here if they are null.
+  private void create(
+      Context context,
+      String objAssetName,
+      Mesh mesh,
+      String diffuseTextureAssetName,
+      TextureLoader.Image image)
+      throws IOException {
+    program = assetCache.acquireProgram(context, VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME);
+    gl.glUseProgram(program);
 
-    textureUniform = GLES20.glGetUniformLocation(program, "u_Texture");
+    ShaderUtil.checkGLError(gl, TAG, "Program creation");
 
-    lightingParametersUniform = GLES20.glGetUniformLocation(program, "u_LightingParameters");
-    materialParametersUniform = GLES20.glGetUniformLocation(program, "u_MaterialParameters");
+    modelViewUniform = gl.glGetUniformLocation(program, "u_ModelView");
+    modelViewProjectionUniform = gl.glGetUniformLocation(program, "u_ModelViewProjection");
+
+    positionAttribute = gl.glGetAttribLocation(program, "a_Position");
+    normalAttribute = gl.glGetAttribLocation(program, "a_Normal");
+    texCoordAttribute = gl.glGetAttribLocation(program, "a_TexCoord");
+
+    textureUniform = gl.glGetUniformLocation(program, "u_Texture");
+
+    lightingParametersUniform = gl.glGetUniformLocation(program, "u_LightingParameters");
+    materialParametersUniform = gl.glGetUniformLocation(program, "u_MaterialParameters");
     colorCorrectionParameterUniform =
-        GLES20.glGetUniformLocation(program, "u_ColorCorrectionParameters");
-    colorUniform = GLES20.glGetUniformLocation(program, "u_ObjColor");
+        gl.glGetUniformLocation(program, "u_ColorCorrectionParameters");
+    colorUniform = gl.glGetUniformLocation(program, "u_ObjColor");
 
-    ShaderUtil.checkGLError(TAG, "Program parameters");
+    ShaderUtil.checkGLError(gl, TAG, "Program parameters");
 
     // Read the texture.
-    Bitmap textureBitmap =
-        BitmapFactory.decodeStream(context.getAssets().open(diffuseTextureAssetName));
-
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glGenTextures(textures.length, textures, 0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-
-    GLES20.glTexParameteri(
-        GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-    GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, textureBitmap, 0);
-    GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-
-    textureBitmap.recycle();
-
-    ShaderUtil.checkGLError(TAG, "Texture loading");
-
-    // Read the obj file.
-    InputStream objInputStream = context.getAssets().open(objAssetName);
-    Obj obj = ObjReader.read(objInputStream);
-
-    // Prepare the Obj so that its structure is suitable for
-    // rendering with OpenGL:
-    // 1. Triangulate it
-    // 2. Make sure that texture coordinates are not ambiguous
-    // 3. Make sure that normals are not ambiguous
-    // 4. Convert it to single-indexed data
-    obj = ObjUtils.convertToRenderable(obj);
-
-    // OpenGL does not use Java arrays. ByteBuffers are used instead to provide data in a format
-    // that OpenGL understands.
-
-    // Obtain the data from the OBJ, as direct buffers:
-    IntBuffer wideIndices = ObjData.getFaceVertexIndices(obj, 3);
-    FloatBuffer vertices = ObjData.getVertices(obj);
-    FloatBuffer texCoords = ObjData.getTexCoords(obj, 2);
-    FloatBuffer normals = ObjData.getNormals(obj);
-
-    // Convert int indices to shorts for GL ES 2.0 compatibility
-    ShortBuffer indices =
-        ByteBuffer.allocateDirect(2 * wideIndices.limit())
-            .order(ByteOrder.nativeOrder())
-            .asShortBuffer();
-    while (wideIndices.hasRemaining()) {
-      indices.put((short) wideIndices.get());
+    textures[0] =
+        image != null
+            ? assetCache.acquireTexture(diffuseTextureAssetName, image)
+            : assetCache.acquireTexture(context, diffuseTextureAssetName);
+
+    // Load the mesh. The build precompiles OBJ files into a binary format that is already laid out
+    // the way OpenGL expects, so the buffers come straight from the mapped asset.
+    gpuMesh =
+        mesh != null
+            ? assetCache.acquireMesh(objAssetName, mesh)
+            : assetCache.acquireMesh(context, objAssetName);
+    vertexBufferId = gpuMesh.getVertexBufferId();
+    indexBufferId = gpuMesh.getIndexBufferId();
+    indexCount = gpuMesh.getIndexCount();
+    indexType = gpuMesh.getIndexType();
+    boundingRadius = gpuMesh.getBoundingRadius();
+
+    createInstancingOnGlThread(context, objAssetName, mesh);
+
+    Mat4.setIdentity(modelMatrix, 0);
+    ready = true;
+  }
+
+  /**
+   * Creates the program and buffers used by {@link #drawInstances}. Uses hardware instancing when
+   * the context is OpenGL ES 3.0 or newer, and otherwise falls back to batches that index uniform
+   * arrays from a replicated copy of the mesh.
+   */
+  private void createInstancingOnGlThread(Context context, String objAssetName, Mesh mesh)
+      throws IOException {
+    int vertexCount = gpuMesh.getVertexCount();
+    Map<String, Integer> defines = new HashMap<>();
+    String vertexShaderName;
+    if (ShaderUtil.isGlEs3OrNewer(gl)) {
+      instancingMode = InstancingMode.INSTANCED;
+      vertexShaderName = INSTANCED_VERTEX_SHADER_NAME;
+    } else {
+      instancingMode = InstancingMode.BATCHED;
+      vertexShaderName = BATCHED_VERTEX_SHADER_NAME;
+      int[] maxVertexUniformVectors = new int[1];
+      gl.glGetIntegerv(GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS, maxVertexUniformVectors, 0);
+      // Reserve 12 vectors for the view, view-projection and light uniforms.
+      batchSize =
+          Math.min(
+              Math.min(MAX_BATCH_INSTANCES, (maxVertexUniformVectors[0] - 12) / 5),
+              Mesh.MAX_SHORT_INDEXED_VERTICES / Math.max(vertexCount, 1));
+      batchSize = Math.max(batchSize, 1);
+      defines.put("MAX_INSTANCES", batchSize);
+    }
+
+    instancingProgram =
+        assetCache.acquireProgram(
+            context, vertexShaderName, INSTANCED_FRAGMENT_SHADER_NAME, defines);
+    gl.glUseProgram(instancingProgram);
+
+    ShaderUtil.checkGLError(gl, TAG, "Instancing program creation");
+
+    instancingViewUniform = gl.glGetUniformLocation(instancingProgram, "u_View");
+    instancingViewProjectionUniform =
+        gl.glGetUniformLocation(instancingProgram, "u_ViewProjection");
+    instancingLightDirectionUniform =
+        gl.glGetUniformLocation(instancingProgram, "u_LightDirection");
+    instancingTextureUniform = gl.glGetUniformLocation(instancingProgram, "u_Texture");
+    instancingMaterialParametersUniform =
+        gl.glGetUniformLocation(instancingProgram, "u_MaterialParameters");
+    instancingColorCorrectionParameterUniform =
+        gl.glGetUniformLocation(instancingProgram, "u_ColorCorrectionParameters");
+
+    instancingPositionAttribute = gl.glGetAttribLocation(instancingProgram, "a_Position");
+    instancingNormalAttribute = gl.glGetAttribLocation(instancingProgram, "a_Normal");
+    instancingTexCoordAttribute = gl.glGetAttribLocation(instancingProgram, "a_TexCoord");
+
+    if (instancingMode == InstancingMode.INSTANCED) {
+      instanceModelMatrixAttribute =
+          gl.glGetAttribLocation(instancingProgram, "a_ModelMatrix");
+      instanceColorAttribute = gl.glGetAttribLocation(instancingProgram, "a_ObjColor");
+
+      int[] buffers = new int[1];
+      gl.glGenBuffers(1, buffers, 0);
+      instanceBufferId = buffers[0];
+      ensureInstanceCapacity(INITIAL_INSTANCE_CAPACITY);
+    } else {
+      batchInstanceIndexAttribute =
+          gl.glGetAttribLocation(instancingProgram, "a_InstanceIndex");
+      batchModelMatricesUniform = gl.glGetUniformLocation(instancingProgram, "u_ModelMatrices");
+      batchColorsUniform = gl.glGetUniformLocation(instancingProgram, "u_ObjColors");
+      // The replicated mesh is built from the CPU copy, which is only kept while doing so.
+      createBatchBuffers(mesh != null ? mesh : MeshLoader.load(context, objAssetName));
     }
-    indices.rewind();
+
+    ShaderUtil.checkGLError(gl, TAG, "Instancing program parameters");
+  }
+
+  /** Replicates the mesh {@link #batchSize} times, tagging each copy with its instance index. */
+  private void createBatchBuffers(Mesh mesh) {
+    int copies = batchSize;
+    int vertexCount = mesh.getVertexCount();
+    int batchVertexCount = vertexCount * copies;
+
+    // All copies of the interleaved mesh, followed by one float instance index per vertex.
+    batchInstanceIndexBaseAddress = Mesh.VERTEX_STRIDE * batchVertexCount;
+    int vertexBytes = batchInstanceIndexBaseAddress + BYTES_PER_FLOAT * batchVertexCount;
+    ByteBuffer batchVertices =
+        ByteBuffer.allocateDirect(vertexBytes).order(ByteOrder.nativeOrder());
+    for (int copy = 0; copy < copies; ++copy) {
+      batchVertices.put(mesh.getVertices().duplicate());
+    }
+    for (int copy = 0; copy < copies; ++copy) {
+      for (int i = 0; i < vertexCount; ++i) {
+        batchVertices.putFloat(copy);
+      }
+    }
+    batchVertices.rewind();
+
+    int singleIndexCount = mesh.getIndexCount();
+    int bytesPerIndex = batchVertexCount <= Mesh.MAX_SHORT_INDEXED_VERTICES ? 2 : 4;
+    batchIndexType = glIndexType(bytesPerIndex);
+    ByteBuffer batchIndices =
+        ByteBuffer.allocateDirect(bytesPerIndex * singleIndexCount * copies)
+            .order(ByteOrder.nativeOrder());
+    for (int copy = 0; copy < copies; ++copy) {
+      int offset = copy * vertexCount;
+      for (int i = 0; i < singleIndexCount; ++i) {
+        int index = mesh.getIndex(i) + offset;
+        if (bytesPerIndex == 2) {
+          batchIndices.putShort((short) index);
+        } else {
+          batchIndices.putInt(index);
+        }
+      }
+    }
+    batchIndices.rewind();
 
     int[] buffers = new int[2];
-    GLES20.glGenBuffers(2, buffers, 0);
-    vertexBufferId = buffers[0];
-    indexBufferId = buffers[1];
-
-    // Load vertex buffer
-    verticesBaseAddress = 0;
-    texCoordsBaseAddress = verticesBaseAddress + 4 * vertices.limit();
-    normalsBaseAddress = texCoordsBaseAddress + 4 * texCoords.limit();
-    final int totalBytes = normalsBaseAddress + 4 * normals.limit();
-
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
-    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, totalBytes, null, GLES20.GL_STATIC_DRAW);
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, verticesBaseAddress, 4 * vertices.limit(), vertices);
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, texCoordsBaseAddress, 4 * texCoords.limit(), texCoords);
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, normalsBaseAddress, 4 * normals.limit(), normals);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-
-    // Load index buffer
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
-    indexCount = indices.limit();
-    GLES20.glBufferData(
-        GLES20.GL_ELEMENT_ARRAY_BUFFER, 2 * indexCount, indices, GLES20.GL_STATIC_DRAW);
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-
-    ShaderUtil.checkGLError(TAG, "OBJ buffer load");
-
-    Matrix.setIdentityM(modelMatrix, 0);
+    gl.glGenBuffers(2, buffers, 0);
+    batchVertexBufferId = buffers[0];
+    batchIndexBufferId = buffers[1];
+
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, batchVertexBufferId);
+    gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBytes, batchVertices, GLES20.GL_STATIC_DRAW);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, batchIndexBufferId);
+    gl.glBufferData(
+        GLES20.GL_ELEMENT_ARRAY_BUFFER,
+        batchIndices.remaining(),
+        batchIndices,
+        GLES20.GL_STATIC_DRAW);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+    batchModelMatrices = new float[16 * copies];
+  }
+
+  /**
+   * Releases the OpenGL resources of this renderer. Shared programs, textures and meshes are
+   * returned to the {@link GpuAssetCache}. Must be called on the OpenGL thread.
+   */
+  public void release() {
+    ready = false;
+    if (gpuMesh == null) {
+      return;
+    }
+    assetCache.releaseProgram(program);
+    assetCache.releaseProgram(instancingProgram);
+    assetCache.releaseTexture(textures[0]);
+    assetCache.releaseMesh(gpuMesh);
+    gpuMesh = null;
+
+    int[] buffers = new int[] {instanceBufferId, batchVertexBufferId, batchIndexBufferId};
+    gl.glDeleteBuffers(buffers.length, buffers, 0);
+    instanceBufferId = 0;
+    batchVertexBufferId = 0;
+    batchIndexBufferId = 0;
+  }
+
+  private static int glIndexType(int bytesPerIndex) {
+    return bytesPerIndex == 2 ? GLES20.GL_UNSIGNED_SHORT : GLES20.GL_UNSIGNED_INT;
+  }
+
+  private void ensureInstanceCapacity(int instanceCount) {
+    if (instanceData != null && instanceData.capacity() >= instanceCount * FLOATS_PER_INSTANCE) {
+      return;
+    }
+    int capacity = Math.max(INITIAL_INSTANCE_CAPACITY, instanceBufferCapacity);
+    while (capacity < instanceCount) {
+      capacity *= 2;
+    }
+    instanceData =
+        ByteBuffer.allocateDirect(BYTES_PER_INSTANCE * capacity)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    instanceBufferCapacity = capacity;
+  }
+
+  /**
+   * Returns the radius of a sphere centered at the model origin that encloses the whole model, in
+   * model units before {@link #updateModelMatrix(float[], float) scaling}. Useful for visibility
+   * culling.
+   */
+  public float getBoundingRadius() {
+    return boundingRadius;
   }
 
   /**
@@ -250,12 +500,7 @@ public class ObjectRenderer {
    * @see android.opengl.Matrix
    */
   public void updateModelMatrix(float[] modelMatrix, float scaleFactor) {
-    float[] scaleMatrix = new float[16];
-    Matrix.setIdentityM(scaleMatrix, 0);
-    scaleMatrix[0] = scaleFactor;
-    scaleMatrix[5] = scaleFactor;
-    scaleMatrix[10] = scaleFactor;
-    Matrix.multiplyMM(this.modelMatrix, 0, modelMatrix, 0, scaleMatrix, 0);
+    Mat4.scale(this.modelMatrix, 0, modelMatrix, 0, scaleFactor);
   }
 
   /**
@@ -296,117 +541,298 @@ public class ObjectRenderer {
       float[] cameraPerspective,
       float[] colorCorrectionRgba,
       float[] objColor) {
+    if (!ready) {
+      return;
+    }
 
-    ShaderUtil.checkGLError(TAG, "kap:Before draw");
-    Log.e("kap:","Drawing nowwwww");
+    ShaderUtil.checkGLError(gl, TAG, "kap:Before draw");
+    if (RenderLog.HOT_PATH_ENABLED) {
+      RenderLog.hot(LOG_DRAW);
+    }
 
     // Build the ModelView and ModelViewProjection matrices
     // for calculating object position and light.
-    Matrix.multiplyMM(modelViewMatrix, 0, cameraView, 0, modelMatrix, 0);
-    Matrix.multiplyMM(modelViewProjectionMatrix, 0, cameraPerspective, 0, modelViewMatrix, 0);
+    Mat4.multiply(modelViewMatrix, 0, cameraView, 0, modelMatrix, 0);
+    Mat4.multiply(modelViewProjectionMatrix, 0, cameraPerspective, 0, modelViewMatrix, 0);
 
-    GLES20.glUseProgram(program);
+    gl.glUseProgram(program);
 
     // Set the lighting environment properties.
-    Matrix.multiplyMV(viewLightDirection, 0, modelViewMatrix, 0, LIGHT_DIRECTION, 0);
-    normalizeVec3(viewLightDirection);
-    GLES20.glUniform4f(
+    Mat4.multiplyVector(viewLightDirection, 0, modelViewMatrix, 0, LIGHT_DIRECTION, 0);
+    Vec3.normalize(viewLightDirection, 0);
+    gl.glUniform4f(
         lightingParametersUniform,
         viewLightDirection[0],
         viewLightDirection[1],
         viewLightDirection[2],
         1.f);
-    GLES20.glUniform4fv(colorCorrectionParameterUniform, 1, colorCorrectionRgba, 0);
+    gl.glUniform4fv(colorCorrectionParameterUniform, 1, colorCorrectionRgba, 0);
 
     // Set the object color property.
-    GLES20.glUniform4fv(colorUniform, 1, objColor, 0);
+    gl.glUniform4fv(colorUniform, 1, objColor, 0);
 
     // Set the object material properties.
-    GLES20.glUniform4f(materialParametersUniform, ambient, diffuse, specular, specularPower);
+    gl.glUniform4f(materialParametersUniform, ambient, diffuse, specular, specularPower);
 
     // Attach the object texture.
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-    GLES20.glUniform1i(textureUniform, 0);
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+    gl.glUniform1i(textureUniform, 0);
 
     // Set the vertex attributes.
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
-
-    GLES20.glVertexAttribPointer(
-        positionAttribute, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, verticesBaseAddress);
-    GLES20.glVertexAttribPointer(normalAttribute, 3, GLES20.GL_FLOAT, false, 0, normalsBaseAddress);
-    GLES20.glVertexAttribPointer(
-        texCoordAttribute, 2, GLES20.GL_FLOAT, false, 0, texCoordsBaseAddress);
-
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+
+    gl.glVertexAttribPointer(
+        positionAttribute,
+        COORDS_PER_VERTEX,
+        GLES20.GL_FLOAT,
+        false,
+        Mesh.VERTEX_STRIDE,
+        Mesh.POSITION_OFFSET);
+    gl.glVertexAttribPointer(
+        normalAttribute, 3, GLES20.GL_FLOAT, false, Mesh.VERTEX_STRIDE, Mesh.NORMAL_OFFSET);
+    gl.glVertexAttribPointer(
+        texCoordAttribute, 2, GLES20.GL_FLOAT, false, Mesh.VERTEX_STRIDE, Mesh.TEX_COORD_OFFSET);
+
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
     // Set the ModelViewProjection matrix in the shader.
-    GLES20.glUniformMatrix4fv(modelViewUniform, 1, false, modelViewMatrix, 0);
-    GLES20.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
+    gl.glUniformMatrix4fv(modelViewUniform, 1, false, modelViewMatrix, 0);
+    gl.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
 
     // Enable vertex arrays
-    GLES20.glEnableVertexAttribArray(positionAttribute);
-    GLES20.glEnableVertexAttribArray(normalAttribute);
-    GLES20.glEnableVertexAttribArray(texCoordAttribute);
+    gl.glEnableVertexAttribArray(positionAttribute);
+    gl.glEnableVertexAttribArray(normalAttribute);
+    gl.glEnableVertexAttribArray(texCoordAttribute);
+
+    enableBlendMode();
+
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+    gl.glDrawElements(GLES20.GL_TRIANGLES, indexCount, indexType, 0);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+    disableBlendMode();
+
+    // Disable vertex arrays
+    gl.glDisableVertexAttribArray(positionAttribute);
+    gl.glDisableVertexAttribArray(normalAttribute);
+    gl.glDisableVertexAttribArray(texCoordAttribute);
+
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+    ShaderUtil.checkGLError(gl, TAG, "After draw");
+  }
+
+  /**
+   * Draws many copies of the model at once. Each instance has its own model matrix and object
+   * color; lighting and material settings are shared. With OpenGL ES 3.0 all instances are drawn
+   * with a single instanced draw call, otherwise in batches of up to {@value #MAX_BATCH_INSTANCES}.
+   *
+   * @param cameraView A 4x4 view matrix, in column-major order.
+   * @param cameraPerspective A 4x4 projection matrix, in column-major order.
+   * @param colorCorrectionRgba Illumination intensity, as for {@link #draw(float[], float[],
+   *     float[], float[])}.
+   * @param modelMatrices Model-to-world matrices, 16 floats per instance in column-major order.
+   * @param scaleFactor A separate scaling factor to apply before each model matrix.
+   * @param objColors Object colors, 4 floats per instance.
+   * @param instanceCount Number of instances to draw.
+   */
+  public void drawInstances(
+      float[] cameraView,
+      float[] cameraPerspective,
+      float[] colorCorrectionRgba,
+      float[] modelMatrices,
+      float scaleFactor,
+      float[] objColors,
+      int instanceCount) {
+    if (!ready || instanceCount <= 0) {
+      return;
+    }
+    ShaderUtil.checkGLError(gl, TAG, "Before draw instances");
+
+    Mat4.multiply(modelViewProjectionMatrix, 0, cameraPerspective, 0, cameraView, 0);
+
+    gl.glUseProgram(instancingProgram);
+    gl.glUniformMatrix4fv(instancingViewUniform, 1, false, cameraView, 0);
+    gl.glUniformMatrix4fv(
+        instancingViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
+    gl.glUniform4fv(instancingLightDirectionUniform, 1, LIGHT_DIRECTION, 0);
+    gl.glUniform4fv(instancingColorCorrectionParameterUniform, 1, colorCorrectionRgba, 0);
+    gl.glUniform4f(
+        instancingMaterialParametersUniform, ambient, diffuse, specular, specularPower);
+
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+    gl.glUniform1i(instancingTextureUniform, 0);
+
+    enableBlendMode();
+    if (instancingMode == InstancingMode.INSTANCED) {
+      drawInstanced(modelMatrices, scaleFactor, objColors, instanceCount);
+    } else {
+      drawBatched(modelMatrices, scaleFactor, objColors, instanceCount);
+    }
+    disableBlendMode();
+
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+    ShaderUtil.checkGLError(gl, TAG, "After draw instances");
+  }
+
+  private void drawInstanced(
+      float[] modelMatrices, float scaleFactor, float[] objColors, int instanceCount) {
+    ensureInstanceCapacity(instanceCount);
+    instanceData.clear();
+    for (int i = 0; i < instanceCount; ++i) {
+      putScaledMatrix(instanceData, modelMatrices, 16 * i, scaleFactor);
+      instanceData.put(objColors, 4 * i, 4);
+    }
+    instanceData.rewind();
+
+    // Orphan the previous contents so the driver does not wait for last frame's draws.
+    int instanceBytes = BYTES_PER_INSTANCE * instanceCount;
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, instanceBufferId);
+    gl.glBufferData(
+        GLES20.GL_ARRAY_BUFFER,
+        BYTES_PER_INSTANCE * instanceBufferCapacity,
+        null,
+        GLES20.GL_STREAM_DRAW);
+    gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, instanceBytes, instanceData);
+
+    // A mat4 attribute takes four consecutive locations, one per column.
+    for (int column = 0; column < 4; ++column) {
+      int location = instanceModelMatrixAttribute + column;
+      gl.glEnableVertexAttribArray(location);
+      gl.glVertexAttribPointer(
+          location, 4, GLES20.GL_FLOAT, false, BYTES_PER_INSTANCE, BYTES_PER_FLOAT * 4 * column);
+      gl.glVertexAttribDivisor(location, 1);
+    }
+    gl.glEnableVertexAttribArray(instanceColorAttribute);
+    gl.glVertexAttribPointer(
+        instanceColorAttribute,
+        4,
+        GLES20.GL_FLOAT,
+        false,
+        BYTES_PER_INSTANCE,
+        BYTES_PER_FLOAT * 16);
+    gl.glVertexAttribDivisor(instanceColorAttribute, 1);
+
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+    enableMeshAttributes();
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+    gl.glDrawElementsInstanced(GLES20.GL_TRIANGLES, indexCount, indexType, 0, instanceCount);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+    // Attribute divisors are global state; reset them so that other programs are unaffected.
+    for (int column = 0; column < 4; ++column) {
+      gl.glVertexAttribDivisor(instanceModelMatrixAttribute + column, 0);
+      gl.glDisableVertexAttribArray(instanceModelMatrixAttribute + column);
+    }
+    gl.glVertexAttribDivisor(instanceColorAttribute, 0);
+    gl.glDisableVertexAttribArray(instanceColorAttribute);
+    disableMeshAttributes();
+  }
+
+  private void drawBatched(
+      float[] modelMatrices, float scaleFactor, float[] objColors, int instanceCount) {
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, batchVertexBufferId);
+    enableMeshAttributes();
+    gl.glEnableVertexAttribArray(batchInstanceIndexAttribute);
+    gl.glVertexAttribPointer(
+        batchInstanceIndexAttribute, 1, GLES20.GL_FLOAT, false, 0, batchInstanceIndexBaseAddress);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, batchIndexBufferId);
+    for (int first = 0; first < instanceCount; first += batchSize) {
+      int count = Math.min(batchSize, instanceCount - first);
+      Mat4.scaleBatch(batchModelMatrices, 0, modelMatrices, 16 * first, scaleFactor, count);
+      gl.glUniformMatrix4fv(batchModelMatricesUniform, count, false, batchModelMatrices, 0);
+      gl.glUniform4fv(batchColorsUniform, count, objColors, 4 * first);
+      // The first count copies of the replicated mesh are exactly the first count * indexCount
+      // indices.
+      gl.glDrawElements(GLES20.GL_TRIANGLES, indexCount * count, batchIndexType, 0);
+    }
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+    gl.glDisableVertexAttribArray(batchInstanceIndexAttribute);
+    disableMeshAttributes();
+  }
 
+  // Points the mesh attributes at the interleaved vertices of the bound array buffer.
+  private void enableMeshAttributes() {
+    gl.glVertexAttribPointer(
+        instancingPositionAttribute,
+        COORDS_PER_VERTEX,
+        GLES20.GL_FLOAT,
+        false,
+        Mesh.VERTEX_STRIDE,
+        Mesh.POSITION_OFFSET);
+    gl.glVertexAttribPointer(
+        instancingNormalAttribute,
+        3,
+        GLES20.GL_FLOAT,
+        false,
+        Mesh.VERTEX_STRIDE,
+        Mesh.NORMAL_OFFSET);
+    gl.glVertexAttribPointer(
+        instancingTexCoordAttribute,
+        2,
+        GLES20.GL_FLOAT,
+        false,
+        Mesh.VERTEX_STRIDE,
+        Mesh.TEX_COORD_OFFSET);
+    gl.glEnableVertexAttribArray(instancingPositionAttribute);
+    gl.glEnableVertexAttribArray(instancingNormalAttribute);
+    gl.glEnableVertexAttribArray(instancingTexCoordAttribute);
+  }
+
+  private void disableMeshAttributes() {
+    gl.glDisableVertexAttribArray(instancingPositionAttribute);
+    gl.glDisableVertexAttribArray(instancingNormalAttribute);
+    gl.glDisableVertexAttribArray(instancingTexCoordAttribute);
+  }
+
+  // Writes modelMatrix * scale(scaleFactor) without building the scale matrix.
+  private static void putScaledMatrix(
+      FloatBuffer destination, float[] modelMatrix, int offset, float scaleFactor) {
+    for (int i = 0; i < 12; ++i) {
+      destination.put(modelMatrix[offset + i] * scaleFactor);
+    }
+    destination.put(modelMatrix, offset + 12, 4);
+  }
+
+  private void enableBlendMode() {
     if (blendMode != null) {
-      GLES20.glDepthMask(false);
-      GLES20.glEnable(GLES20.GL_BLEND);
+      gl.glDepthMask(false);
+      gl.glEnable(GLES20.GL_BLEND);
       switch (blendMode) {
         case Shadow:
           // Multiplicative blending function for Shadow.
-          GLES20.glBlendFunc(GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+          gl.glBlendFunc(GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA);
           break;
         case Grid:
           // Grid, additive blending function.
-          GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+          gl.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
           break;
       }
     }
+  }
 
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
-    GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexCount, GLES20.GL_UNSIGNED_SHORT, 0);
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-
+  private void disableBlendMode() {
     if (blendMode != null) {
-      GLES20.glDisable(GLES20.GL_BLEND);
-      GLES20.glDepthMask(true);
+      gl.glDisable(GLES20.GL_BLEND);
+      gl.glDepthMask(true);
     }
-
-    // Disable vertex arrays
-    GLES20.glDisableVertexAttribArray(positionAttribute);
-    GLES20.glDisableVertexAttribArray(normalAttribute);
-    GLES20.glDisableVertexAttribArray(texCoordAttribute);
-
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-
-    ShaderUtil.checkGLError(TAG, "After draw");
-  }
-
-  private static void normalizeVec3(float[] v) {
-    float reciprocalLength = 1.0f / (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
-    v[0] *= reciprocalLength;
-    v[1] *= reciprocalLength;
-    v[2] *= reciprocalLength;
   }
 
+  /**
+   * Computes the model-view-projection matrix of an object placed at {@code modelMat}.
+   *
+   * @return A matrix taken from this renderer's {@link FrameArena}, valid until the arena is reset.
+   */
   public float[] getMyScreenMatrix(float[] modelMat, float[] viewMat, float[] projMat){
-    float scalingFactor = 1.0f;
-    float scaleMatrix[] = new float[16];
-
-    float modelScaled[] = new float[16];
-    float modelFitToView[] = new float[16];
-    float modelScreenPosition[] = new float[16];
-
-    Matrix.setIdentityM(scaleMatrix, 0);
-    scaleMatrix[0] = scalingFactor;
-    scaleMatrix[5] = scalingFactor;
-    scaleMatrix[10] = scalingFactor;
-
-    Matrix.multiplyMM(modelScaled,0,modelMat,0,scaleMatrix,0);
-    Matrix.multiplyMM(modelFitToView,0,viewMat,0,modelScaled,0);
-    Matrix.multiplyMM(modelScreenPosition,0,projMat,0,modelFitToView,0);
-
-    return modelScreenPosition;
+    return ScreenProjection.modelViewProjection(arena, modelMat, viewMat, projMat);
   }
+
 }
@@ -15,26 +15,27 @@
 package com.google.ar.core.examples.java.common.rendering;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
-import android.opengl.Matrix;
 import com.google.ar.core.Camera;
 import com.google.ar.core.Plane;
 import com.google.ar.core.Pose;
 import com.google.ar.core.TrackingState;
+import com.google.ar.core.examples.java.common.gl.Gl;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.PoseMath;
+import com.google.ar.core.examples.java.common.math.Vec3;
+import com.google.ar.core.examples.java.common.spatial.PlaneTriangulator;
+import com.google.ar.core.examples.java.common.spatial.PolygonSimplifier;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -45,28 +46,44 @@ public class PlaneRenderer {
   // Shader names.
   private static final String VERTEX_SHADER_NAME = "shaders/plane.vert";
   private static final String FRAGMENT_SHADER_NAME = "shaders/plane.frag";
+  private static final String MERGED_VERTEX_SHADER_NAME = "shaders/plane_merged.vert";
+  private static final String MERGED_FRAGMENT_SHADER_NAME = "shaders/plane_merged.frag";
+
+  /** How the planes are submitted to OpenGL. */
+  public enum DrawMode {
+    /** One draw call per plane, from buffers that are only updated when the plane changes. */
+    PER_PLANE,
+    /**
+     * A single draw call for all planes, from a buffer of world space vertices that is rebuilt
+     * every frame. Fewer state changes and draw calls when many planes are tracked.
+     */
+    MERGED
+  }
 
-  private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
-  private static final int BYTES_PER_SHORT = Short.SIZE / 8;
-  private static final int COORDS_PER_VERTEX = 3; // x, z, alpha
-
-  private static final int VERTS_PER_BOUNDARY_VERT = 2;
-  private static final int INDICES_PER_BOUNDARY_VERT = 3;
-  private static final int INITIAL_BUFFER_BOUNDARY_VERTS = 64;
+  // Merged vertex layout: position.xyz and texCoordAlpha.xyz as floats, then color as 4 bytes.
+  private static final int MERGED_VERTEX_STRIDE = 6 * 4 + 4;
+  private static final int MERGED_TEX_COORD_ALPHA_OFFSET = 3 * 4;
+  private static final int MERGED_COLOR_OFFSET = 6 * 4;
+  private static final int MAX_MERGED_VERTICES = 0x10000;
 
-  private static final int INITIAL_VERTEX_BUFFER_SIZE_BYTES =
-      BYTES_PER_FLOAT * COORDS_PER_VERTEX * VERTS_PER_BOUNDARY_VERT * INITIAL_BUFFER_BOUNDARY_VERTS;
+  // Occlusion below which fragments are discarded when overlap is resolved with the stencil test:
+  // those that would not occlude anything in an 8-bit alpha channel. The whole faded edge is drawn,
+  // as with the alpha channel, but hides the planes behind it instead of partly occluding them.
+  private static final float STENCIL_OCCLUSION_DISCARD = 1.0f / 255;
 
-  private static final int INITIAL_INDEX_BUFFER_SIZE_BYTES =
-      BYTES_PER_SHORT
-          * INDICES_PER_BOUNDARY_VERT
-          * INDICES_PER_BOUNDARY_VERT
-          * INITIAL_BUFFER_BOUNDARY_VERTS;
+  private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
+  private static final int BYTES_PER_SHORT = Short.SIZE / 8;
+  private static final int COORDS_PER_VERTEX = PlaneTriangulator.COORDS_PER_VERTEX; // x, z, alpha
 
-  private static final float FADE_RADIUS_M = 0.25f;
   private static final float DOTS_PER_METER = 10.0f;
   private static final float EQUILATERAL_TRIANGLE_SCALE = (float) (1 / Math.sqrt(3));
 
+  // Boundary polygons are simplified before triangulation. Each boundary vertex kept becomes two
+  // vertices and three indices of the mesh.
+  private static final float DEFAULT_SIMPLIFY_TOLERANCE_M = 0.01f;
+  private static final int DEFAULT_MAX_BOUNDARY_VERTICES_PER_PLANE = 64;
+  private static final int DEFAULT_MAX_BOUNDARY_VERTICES = 1024;
+
   // Using the "signed distance field" approach to render sharp lines and circles.
   // {dotThreshold, lineThreshold, lineFadeSpeed, occlusionScale}
   // dotThreshold/lineThreshold: red/green intensity above which dots/lines are present
@@ -74,6 +91,18 @@ public class PlaneRenderer {
   // occlusionShrink: occluded planes will fade out between alpha = 0 and 1/occlusionShrink
   private static final float[] GRID_CONTROL = {0.2f, 0.4f, 2.0f, 1.5f};
 
+  // Crossed with a plane normal to get the first grid axis, like plane.vert.
+  private static final float[] GRID_AXIS_HINT = {1.0f, 1.0f, 0.0f};
+
+  // Whether the OpenGL objects have been created. Nothing is drawn until then.
+  private boolean ready;
+
+  private DrawMode drawMode = DrawMode.PER_PLANE;
+
+  // Whether the surface has a stencil buffer, used to draw every pixel only for the closest plane.
+  // Without one, the alpha channel is cleared and used as a mask instead.
+  private boolean useStencil;
+
   private int planeProgram;
   private final int[] textures = new int[1];
 
@@ -87,15 +116,27 @@ public class PlaneRenderer {
   private int dotColorUniform;
   private int gridControlUniform;
   private int planeUvMatrixUniform;
-
-  private FloatBuffer vertexBuffer =
-      ByteBuffer.allocateDirect(INITIAL_VERTEX_BUFFER_SIZE_BYTES)
-          .order(ByteOrder.nativeOrder())
-          .asFloatBuffer();
-  private ShortBuffer indexBuffer =
-      ByteBuffer.allocateDirect(INITIAL_INDEX_BUFFER_SIZE_BYTES)
+  private int occlusionDiscardUniform;
+
+  // Merged mode program and streaming buffers.
+  private int mergedProgram;
+  private int mergedPositionAttribute;
+  private int mergedTexCoordAlphaAttribute;
+  private int mergedColorAttribute;
+  private int mergedViewProjectionUniform;
+  private int mergedTextureUniform;
+  private int mergedGridControlUniform;
+  private int mergedOcclusionDiscardUniform;
+  private int mergedVertexBufferId;
+  private int mergedIndexBufferId;
+  private ByteBuffer mergedVertices =
+      ByteBuffer.allocateDirect(MERGED_VERTEX_STRIDE * 1024).order(ByteOrder.nativeOrder());
+  private ShortBuffer mergedIndices =
+      ByteBuffer.allocateDirect(BYTES_PER_SHORT * 3 * 1024)
           .order(ByteOrder.nativeOrder())
           .asShortBuffer();
+  private int mergedVertexCount;
+  private int lastFrameDrawCallCount;
 
   // Temporary lists/matrices allocated here to reduce number of allocations for each frame.
   private final float[] modelMatrix = new float[16];
@@ -104,10 +145,67 @@ public class PlaneRenderer {
   private final float[] planeColor = new float[4];
   private final float[] planeAngleUvMatrix =
       new float[4]; // 2x2 rotation matrix applied to uv coords.
+  private final float[] cameraView = new float[16];
+  private final float[] cameraWorld = new float[16];
+  private final float[] viewProjectionMatrix = new float[16];
+  private final float[] gridAxisU = new float[3];
+  private final float[] gridAxisV = new float[3];
+  // Center poses of the tracking planes of the frame, and their distances to the camera.
+  private final ArrayList<PlaneMesh> trackingPlanes = new ArrayList<>();
+  private float[] trackingPlanePoses = new float[16 * PoseMath.FLOATS];
+  private float[] trackingPlaneDistances = new float[16];
+
+  // Registry of the known planes: their style index and triangulated polygon. Entries of planes
+  // that were subsumed or stopped tracking are evicted at the start of the next drawPlanes call.
+  private final Map<Plane, PlaneMesh> planeMeshes = new HashMap<>();
+  // Style index given to the next new plane. Never reused, so live planes keep their color.
+  private int nextPlaneIndex;
+  private int frameNumber;
+  private int lastFrameUploadCount;
+  private int lastFrameUploadsAvoidedCount;
+  private long totalUploadCount;
+  private long totalUploadsAvoidedCount;
+
+  // Front-facing planes of the frame, sorted by distance to the camera.
+  private final PlaneSorter<PlaneMesh> sortedPlanes = new PlaneSorter<>();
+
+  // Simplifies and triangulates plane polygons into its buffers, which are uploaded from there.
+  private final PlaneTriangulator triangulator =
+      new PlaneTriangulator(DEFAULT_SIMPLIFY_TOLERANCE_M);
+  private int maxBoundaryVerticesPerPlane = DEFAULT_MAX_BOUNDARY_VERTICES_PER_PLANE;
+  private int maxBoundaryVertices = DEFAULT_MAX_BOUNDARY_VERTICES;
+  // Boundary vertex budget of each plane this frame, from the per-plane and global budgets.
+  private int planeBoundaryBudget = DEFAULT_MAX_BOUNDARY_VERTICES_PER_PLANE;
+
+  // Scratch space for per-frame temporaries. Shared with the caller when one is supplied.
+  private final FrameArena arena;
+
+  // Source of the program and grid texture. Shared with other renderers when one is supplied.
+  private final GpuAssetCache assetCache;
+  // Where OpenGL calls are made, from the asset cache.
+  private final Gl gl;
+
+  public PlaneRenderer() {
+    this(new FrameArena());
+  }
 
-  private final Map<Plane, Integer> planeIndexMap = new HashMap<>();
+  /**
+   * Creates a renderer that takes its per-frame temporaries from the given arena. The arena must be
+   * reset by its owner at the start of every frame.
+   */
+  public PlaneRenderer(FrameArena arena) {
+    this(arena, new GpuAssetCache());
+  }
 
-  public PlaneRenderer() {}
+  /**
+   * Creates a renderer that takes its per-frame temporaries from the given arena and its program
+   * and texture from the given cache.
+   */
+  public PlaneRenderer(FrameArena arena, GpuAssetCache assetCache) {
+    this.arena = arena;
+    this.assetCache = assetCache;
+    this.gl = assetCache.getGl();
+  }
 
   /**
    * Allocates and initializes OpenGL resources needed by the plane renderer. Must be called on the
@@ -117,305 +215,753 @@ public class PlaneRenderer {
    * @param gridDistanceTextureName Name of the PNG file containing the grid texture.
    */
   public void createOnGlThread(Context context, String gridDistanceTextureName) throws IOException {
-    int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
-    int passthroughShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
+    create(context, gridDistanceTextureName, null);
+  }
 
-    planeProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(planeProgram, vertexShader);
-    GLES20.glAttachShader(planeProgram, passthroughShader);
-    GLES20.glLinkProgram(planeProgram);
-    GLES20.glUseProgram(planeProgram);
+  /**
+   * Starts creating the renderer without blocking: the grid texture is read on a background
+   * thread, and the OpenGL objects are created when {@code loader} runs their upload. No planes are
+   * drawn until {@link #isReady()}. Must be called on the OpenGL thread.
+   *
+   * @param context Context for loading the shader and below-named texture.
+   * @param loader Loader that reads the texture and schedules the upload.
+   * @param gridDistanceTextureName Name of the PNG file containing the grid texture.
+   */
+  public void createAsync(
+      Context context, AsyncAssetLoader loader, String gridDistanceTextureName) {
+    ready = false;
+    int[] textureFormats = TextureLoader.supportedCompressedFormats(gl);
+    loader.load(
+        gridDistanceTextureName,
+        () -> TextureLoader.read(context, gridDistanceTextureName, textureFormats),
+        image -> create(context, gridDistanceTextureName, image));
+  }
 
-    ShaderUtil.checkGLError(TAG, "Program creation");
+  /** Returns whether the renderer has been created and draws. */
+  public boolean isReady() {
+    return ready;
+  }
 
-    // Read the texture.
-    Bitmap textureBitmap =
-        BitmapFactory.decodeStream(context.getAssets().open(gridDistanceTextureName));
+  // Creates the OpenGL objects. The texture image is loaded here if it is null.
+  private void create(Context context, String gridDistanceTextureName, TextureLoader.Image image)
+      throws IOException {
+    // Buffers of a previous OpenGL context are gone with it.
+    for (PlaneMesh mesh : planeMeshes.values()) {
+      mesh.forget();
+    }
 
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glGenTextures(textures.length, textures, 0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+    planeProgram = assetCache.acquireProgram(context, VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME);
+    gl.glUseProgram(planeProgram);
 
-    GLES20.glTexParameteri(
-        GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-    GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, textureBitmap, 0);
-    GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    ShaderUtil.checkGLError(gl, TAG, "Program creation");
 
-    ShaderUtil.checkGLError(TAG, "Texture loading");
+    // Read the texture.
+    textures[0] =
+        image != null
+            ? assetCache.acquireTexture(gridDistanceTextureName, image)
+            : assetCache.acquireTexture(context, gridDistanceTextureName);
 
-    planeXZPositionAlphaAttribute = GLES20.glGetAttribLocation(planeProgram, "a_XZPositionAlpha");
+    planeXZPositionAlphaAttribute = gl.glGetAttribLocation(planeProgram, "a_XZPositionAlpha");
 
-    planeModelUniform = GLES20.glGetUniformLocation(planeProgram, "u_Model");
-    planeNormalUniform = GLES20.glGetUniformLocation(planeProgram, "u_Normal");
+    planeModelUniform = gl.glGetUniformLocation(planeProgram, "u_Model");
+    planeNormalUniform = gl.glGetUniformLocation(planeProgram, "u_Normal");
     planeModelViewProjectionUniform =
-        GLES20.glGetUniformLocation(planeProgram, "u_ModelViewProjection");
-    textureUniform = GLES20.glGetUniformLocation(planeProgram, "u_Texture");
-    lineColorUniform = GLES20.glGetUniformLocation(planeProgram, "u_lineColor");
-    dotColorUniform = GLES20.glGetUniformLocation(planeProgram, "u_dotColor");
-    gridControlUniform = GLES20.glGetUniformLocation(planeProgram, "u_gridControl");
-    planeUvMatrixUniform = GLES20.glGetUniformLocation(planeProgram, "u_PlaneUvMatrix");
-
-    ShaderUtil.checkGLError(TAG, "Program parameters");
+        gl.glGetUniformLocation(planeProgram, "u_ModelViewProjection");
+    textureUniform = gl.glGetUniformLocation(planeProgram, "u_Texture");
+    lineColorUniform = gl.glGetUniformLocation(planeProgram, "u_lineColor");
+    dotColorUniform = gl.glGetUniformLocation(planeProgram, "u_dotColor");
+    gridControlUniform = gl.glGetUniformLocation(planeProgram, "u_gridControl");
+    planeUvMatrixUniform = gl.glGetUniformLocation(planeProgram, "u_PlaneUvMatrix");
+    occlusionDiscardUniform = gl.glGetUniformLocation(planeProgram, "u_occlusionDiscard");
+
+    ShaderUtil.checkGLError(gl, TAG, "Program parameters");
+
+    mergedProgram =
+        assetCache.acquireProgram(context, MERGED_VERTEX_SHADER_NAME, MERGED_FRAGMENT_SHADER_NAME);
+    mergedPositionAttribute = gl.glGetAttribLocation(mergedProgram, "a_Position");
+    mergedTexCoordAlphaAttribute = gl.glGetAttribLocation(mergedProgram, "a_TexCoordAlpha");
+    mergedColorAttribute = gl.glGetAttribLocation(mergedProgram, "a_Color");
+    mergedViewProjectionUniform = gl.glGetUniformLocation(mergedProgram, "u_ViewProjection");
+    mergedTextureUniform = gl.glGetUniformLocation(mergedProgram, "u_Texture");
+    mergedGridControlUniform = gl.glGetUniformLocation(mergedProgram, "u_gridControl");
+    mergedOcclusionDiscardUniform =
+        gl.glGetUniformLocation(mergedProgram, "u_occlusionDiscard");
+
+    int[] buffers = new int[2];
+    gl.glGenBuffers(2, buffers, 0);
+    mergedVertexBufferId = buffers[0];
+    mergedIndexBufferId = buffers[1];
+
+    int[] stencilBits = new int[1];
+    gl.glGetIntegerv(GLES20.GL_STENCIL_BITS, stencilBits, 0);
+    useStencil = stencilBits[0] > 0;
+
+    ShaderUtil.checkGLError(gl, TAG, "Merged program parameters");
+    ready = true;
   }
 
-  /** Updates the plane model transform matrix and extents. */
-  private void updatePlaneParameters(
-      float[] planeMatrix, float extentX, float extentZ, FloatBuffer boundary) {
-    System.arraycopy(planeMatrix, 0, modelMatrix, 0, 16);
-    if (boundary == null) {
-      vertexBuffer.limit(0);
-      indexBuffer.limit(0);
+  /**
+   * Selects how planes are submitted. Changing the mode frees the buffers kept for the previous
+   * one, so this should not be called every frame.
+   */
+  public void setDrawMode(DrawMode drawMode) {
+    if (this.drawMode == drawMode) {
       return;
     }
+    this.drawMode = drawMode;
+    for (PlaneMesh mesh : planeMeshes.values()) {
+      mesh.delete(gl);
+      mesh.localVertices = null;
+      mesh.stripIndices = null;
+    }
+  }
+
+  public DrawMode getDrawMode() {
+    return drawMode;
+  }
+
+  /** Returns how many draw calls the last {@link #drawPlanes} call issued. */
+  public int getLastFrameDrawCallCount() {
+    return lastFrameDrawCallCount;
+  }
 
-    // Generate a new set of vertices and a corresponding triangle strip index set so that
-    // the plane boundary polygon has a fading edge. This is done by making a copy of the
-    // boundary polygon vertices and scaling it down around center to push it inwards. Then
-    // the index buffer is setup accordingly.
-    boundary.rewind();
-    int boundaryVertices = boundary.limit() / 2;
-    int numVertices;
-    int numIndices;
-
-    numVertices = boundaryVertices * VERTS_PER_BOUNDARY_VERT;
-    // drawn as GL_TRIANGLE_STRIP with 3n-2 triangles (n-2 for fill, 2n for perimeter).
-    numIndices = boundaryVertices * INDICES_PER_BOUNDARY_VERT;
-
-    if (vertexBuffer.capacity() < numVertices * COORDS_PER_VERTEX) {
-      int size = vertexBuffer.capacity();
-      while (size < numVertices * COORDS_PER_VERTEX) {
-        size *= 2;
+  /**
+   * Sets how plane boundary polygons are simplified before they are triangulated. Planes whose
+   * polygon does not change are only simplified again when their budget changes.
+   *
+   * @param toleranceMeters Largest distance between a removed boundary vertex and the simplified
+   *     boundary. Zero only enforces the budgets.
+   * @param maxVerticesPerPlane Boundary vertex budget of each plane.
+   * @param maxVertices Boundary vertex budget shared by all planes drawn in a frame. Each plane
+   *     gets an equal share, capped by {@code maxVerticesPerPlane}.
+   */
+  public void setSimplification(float toleranceMeters, int maxVerticesPerPlane, int maxVertices) {
+    triangulator.setTolerance(toleranceMeters);
+    maxBoundaryVerticesPerPlane = maxVerticesPerPlane;
+    maxBoundaryVertices = maxVertices;
+    // The hash does not cover the tolerance, so rebuild every mesh.
+    for (PlaneMesh mesh : planeMeshes.values()) {
+      mesh.uploaded = false;
+    }
+  }
+
+  /**
+   * Deletes the plane buffers and returns the shared program and texture to the {@link
+   * GpuAssetCache}. Must be called on the OpenGL thread.
+   */
+  public void release() {
+    ready = false;
+    if (planeProgram == 0) {
+      return;
+    }
+    assetCache.releaseProgram(planeProgram);
+    assetCache.releaseProgram(mergedProgram);
+    assetCache.releaseTexture(textures[0]);
+    planeProgram = 0;
+    mergedProgram = 0;
+    gl.glDeleteBuffers(2, new int[] {mergedVertexBufferId, mergedIndexBufferId}, 0);
+    for (PlaneMesh mesh : planeMeshes.values()) {
+      mesh.delete(gl);
+    }
+    planeMeshes.clear();
+  }
+
+  /**
+   * Returns how many plane meshes were rebuilt during the last {@link #drawPlanes} call. In {@link
+   * DrawMode#PER_PLANE} mode each rebuilt mesh is uploaded; in {@link DrawMode#MERGED} mode the
+   * merged buffer is streamed every frame and only the triangulation is reused.
+   */
+  public int getLastFrameUploadCount() {
+    return lastFrameUploadCount;
+  }
+
+  /**
+   * Returns how many planes were drawn from their existing mesh during the last {@link
+   * #drawPlanes} call, because their polygon had not changed.
+   */
+  public int getLastFrameUploadsAvoidedCount() {
+    return lastFrameUploadsAvoidedCount;
+  }
+
+  /** Returns how many plane meshes have been rebuilt in total. */
+  public long getTotalUploadCount() {
+    return totalUploadCount;
+  }
+
+  /** Returns how many plane draws have reused an existing mesh in total. */
+  public long getTotalUploadsAvoidedCount() {
+    return totalUploadsAvoidedCount;
+  }
+
+  /**
+   * Registry entry of one plane: its style index and its triangulated polygon, held in vertex and
+   * index buffers in {@link DrawMode#PER_PLANE} mode, or copied in client memory to be merged in
+   * {@link DrawMode#MERGED} mode.
+   */
+  private static final class PlaneMesh {
+    final Plane plane;
+    // Selects the color and grid rotation of the plane.
+    final int planeIndex;
+    int vertexBufferId;
+    int indexBufferId;
+    int vertexCapacityBytes;
+    int indexCapacityBytes;
+    int indexCount;
+    // Merged mode only: (x, z, alpha) per vertex and triangle strip indices, in plane space.
+    float[] localVertices;
+    short[] stripIndices;
+    int vertexCount;
+    // Hash of the polygon, extents and vertex budget the buffers were built from.
+    int polygonHash;
+    boolean uploaded;
+    // Last frame in which the plane was tracked.
+    int lastSeenFrame;
+
+    PlaneMesh(Plane plane, int planeIndex) {
+      this.plane = plane;
+      this.planeIndex = planeIndex;
+    }
+
+    // Deletes the buffers. The polygon is rebuilt the next time the plane is drawn.
+    void delete(Gl gl) {
+      if (vertexBufferId != 0) {
+        gl.glDeleteBuffers(2, new int[] {vertexBufferId, indexBufferId}, 0);
       }
-      vertexBuffer =
-          ByteBuffer.allocateDirect(BYTES_PER_FLOAT * size)
-              .order(ByteOrder.nativeOrder())
-              .asFloatBuffer();
+      forget();
+    }
+
+    // Drops the names of buffers that were deleted along with their OpenGL context.
+    void forget() {
+      vertexBufferId = 0;
+      indexBufferId = 0;
+      vertexCapacityBytes = 0;
+      indexCapacityBytes = 0;
+      uploaded = false;
+    }
+  }
+
+  /**
+   * Makes sure the buffers of a plane hold its current polygon, re-triangulating and uploading it
+   * only when it has changed since the last upload.
+   */
+  private void updatePlaneMesh(PlaneMesh mesh, Plane plane) {
+    FloatBuffer boundary = plane.getPolygon();
+    float extentX = plane.getExtentX();
+    float extentZ = plane.getExtentZ();
+    int hash = PlaneSelection.meshHash(boundary, extentX, extentZ, planeBoundaryBudget);
+    if (mesh.uploaded && mesh.polygonHash == hash) {
+      lastFrameUploadsAvoidedCount++;
+      return;
     }
-    vertexBuffer.rewind();
-    vertexBuffer.limit(numVertices * COORDS_PER_VERTEX);
 
-    if (indexBuffer.capacity() < numIndices) {
-      int size = indexBuffer.capacity();
-      while (size < numIndices) {
-        size *= 2;
+    triangulator.triangulate(boundary, extentX, extentZ, planeBoundaryBudget);
+    FloatBuffer vertexBuffer = triangulator.getVertices();
+    ShortBuffer indexBuffer = triangulator.getIndices();
+    mesh.indexCount = indexBuffer.limit();
+    mesh.vertexCount = vertexBuffer.limit() / COORDS_PER_VERTEX;
+    mesh.polygonHash = hash;
+    mesh.uploaded = true;
+    lastFrameUploadCount++;
+    if (mesh.indexCount == 0) {
+      return;
+    }
+
+    if (drawMode == DrawMode.MERGED) {
+      if (mesh.localVertices == null || mesh.localVertices.length < vertexBuffer.limit()) {
+        mesh.localVertices = new float[2 * vertexBuffer.limit()];
+        mesh.stripIndices = new short[2 * mesh.indexCount];
       }
-      indexBuffer =
-          ByteBuffer.allocateDirect(BYTES_PER_SHORT * size)
-              .order(ByteOrder.nativeOrder())
-              .asShortBuffer();
+      vertexBuffer.rewind();
+      vertexBuffer.get(mesh.localVertices, 0, vertexBuffer.limit());
+      indexBuffer.rewind();
+      indexBuffer.get(mesh.stripIndices, 0, mesh.indexCount);
+      return;
     }
+
+    if (mesh.vertexBufferId == 0) {
+      int[] buffers = new int[2];
+      gl.glGenBuffers(2, buffers, 0);
+      mesh.vertexBufferId = buffers[0];
+      mesh.indexBufferId = buffers[1];
+    }
+
+    // Polygons tend to grow as tracking continues, so buffers are sized with room to spare.
+    int vertexBytes = vertexBuffer.limit() * BYTES_PER_FLOAT;
+    vertexBuffer.rewind();
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.vertexBufferId);
+    if (vertexBytes > mesh.vertexCapacityBytes) {
+      mesh.vertexCapacityBytes = 2 * vertexBytes;
+      gl.glBufferData(
+          GLES20.GL_ARRAY_BUFFER, mesh.vertexCapacityBytes, null, GLES20.GL_DYNAMIC_DRAW);
+    }
+    gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, vertexBytes, vertexBuffer);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+    int indexBytes = mesh.indexCount * BYTES_PER_SHORT;
     indexBuffer.rewind();
-    indexBuffer.limit(numIndices);
-
-    // Note: when either dimension of the bounding box is smaller than 2*FADE_RADIUS_M we
-    // generate a bunch of 0-area triangles.  These don't get rendered though so it works
-    // out ok.
-    float xScale = Math.max((extentX - 2 * FADE_RADIUS_M) / extentX, 0.0f);
-    float zScale = Math.max((extentZ - 2 * FADE_RADIUS_M) / extentZ, 0.0f);
-
-    while (boundary.hasRemaining()) {
-      float x = boundary.get();
-      float z = boundary.get();
-      vertexBuffer.put(x);
-      vertexBuffer.put(z);
-      vertexBuffer.put(0.0f);
-      vertexBuffer.put(x * xScale);
-      vertexBuffer.put(z * zScale);
-      vertexBuffer.put(1.0f);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.indexBufferId);
+    if (indexBytes > mesh.indexCapacityBytes) {
+      mesh.indexCapacityBytes = 2 * indexBytes;
+      gl.glBufferData(
+          GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.indexCapacityBytes, null, GLES20.GL_DYNAMIC_DRAW);
     }
+    gl.glBufferSubData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0, indexBytes, indexBuffer);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+    ShaderUtil.checkGLError(gl, TAG, "Uploading plane mesh");
+  }
 
-    // step 1, perimeter
-    indexBuffer.put((short) ((boundaryVertices - 1) * 2));
-    for (int i = 0; i < boundaryVertices; ++i) {
-      indexBuffer.put((short) (i * 2));
-      indexBuffer.put((short) (i * 2 + 1));
+  // Adds a tracking plane whose distance to the camera is computed with the others.
+  private void addTrackingPlane(PlaneMesh mesh, Pose centerPose) {
+    int count = trackingPlanes.size();
+    if (count == trackingPlaneDistances.length) {
+      trackingPlanePoses = Arrays.copyOf(trackingPlanePoses, 2 * PoseMath.FLOATS * count);
+      trackingPlaneDistances = Arrays.copyOf(trackingPlaneDistances, 2 * count);
     }
-    indexBuffer.put((short) 1);
-    // This leaves us on the interior edge of the perimeter between the inset vertices
-    // for boundary verts n-1 and 0.
-
-    // step 2, interior:
-    for (int i = 1; i < boundaryVertices / 2; ++i) {
-      indexBuffer.put((short) ((boundaryVertices - 1 - i) * 2 + 1));
-      indexBuffer.put((short) (i * 2 + 1));
+    int offset = PoseMath.FLOATS * count;
+    centerPose.getTranslation(trackingPlanePoses, offset);
+    centerPose.getRotationQuaternion(trackingPlanePoses, offset + 3);
+    trackingPlanes.add(mesh);
+  }
+
+  // Evicts the entries of planes that were not seen this frame, deleting their buffers.
+  private void evictStalePlaneMeshes(int seenCount) {
+    if (planeMeshes.size() <= seenCount) {
+      return;
     }
-    if (boundaryVertices % 2 != 0) {
-      indexBuffer.put((short) ((boundaryVertices / 2) * 2 + 1));
+    Iterator<PlaneMesh> it = planeMeshes.values().iterator();
+    while (it.hasNext()) {
+      PlaneMesh mesh = it.next();
+      if (mesh.lastSeenFrame != frameNumber) {
+        mesh.delete(gl);
+        it.remove();
+      }
     }
   }
 
-  private void draw(float[] cameraView, float[] cameraPerspective, float[] planeNormal) {
+  private void draw(
+      float[] cameraView, float[] cameraPerspective, float[] planeNormal, PlaneMesh mesh) {
     // Build the ModelView and ModelViewProjection matrices
     // for calculating cube position and light.
-    Matrix.multiplyMM(modelViewMatrix, 0, cameraView, 0, modelMatrix, 0);
-    Matrix.multiplyMM(modelViewProjectionMatrix, 0, cameraPerspective, 0, modelViewMatrix, 0);
+    Mat4.multiply(modelViewMatrix, 0, cameraView, 0, modelMatrix, 0);
+    Mat4.multiply(modelViewProjectionMatrix, 0, cameraPerspective, 0, modelViewMatrix, 0);
 
     // Set the position of the plane
-    vertexBuffer.rewind();
-    GLES20.glVertexAttribPointer(
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.vertexBufferId);
+    gl.glVertexAttribPointer(
         planeXZPositionAlphaAttribute,
         COORDS_PER_VERTEX,
         GLES20.GL_FLOAT,
         false,
         BYTES_PER_FLOAT * COORDS_PER_VERTEX,
-        vertexBuffer);
+        0);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
     // Set the Model and ModelViewProjection matrices in the shader.
-    GLES20.glUniformMatrix4fv(planeModelUniform, 1, false, modelMatrix, 0);
-    GLES20.glUniform3f(planeNormalUniform, planeNormal[0], planeNormal[1], planeNormal[2]);
-    GLES20.glUniformMatrix4fv(
+    gl.glUniformMatrix4fv(planeModelUniform, 1, false, modelMatrix, 0);
+    gl.glUniform3f(planeNormalUniform, planeNormal[0], planeNormal[1], planeNormal[2]);
+    gl.glUniformMatrix4fv(
         planeModelViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
 
-    indexBuffer.rewind();
-    GLES20.glDrawElements(
-        GLES20.GL_TRIANGLE_STRIP, indexBuffer.limit(), GLES20.GL_UNSIGNED_SHORT, indexBuffer);
-    ShaderUtil.checkGLError(TAG, "Drawing plane");
-  }
-
-  static class SortablePlane {
-    final float distance;
-    final Plane plane;
-
-    SortablePlane(float distance, Plane plane) {
-      this.distance = distance;
-      this.plane = plane;
-    }
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.indexBufferId);
+    gl.glDrawElements(
+        GLES20.GL_TRIANGLE_STRIP, mesh.indexCount, GLES20.GL_UNSIGNED_SHORT, 0);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    ShaderUtil.checkGLError(gl, TAG, "Drawing plane");
   }
 
   /**
    * Draws the collection of tracked planes, with closer planes hiding more distant ones.
    *
-   * @param allPlanes The collection of planes to draw.
+   * <p>When the surface has a stencil buffer, it is used to track which pixels already show a
+   * plane, and must be cleared to 0 before each frame. Otherwise the alpha channel of the color
+   * buffer is overwritten instead.
+   *
+   * @param allPlanes The planes to draw, in a list the caller reuses across frames. It is indexed,
+   *     so that no iterator is allocated.
    * @param cameraPose The pose of the camera, as returned by {@link Camera#getPose()}
    * @param cameraPerspective The projection matrix, as returned by {@link
    *     Camera#getProjectionMatrix(float[], int, float, float)}
    */
-  public void drawPlanes(Collection<Plane> allPlanes, Pose cameraPose, float[] cameraPerspective) {
+  public void drawPlanes(List<Plane> allPlanes, Pose cameraPose, float[] cameraPerspective) {
+    if (!ready) {
+      return;
+    }
     // Planes must be sorted by distance from camera so that we draw closer planes first, and
     // they occlude the farther planes.
-    List<SortablePlane> sortedPlanes = new ArrayList<>();
-
-    for (Plane plane : allPlanes) {
-      if (plane.getTrackingState() != TrackingState.TRACKING || plane.getSubsumedBy() != null) {
+    sortedPlanes.clear();
+    frameNumber++;
+    lastFrameUploadCount = 0;
+    lastFrameUploadsAvoidedCount = 0;
+
+    int seenCount = 0;
+    for (int p = 0; p < allPlanes.size(); ++p) {
+      Plane plane = allPlanes.get(p);
+      // Subsumed and stopped planes will never be drawn again, so their entries are evicted.
+      // Paused and back-facing planes keep theirs, as they are likely to be seen again.
+      TrackingState trackingState = plane.getTrackingState();
+      boolean subsumed = plane.getSubsumedBy() != null;
+      if (trackingState == TrackingState.STOPPED || subsumed) {
+        continue;
+      }
+      PlaneMesh mesh = planeMeshes.get(plane);
+      if (mesh == null) {
+        mesh = new PlaneMesh(plane, nextPlaneIndex++);
+        planeMeshes.put(plane, mesh);
+      }
+      mesh.lastSeenFrame = frameNumber;
+      seenCount++;
+      if (!PlaneSelection.isDrawable(trackingState == TrackingState.TRACKING, subsumed)) {
         continue;
       }
 
-      float distance = calculateDistanceToPlane(plane.getCenterPose(), cameraPose);
-      if (distance < 0) { // Plane is back-facing.
+      addTrackingPlane(mesh, plane.getCenterPose());
+    }
+    // The distances of all tracking planes are computed at once.
+    int trackingCount = trackingPlanes.size();
+    PoseMath.planeDistances(
+        trackingPlanePoses,
+        0,
+        trackingCount,
+        cameraPose.tx(),
+        cameraPose.ty(),
+        cameraPose.tz(),
+        trackingPlaneDistances,
+        0);
+    for (int i = 0; i < trackingCount; ++i) {
+      float distance = trackingPlaneDistances[i];
+      if (!PlaneSelection.isFacingCamera(distance)) {
         continue;
       }
-      sortedPlanes.add(new SortablePlane(distance, plane));
+      sortedPlanes.add(distance, trackingPlanes.get(i));
+    }
+    trackingPlanes.clear();
+    evictStalePlaneMeshes(seenCount);
+    sortedPlanes.sort();
+    // Equal shares of the global budget only change with the plane count, so unchanged planes
+    // mostly keep their cached meshes.
+    planeBoundaryBudget =
+        PolygonSimplifier.shareBudget(
+            maxBoundaryVerticesPerPlane, maxBoundaryVertices, sortedPlanes.size());
+
+    cameraPose.toMatrix(cameraWorld, 0);
+    Mat4.invertRigid(cameraView, 0, cameraWorld, 0);
+
+    // Planes are drawn with additive blending, closest first, and each pixel only receives the
+    // closest plane covering it. That is tracked in the stencil buffer when the surface has one,
+    // and in the alpha channel of the color buffer otherwise.
+    if (useStencil) {
+      // Only draw where no plane has been drawn yet, and mark the pixels drawn.
+      gl.glEnable(GLES20.GL_STENCIL_TEST);
+      gl.glStencilFunc(GLES20.GL_EQUAL, 0, 0xff);
+      gl.glStencilOp(GLES20.GL_KEEP, GLES20.GL_KEEP, GLES20.GL_INCR);
+    } else {
+      // Start by clearing the alpha channel of the color buffer to 1.0.
+      gl.glClearColor(1, 1, 1, 1);
+      gl.glColorMask(false, false, false, true);
+      gl.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+      gl.glColorMask(true, true, true, true);
     }
-    Collections.sort(
-        sortedPlanes,
-        new Comparator<SortablePlane>() {
-          @Override
-          public int compare(SortablePlane a, SortablePlane b) {
-            return Float.compare(a.distance, b.distance);
-          }
-        });
-
-    float[] cameraView = new float[16];
-    cameraPose.inverse().toMatrix(cameraView, 0);
-
-    // Planes are drawn with additive blending, masked by the alpha channel for occlusion.
-
-    // Start by clearing the alpha channel of the color buffer to 1.0.
-    GLES20.glClearColor(1, 1, 1, 1);
-    GLES20.glColorMask(false, false, false, true);
-    GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
-    GLES20.glColorMask(true, true, true, true);
 
     // Disable depth write.
-    GLES20.glDepthMask(false);
+    gl.glDepthMask(false);
+
+    gl.glEnable(GLES20.GL_BLEND);
+    if (useStencil) {
+      // Additive blending, leaving the alpha channel untouched.
+      gl.glBlendFuncSeparate(
+          GLES20.GL_ONE, GLES20.GL_ONE, // RGB (src, dest)
+          GLES20.GL_ZERO, GLES20.GL_ONE); // ALPHA (src, dest)
+    } else {
+      // Additive blending, masked by alpha channel, clearing alpha channel.
+      gl.glBlendFuncSeparate(
+          GLES20.GL_DST_ALPHA, GLES20.GL_ONE, // RGB (src, dest)
+          GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA); // ALPHA (src, dest)
+    }
+    float occlusionDiscard = useStencil ? STENCIL_OCCLUSION_DISCARD : 0.0f;
+
+    lastFrameDrawCallCount = 0;
+    if (drawMode == DrawMode.MERGED) {
+      drawMerged(cameraPerspective, occlusionDiscard);
+    } else {
+      drawPerPlane(cameraPerspective, occlusionDiscard);
+    }
+
+    // Clean up the state we set
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    gl.glDisable(GLES20.GL_BLEND);
+    gl.glDisable(GLES20.GL_STENCIL_TEST);
+    gl.glDepthMask(true);
 
-    // Additive blending, masked by alpha channel, clearing alpha channel.
-    GLES20.glEnable(GLES20.GL_BLEND);
-    GLES20.glBlendFuncSeparate(
-        GLES20.GL_DST_ALPHA, GLES20.GL_ONE, // RGB (src, dest)
-        GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA); // ALPHA (src, dest)
+    totalUploadCount += lastFrameUploadCount;
+    totalUploadsAvoidedCount += lastFrameUploadsAvoidedCount;
 
+    ShaderUtil.checkGLError(gl, TAG, "Cleaning up after drawing planes");
+  }
+
+  // Draws the sorted planes one draw call each, from their own buffers.
+  private void drawPerPlane(float[] cameraPerspective, float occlusionDiscard) {
     // Set up the shader.
-    GLES20.glUseProgram(planeProgram);
+    gl.glUseProgram(planeProgram);
 
     // Attach the texture.
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-    GLES20.glUniform1i(textureUniform, 0);
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+    gl.glUniform1i(textureUniform, 0);
 
     // Shared fragment uniforms.
-    GLES20.glUniform4fv(gridControlUniform, 1, GRID_CONTROL, 0);
+    gl.glUniform4fv(gridControlUniform, 1, GRID_CONTROL, 0);
+    gl.glUniform1f(occlusionDiscardUniform, occlusionDiscard);
 
     // Enable vertex arrays
-    GLES20.glEnableVertexAttribArray(planeXZPositionAlphaAttribute);
+    gl.glEnableVertexAttribArray(planeXZPositionAlphaAttribute);
+
+    ShaderUtil.checkGLError(gl, TAG, "Setting up to draw planes");
 
-    ShaderUtil.checkGLError(TAG, "Setting up to draw planes");
+    for (int i = 0; i < sortedPlanes.size(); ++i) {
+      PlaneMesh mesh = sortedPlanes.take(i);
+      Plane plane = mesh.plane;
 
-    for (SortablePlane sortedPlane : sortedPlanes) {
-      Plane plane = sortedPlane.plane;
-      float[] planeMatrix = new float[16];
-      plane.getCenterPose().toMatrix(planeMatrix, 0);
+      int mark = arena.mark();
+      float[] planeMatrix = arena.mat4();
+      Pose centerPose = plane.getCenterPose();
+      centerPose.toMatrix(planeMatrix, 0);
 
-      float[] normal = new float[3];
+      float[] normal = arena.vec4();
       // Get transformed Y axis of plane's coordinate system.
-      plane.getCenterPose().getTransformedAxis(1, 1.0f, normal, 0);
+      centerPose.getTransformedAxis(1, 1.0f, normal, 0);
 
-      updatePlaneParameters(
-          planeMatrix, plane.getExtentX(), plane.getExtentZ(), plane.getPolygon());
+      System.arraycopy(planeMatrix, 0, modelMatrix, 0, 16);
+      updatePlaneMesh(mesh, plane);
+      if (mesh.indexCount == 0) {
+        arena.release(mark);
+        continue;
+      }
 
-      // Get plane index. Keep a map to assign same indices to same planes.
-      Integer planeIndex = planeIndexMap.get(plane);
-      if (planeIndex == null) {
-        planeIndex = planeIndexMap.size();
-        planeIndexMap.put(plane, planeIndex);
+      int colorRgba = updatePlaneStyle(mesh.planeIndex);
+      colorRgbaToFloat(planeColor, colorRgba);
+      gl.glUniform4fv(lineColorUniform, 1, planeColor, 0);
+      gl.glUniform4fv(dotColorUniform, 1, planeColor, 0);
+      gl.glUniformMatrix2fv(planeUvMatrixUniform, 1, false, planeAngleUvMatrix, 0);
+
+      draw(cameraView, cameraPerspective, normal, mesh);
+      lastFrameDrawCallCount++;
+      arena.release(mark);
+    }
+
+    gl.glDisableVertexAttribArray(planeXZPositionAlphaAttribute);
+  }
+
+  // Draws the sorted planes from a single buffer of world space vertices. The triangles keep the
+  // order of the planes, so closer planes still occlude farther ones within the draw call.
+  private void drawMerged(float[] cameraPerspective, float occlusionDiscard) {
+    Mat4.multiply(viewProjectionMatrix, 0, cameraPerspective, 0, cameraView, 0);
+
+    gl.glUseProgram(mergedProgram);
+
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+    gl.glUniform1i(mergedTextureUniform, 0);
+
+    gl.glUniformMatrix4fv(mergedViewProjectionUniform, 1, false, viewProjectionMatrix, 0);
+    gl.glUniform4fv(mergedGridControlUniform, 1, GRID_CONTROL, 0);
+    gl.glUniform1f(mergedOcclusionDiscardUniform, occlusionDiscard);
+
+    gl.glEnableVertexAttribArray(mergedPositionAttribute);
+    gl.glEnableVertexAttribArray(mergedTexCoordAlphaAttribute);
+    gl.glEnableVertexAttribArray(mergedColorAttribute);
+
+    ShaderUtil.checkGLError(gl, TAG, "Setting up to draw merged planes");
+
+    mergedVertices.clear();
+    mergedIndices.clear();
+    mergedVertexCount = 0;
+    for (int i = 0; i < sortedPlanes.size(); ++i) {
+      PlaneMesh mesh = sortedPlanes.take(i);
+      Plane plane = mesh.plane;
+
+      updatePlaneMesh(mesh, plane);
+      if (mesh.indexCount == 0) {
+        continue;
+      }
+      // Indices are 16 bits, so a full batch is drawn before it would overflow them.
+      if (mergedVertexCount + mesh.vertexCount > MAX_MERGED_VERTICES) {
+        flushMerged();
       }
 
-      // Set plane color. Computed deterministically from the Plane index.
-      int colorIndex = planeIndex % PLANE_COLORS_RGBA.length;
-      colorRgbaToFloat(planeColor, PLANE_COLORS_RGBA[colorIndex]);
-      GLES20.glUniform4fv(lineColorUniform, 1, planeColor, 0);
-      GLES20.glUniform4fv(dotColorUniform, 1, planeColor, 0);
-
-      // Each plane will have its own angle offset from others, to make them easier to
-      // distinguish. Compute a 2x2 rotation matrix from the angle.
-      float angleRadians = planeIndex * 0.144f;
-      float uScale = DOTS_PER_METER;
-      float vScale = DOTS_PER_METER * EQUILATERAL_TRIANGLE_SCALE;
-      planeAngleUvMatrix[0] = +(float) Math.cos(angleRadians) * uScale;
-      planeAngleUvMatrix[1] = -(float) Math.sin(angleRadians) * vScale;
-      planeAngleUvMatrix[2] = +(float) Math.sin(angleRadians) * uScale;
-      planeAngleUvMatrix[3] = +(float) Math.cos(angleRadians) * vScale;
-      GLES20.glUniformMatrix2fv(planeUvMatrixUniform, 1, false, planeAngleUvMatrix, 0);
-
-      draw(cameraView, cameraPerspective, normal);
+      Pose centerPose = plane.getCenterPose();
+      centerPose.toMatrix(modelMatrix, 0);
+      int colorRgba = updatePlaneStyle(mesh.planeIndex);
+      appendMergedPlane(mesh, centerPose, colorRgba);
     }
+    flushMerged();
 
-    // Clean up the state we set
-    GLES20.glDisableVertexAttribArray(planeXZPositionAlphaAttribute);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-    GLES20.glDisable(GLES20.GL_BLEND);
-    GLES20.glDepthMask(true);
+    gl.glDisableVertexAttribArray(mergedPositionAttribute);
+    gl.glDisableVertexAttribArray(mergedTexCoordAlphaAttribute);
+    gl.glDisableVertexAttribArray(mergedColorAttribute);
+  }
 
-    ShaderUtil.checkGLError(TAG, "Cleaning up after drawing planes");
+  /**
+   * Appends a plane to the merged buffers: its vertices transformed to world space with their grid
+   * coordinates and color, and its triangle strip converted to a triangle list.
+   */
+  private void appendMergedPlane(PlaneMesh mesh, Pose centerPose, int colorRgba) {
+    int maxIndices = 3 * (mesh.indexCount - 2);
+    ensureMergedCapacity(mesh.vertexCount, maxIndices);
+
+    // Same grid projection as plane.vert: two axes orthogonal to the normal, chosen to not be
+    // co-linear with either horizontal or vertical plane normals. u = cross(normal, (1, 1, 0)) and
+    // v = cross(normal, u).
+    float[] normal = gridAxisV;
+    centerPose.getTransformedAxis(1, 1.0f, normal, 0);
+    Vec3.cross(gridAxisU, 0, normal, 0, GRID_AXIS_HINT, 0);
+    Vec3.normalize(gridAxisU, 0);
+    Vec3.cross(gridAxisV, 0, normal, 0, gridAxisU, 0);
+    Vec3.normalize(gridAxisV, 0);
+
+    float[] m = modelMatrix;
+    float[] uv = planeAngleUvMatrix;
+    byte red = (byte) (colorRgba >> 24);
+    byte green = (byte) (colorRgba >> 16);
+    byte blue = (byte) (colorRgba >> 8);
+    byte alpha = (byte) colorRgba;
+    float[] local = mesh.localVertices;
+    for (int i = 0; i < mesh.vertexCount; ++i) {
+      float x = local[i * COORDS_PER_VERTEX];
+      float z = local[i * COORDS_PER_VERTEX + 1];
+      float worldX = m[0] * x + m[8] * z + m[12];
+      float worldY = m[1] * x + m[9] * z + m[13];
+      float worldZ = m[2] * x + m[10] * z + m[14];
+      float u = worldX * gridAxisU[0] + worldY * gridAxisU[1] + worldZ * gridAxisU[2];
+      float v = worldX * gridAxisV[0] + worldY * gridAxisV[1] + worldZ * gridAxisV[2];
+      mergedVertices.putFloat(worldX);
+      mergedVertices.putFloat(worldY);
+      mergedVertices.putFloat(worldZ);
+      mergedVertices.putFloat(uv[0] * u + uv[2] * v);
+      mergedVertices.putFloat(uv[1] * u + uv[3] * v);
+      mergedVertices.putFloat(local[i * COORDS_PER_VERTEX + 2]);
+      mergedVertices.put(red);
+      mergedVertices.put(green);
+      mergedVertices.put(blue);
+      mergedVertices.put(alpha);
+    }
+
+    // Every window of three strip indices is a triangle, with alternating winding. Windows that
+    // repeat an index are the degenerate triangles joining the perimeter and the interior.
+    short[] strip = mesh.stripIndices;
+    int base = mergedVertexCount;
+    for (int i = 0; i + 2 < mesh.indexCount; ++i) {
+      int a = strip[i];
+      int b = strip[i + 1];
+      int c = strip[i + 2];
+      if (a == b || b == c || a == c) {
+        continue;
+      }
+      if ((i & 1) != 0) {
+        int swap = a;
+        a = b;
+        b = swap;
+      }
+      mergedIndices.put((short) (base + a));
+      mergedIndices.put((short) (base + b));
+      mergedIndices.put((short) (base + c));
+    }
+    mergedVertexCount += mesh.vertexCount;
+  }
+
+  // Grows the merged buffers, keeping their content, so that they can take the given counts more.
+  private void ensureMergedCapacity(int vertexCount, int indexCount) {
+    int vertexBytes = mergedVertices.position() + vertexCount * MERGED_VERTEX_STRIDE;
+    if (vertexBytes > mergedVertices.capacity()) {
+      ByteBuffer grown =
+          ByteBuffer.allocateDirect(Math.max(vertexBytes, 2 * mergedVertices.capacity()))
+              .order(ByteOrder.nativeOrder());
+      mergedVertices.flip();
+      grown.put(mergedVertices);
+      mergedVertices = grown;
+    }
+    int indices = mergedIndices.position() + indexCount;
+    if (indices > mergedIndices.capacity()) {
+      int size = Math.max(indices, 2 * mergedIndices.capacity());
+      ShortBuffer grown =
+          ByteBuffer.allocateDirect(BYTES_PER_SHORT * size)
+              .order(ByteOrder.nativeOrder())
+              .asShortBuffer();
+      mergedIndices.flip();
+      grown.put(mergedIndices);
+      mergedIndices = grown;
+    }
+  }
+
+  // Streams the merged buffers to OpenGL, draws them, and empties them.
+  private void flushMerged() {
+    int indexCount = mergedIndices.position();
+    if (indexCount == 0) {
+      return;
+    }
+    mergedVertices.flip();
+    mergedIndices.flip();
+
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mergedVertexBufferId);
+    gl.glBufferData(
+        GLES20.GL_ARRAY_BUFFER, mergedVertices.limit(), mergedVertices, GLES20.GL_STREAM_DRAW);
+    gl.glVertexAttribPointer(
+        mergedPositionAttribute, 3, GLES20.GL_FLOAT, false, MERGED_VERTEX_STRIDE, 0);
+    gl.glVertexAttribPointer(
+        mergedTexCoordAlphaAttribute,
+        3,
+        GLES20.GL_FLOAT,
+        false,
+        MERGED_VERTEX_STRIDE,
+        MERGED_TEX_COORD_ALPHA_OFFSET);
+    gl.glVertexAttribPointer(
+        mergedColorAttribute,
+        4,
+        GLES20.GL_UNSIGNED_BYTE,
+        true,
+        MERGED_VERTEX_STRIDE,
+        MERGED_COLOR_OFFSET);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mergedIndexBufferId);
+    gl.glBufferData(
+        GLES20.GL_ELEMENT_ARRAY_BUFFER,
+        indexCount * BYTES_PER_SHORT,
+        mergedIndices,
+        GLES20.GL_STREAM_DRAW);
+    gl.glDrawElements(GLES20.GL_TRIANGLES, indexCount, GLES20.GL_UNSIGNED_SHORT, 0);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    lastFrameDrawCallCount++;
+    ShaderUtil.checkGLError(gl, TAG, "Drawing merged planes");
+
+    mergedVertices.clear();
+    mergedIndices.clear();
+    mergedVertexCount = 0;
+  }
+
+  /**
+   * Computes the grid rotation of a plane into {@link #planeAngleUvMatrix} and returns its color.
+   * Both are derived deterministically from the index assigned to the plane when it was first
+   * seen.
+   */
+  private int updatePlaneStyle(int planeIndex) {
+    // Each plane will have its own angle offset from others, to make them easier to
+    // distinguish. Compute a 2x2 rotation matrix from the angle.
+    float angleRadians = planeIndex * 0.144f;
+    float uScale = DOTS_PER_METER;
+    float vScale = DOTS_PER_METER * EQUILATERAL_TRIANGLE_SCALE;
+    planeAngleUvMatrix[0] = +(float) Math.cos(angleRadians) * uScale;
+    planeAngleUvMatrix[1] = -(float) Math.sin(angleRadians) * vScale;
+    planeAngleUvMatrix[2] = +(float) Math.sin(angleRadians) * uScale;
+    planeAngleUvMatrix[3] = +(float) Math.cos(angleRadians) * vScale;
+
+    return PLANE_COLORS_RGBA[planeIndex % PLANE_COLORS_RGBA.length];
   }
 
   // Calculate the normal distance to plane from cameraPose, the given planePose should have y axis
   // parallel to plane's normal, for example plane's center pose or hit test pose.
   public static float calculateDistanceToPlane(Pose planePose, Pose cameraPose) {
-    float[] normal = new float[3];
-    float cameraX = cameraPose.tx();
-    float cameraY = cameraPose.ty();
-    float cameraZ = cameraPose.tz();
-    // Get transformed Y axis of plane's coordinate system.
-    planePose.getTransformedAxis(1, 1.0f, normal, 0);
-    // Compute dot product of plane's normal with vector from camera to plane center.
-    return (cameraX - planePose.tx()) * normal[0]
-        + (cameraY - planePose.ty()) * normal[1]
-        + (cameraZ - planePose.tz()) * normal[2];
+    return PlaneSorter.distanceToPlane(planePose, cameraPose);
   }
 
   private static void colorRgbaToFloat(float[] planeColor, int colorRgba) {
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Which planes {@link PlaneRenderer} draws, and when it rebuilds the mesh of a plane. The replay of
+ * recorded sessions makes the same decisions with these methods.
+ */
+public final class PlaneSelection {
+  private PlaneSelection() {}
+
+  /** Returns whether a plane can be drawn: it is tracking, and not subsumed by another plane. */
+  public static boolean isDrawable(boolean tracking, boolean subsumed) {
+    return tracking && !subsumed;
+  }
+
+  /**
+   * Returns whether a plane faces the camera, from the distance of the camera to the plane
+   * computed by {@link com.google.ar.core.examples.java.common.math.PoseMath#planeDistances}.
+   * Back-facing planes are not drawn.
+   */
+  public static boolean isFacingCamera(float distance) {
+    return distance >= 0;
+  }
+
+  /**
+   * Returns a hash of everything the triangulated mesh of a plane depends on: the boundary
+   * polygon, in plane space, the extents, which set how far the fading edge is inset, and the
+   * vertex budget it is simplified to. A plane whose hash is unchanged keeps its mesh.
+   *
+   * @param boundary The boundary polygon, from position 0 to its limit, or null if the plane has
+   *     none.
+   */
+  public static int meshHash(
+      FloatBuffer boundary, float extentX, float extentZ, int boundaryBudget) {
+    int hash = 31 * Float.floatToIntBits(extentX) + Float.floatToIntBits(extentZ);
+    hash = 31 * hash + boundaryBudget;
+    if (boundary == null) {
+      return hash;
+    }
+    int length = boundary.limit();
+    hash = 31 * hash + length;
+    for (int i = 0; i < length; ++i) {
+      hash = 31 * hash + Float.floatToIntBits(boundary.get(i));
+    }
+    return hash;
+  }
+}
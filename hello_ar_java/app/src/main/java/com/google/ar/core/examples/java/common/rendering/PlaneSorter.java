@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import com.google.ar.core.Pose;
+import com.google.ar.core.examples.java.common.math.PoseMath;
+import java.util.Arrays;
+
+/**
+ * Sorts the planes of a frame by their distance from the camera, closest first.
+ *
+ * <p>Each plane gets a sort key with the distance in the high bits and its insertion slot in the
+ * low bits, so that sorting is a primitive sort of the keys. The arrays are reused across frames,
+ * so a steady-state frame does not allocate.
+ *
+ * @param <T> Type of the sorted items.
+ */
+public final class PlaneSorter<T> {
+  private Object[] items = new Object[16];
+  private long[] sortKeys = new long[16];
+  private int size;
+
+  public PlaneSorter() {}
+
+  /** Returns the number of items added since the last {@link #clear()}. */
+  public int size() {
+    return size;
+  }
+
+  /** Removes all items. */
+  public void clear() {
+    Arrays.fill(items, 0, size, null);
+    size = 0;
+  }
+
+  /**
+   * Adds an item.
+   *
+   * @param distance Distance of the item from the camera. Must not be negative.
+   */
+  public void add(float distance, T item) {
+    if (size == items.length) {
+      items = Arrays.copyOf(items, 2 * size);
+      sortKeys = Arrays.copyOf(sortKeys, 2 * size);
+    }
+    // The bits of a non-negative float sort in the same order as its value.
+    sortKeys[size] = ((long) Float.floatToIntBits(distance) << 32) | size;
+    items[size] = item;
+    size++;
+  }
+
+  /** Sorts the items added so far, closest first. */
+  public void sort() {
+    Arrays.sort(sortKeys, 0, size);
+  }
+
+  /**
+   * Returns the i-th closest item once sorted, and drops the reference to it. Each item can only
+   * be taken once.
+   */
+  @SuppressWarnings("unchecked")
+  public T take(int i) {
+    int slot = (int) sortKeys[i];
+    T item = (T) items[slot];
+    items[slot] = null;
+    return item;
+  }
+
+  /**
+   * Calculates the normal distance to a plane from the camera. The plane pose must have its y axis
+   * parallel to the plane's normal, for example the plane's center pose or a hit test pose.
+   *
+   * @return The distance, negative when the camera is behind the plane.
+   */
+  public static float distanceToPlane(Pose planePose, Pose cameraPose) {
+    // Dot product of the transformed Y axis of the plane's coordinate system with the vector from
+    // the plane center to the camera.
+    return PoseMath.distanceAlongY(
+        planePose.qx(),
+        planePose.qy(),
+        planePose.qz(),
+        planePose.qw(),
+        cameraPose.tx() - planePose.tx(),
+        cameraPose.ty() - planePose.ty(),
+        cameraPose.tz() - planePose.tz());
+  }
+}
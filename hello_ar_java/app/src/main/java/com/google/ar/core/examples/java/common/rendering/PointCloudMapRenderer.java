@@ -0,0 +1,207 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.opengl.GLSurfaceView;
+import android.opengl.Matrix;
+import com.google.ar.core.examples.java.common.gl.Gl;
+import com.google.ar.core.examples.java.common.spatial.VoxelMap;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Renders the points accumulated in a {@link VoxelMap}.
+ *
+ * <p>Each chunk of the map has its own vertex buffer, and only the chunks that changed since the
+ * last {@link #update} are uploaded again. The point cloud shaders are reused, as voxels have the
+ * same layout as ARCore points.
+ */
+public class PointCloudMapRenderer {
+  private static final String TAG = PointCloudMapRenderer.class.getSimpleName();
+
+  // Shader names.
+  private static final String VERTEX_SHADER_NAME = "shaders/point_cloud.vert";
+  private static final String FRAGMENT_SHADER_NAME = "shaders/point_cloud.frag";
+
+  private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
+  private static final int BYTES_PER_VOXEL = BYTES_PER_FLOAT * VoxelMap.FLOATS_PER_VOXEL;
+
+  private int programName;
+  private int positionAttribute;
+  private int modelViewProjectionUniform;
+  private int colorUniform;
+  private int pointSizeUniform;
+
+  // Buffer and uploaded voxel count of each chunk. Buffers are created as chunks fill up.
+  private int[] chunkVbos = new int[0];
+  private int[] chunkVoxelCounts = new int[0];
+  private int chunkCount;
+  // Set when the buffers were lost, so that every chunk is uploaded whether dirty or not.
+  private boolean uploadAllChunks = true;
+
+  private int lastUploadBytes;
+  private long totalUploadBytes;
+
+  // Temporary matrix allocated here to reduce number of allocations for each frame.
+  private final float[] modelViewProjection = new float[16];
+
+  // Source of the program. Shared with other renderers when one is supplied.
+  private final GpuAssetCache assetCache;
+  // Where OpenGL calls are made, from the asset cache.
+  private final Gl gl;
+
+  public PointCloudMapRenderer() {
+    this(new GpuAssetCache());
+  }
+
+  /** Creates a renderer that takes its program from the given cache. */
+  public PointCloudMapRenderer(GpuAssetCache assetCache) {
+    this.assetCache = assetCache;
+    this.gl = assetCache.getGl();
+  }
+
+  /**
+   * Allocates and initializes OpenGL resources needed by the renderer. Must be called on the
+   * OpenGL thread, typically in {@link GLSurfaceView.Renderer#onSurfaceCreated(GL10, EGLConfig)}.
+   *
+   * @param context Needed to access shader source.
+   */
+  public void createOnGlThread(Context context) throws IOException {
+    // Buffers of a previous OpenGL context are gone with it.
+    chunkVbos = new int[0];
+    chunkVoxelCounts = new int[0];
+    chunkCount = 0;
+    uploadAllChunks = true;
+
+    programName = assetCache.acquireProgram(context, VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME);
+    positionAttribute = gl.glGetAttribLocation(programName, "a_Position");
+    colorUniform = gl.glGetUniformLocation(programName, "u_Color");
+    modelViewProjectionUniform = gl.glGetUniformLocation(programName, "u_ModelViewProjection");
+    pointSizeUniform = gl.glGetUniformLocation(programName, "u_PointSize");
+
+    ShaderUtil.checkGLError(gl, TAG, "program params");
+  }
+
+  /**
+   * Deletes the chunk buffers and returns the shared program to the {@link GpuAssetCache}. Must be
+   * called on the OpenGL thread.
+   */
+  public void release() {
+    if (programName == 0) {
+      return;
+    }
+    assetCache.releaseProgram(programName);
+    programName = 0;
+    gl.glDeleteBuffers(chunkVbos.length, chunkVbos, 0);
+    chunkVbos = new int[0];
+    chunkVoxelCounts = new int[0];
+    chunkCount = 0;
+    uploadAllChunks = true;
+  }
+
+  /**
+   * Uploads the chunks of the map that changed since the last call, and marks them clean. A map
+   * must only be drawn by one renderer.
+   */
+  public void update(VoxelMap map) {
+    lastUploadBytes = 0;
+    int mapChunkCount = map.getChunkCount();
+    if (mapChunkCount > chunkVbos.length) {
+      int oldLength = chunkVbos.length;
+      int newLength = Math.max(mapChunkCount, 2 * oldLength);
+      chunkVbos = Arrays.copyOf(chunkVbos, newLength);
+      chunkVoxelCounts = Arrays.copyOf(chunkVoxelCounts, newLength);
+      gl.glGenBuffers(newLength - oldLength, chunkVbos, oldLength);
+    }
+    for (int chunk = mapChunkCount; chunk < chunkCount; ++chunk) {
+      // The map was cleared; the buffers are kept for when it grows again.
+      chunkVoxelCounts[chunk] = 0;
+    }
+    chunkCount = mapChunkCount;
+
+    int chunkSize = map.getChunkSize();
+    FloatBuffer voxels = map.getVoxels();
+    for (int chunk = 0; chunk < chunkCount; ++chunk) {
+      if (!map.isChunkDirty(chunk) && !uploadAllChunks) {
+        continue;
+      }
+      map.clearDirty(chunk);
+      int first = chunk * chunkSize;
+      int count = Math.min(chunkSize, map.size() - first);
+      voxels.limit((first + count) * VoxelMap.FLOATS_PER_VOXEL);
+      voxels.position(first * VoxelMap.FLOATS_PER_VOXEL);
+      gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, chunkVbos[chunk]);
+      // Re-specifying the whole chunk orphans the storage still used by previous frames.
+      gl.glBufferData(
+          GLES20.GL_ARRAY_BUFFER, count * BYTES_PER_VOXEL, voxels, GLES20.GL_DYNAMIC_DRAW);
+      chunkVoxelCounts[chunk] = count;
+      lastUploadBytes += count * BYTES_PER_VOXEL;
+    }
+    voxels.clear();
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    uploadAllChunks = false;
+    totalUploadBytes += lastUploadBytes;
+
+    ShaderUtil.checkGLError(gl, TAG, "after update");
+  }
+
+  /** Returns the number of bytes uploaded by the last {@link #update} call. */
+  public int getLastUploadBytes() {
+    return lastUploadBytes;
+  }
+
+  /** Returns the number of bytes uploaded since the renderer was created. */
+  public long getTotalUploadBytes() {
+    return totalUploadBytes;
+  }
+
+  /**
+   * Renders the map, one draw call per chunk. The map is given in world space.
+   *
+   * @param cameraView the camera view matrix for this frame, typically from {@link
+   *     com.google.ar.core.Camera#getViewMatrix(float[], int)}.
+   * @param cameraPerspective the camera projection matrix for this frame, typically from {@link
+   *     com.google.ar.core.Camera#getProjectionMatrix(float[], int, float, float)}.
+   */
+  public void draw(float[] cameraView, float[] cameraPerspective) {
+    if (programName == 0 || chunkCount == 0) {
+      return;
+    }
+    Matrix.multiplyMM(modelViewProjection, 0, cameraPerspective, 0, cameraView, 0);
+
+    gl.glUseProgram(programName);
+    gl.glEnableVertexAttribArray(positionAttribute);
+    gl.glUniform4f(colorUniform, 255.0f / 255.0f, 193.0f / 255.0f, 7.0f / 255.0f, 1.0f);
+    gl.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjection, 0);
+    gl.glUniform1f(pointSizeUniform, 3.0f);
+
+    for (int chunk = 0; chunk < chunkCount; ++chunk) {
+      if (chunkVoxelCounts[chunk] == 0) {
+        continue;
+      }
+      gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, chunkVbos[chunk]);
+      gl.glVertexAttribPointer(
+          positionAttribute, 4, GLES20.GL_FLOAT, false, BYTES_PER_VOXEL, 0);
+      gl.glDrawArrays(GLES20.GL_POINTS, 0, chunkVoxelCounts[chunk]);
+    }
+    gl.glDisableVertexAttribArray(positionAttribute);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+    ShaderUtil.checkGLError(gl, TAG, "Draw");
+  }
+}
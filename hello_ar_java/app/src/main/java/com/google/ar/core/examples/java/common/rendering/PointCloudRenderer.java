@@ -19,9 +19,20 @@ import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
 import com.google.ar.core.PointCloud;
+import com.google.ar.core.examples.java.common.gl.Gl;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 
-/** Renders a point cloud. */
+/**
+ * Renders a point cloud.
+ *
+ * <p>Points are streamed to the GPU every time the point cloud changes, in a way that does not
+ * make the driver wait for draws of previous frames that still read the buffer; see {@link
+ * UploadStrategy}. Points with a confidence below a threshold are not uploaded. The buffers grow
+ * with the point cloud and shrink again once it has stayed small for a while.
+ */
 public class PointCloudRenderer {
   private static final String TAG = PointCloud.class.getSimpleName();
 
@@ -34,8 +45,48 @@ public class PointCloudRenderer {
   private static final int BYTES_PER_POINT = BYTES_PER_FLOAT * FLOATS_PER_POINT;
   private static final int INITIAL_BUFFER_POINTS = 1000;
 
-  private int vbo;
+  /** Number of buffers rotated by {@link UploadStrategy#RING}. */
+  public static final int RING_SIZE = 3;
+
+  private static final int DEFAULT_SHRINK_AFTER_IDLE_UPDATES = 60;
+
+  /** How point buffers are updated without stalling on draws that may still read them. */
+  public enum UploadStrategy {
+    /**
+     * One buffer whose storage is re-specified before every upload. The driver hands out fresh
+     * storage and frees the old one once the GPU is done with it.
+     */
+    ORPHAN,
+    /**
+     * {@link #RING_SIZE} buffers used in turn, so that a buffer is only written again after the
+     * draws of the previous frames that used it have completed.
+     */
+    RING
+  }
+
+  private UploadStrategy uploadStrategy = UploadStrategy.ORPHAN;
+  private final int[] vbos = new int[RING_SIZE];
+  // Size of the storage of each buffer, in bytes. Buffers are resized to vboSize when next used.
+  private final int[] vboSizes = new int[RING_SIZE];
   private int vboSize;
+  // Buffer holding the points of the last update.
+  private int currentVbo;
+
+  // Updates in a row that used under a quarter of vboSize. Reaching the limit halves it.
+  private int idleUpdates;
+  private int shrinkAfterIdleUpdates = DEFAULT_SHRINK_AFTER_IDLE_UPDATES;
+
+  // Points with a lower confidence are not uploaded. Zero uploads every point as-is.
+  private float confidenceThreshold;
+  // Temporary buffer of the points kept by the confidence threshold, allocated here to reduce
+  // number of allocations for each frame.
+  private FloatBuffer filteredPoints =
+      ByteBuffer.allocateDirect(INITIAL_BUFFER_POINTS * BYTES_PER_POINT)
+          .order(ByteOrder.nativeOrder())
+          .asFloatBuffer();
+
+  private int lastUploadBytes;
+  private long totalUploadBytes;
 
   private int programName;
   private int positionAttribute;
@@ -49,7 +100,23 @@ public class PointCloudRenderer {
   // was not changed.
   private PointCloud lastPointCloud = null;
 
-  public PointCloudRenderer() {}
+  // Temporary matrix allocated here to reduce number of allocations for each frame.
+  private final float[] modelViewProjection = new float[16];
+
+  // Source of the program. Shared with other renderers when one is supplied.
+  private final GpuAssetCache assetCache;
+  // Where OpenGL calls are made, from the asset cache.
+  private final Gl gl;
+
+  public PointCloudRenderer() {
+    this(new GpuAssetCache());
+  }
+
+  /** Creates a renderer that takes its program from the given cache. */
+  public PointCloudRenderer(GpuAssetCache assetCache) {
+    this.assetCache = assetCache;
+    this.gl = assetCache.getGl();
+  }
 
   /**
    * Allocates and initializes OpenGL resources needed by the plane renderer. Must be called on the
@@ -58,38 +125,92 @@ public class PointCloudRenderer {
    * @param context Needed to access shader source.
    */
   public void createOnGlThread(Context context) throws IOException {
-    ShaderUtil.checkGLError(TAG, "before create");
-
-    int[] buffers = new int[1];
-    GLES20.glGenBuffers(1, buffers, 0);
-    vbo = buffers[0];
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+    ShaderUtil.checkGLError(gl, TAG, "before create");
 
+    // Storage is allocated by the first update that uses each buffer.
+    gl.glGenBuffers(RING_SIZE, vbos, 0);
     vboSize = INITIAL_BUFFER_POINTS * BYTES_PER_POINT;
-    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    for (int i = 0; i < RING_SIZE; ++i) {
+      vboSizes[i] = 0;
+    }
+    currentVbo = 0;
+    numPoints = 0;
+    idleUpdates = 0;
+    lastPointCloud = null;
+
+    ShaderUtil.checkGLError(gl, TAG, "buffer alloc");
+
+    programName = assetCache.acquireProgram(context, VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME);
+    gl.glUseProgram(programName);
+
+    ShaderUtil.checkGLError(gl, TAG, "program");
+
+    positionAttribute = gl.glGetAttribLocation(programName, "a_Position");
+    colorUniform = gl.glGetUniformLocation(programName, "u_Color");
+    modelViewProjectionUniform = gl.glGetUniformLocation(programName, "u_ModelViewProjection");
+    pointSizeUniform = gl.glGetUniformLocation(programName, "u_PointSize");
+
+    ShaderUtil.checkGLError(gl, TAG, "program  params");
+  }
+
+  /**
+   * Returns whether the renderer has been created. The shaders are small and are loaded by {@link
+   * #createOnGlThread} directly.
+   */
+  public boolean isReady() {
+    return programName != 0;
+  }
+
+  /**
+   * Deletes the point buffer and returns the shared program to the {@link GpuAssetCache}. Must be
+   * called on the OpenGL thread.
+   */
+  public void release() {
+    if (programName == 0) {
+      return;
+    }
+    assetCache.releaseProgram(programName);
+    programName = 0;
+    gl.glDeleteBuffers(RING_SIZE, vbos, 0);
+    for (int i = 0; i < RING_SIZE; ++i) {
+      vbos[i] = 0;
+      vboSizes[i] = 0;
+    }
+    lastPointCloud = null;
+  }
 
-    ShaderUtil.checkGLError(TAG, "buffer alloc");
+  public void setUploadStrategy(UploadStrategy uploadStrategy) {
+    this.uploadStrategy = uploadStrategy;
+  }
 
-    int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
-    int passthroughShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
+  public UploadStrategy getUploadStrategy() {
+    return uploadStrategy;
+  }
 
-    programName = GLES20.glCreateProgram();
-    GLES20.glAttachShader(programName, vertexShader);
-    GLES20.glAttachShader(programName, passthroughShader);
-    GLES20.glLinkProgram(programName);
-    GLES20.glUseProgram(programName);
+  /**
+   * Sets after how many updates in a row that use under a quarter of the point buffers they are
+   * halved. Zero or less never shrinks them.
+   */
+  public void setShrinkAfterIdleUpdates(int updates) {
+    shrinkAfterIdleUpdates = updates;
+  }
 
-    ShaderUtil.checkGLError(TAG, "program");
+  /**
+   * Sets the confidence, from 0 to 1, below which points are not uploaded. The point cloud is
+   * only re-uploaded with the new threshold once it changes.
+   */
+  public void setConfidenceThreshold(float confidenceThreshold) {
+    this.confidenceThreshold = confidenceThreshold;
+  }
 
-    positionAttribute = GLES20.glGetAttribLocation(programName, "a_Position");
-    colorUniform = GLES20.glGetUniformLocation(programName, "u_Color");
-    modelViewProjectionUniform = GLES20.glGetUniformLocation(programName, "u_ModelViewProjection");
-    pointSizeUniform = GLES20.glGetUniformLocation(programName, "u_PointSize");
+  /** Returns the number of bytes uploaded by the last {@link #update} call. */
+  public int getLastUploadBytes() {
+    return lastUploadBytes;
+  }
 
-    ShaderUtil.checkGLError(TAG, "program  params");
+  /** Returns the number of bytes uploaded since the renderer was created. */
+  public long getTotalUploadBytes() {
+    return totalUploadBytes;
   }
 
   /**
@@ -97,29 +218,99 @@ public class PointCloudRenderer {
    * cloud will be ignored.
    */
   public void update(PointCloud cloud) {
+    lastUploadBytes = 0;
     if (lastPointCloud == cloud) {
       // Redundant call.
       return;
     }
 
-    ShaderUtil.checkGLError(TAG, "before update");
+    ShaderUtil.checkGLError(gl, TAG, "before update");
 
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
     lastPointCloud = cloud;
+    FloatBuffer points = filterPoints(lastPointCloud.getPoints());
+    numPoints = points.remaining() / FLOATS_PER_POINT;
+    int uploadBytes = numPoints * BYTES_PER_POINT;
+    resizeForUpload(uploadBytes);
+
+    if (uploadStrategy == UploadStrategy.RING) {
+      currentVbo = (currentVbo + 1) % RING_SIZE;
+    } else {
+      currentVbo = 0;
+    }
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbos[currentVbo]);
+    if (uploadStrategy == UploadStrategy.ORPHAN || vboSizes[currentVbo] != vboSize) {
+      // Re-specifying the storage orphans the previous one instead of waiting for it.
+      gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_STREAM_DRAW);
+      vboSizes[currentVbo] = vboSize;
+    }
+    gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, uploadBytes, points);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
-    // If the VBO is not large enough to fit the new point cloud, resize it.
-    numPoints = lastPointCloud.getPoints().remaining() / FLOATS_PER_POINT;
-    if (numPoints * BYTES_PER_POINT > vboSize) {
-      while (numPoints * BYTES_PER_POINT > vboSize) {
+    lastUploadBytes = uploadBytes;
+    totalUploadBytes += uploadBytes;
+
+    ShaderUtil.checkGLError(gl, TAG, "after update");
+  }
+
+  // Grows the buffer size to fit an upload, or halves it once uploads have stayed small.
+  private void resizeForUpload(int uploadBytes) {
+    if (uploadBytes > vboSize) {
+      while (uploadBytes > vboSize) {
         vboSize *= 2;
       }
-      GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
+      idleUpdates = 0;
+      return;
     }
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, 0, numPoints * BYTES_PER_POINT, lastPointCloud.getPoints());
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    int minSize = INITIAL_BUFFER_POINTS * BYTES_PER_POINT;
+    if (shrinkAfterIdleUpdates <= 0 || vboSize <= minSize || uploadBytes >= vboSize / 4) {
+      idleUpdates = 0;
+      return;
+    }
+    if (++idleUpdates >= shrinkAfterIdleUpdates) {
+      vboSize = Math.max(minSize, vboSize / 2);
+      idleUpdates = 0;
+    }
+  }
 
-    ShaderUtil.checkGLError(TAG, "after update");
+  // Returns the points at or above the confidence threshold, copied to filteredPoints if any point
+  // is dropped.
+  private FloatBuffer filterPoints(FloatBuffer points) {
+    if (confidenceThreshold <= 0) {
+      return points;
+    }
+    int start = points.position();
+    int end = points.limit();
+    int firstDropped = start;
+    while (firstDropped + FLOATS_PER_POINT <= end
+        && points.get(firstDropped + 3) >= confidenceThreshold) {
+      firstDropped += FLOATS_PER_POINT;
+    }
+    if (firstDropped + FLOATS_PER_POINT > end) {
+      // No point is dropped, so upload them as they are.
+      return points;
+    }
+    if (filteredPoints.capacity() < end - start) {
+      filteredPoints =
+          ByteBuffer.allocateDirect((end - start) * BYTES_PER_FLOAT)
+              .order(ByteOrder.nativeOrder())
+              .asFloatBuffer();
+    }
+    filteredPoints.clear();
+    // The points before the first dropped one are all kept.
+    for (int i = start; i < firstDropped; ++i) {
+      filteredPoints.put(points.get(i));
+    }
+    for (int i = firstDropped + FLOATS_PER_POINT; i + FLOATS_PER_POINT <= end;
+        i += FLOATS_PER_POINT) {
+      if (points.get(i + 3) >= confidenceThreshold) {
+        filteredPoints.put(points.get(i));
+        filteredPoints.put(points.get(i + 1));
+        filteredPoints.put(points.get(i + 2));
+        filteredPoints.put(points.get(i + 3));
+      }
+    }
+    filteredPoints.flip();
+    return filteredPoints;
   }
 
   /**
@@ -131,23 +322,22 @@ public class PointCloudRenderer {
    *     com.google.ar.core.Camera#getProjectionMatrix(float[], int, float, float)}.
    */
   public void draw(float[] cameraView, float[] cameraPerspective) {
-    float[] modelViewProjection = new float[16];
     Matrix.multiplyMM(modelViewProjection, 0, cameraPerspective, 0, cameraView, 0);
 
-    ShaderUtil.checkGLError(TAG, "Before draw");
+    ShaderUtil.checkGLError(gl, TAG, "Before draw");
 
-    GLES20.glUseProgram(programName);
-    GLES20.glEnableVertexAttribArray(positionAttribute);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
-    GLES20.glVertexAttribPointer(positionAttribute, 4, GLES20.GL_FLOAT, false, BYTES_PER_POINT, 0);
-    GLES20.glUniform4f(colorUniform, 31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f);
-    GLES20.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjection, 0);
-    GLES20.glUniform1f(pointSizeUniform, 5.0f);
+    gl.glUseProgram(programName);
+    gl.glEnableVertexAttribArray(positionAttribute);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbos[currentVbo]);
+    gl.glVertexAttribPointer(positionAttribute, 4, GLES20.GL_FLOAT, false, BYTES_PER_POINT, 0);
+    gl.glUniform4f(colorUniform, 31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f);
+    gl.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjection, 0);
+    gl.glUniform1f(pointSizeUniform, 5.0f);
 
-    GLES20.glDrawArrays(GLES20.GL_POINTS, 0, numPoints);
-    GLES20.glDisableVertexAttribArray(positionAttribute);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glDrawArrays(GLES20.GL_POINTS, 0, numPoints);
+    gl.glDisableVertexAttribArray(positionAttribute);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
-    ShaderUtil.checkGLError(TAG, "Draw");
+    ShaderUtil.checkGLError(gl, TAG, "Draw");
   }
 }
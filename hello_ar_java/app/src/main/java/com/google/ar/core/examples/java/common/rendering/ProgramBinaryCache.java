@@ -0,0 +1,313 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import com.google.ar.core.examples.java.common.gl.Gl;
+import com.google.ar.core.examples.java.common.logging.RenderLog;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Links OpenGL programs, keeping their driver-specific binaries on disk so that later runs of the
+ * app can skip compiling and linking.
+ *
+ * <p>Binaries are stored in a directory under the app's cache dir, one file per program, named by
+ * a hash of the shader sources and the driver's vendor, renderer and version strings. A driver
+ * update therefore never sees binaries from its predecessor. Should the driver reject a binary
+ * anyway, the program is compiled from source and the file is rewritten.
+ *
+ * <p>Program binaries are core in OpenGL ES 3.0. The Java bindings do not expose the OpenGL ES 2.0
+ * {@code OES_get_program_binary} entry points, so on 2.0-only contexts every program is compiled
+ * from source.
+ *
+ * <p>Not thread safe. All methods must be called on the OpenGL thread.
+ */
+public class ProgramBinaryCache {
+  private static final String TAG = ProgramBinaryCache.class.getSimpleName();
+
+  private static final int MAGIC = 0x50524742; // "PRGB"
+  private static final int VERSION = 1;
+  private static final String EXTENSION = ".bin";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final Gl gl;
+  private final File directory;
+
+  // Null until the first program is created on a context that supports program binaries.
+  private String driverId;
+  private boolean driverChecked;
+
+  private int hitCount;
+  private int missCount;
+  private int rejectedCount;
+  private long savedNanos;
+
+  /**
+   * @param gl Where programs are created.
+   * @param directory Directory for the binaries. Created on first use.
+   */
+  public ProgramBinaryCache(Gl gl, File directory) {
+    this.gl = gl;
+    this.directory = directory;
+  }
+
+  /**
+   * Returns a linked program built from the given shader sources, loading its binary from disk if
+   * a matching one has been stored.
+   *
+   * @throws RuntimeException If the shaders do not compile or the program does not link.
+   */
+  public int createProgram(String tag, String vertexSource, String fragmentSource) {
+    long startNanos = System.nanoTime();
+    if (!driverChecked) {
+      driverChecked = true;
+      driverId = queryDriverId();
+    }
+    if (driverId == null) {
+      return linkProgram(tag, vertexSource, fragmentSource, false);
+    }
+
+    File file = new File(directory, hash(driverId, vertexSource, fragmentSource) + EXTENSION);
+    StoredBinary stored = read(file);
+    if (stored != null) {
+      int program = loadBinary(stored);
+      if (program != 0) {
+        long loadNanos = System.nanoTime() - startNanos;
+        hitCount++;
+        savedNanos += Math.max(0, stored.linkNanos - loadNanos);
+        RenderLog.i(
+            TAG,
+            String.format(
+                "Loaded program binary in %.2f ms, %.2f ms saved",
+                loadNanos / 1e6, (stored.linkNanos - loadNanos) / 1e6));
+        return program;
+      }
+      rejectedCount++;
+      RenderLog.w(TAG, "Driver rejected program binary " + file.getName() + "; compiling instead.");
+    }
+
+    missCount++;
+    int program = linkProgram(tag, vertexSource, fragmentSource, true);
+    long linkNanos = System.nanoTime() - startNanos;
+    write(file, program, linkNanos);
+    RenderLog.i(TAG, String.format("Compiled program in %.2f ms", linkNanos / 1e6));
+    return program;
+  }
+
+  /** Deletes every stored binary. */
+  public void clear() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.getName().endsWith(EXTENSION) && !file.delete()) {
+        RenderLog.w(TAG, "Could not delete " + file);
+      }
+    }
+  }
+
+  /** Returns how many programs were loaded from a stored binary. */
+  public int getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns how many programs were compiled, including those whose binary was rejected. */
+  public int getMissCount() {
+    return missCount;
+  }
+
+  /** Returns how many stored binaries the driver refused to load. */
+  public int getRejectedCount() {
+    return rejectedCount;
+  }
+
+  /**
+   * Returns the total compile and link time avoided by loading binaries, in nanoseconds. Based on
+   * the time each program took to build when its binary was stored.
+   */
+  public long getSavedNanos() {
+    return savedNanos;
+  }
+
+  private static final class StoredBinary {
+    final int format;
+    final long linkNanos;
+    final ByteBuffer binary;
+
+    StoredBinary(int format, long linkNanos, ByteBuffer binary) {
+      this.format = format;
+      this.linkNanos = linkNanos;
+      this.binary = binary;
+    }
+  }
+
+  // Returns a string identifying the driver, or null if it cannot load program binaries.
+  private String queryDriverId() {
+    if (!ShaderUtil.isGlEs3OrNewer(gl)) {
+      return null;
+    }
+    int[] formatCount = new int[1];
+    gl.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formatCount, 0);
+    if (formatCount[0] == 0) {
+      return null;
+    }
+    return gl.glGetString(GLES20.GL_VENDOR)
+        + '\n'
+        + gl.glGetString(GLES20.GL_RENDERER)
+        + '\n'
+        + gl.glGetString(GLES20.GL_VERSION);
+  }
+
+  private int linkProgram(
+      String tag, String vertexSource, String fragmentSource, boolean retrievable) {
+    int vertexShader = ShaderUtil.compileShader(gl, tag, GLES20.GL_VERTEX_SHADER, vertexSource);
+    int fragmentShader =
+        ShaderUtil.compileShader(gl, tag, GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+
+    int program = gl.glCreateProgram();
+    gl.glAttachShader(program, vertexShader);
+    gl.glAttachShader(program, fragmentShader);
+    if (retrievable) {
+      gl.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+    }
+    gl.glLinkProgram(program);
+
+    // The program keeps the compiled code; the shader objects are no longer needed.
+    gl.glDetachShader(program, vertexShader);
+    gl.glDetachShader(program, fragmentShader);
+    gl.glDeleteShader(vertexShader);
+    gl.glDeleteShader(fragmentShader);
+
+    if (!isLinked(program)) {
+      RenderLog.e(tag, "Error linking program: " + gl.glGetProgramInfoLog(program));
+      gl.glDeleteProgram(program);
+      throw new RuntimeException("Error creating program.");
+    }
+
+    ShaderUtil.checkGLError(gl, tag, "Program creation");
+    return program;
+  }
+
+  // Returns the program, or 0 if the driver rejected the binary.
+  private int loadBinary(StoredBinary stored) {
+    int program = gl.glCreateProgram();
+    gl.glProgramBinary(program, stored.format, stored.binary, stored.binary.remaining());
+    // A rejected binary leaves GL_INVALID_ENUM behind when the format is no longer supported.
+    while (gl.glGetError() != GLES20.GL_NO_ERROR) {}
+    if (!isLinked(program)) {
+      gl.glDeleteProgram(program);
+      return 0;
+    }
+    return program;
+  }
+
+  private boolean isLinked(int program) {
+    final int[] linkStatus = new int[1];
+    gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+    return linkStatus[0] != 0;
+  }
+
+  private static StoredBinary read(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      int format = in.readInt();
+      long linkNanos = in.readLong();
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      ByteBuffer binary = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.nativeOrder());
+      binary.put(bytes).flip();
+      return new StoredBinary(format, linkNanos, binary);
+    } catch (IOException | NegativeArraySizeException e) {
+      RenderLog.w(TAG, "Could not read program binary " + file.getName(), e);
+      return null;
+    }
+  }
+
+  private void write(File file, int program, long linkNanos) {
+    int[] length = new int[1];
+    gl.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+    if (length[0] <= 0) {
+      return;
+    }
+    ByteBuffer binary = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+    int[] format = new int[1];
+    gl.glGetProgramBinary(program, length[0], length, 0, format, 0, binary);
+    if (gl.glGetError() != GLES20.GL_NO_ERROR) {
+      return;
+    }
+    byte[] bytes = new byte[length[0]];
+    binary.get(bytes);
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      RenderLog.w(TAG, "Could not create " + directory);
+      return;
+    }
+    // Written to a temporary file first so that a crash cannot leave a truncated binary behind.
+    File temporary = new File(directory, file.getName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temporary))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(format[0]);
+      out.writeLong(linkNanos);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    } catch (IOException e) {
+      RenderLog.w(TAG, "Could not write program binary " + file.getName(), e);
+      temporary.delete();
+      return;
+    }
+    if (!temporary.renameTo(file)) {
+      RenderLog.w(TAG, "Could not store program binary " + file.getName());
+      temporary.delete();
+    }
+  }
+
+  private static String hash(String driverId, String vertexSource, String fragmentSource) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    // Separated by NUL so that moving text between the parts changes the hash.
+    digest.update(driverId.getBytes(UTF_8));
+    digest.update((byte) 0);
+    digest.update(vertexSource.getBytes(UTF_8));
+    digest.update((byte) 0);
+    digest.update(fragmentSource.getBytes(UTF_8));
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+}
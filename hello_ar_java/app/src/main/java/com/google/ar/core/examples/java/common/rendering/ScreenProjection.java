@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+
+/**
+ * Projection of models and points to the screen. Only depends on {@link Mat4}, so that it can be
+ * benchmarked off the device.
+ */
+public final class ScreenProjection {
+  private static final float[] ORIGIN = new float[] {0f, 0f, 0f, 1f};
+
+  private ScreenProjection() {}
+
+  /**
+   * Computes the model-view-projection matrix of an object placed at {@code modelMat}.
+   *
+   * @return A matrix taken from {@code arena}, valid until the arena is reset.
+   */
+  public static float[] modelViewProjection(
+      FrameArena arena, float[] modelMat, float[] viewMat, float[] projMat) {
+    float scalingFactor = 1.0f;
+    float[] modelScreenPosition = arena.mat4();
+
+    int mark = arena.mark();
+    float[] modelScaled = arena.mat4();
+    float[] modelFitToView = arena.mat4();
+
+    Mat4.scale(modelScaled, 0, modelMat, 0, scalingFactor);
+    Mat4.multiply(modelFitToView, 0, viewMat, 0, modelScaled, 0);
+    Mat4.multiply(modelScreenPosition, 0, projMat, 0, modelFitToView, 0);
+    arena.release(mark);
+
+    return modelScreenPosition;
+  }
+
+  /**
+   * Projects the origin of {@code world2cameraMatrix} to screen pixels and writes the x and y
+   * coordinates into the first two elements of {@code pos2d}.
+   */
+  public static void worldToScreen(
+      FrameArena arena,
+      int screenWidth,
+      int screenHeight,
+      float[] world2cameraMatrix,
+      float[] pos2d) {
+    int mark = arena.mark();
+    float[] deviceScreenMatrix = arena.vec4();
+    Mat4.multiplyVector(deviceScreenMatrix, 0, world2cameraMatrix, 0, ORIGIN, 0);
+
+    deviceScreenMatrix[0] = deviceScreenMatrix[0] / deviceScreenMatrix[3];
+    deviceScreenMatrix[1] = deviceScreenMatrix[1] / deviceScreenMatrix[3];
+
+    pos2d[0] = (float) (screenWidth * ((deviceScreenMatrix[0] + 1.0) / 2.0));
+    // Screen y grows downwards, normalized device y upwards.
+    pos2d[1] = (float) (screenHeight * ((1.0 - deviceScreenMatrix[1]) / 2.0));
+    arena.release(mark);
+  }
+}
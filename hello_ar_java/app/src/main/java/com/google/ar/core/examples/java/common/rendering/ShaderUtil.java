@@ -16,36 +16,94 @@ package com.google.ar.core.examples.java.common.rendering;
 
 import android.content.Context;
 import android.opengl.GLES20;
-import android.util.Log;
-import java.io.BufferedReader;
+import com.google.ar.core.examples.java.common.gl.Gl;
+import com.google.ar.core.examples.java.common.logging.RenderLog;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.Map;
 
 /** Shader helper functions. */
 public class ShaderUtil {
   /**
    * Converts a raw text file, saved as a resource, into an OpenGL ES shader.
    *
+   * @param gl Where the shader is created.
    * @param type The type of shader we will be creating.
    * @param filename The filename of the asset file about to be turned into a shader.
    * @return The shader object handler.
    */
-  public static int loadGLShader(String tag, Context context, int type, String filename)
+  public static int loadGLShader(Gl gl, String tag, Context context, int type, String filename)
       throws IOException {
+    return loadGLShader(
+        gl, tag, context, type, filename, Collections.<String, Integer>emptyMap());
+  }
+
+  /**
+   * Converts a raw text file, saved as a resource, into an OpenGL ES shader, inserting a {@code
+   * #define} for each entry of {@code defineValuesMap} ahead of the source.
+   *
+   * @param gl Where the shader is created.
+   * @param type The type of shader we will be creating.
+   * @param filename The filename of the asset file about to be turned into a shader.
+   * @param defineValuesMap The #define values to add to the top of the shader source code.
+   * @return The shader object handler.
+   */
+  public static int loadGLShader(
+      Gl gl,
+      String tag,
+      Context context,
+      int type,
+      String filename,
+      Map<String, Integer> defineValuesMap)
+      throws IOException {
+    return compileShader(gl, tag, type, readShaderSource(context, filename, defineValuesMap));
+  }
+
+  /**
+   * Reads the source of a shader asset, inserting a {@code #define} for each entry of {@code
+   * defineValuesMap} ahead of it.
+   *
+   * @param filename The filename of the shader asset.
+   * @param defineValuesMap The #define values to add to the top of the shader source code.
+   * @return The shader source code.
+   */
+  public static String readShaderSource(
+      Context context, String filename, Map<String, Integer> defineValuesMap) throws IOException {
     String code = readRawTextFileFromAssets(context, filename);
-    int shader = GLES20.glCreateShader(type);
-    GLES20.glShaderSource(shader, code);
-    GLES20.glCompileShader(shader);
+    if (defineValuesMap.isEmpty()) {
+      return code;
+    }
+    StringBuilder defines = new StringBuilder();
+    for (Map.Entry<String, Integer> entry : defineValuesMap.entrySet()) {
+      defines.append("#define ").append(entry.getKey()).append(' ').append(entry.getValue());
+      defines.append('\n');
+    }
+    return defines + code;
+  }
+
+  /**
+   * Compiles shader source code into an OpenGL ES shader.
+   *
+   * @param gl Where the shader is created.
+   * @param type The type of shader we will be creating.
+   * @param code The shader source code.
+   * @return The shader object handler.
+   */
+  public static int compileShader(Gl gl, String tag, int type, String code) {
+    int shader = gl.glCreateShader(type);
+    gl.glShaderSource(shader, code);
+    gl.glCompileShader(shader);
 
     // Get the compilation status.
     final int[] compileStatus = new int[1];
-    GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+    gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
 
     // If the compilation failed, delete the shader.
     if (compileStatus[0] == 0) {
-      Log.e(tag, "Error compiling shader: " + GLES20.glGetShaderInfoLog(shader));
-      GLES20.glDeleteShader(shader);
+      RenderLog.e(tag, "Error compiling shader: " + gl.glGetShaderInfoLog(shader));
+      gl.glDeleteShader(shader);
       shader = 0;
     }
 
@@ -57,17 +115,32 @@ public class ShaderUtil {
   }
 
   /**
-   * Checks if we've had an error inside of OpenGL ES, and if so what that error is.
+   * Returns whether the context behind {@code gl} is OpenGL ES 3.0 or newer. Many drivers return a
+   * 3.x context even when version 2 is requested.
+   */
+  public static boolean isGlEs3OrNewer(Gl gl) {
+    // Formatted as "OpenGL ES <major>.<minor> <vendor-specific information>".
+    String version = gl.glGetString(GLES20.GL_VERSION);
+    String prefix = "OpenGL ES ";
+    if (version == null || !version.startsWith(prefix) || version.length() <= prefix.length()) {
+      return false;
+    }
+    return Character.digit(version.charAt(prefix.length()), 10) >= 3;
+  }
+
+  /**
+   * Checks if we've had an error inside of the context behind {@code gl}, and if so what that
+   * error is.
    *
    * @param label Label to report in case of error.
    * @throws RuntimeException If an OpenGL error is detected.
    */
-  public static void checkGLError(String tag, String label) {
+  public static void checkGLError(Gl gl, String tag, String label) {
     int lastError = GLES20.GL_NO_ERROR;
     // Drain the queue of all errors.
     int error;
-    while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
-      Log.e(tag, label + ": glError " + error);
+    while ((error = gl.glGetError()) != GLES20.GL_NO_ERROR) {
+      RenderLog.e(tag, label + ": glError " + error);
       lastError = error;
     }
     if (lastError != GLES20.GL_NO_ERROR) {
@@ -83,14 +156,15 @@ public class ShaderUtil {
    */
   private static String readRawTextFileFromAssets(Context context, String filename)
       throws IOException {
-    try (InputStream inputStream = context.getAssets().open(filename);
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-      StringBuilder sb = new StringBuilder();
-      String line;
-      while ((line = reader.readLine()) != null) {
-        sb.append(line).append("\n");
+    // Shader sources are small; read them whole instead of splitting them into lines.
+    try (InputStream inputStream = context.getAssets().open(filename)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(inputStream.available(), 256));
+      byte[] chunk = new byte[4096];
+      int read;
+      while ((read = inputStream.read(chunk)) > 0) {
+        out.write(chunk, 0, read);
       }
-      return sb.toString();
+      return out.toString("UTF-8");
     }
   }
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import com.google.ar.core.examples.java.common.gl.Gl;
+import com.google.ar.core.examples.java.common.logging.RenderLog;
+import com.google.ar.core.examples.java.common.texture.CompressedTexture;
+import com.google.ar.core.examples.java.common.texture.KtxFile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Loads mipmapped 2D textures from image assets.
+ *
+ * <p>The build compresses every PNG asset to a KTX file next to it that already holds all mipmap
+ * levels (see {@link com.google.ar.core.examples.java.common.texture.TextureConverter}). KTX
+ * assets are stored uncompressed in the APK, so they are memory-mapped and uploaded with {@code
+ * glCompressedTexImage2D} without being decoded. The PNG is decoded and mipmapped on the device
+ * instead when no KTX file is packaged or the device cannot sample its format.
+ *
+ * <p>Reading and uploading are separate steps, so that assets can be read on a background thread
+ * and only uploaded on the OpenGL thread; see {@link AsyncAssetLoader}.
+ */
+public final class TextureLoader {
+  private static final String TAG = TextureLoader.class.getSimpleName();
+
+  private static final int BYTES_PER_TEXEL = 4;
+  private static final String ETC1_EXTENSION = "GL_OES_compressed_ETC1_RGB8_texture";
+
+  private TextureLoader() {}
+
+  /**
+   * Texture data read from an asset and ready to be uploaded, either block-compressed or decoded
+   * to a bitmap.
+   */
+  public static final class Image {
+    private final String source;
+    private final CompressedTexture compressed;
+    private final Bitmap bitmap;
+    private final long readNanos;
+
+    private Image(String source, CompressedTexture compressed, Bitmap bitmap, long readNanos) {
+      this.source = source;
+      this.compressed = compressed;
+      this.bitmap = bitmap;
+      this.readNanos = readNanos;
+    }
+  }
+
+  /**
+   * Loads an image asset into a texture with trilinear filtering. Must be called on the OpenGL
+   * thread.
+   *
+   * @param gl Where the texture is uploaded.
+   * @param context Context for loading the assets.
+   * @param imageAssetName Name of the PNG file. The KTX file of the same name is used if present.
+   * @param texture Name of the texture object to fill.
+   * @return The size of the texture in video memory, in bytes.
+   */
+  public static long load(Gl gl, Context context, String imageAssetName, int texture)
+      throws IOException {
+    return upload(gl, read(context, imageAssetName, supportedCompressedFormats(gl)), texture);
+  }
+
+  /**
+   * Returns the {@link CompressedTexture} formats the context behind {@code gl} can sample, to be
+   * passed to {@link #read}. Must be called on the OpenGL thread.
+   */
+  public static int[] supportedCompressedFormats(Gl gl) {
+    if (ShaderUtil.isGlEs3OrNewer(gl)) {
+      return new int[] {CompressedTexture.ETC1_RGB8, CompressedTexture.RGBA8_ETC2_EAC};
+    }
+    String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+    if (extensions != null && extensions.contains(ETC1_EXTENSION)) {
+      return new int[] {CompressedTexture.ETC1_RGB8};
+    }
+    return new int[0];
+  }
+
+  /**
+   * Reads an image asset, preferring the KTX file of the same name if it is packaged in one of the
+   * given formats. May be called on any thread.
+   *
+   * @param context Context for loading the assets.
+   * @param imageAssetName Name of the PNG file.
+   * @param supportedFormats Compressed formats to accept, see {@link
+   *     #supportedCompressedFormats(Gl)}.
+   */
+  public static Image read(Context context, String imageAssetName, int[] supportedFormats)
+      throws IOException {
+    long startNanos = System.nanoTime();
+    String ktxAssetName = KtxFile.textureNameFor(imageAssetName);
+    ByteBuffer data = MeshLoader.openAsset(context.getAssets(), ktxAssetName);
+    if (data != null) {
+      CompressedTexture texture = KtxFile.read(data);
+      for (int format : supportedFormats) {
+        if (format == texture.getFormat()) {
+          return new Image(ktxAssetName, texture, null, System.nanoTime() - startNanos);
+        }
+      }
+      RenderLog.i(
+          TAG,
+          String.format(
+              "Format 0x%x of %s is not supported; decoding the image instead.",
+              texture.getFormat(),
+              ktxAssetName));
+    }
+
+    Bitmap bitmap;
+    try (InputStream in = context.getAssets().open(imageAssetName)) {
+      bitmap = BitmapFactory.decodeStream(in);
+    }
+    if (bitmap == null) {
+      throw new IOException("Could not decode " + imageAssetName);
+    }
+    return new Image(imageAssetName, null, bitmap, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Uploads an image read with {@link #read} into a texture with trilinear filtering, generating
+   * its mipmaps if they are not precomputed. Must be called on the OpenGL thread. Decoded bitmaps
+   * are recycled.
+   *
+   * @param gl Where the texture is uploaded.
+   * @param image The image to upload.
+   * @param texture Name of the texture object to fill.
+   * @return The size of the texture in video memory, in bytes.
+   */
+  public static long upload(Gl gl, Image image, int texture) {
+    long startNanos = System.nanoTime();
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+    gl.glTexParameteri(
+        GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
+    gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+
+    long sizeBytes =
+        image.compressed != null
+            ? uploadCompressed(gl, image.compressed)
+            : uploadBitmap(gl, image.bitmap);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+    ShaderUtil.checkGLError(gl, TAG, "Texture loading");
+    RenderLog.i(
+        TAG,
+        String.format(
+            "Loaded %s: %d bytes, read in %.2f ms, uploaded in %.2f ms",
+            image.source,
+            sizeBytes,
+            image.readNanos / 1e6,
+            (System.nanoTime() - startNanos) / 1e6));
+    return sizeBytes;
+  }
+
+  // Uploads every level of a compressed texture into the bound texture. Returns its size.
+  private static long uploadCompressed(Gl gl, CompressedTexture texture) {
+    int glFormat = texture.getFormat();
+    // ETC2 decoders read ETC1 data identically, and ETC2 is part of every OpenGL ES 3.0 driver,
+    // while the ETC1 extension is not.
+    if (glFormat == CompressedTexture.ETC1_RGB8 && ShaderUtil.isGlEs3OrNewer(gl)) {
+      glFormat = GLES30.GL_COMPRESSED_RGB8_ETC2;
+    }
+    for (int level = 0; level < texture.getLevelCount(); ++level) {
+      ByteBuffer image = texture.getLevel(level);
+      gl.glCompressedTexImage2D(
+          GLES20.GL_TEXTURE_2D,
+          level,
+          glFormat,
+          texture.getLevelWidth(level),
+          texture.getLevelHeight(level),
+          0,
+          image.remaining(),
+          image);
+    }
+    return texture.getSizeBytes();
+  }
+
+  // Uploads a bitmap into the bound texture and generates its mipmaps. Returns its size.
+  private static long uploadBitmap(Gl gl, Bitmap textureBitmap) {
+    // ARGB_8888 bitmaps hold their pixels as RGBA bytes, which is what glTexImage2D reads.
+    Bitmap rgba =
+        textureBitmap.getConfig() == Bitmap.Config.ARGB_8888
+            ? textureBitmap
+            : textureBitmap.copy(Bitmap.Config.ARGB_8888, false);
+    int width = rgba.getWidth();
+    int height = rgba.getHeight();
+    ByteBuffer pixels =
+        ByteBuffer.allocateDirect(width * height * BYTES_PER_TEXEL).order(ByteOrder.nativeOrder());
+    rgba.copyPixelsToBuffer(pixels);
+    pixels.rewind();
+    gl.glTexImage2D(
+        GLES20.GL_TEXTURE_2D,
+        0,
+        GLES20.GL_RGBA,
+        width,
+        height,
+        0,
+        GLES20.GL_RGBA,
+        GLES20.GL_UNSIGNED_BYTE,
+        pixels);
+    gl.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+
+    // The mipmap chain adds a third to the size of the base level.
+    long sizeBytes = (long) width * height * BYTES_PER_TEXEL * 4 / 3;
+    if (rgba != textureBitmap) {
+      rgba.recycle();
+    }
+    textureBitmap.recycle();
+    return sizeBytes;
+  }
+}
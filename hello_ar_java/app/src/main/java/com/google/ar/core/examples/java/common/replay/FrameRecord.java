@@ -0,0 +1,357 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.replay;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * What the application saw of one ARCore frame: the camera, the light estimate, the taps, the
+ * planes, the point cloud and the anchors. Recorded by {@link SessionRecorder} and read back by
+ * {@link SessionReader}.
+ *
+ * <p>Poses are stored as {@link #POSE_FLOATS} floats, the translation followed by the rotation
+ * quaternion, like {@code Pose.getTranslation()} and {@code Pose.getRotationQuaternion()}. Per-item
+ * data is stored in parallel arrays that grow as needed and are reused from frame to frame, so
+ * filling or reading a record allocates nothing once it has grown to the size of the session.
+ */
+public final class FrameRecord {
+  /** Floats per pose: tx, ty, tz, qx, qy, qz, qw. */
+  public static final int POSE_FLOATS = 7;
+  /** Floats per point cloud point: x, y, z, confidence. */
+  public static final int POINT_FLOATS = 4;
+
+  /** Tracking states, matching the order of {@code TrackingState}. */
+  public static final byte TRACKING = 0;
+  public static final byte PAUSED = 1;
+  public static final byte STOPPED = 2;
+
+  /** Plane types, matching the order of {@code Plane.Type}. */
+  public static final byte HORIZONTAL_UPWARD_FACING = 0;
+  public static final byte HORIZONTAL_DOWNWARD_FACING = 1;
+  public static final byte VERTICAL = 2;
+
+  /** Id of no plane, for planes that were not subsumed. */
+  public static final int NO_PLANE = -1;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Frame timestamp, in nanoseconds. */
+  public long timestampNanos;
+
+  public byte cameraTrackingState;
+  /** Pose of the physical camera. */
+  public final float[] cameraPose = new float[POSE_FLOATS];
+  /** Pose of the virtual camera, aligned with the display. */
+  public final float[] displayOrientedPose = new float[POSE_FLOATS];
+  public final float[] viewMatrix = new float[16];
+  public final float[] projectionMatrix = new float[16];
+
+  /** Whether the light estimate was valid. */
+  public boolean lightEstimateValid;
+  public final float[] colorCorrection = new float[4];
+  public float pixelIntensity;
+
+  /** Taps handled this frame, as {@code (x, y)} screen pixels. */
+  public int tapCount;
+  public float[] taps = new float[2 * 4];
+
+  public int planeCount;
+  /** Ids identifying the planes across frames. */
+  public int[] planeIds = new int[INITIAL_CAPACITY];
+  public byte[] planeTypes = new byte[INITIAL_CAPACITY];
+  public byte[] planeTrackingStates = new byte[INITIAL_CAPACITY];
+  /** Id of the plane subsuming each plane, or {@link #NO_PLANE}. */
+  public int[] planeSubsumedBy = new int[INITIAL_CAPACITY];
+  public float[] planeCenterPoses = new float[INITIAL_CAPACITY * POSE_FLOATS];
+  /** Extents along X and Z of each plane. */
+  public float[] planeExtents = new float[INITIAL_CAPACITY * 2];
+  /**
+   * Start of the polygon of each plane in {@link #planePolygons}; that of plane {@code i} ends at
+   * the start of plane {@code i + 1}. Has {@code planeCount + 1} entries.
+   */
+  public int[] planePolygonStarts = new int[INITIAL_CAPACITY + 1];
+  /** Boundary polygons of the planes, as {@code (x, z)} pairs in plane space. */
+  public float[] planePolygons = new float[INITIAL_CAPACITY * 64];
+
+  public long pointCloudTimestampNanos;
+  public int pointCount;
+  public float[] points = new float[1024 * POINT_FLOATS];
+
+  public int anchorCount;
+  /** Ids identifying the anchors across frames. */
+  public int[] anchorIds = new int[INITIAL_CAPACITY];
+  public byte[] anchorTrackingStates = new byte[INITIAL_CAPACITY];
+  public float[] anchorPoses = new float[INITIAL_CAPACITY * POSE_FLOATS];
+
+  // Temporary pose allocated here to reduce the number of allocations when reading.
+  private final float[] readPose = new float[POSE_FLOATS];
+
+  /** Removes the taps, planes, points and anchors. */
+  public void clear() {
+    tapCount = 0;
+    planeCount = 0;
+    pointCount = 0;
+    anchorCount = 0;
+  }
+
+  public void addTap(float x, float y) {
+    if (taps.length < 2 * (tapCount + 1)) {
+      taps = Arrays.copyOf(taps, 2 * taps.length);
+    }
+    taps[2 * tapCount] = x;
+    taps[2 * tapCount + 1] = y;
+    tapCount++;
+  }
+
+  /**
+   * Adds a plane.
+   *
+   * @param centerPose Center pose of the plane, {@link #POSE_FLOATS} floats from {@code
+   *     poseOffset}.
+   * @param polygon Boundary polygon from its position to its limit, or null. Its position is not
+   *     changed.
+   */
+  public void addPlane(
+      int id,
+      byte type,
+      byte trackingState,
+      int subsumedBy,
+      float[] centerPose,
+      int poseOffset,
+      float extentX,
+      float extentZ,
+      FloatBuffer polygon) {
+    int length = polygon == null ? 0 : polygon.remaining();
+    int plane =
+        addPlane(id, type, trackingState, subsumedBy, centerPose, poseOffset, extentX, extentZ);
+    int start = reservePolygon(plane, length);
+    if (length > 0) {
+      int position = polygon.position();
+      polygon.get(planePolygons, start, length);
+      polygon.position(position);
+    }
+  }
+
+  // Adds a plane with an empty polygon, and returns its index.
+  private int addPlane(
+      int id,
+      byte type,
+      byte trackingState,
+      int subsumedBy,
+      float[] centerPose,
+      int poseOffset,
+      float extentX,
+      float extentZ) {
+    if (planeIds.length == planeCount) {
+      int capacity = 2 * planeCount;
+      planeIds = Arrays.copyOf(planeIds, capacity);
+      planeTypes = Arrays.copyOf(planeTypes, capacity);
+      planeTrackingStates = Arrays.copyOf(planeTrackingStates, capacity);
+      planeSubsumedBy = Arrays.copyOf(planeSubsumedBy, capacity);
+      planeCenterPoses = Arrays.copyOf(planeCenterPoses, capacity * POSE_FLOATS);
+      planeExtents = Arrays.copyOf(planeExtents, capacity * 2);
+      planePolygonStarts = Arrays.copyOf(planePolygonStarts, capacity + 1);
+    }
+    int plane = planeCount++;
+    planeIds[plane] = id;
+    planeTypes[plane] = type;
+    planeTrackingStates[plane] = trackingState;
+    planeSubsumedBy[plane] = subsumedBy;
+    System.arraycopy(centerPose, poseOffset, planeCenterPoses, plane * POSE_FLOATS, POSE_FLOATS);
+    planeExtents[2 * plane] = extentX;
+    planeExtents[2 * plane + 1] = extentZ;
+    int start = plane == 0 ? 0 : planePolygonStarts[plane];
+    planePolygonStarts[plane] = start;
+    planePolygonStarts[plane + 1] = start;
+    return plane;
+  }
+
+  // Makes room for the polygon of the plane added last, and returns where it starts.
+  private int reservePolygon(int plane, int length) {
+    int start = planePolygonStarts[plane];
+    if (planePolygons.length < start + length) {
+      planePolygons =
+          Arrays.copyOf(planePolygons, Math.max(2 * planePolygons.length, start + length));
+    }
+    planePolygonStarts[plane + 1] = start + length;
+    return start;
+  }
+
+  /** Returns the number of floats in the polygon of a plane, twice its number of vertices. */
+  public int getPlanePolygonLength(int plane) {
+    return planePolygonStarts[plane + 1] - planePolygonStarts[plane];
+  }
+
+  /**
+   * Sets the point cloud.
+   *
+   * @param points Points from the position to the limit of the buffer, {@link #POINT_FLOATS}
+   *     floats each, like {@code PointCloud.getPoints()}. The position is not changed.
+   */
+  public void setPointCloud(long timestampNanos, FloatBuffer points) {
+    pointCloudTimestampNanos = timestampNanos;
+    int length = points.remaining() / POINT_FLOATS * POINT_FLOATS;
+    reservePoints(length / POINT_FLOATS);
+    int position = points.position();
+    points.get(this.points, 0, length);
+    points.position(position);
+  }
+
+  // Sets the number of points, growing the array as needed. The content becomes undefined.
+  private void reservePoints(int count) {
+    if (points.length < POINT_FLOATS * count) {
+      points = new float[Math.max(2 * points.length, POINT_FLOATS * count)];
+    }
+    pointCount = count;
+  }
+
+  /**
+   * Adds an anchor.
+   *
+   * @param pose Pose of the anchor, {@link #POSE_FLOATS} floats from {@code poseOffset}.
+   */
+  public void addAnchor(int id, byte trackingState, float[] pose, int poseOffset) {
+    if (anchorIds.length == anchorCount) {
+      int capacity = 2 * anchorCount;
+      anchorIds = Arrays.copyOf(anchorIds, capacity);
+      anchorTrackingStates = Arrays.copyOf(anchorTrackingStates, capacity);
+      anchorPoses = Arrays.copyOf(anchorPoses, capacity * POSE_FLOATS);
+    }
+    int anchor = anchorCount++;
+    anchorIds[anchor] = id;
+    anchorTrackingStates[anchor] = trackingState;
+    System.arraycopy(pose, poseOffset, anchorPoses, anchor * POSE_FLOATS, POSE_FLOATS);
+  }
+
+  /** Returns the number of bytes {@link #write} takes. */
+  int getEncodedSize() {
+    int polygonFloats = planeCount == 0 ? 0 : planePolygonStarts[planeCount];
+    return 8
+        + 1
+        + 4 * (2 * POSE_FLOATS + 16 + 16)
+        + 1
+        + 4 * 5
+        + 4
+        + 4 * 2 * tapCount
+        + 4
+        + planeCount * (4 + 1 + 1 + 4 + 4 * POSE_FLOATS + 4 * 2 + 4)
+        + 4 * polygonFloats
+        + 8
+        + 4
+        + 4 * POINT_FLOATS * pointCount
+        + 4
+        + anchorCount * (4 + 1 + 4 * POSE_FLOATS);
+  }
+
+  /** Encodes the record, taking {@link #getEncodedSize()} bytes of the buffer. */
+  void write(ByteBuffer out) {
+    out.putLong(timestampNanos);
+    out.put(cameraTrackingState);
+    putFloats(out, cameraPose, 0, POSE_FLOATS);
+    putFloats(out, displayOrientedPose, 0, POSE_FLOATS);
+    putFloats(out, viewMatrix, 0, 16);
+    putFloats(out, projectionMatrix, 0, 16);
+    out.put((byte) (lightEstimateValid ? 1 : 0));
+    putFloats(out, colorCorrection, 0, 4);
+    out.putFloat(pixelIntensity);
+
+    out.putInt(tapCount);
+    putFloats(out, taps, 0, 2 * tapCount);
+
+    out.putInt(planeCount);
+    for (int plane = 0; plane < planeCount; ++plane) {
+      out.putInt(planeIds[plane]);
+      out.put(planeTypes[plane]);
+      out.put(planeTrackingStates[plane]);
+      out.putInt(planeSubsumedBy[plane]);
+      putFloats(out, planeCenterPoses, plane * POSE_FLOATS, POSE_FLOATS);
+      putFloats(out, planeExtents, 2 * plane, 2);
+      out.putInt(getPlanePolygonLength(plane));
+      putFloats(out, planePolygons, planePolygonStarts[plane], getPlanePolygonLength(plane));
+    }
+
+    out.putLong(pointCloudTimestampNanos);
+    out.putInt(pointCount);
+    putFloats(out, points, 0, POINT_FLOATS * pointCount);
+
+    out.putInt(anchorCount);
+    for (int anchor = 0; anchor < anchorCount; ++anchor) {
+      out.putInt(anchorIds[anchor]);
+      out.put(anchorTrackingStates[anchor]);
+      putFloats(out, anchorPoses, anchor * POSE_FLOATS, POSE_FLOATS);
+    }
+  }
+
+  /** Decodes a record encoded by {@link #write}, replacing the content of this one. */
+  void read(ByteBuffer in) {
+    clear();
+    timestampNanos = in.getLong();
+    cameraTrackingState = in.get();
+    getFloats(in, cameraPose, 0, POSE_FLOATS);
+    getFloats(in, displayOrientedPose, 0, POSE_FLOATS);
+    getFloats(in, viewMatrix, 0, 16);
+    getFloats(in, projectionMatrix, 0, 16);
+    lightEstimateValid = in.get() != 0;
+    getFloats(in, colorCorrection, 0, 4);
+    pixelIntensity = in.getFloat();
+
+    int taps = in.getInt();
+    for (int i = 0; i < taps; ++i) {
+      addTap(in.getFloat(), in.getFloat());
+    }
+
+    int planes = in.getInt();
+    for (int i = 0; i < planes; ++i) {
+      int id = in.getInt();
+      byte type = in.get();
+      byte trackingState = in.get();
+      int subsumedBy = in.getInt();
+      getFloats(in, readPose, 0, POSE_FLOATS);
+      float extentX = in.getFloat();
+      float extentZ = in.getFloat();
+      int plane = addPlane(id, type, trackingState, subsumedBy, readPose, 0, extentX, extentZ);
+      int length = in.getInt();
+      // Reserve first: the polygon array may be replaced.
+      int start = reservePolygon(plane, length);
+      getFloats(in, planePolygons, start, length);
+    }
+
+    pointCloudTimestampNanos = in.getLong();
+    reservePoints(in.getInt());
+    getFloats(in, points, 0, POINT_FLOATS * pointCount);
+
+    int anchors = in.getInt();
+    for (int i = 0; i < anchors; ++i) {
+      int id = in.getInt();
+      byte trackingState = in.get();
+      getFloats(in, readPose, 0, POSE_FLOATS);
+      addAnchor(id, trackingState, readPose, 0);
+    }
+  }
+
+  private static void putFloats(ByteBuffer out, float[] values, int offset, int count) {
+    for (int i = 0; i < count; ++i) {
+      out.putFloat(values[offset + i]);
+    }
+  }
+
+  private static void getFloats(ByteBuffer in, float[] values, int offset, int count) {
+    for (int i = 0; i < count; ++i) {
+      values[offset + i] = in.getFloat();
+    }
+  }
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.replay;
+
+import com.google.ar.core.examples.java.common.helpers.AnchorStatusText;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.PoseMath;
+import com.google.ar.core.examples.java.common.profiling.FrameProfiler;
+import com.google.ar.core.examples.java.common.rendering.AnchorTracker;
+import com.google.ar.core.examples.java.common.rendering.PlaneSelection;
+import com.google.ar.core.examples.java.common.spatial.PlaneTriangulator;
+import com.google.ar.core.examples.java.common.spatial.PolygonSimplifier;
+import com.google.ar.core.examples.java.common.spatial.VoxelMap;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Runs the CPU side of the per-frame pipeline of the sample on recorded frames, without a device
+ * or OpenGL: anchor bookkeeping, visibility culling and the model matrices of the anchors in view
+ * in an {@link AnchorTracker}, the nearest anchor in view, the anchor status text, the choice of
+ * planes to draw with {@link PlaneSelection}, plane simplification and triangulation, and
+ * accumulation of the point cloud into a {@link VoxelMap}. The helpers are those the activity and
+ * the renderers use. Each step is timed with a {@link FrameProfiler}.
+ *
+ * <p>Parameters match those of {@code HelloArActivity}. Frames are replayed either as fast as
+ * possible, to profile the pipeline, or at the pace they were recorded at. Run {@link #main} with
+ * the path of a session log to replay it and print the timings.
+ */
+public final class ReplayEngine {
+  /** How fast frames are replayed. */
+  public enum Pace {
+    AS_FAST_AS_POSSIBLE,
+    RECORDED
+  }
+
+  private static final float ANCHOR_INDEX_CELL_SIZE_M = 0.5f;
+  // Bounding radius of the anchored models, about that of the Android figure and its shadow.
+  private static final float DEFAULT_ANCHOR_BOUNDING_RADIUS_M = 0.2f;
+  private static final float POINT_MAP_VOXEL_SIZE_M = 0.05f;
+  private static final int POINT_MAP_CAPACITY = 65536;
+  private static final int POINT_MAP_CHUNK_SIZE = 4096;
+  private static final float SIMPLIFY_TOLERANCE_M = 0.01f;
+  private static final int MAX_BOUNDARY_VERTICES_PER_PLANE = 64;
+  private static final int MAX_BOUNDARY_VERTICES = 1024;
+  // Instanced draws of the anchors per frame, the model and its shadow, and their data per
+  // instance: a model matrix and a color, uploaded by ObjectRenderer.drawInstances().
+  private static final int INSTANCED_DRAWS = 2;
+  private static final int FLOATS_PER_INSTANCE = 16 + 4;
+  private static final float[] ANCHOR_COLOR = {66.0f / 255, 133.0f / 255, 244.0f / 255, 1};
+  // Interval between updates of the status text, that of a 60 Hz display.
+  private static final long STATUS_TEXT_INTERVAL_NANOS = 16_666_667L;
+
+  private final FrameProfiler profiler = new FrameProfiler();
+  private final int stageFrame = profiler.addStage("frame");
+  private final int stageAnchors = profiler.addStage("anchors");
+  private final int stageVisibility = profiler.addStage("visibility");
+  private final int stageNearest = profiler.addStage("nearest");
+  private final int stageStatusText = profiler.addStage("status text");
+  private final int stagePlanes = profiler.addStage("planes");
+  private final int stagePointCloud = profiler.addStage("point cloud");
+
+  private float anchorBoundingRadius = DEFAULT_ANCHOR_BOUNDING_RADIUS_M;
+
+  // Anchors, by id: their handle in the tracker, and the last frame they were seen in.
+  private final AnchorTracker anchorTracker = new AnchorTracker(ANCHOR_INDEX_CELL_SIZE_M);
+  private int[] anchorHandles = new int[64];
+  private int[] anchorLastSeenFrames = new int[64];
+
+  // Status text, updated at most once per display refresh when it changes.
+  private final AnchorStatusText anchorStatus = new AnchorStatusText();
+  private final StringBuilder statusText = new StringBuilder();
+  private long lastStatusTextNanos;
+  private boolean statusTextShown;
+
+  // Planes, by id: the hash of the polygon last triangulated, and whether there is one.
+  private final PlaneTriangulator triangulator = new PlaneTriangulator(SIMPLIFY_TOLERANCE_M);
+  private int[] planeMeshHashes = new int[64];
+  private boolean[] planeMeshValid = new boolean[64];
+  private FloatBuffer polygonBuffer =
+      ByteBuffer.allocateDirect(4 * 256).order(ByteOrder.nativeOrder()).asFloatBuffer();
+  // Distances of the camera to the planes of the frame, by index in the frame.
+  private float[] planeDistances = new float[64];
+
+  private final VoxelMap pointCloudMap =
+      new VoxelMap(POINT_MAP_VOXEL_SIZE_M, POINT_MAP_CAPACITY, POINT_MAP_CHUNK_SIZE);
+  private FloatBuffer pointBuffer =
+      ByteBuffer.allocateDirect(4 * 4096).order(ByteOrder.nativeOrder()).asFloatBuffer();
+  private long lastMappedPointCloudTimestamp;
+
+  // Temporary matrix allocated here to reduce the number of allocations for each frame.
+  private final float[] viewProjection = new float[16];
+
+  // Frames processed, for bookkeeping, and since statistics were last reset.
+  private int frameNumber;
+  private int frameCount;
+  private long visibleAnchorCount;
+  private long instanceBytes;
+  private long nearestAnchorCount;
+  private long statusTextUpdateCount;
+  private long triangulationCount;
+  private long triangulationsAvoidedCount;
+  private long meshIndexCount;
+  private long mappedPointCount;
+  private int lastNearestAnchorId = -1;
+
+  public ReplayEngine() {
+    Arrays.fill(anchorHandles, AnchorTracker.NO_HANDLE);
+  }
+
+  public void setAnchorBoundingRadius(float radiusMeters) {
+    anchorBoundingRadius = radiusMeters;
+  }
+
+  /**
+   * Replays every frame of a log.
+   *
+   * @return The number of frames replayed.
+   */
+  public int run(SessionReader reader, Pace pace) throws IOException, InterruptedException {
+    FrameRecord frame = new FrameRecord();
+    int replayed = 0;
+    long firstTimestamp = 0;
+    long startNanos = System.nanoTime();
+    while (reader.next(frame)) {
+      if (replayed == 0) {
+        firstTimestamp = frame.timestampNanos;
+      } else if (pace == Pace.RECORDED) {
+        long delayNanos =
+            (frame.timestampNanos - firstTimestamp) - (System.nanoTime() - startNanos);
+        if (delayNanos > 0) {
+          Thread.sleep(delayNanos / 1_000_000, (int) (delayNanos % 1_000_000));
+        }
+      }
+      processFrame(frame);
+      replayed++;
+    }
+    return replayed;
+  }
+
+  /** Runs the pipeline on one frame. */
+  public void processFrame(FrameRecord frame) {
+    profiler.begin(stageFrame);
+    frameNumber++;
+    frameCount++;
+    if (frame.cameraTrackingState == FrameRecord.TRACKING) {
+      updateAnchors(frame);
+      cullAnchors(frame);
+      boolean foundNearest = findNearestAnchor(frame);
+      updateStatusText(frame, foundNearest);
+      triangulatePlanes(frame);
+      accumulatePoints(frame);
+    }
+    profiler.end(stageFrame);
+  }
+
+  // Tracks the anchors of the frame, like HelloArActivity.
+  private void updateAnchors(FrameRecord frame) {
+    profiler.begin(stageAnchors);
+    anchorTracker.beginFrame();
+    for (int i = 0; i < frame.anchorCount; ++i) {
+      int id = frame.anchorIds[i];
+      ensureAnchorCapacity(id);
+      anchorLastSeenFrames[id] = frameNumber;
+      if (frame.anchorTrackingStates[i] != FrameRecord.TRACKING) {
+        anchorHandles[id] = anchorTracker.remove(anchorHandles[id]);
+        continue;
+      }
+      anchorHandles[id] =
+          anchorTracker.track(
+              anchorHandles[id], id, ANCHOR_COLOR, frame.anchorPoses, i * FrameRecord.POSE_FLOATS);
+    }
+    // Anchors missing from the frame were detached.
+    for (int id = 0; id < anchorHandles.length; ++id) {
+      if (anchorLastSeenFrames[id] != frameNumber) {
+        anchorHandles[id] = anchorTracker.remove(anchorHandles[id]);
+      }
+    }
+    profiler.end(stageAnchors);
+  }
+
+  private void ensureAnchorCapacity(int id) {
+    if (id < anchorHandles.length) {
+      return;
+    }
+    int oldLength = anchorHandles.length;
+    int length = Math.max(2 * oldLength, id + 1);
+    anchorHandles = Arrays.copyOf(anchorHandles, length);
+    anchorLastSeenFrames = Arrays.copyOf(anchorLastSeenFrames, length);
+    Arrays.fill(anchorHandles, oldLength, length, AnchorTracker.NO_HANDLE);
+  }
+
+  // Culls the tracking anchors against the view frustum, and packs the model matrices and colors
+  // of those in view. Counts the bytes ObjectRenderer uploads to draw them.
+  private void cullAnchors(FrameRecord frame) {
+    profiler.begin(stageVisibility);
+    Mat4.multiply(viewProjection, 0, frame.projectionMatrix, 0, frame.viewMatrix, 0);
+    int visibleCount = anchorTracker.cull(viewProjection, anchorBoundingRadius);
+    visibleAnchorCount += visibleCount;
+    instanceBytes += INSTANCED_DRAWS * 4 * FLOATS_PER_INSTANCE * visibleCount;
+    profiler.end(stageVisibility);
+  }
+
+  // Returns whether an anchor in view was found.
+  private boolean findNearestAnchor(FrameRecord frame) {
+    if (anchorTracker.getVisibleCount() == 0) {
+      return false;
+    }
+    profiler.begin(stageNearest);
+    int id =
+        anchorTracker.findNearestVisible(
+            frame.cameraPose[0], frame.cameraPose[1], frame.cameraPose[2]);
+    if (id >= 0) {
+      nearestAnchorCount++;
+      lastNearestAnchorId = id;
+    }
+    profiler.end(stageNearest);
+    return id >= 0;
+  }
+
+  // Describes the anchors in view, and formats the text when it changed, like
+  // AnchorStatusPublisher. Frame timestamps stand for the time of publication.
+  private void updateStatusText(FrameRecord frame, boolean foundNearest) {
+    profiler.begin(stageStatusText);
+    anchorStatus.beginFrame();
+    for (int i = 0; i < anchorTracker.getVisibleCount(); ++i) {
+      anchorStatus.addVisibleAnchor(anchorTracker.getVisibleId(i));
+    }
+    if (foundNearest) {
+      anchorStatus.setNearestAnchor(lastNearestAnchorId, anchorTracker.getNearestDistance());
+    }
+    if (anchorStatus.hasChanged()
+        && (!statusTextShown
+            || frame.timestampNanos - lastStatusTextNanos >= STATUS_TEXT_INTERVAL_NANOS)) {
+      anchorStatus.format(statusText);
+      statusTextShown = true;
+      lastStatusTextNanos = frame.timestampNanos;
+      statusTextUpdateCount++;
+    }
+    profiler.end(stageStatusText);
+  }
+
+  // Triangulates the planes the renderer would draw, when their polygon changed, like
+  // PlaneRenderer.updatePlaneMesh().
+  private void triangulatePlanes(FrameRecord frame) {
+    profiler.begin(stagePlanes);
+    if (planeDistances.length < frame.planeCount) {
+      planeDistances = new float[2 * frame.planeCount];
+    }
+    float[] camera = frame.displayOrientedPose;
+    PoseMath.planeDistances(
+        frame.planeCenterPoses,
+        0,
+        frame.planeCount,
+        camera[0],
+        camera[1],
+        camera[2],
+        planeDistances,
+        0);
+    int drawnCount = 0;
+    for (int i = 0; i < frame.planeCount; ++i) {
+      if (isPlaneDrawn(frame, i)) {
+        drawnCount++;
+      }
+    }
+    int budget =
+        PolygonSimplifier.shareBudget(
+            MAX_BOUNDARY_VERTICES_PER_PLANE, MAX_BOUNDARY_VERTICES, drawnCount);
+    for (int i = 0; i < frame.planeCount; ++i) {
+      if (!isPlaneDrawn(frame, i)) {
+        continue;
+      }
+      int id = frame.planeIds[i];
+      if (id >= planeMeshHashes.length) {
+        int length = Math.max(2 * planeMeshHashes.length, id + 1);
+        planeMeshHashes = Arrays.copyOf(planeMeshHashes, length);
+        planeMeshValid = Arrays.copyOf(planeMeshValid, length);
+      }
+      int start = frame.planePolygonStarts[i];
+      int length = frame.getPlanePolygonLength(i);
+      if (polygonBuffer.capacity() < length) {
+        polygonBuffer =
+            ByteBuffer.allocateDirect(4 * 2 * length)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+      }
+      polygonBuffer.clear();
+      polygonBuffer.put(frame.planePolygons, start, length);
+      polygonBuffer.flip();
+      float extentX = frame.planeExtents[2 * i];
+      float extentZ = frame.planeExtents[2 * i + 1];
+      int hash = PlaneSelection.meshHash(polygonBuffer, extentX, extentZ, budget);
+      if (planeMeshValid[id] && planeMeshHashes[id] == hash) {
+        triangulationsAvoidedCount++;
+        continue;
+      }
+      meshIndexCount += triangulator.triangulate(polygonBuffer, extentX, extentZ, budget);
+      triangulationCount++;
+      planeMeshHashes[id] = hash;
+      planeMeshValid[id] = true;
+    }
+    profiler.end(stagePlanes);
+  }
+
+  // Whether the renderer draws a plane. Uses the plane distances computed by triangulatePlanes().
+  private boolean isPlaneDrawn(FrameRecord frame, int plane) {
+    return PlaneSelection.isDrawable(
+            frame.planeTrackingStates[plane] == FrameRecord.TRACKING,
+            frame.planeSubsumedBy[plane] != FrameRecord.NO_PLANE)
+        && PlaneSelection.isFacingCamera(planeDistances[plane]);
+  }
+
+  // Merges new point clouds into the map, like HelloArActivity.
+  private void accumulatePoints(FrameRecord frame) {
+    if (frame.pointCloudTimestampNanos == lastMappedPointCloudTimestamp) {
+      return;
+    }
+    profiler.begin(stagePointCloud);
+    lastMappedPointCloudTimestamp = frame.pointCloudTimestampNanos;
+    int length = frame.pointCount * FrameRecord.POINT_FLOATS;
+    if (pointBuffer.capacity() < length) {
+      pointBuffer =
+          ByteBuffer.allocateDirect(4 * 2 * length).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+    pointBuffer.clear();
+    pointBuffer.put(frame.points, 0, length);
+    pointBuffer.flip();
+    pointCloudMap.accumulate(pointBuffer);
+    mappedPointCount += frame.pointCount;
+    profiler.end(stagePointCloud);
+  }
+
+  public FrameProfiler getProfiler() {
+    return profiler;
+  }
+
+  public VoxelMap getPointCloudMap() {
+    return pointCloudMap;
+  }
+
+  /** Returns the anchor tracker, which holds the anchors in view of the last frame. */
+  public AnchorTracker getAnchorTracker() {
+    return anchorTracker;
+  }
+
+  /** Returns the status text last formatted. */
+  public CharSequence getStatusText() {
+    return statusText;
+  }
+
+  /** Returns the id of the nearest anchor in view found last, or -1 if none was found yet. */
+  public int getLastNearestAnchorId() {
+    return lastNearestAnchorId;
+  }
+
+  /** Clears the timings and totals, but not the state of the pipeline. */
+  public void resetStatistics() {
+    profiler.reset();
+    frameCount = 0;
+    visibleAnchorCount = 0;
+    instanceBytes = 0;
+    nearestAnchorCount = 0;
+    statusTextUpdateCount = 0;
+    triangulationCount = 0;
+    triangulationsAvoidedCount = 0;
+    meshIndexCount = 0;
+    mappedPointCount = 0;
+  }
+
+  /** Returns the frame timings followed by totals of the work done. */
+  public String formatReport() {
+    return profiler.formatReport()
+        + String.format(
+            Locale.US,
+            "frames %d, anchors in view %d, instance bytes %d, nearest found %d%n"
+                + "status text updates %d%n"
+                + "planes triangulated %d, unchanged %d, indices %d%n"
+                + "points mapped %d, voxels %d, evicted %d%n",
+            frameCount,
+            visibleAnchorCount,
+            instanceBytes,
+            nearestAnchorCount,
+            statusTextUpdateCount,
+            triangulationCount,
+            triangulationsAvoidedCount,
+            meshIndexCount,
+            mappedPointCount,
+            pointCloudMap.size(),
+            pointCloudMap.getEvictedCount());
+  }
+
+  /**
+   * Replays a session log and prints the timings.
+   *
+   * <p>Usage: {@code ReplayEngine <session log> [--paced] [--repeat <count>]}. With {@code
+   * --paced}, frames are replayed at the pace they were recorded at. With {@code --repeat}, the log
+   * is replayed several times by the same engine, to let the JIT warm up; timings are reset before
+   * the last run.
+   */
+  public static void main(String[] args) throws Exception {
+    String path = null;
+    Pace pace = Pace.AS_FAST_AS_POSSIBLE;
+    int repeat = 1;
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("--paced")) {
+        pace = Pace.RECORDED;
+      } else if (args[i].equals("--repeat") && i + 1 < args.length) {
+        repeat = Integer.parseInt(args[++i]);
+      } else {
+        path = args[i];
+      }
+    }
+    if (path == null) {
+      System.err.println("Usage: ReplayEngine <session log> [--paced] [--repeat <count>]");
+      System.exit(2);
+    }
+
+    ReplayEngine engine = new ReplayEngine();
+    long startNanos = 0;
+    int frames = 0;
+    for (int run = 0; run < repeat; ++run) {
+      if (run == repeat - 1) {
+        engine.resetStatistics();
+        startNanos = System.nanoTime();
+      }
+      try (SessionReader reader =
+          new SessionReader(new BufferedInputStream(new FileInputStream(path)))) {
+        frames = engine.run(reader, pace);
+      }
+    }
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    System.out.print(engine.formatReport());
+    System.out.printf(
+        Locale.US,
+        "replayed %d frames in %.3f s, %.1f frames/s%n",
+        frames,
+        seconds,
+        frames / seconds);
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.replay;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * Generates the frames of a synthetic session, to measure how the pipeline scales with the size of
+ * the scene without recording one.
+ *
+ * <p>The camera walks around the middle of a 10 m room at eye height. Anchors are scattered over
+ * the room, and move by a millimeter or so every frame, as ARCore refines their poses. Planes are
+ * horizontal, at floor or table height; an eighth of them grow a little every frame. A new point
+ * cloud is seen every frame. Frames only depend on the parameters and on their number, so that
+ * runs can be compared.
+ */
+public final class SceneGenerator {
+  /** Frame interval of the generated session, that of a 30 Hz camera. */
+  public static final long FRAME_INTERVAL_NANOS = 33_333_333L;
+
+  private static final float ROOM_SIZE_M = 10.0f;
+  private static final float EYE_HEIGHT_M = 1.5f;
+  private static final float WALK_RADIUS_M = 2.0f;
+  private static final int WALK_PERIOD_FRAMES = 300;
+  private static final float ANCHOR_JITTER_M = 0.001f;
+  private static final int PLANE_UPDATE_PERIOD_FRAMES = 8;
+  private static final float PLANE_GROWTH_PER_UPDATE = 0.002f;
+  private static final float NEAR = 0.1f;
+  private static final float FAR = 100.0f;
+  private static final float VERTICAL_FIELD_OF_VIEW_DEGREES = 60.0f;
+  private static final float ASPECT_RATIO = 9.0f / 16.0f;
+
+  private final int anchorCount;
+  private final int planeCount;
+  private final long seed;
+
+  // Fixed part of the scene.
+  private final float[] anchorPositions;
+  private final float[] planePoses;
+  private final float[] planeExtents;
+  private final int[] planePolygonStarts;
+  private final float[] planePolygons;
+
+  // Temporaries allocated here to reduce the number of allocations for each frame.
+  private final float[] pose = new float[FrameRecord.POSE_FLOATS];
+  private final float[] polygon;
+  private final FloatBuffer polygonBuffer;
+  private final float[] points;
+  private final FloatBuffer pointBuffer;
+
+  /**
+   * @param anchorCount Number of anchors, all tracking.
+   * @param planeCount Number of planes, all tracking.
+   * @param pointCount Number of points in each point cloud.
+   * @param seed Seed of the random placement of anchors, planes and points.
+   */
+  public SceneGenerator(int anchorCount, int planeCount, int pointCount, long seed) {
+    this.anchorCount = anchorCount;
+    this.planeCount = planeCount;
+    this.seed = seed;
+    Random random = new Random(seed);
+
+    anchorPositions = new float[3 * anchorCount];
+    for (int i = 0; i < anchorCount; ++i) {
+      anchorPositions[3 * i] = ROOM_SIZE_M * (random.nextFloat() - 0.5f);
+      anchorPositions[3 * i + 1] = random.nextBoolean() ? 0 : 0.7f;
+      anchorPositions[3 * i + 2] = ROOM_SIZE_M * (random.nextFloat() - 0.5f);
+    }
+
+    planePoses = new float[FrameRecord.POSE_FLOATS * planeCount];
+    planeExtents = new float[2 * planeCount];
+    planePolygonStarts = new int[planeCount + 1];
+    int[] vertexCounts = new int[planeCount];
+    int polygonFloats = 0;
+    for (int i = 0; i < planeCount; ++i) {
+      vertexCounts[i] = 24 + random.nextInt(41);
+      planePolygonStarts[i] = polygonFloats;
+      polygonFloats += 2 * vertexCounts[i];
+    }
+    planePolygonStarts[planeCount] = polygonFloats;
+    planePolygons = new float[polygonFloats];
+    int maxPolygonFloats = 0;
+    for (int i = 0; i < planeCount; ++i) {
+      int p = i * FrameRecord.POSE_FLOATS;
+      planePoses[p] = ROOM_SIZE_M * (random.nextFloat() - 0.5f);
+      planePoses[p + 1] = random.nextBoolean() ? 0 : 0.7f;
+      planePoses[p + 2] = ROOM_SIZE_M * (random.nextFloat() - 0.5f);
+      // Horizontal, with a random rotation about the normal.
+      double yaw = 2 * Math.PI * random.nextDouble();
+      planePoses[p + 4] = (float) Math.sin(yaw / 2);
+      planePoses[p + 6] = (float) Math.cos(yaw / 2);
+      float extentX = 0.5f + 2.5f * random.nextFloat();
+      float extentZ = 0.5f + 2.5f * random.nextFloat();
+      planeExtents[2 * i] = extentX;
+      planeExtents[2 * i + 1] = extentZ;
+      int start = planePolygonStarts[i];
+      for (int v = 0; v < vertexCounts[i]; ++v) {
+        double angle = 2 * Math.PI * v / vertexCounts[i];
+        float noise = 1 + 0.05f * (float) random.nextGaussian();
+        planePolygons[start + 2 * v] = (float) (0.5 * extentX * noise * Math.cos(angle));
+        planePolygons[start + 2 * v + 1] = (float) (0.5 * extentZ * noise * Math.sin(angle));
+      }
+      maxPolygonFloats = Math.max(maxPolygonFloats, 2 * vertexCounts[i]);
+    }
+
+    polygon = new float[maxPolygonFloats];
+    polygonBuffer = FloatBuffer.wrap(polygon);
+    points = new float[FrameRecord.POINT_FLOATS * pointCount];
+    pointBuffer = FloatBuffer.wrap(points);
+  }
+
+  /** Replaces the content of {@code frame} with the given frame of the session. */
+  public void generate(int frameNumber, FrameRecord frame) {
+    frame.clear();
+    long timestamp = frameNumber * FRAME_INTERVAL_NANOS;
+    frame.timestampNanos = timestamp;
+    frame.cameraTrackingState = FrameRecord.TRACKING;
+    frame.lightEstimateValid = true;
+    frame.colorCorrection[0] = 1;
+    frame.colorCorrection[1] = 1;
+    frame.colorCorrection[2] = 1;
+    frame.colorCorrection[3] = 0.5f;
+    frame.pixelIntensity = 0.5f;
+
+    // Walk around the center of the room, looking ahead.
+    double walkAngle = 2 * Math.PI * frameNumber / WALK_PERIOD_FRAMES;
+    float cameraX = (float) (WALK_RADIUS_M * Math.cos(walkAngle));
+    float cameraZ = (float) (WALK_RADIUS_M * Math.sin(walkAngle));
+    // The camera looks down its -Z axis; turn it about Y to face along the walk.
+    double yaw = -walkAngle;
+    setPose(frame.cameraPose, cameraX, EYE_HEIGHT_M, cameraZ, yaw);
+    setPose(frame.displayOrientedPose, cameraX, EYE_HEIGHT_M, cameraZ, yaw);
+    setViewMatrix(frame.viewMatrix, cameraX, EYE_HEIGHT_M, cameraZ, yaw);
+    setProjectionMatrix(frame.projectionMatrix);
+
+    for (int i = 0; i < planeCount; ++i) {
+      int start = planePolygonStarts[i];
+      int length = planePolygonStarts[i + 1] - start;
+      float scale = 1 + PLANE_GROWTH_PER_UPDATE * ((frameNumber + i) / PLANE_UPDATE_PERIOD_FRAMES);
+      for (int v = 0; v < length; ++v) {
+        polygon[v] = planePolygons[start + v] * scale;
+      }
+      polygonBuffer.clear();
+      polygonBuffer.limit(length);
+      frame.addPlane(
+          i,
+          FrameRecord.HORIZONTAL_UPWARD_FACING,
+          FrameRecord.TRACKING,
+          FrameRecord.NO_PLANE,
+          planePoses,
+          i * FrameRecord.POSE_FLOATS,
+          planeExtents[2 * i] * scale,
+          planeExtents[2 * i + 1] * scale,
+          polygonBuffer);
+    }
+
+    Random random = new Random(seed * 31 + frameNumber);
+    float walkSin = (float) Math.sin(walkAngle);
+    float walkCos = (float) Math.cos(walkAngle);
+    for (int i = 0; i < points.length; i += FrameRecord.POINT_FLOATS) {
+      // Points ahead of the camera, up to 4 m away.
+      float forward = 0.5f + 3.5f * random.nextFloat();
+      float side = 4 * random.nextFloat() - 2;
+      points[i] = cameraX + forward * walkSin + side * walkCos;
+      points[i + 1] = 2 * random.nextFloat();
+      points[i + 2] = cameraZ - forward * walkCos + side * walkSin;
+      points[i + 3] = random.nextFloat();
+    }
+    pointBuffer.clear();
+    frame.setPointCloud(timestamp, pointBuffer);
+
+    pose[6] = 1;
+    for (int i = 0; i < anchorCount; ++i) {
+      float jitter = ANCHOR_JITTER_M * (float) Math.sin(frameNumber + i);
+      pose[0] = anchorPositions[3 * i] + jitter;
+      pose[1] = anchorPositions[3 * i + 1];
+      pose[2] = anchorPositions[3 * i + 2] - jitter;
+      // Ids start at 1, like the numbers shown to the user.
+      frame.addAnchor(i + 1, FrameRecord.TRACKING, pose, 0);
+    }
+  }
+
+  // A pose at the given position, rotated about the Y axis.
+  private static void setPose(float[] pose, float x, float y, float z, double yaw) {
+    pose[0] = x;
+    pose[1] = y;
+    pose[2] = z;
+    pose[3] = 0;
+    pose[4] = (float) Math.sin(yaw / 2);
+    pose[5] = 0;
+    pose[6] = (float) Math.cos(yaw / 2);
+  }
+
+  // The inverse of the camera pose, in column-major order.
+  private static void setViewMatrix(float[] m, float x, float y, float z, double yaw) {
+    float cos = (float) Math.cos(yaw);
+    float sin = (float) Math.sin(yaw);
+    // Transpose of the rotation about Y.
+    m[0] = cos;
+    m[1] = 0;
+    m[2] = sin;
+    m[3] = 0;
+    m[4] = 0;
+    m[5] = 1;
+    m[6] = 0;
+    m[7] = 0;
+    m[8] = -sin;
+    m[9] = 0;
+    m[10] = cos;
+    m[11] = 0;
+    // Minus the rotated translation.
+    m[12] = -(cos * x - sin * z);
+    m[13] = -y;
+    m[14] = -(sin * x + cos * z);
+    m[15] = 1;
+  }
+
+  // A perspective projection like Camera.getProjectionMatrix() on a phone held in portrait.
+  private static void setProjectionMatrix(float[] m) {
+    float f = (float) (1.0 / Math.tan(Math.toRadians(VERTICAL_FIELD_OF_VIEW_DEGREES) / 2));
+    for (int i = 0; i < 16; ++i) {
+      m[i] = 0;
+    }
+    m[0] = f / ASPECT_RATIO;
+    m[5] = f;
+    m[10] = (FAR + NEAR) / (NEAR - FAR);
+    m[11] = -1;
+    m[14] = 2 * FAR * NEAR / (NEAR - FAR);
+  }
+}
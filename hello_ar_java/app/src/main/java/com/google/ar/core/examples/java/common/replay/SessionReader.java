@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads the frames of a session log written by {@link SessionRecorder}, one at a time into a
+ * reused {@link FrameRecord}.
+ *
+ * <p>A log whose last frame was cut short, as when the app died while recording, ends at the last
+ * complete frame.
+ */
+public final class SessionReader implements Closeable {
+  private final InputStream in;
+  private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+  /**
+   * Reads and checks the header of the log.
+   *
+   * @param in Source of the log, typically buffered. Closed by {@link #close}.
+   * @throws IOException If the stream is not a session log of a supported version.
+   */
+  public SessionReader(InputStream in) throws IOException {
+    this.in = in;
+    if (!readFully(8)) {
+      throw new IOException("Not a session log: too short");
+    }
+    int magic = buffer.getInt();
+    int version = buffer.getInt();
+    if (magic != SessionRecorder.MAGIC) {
+      throw new IOException("Not a session log");
+    }
+    if (version != SessionRecorder.VERSION) {
+      throw new IOException("Unsupported session log version " + version);
+    }
+  }
+
+  /**
+   * Reads the next frame.
+   *
+   * @return False at the end of the log, in which case the record is unchanged.
+   * @throws IOException If reading failed or a frame is malformed.
+   */
+  public boolean next(FrameRecord frame) throws IOException {
+    if (!readFully(4)) {
+      return false;
+    }
+    int size = buffer.getInt();
+    if (size < 0) {
+      throw new IOException("Malformed session log: frame of " + size + " bytes");
+    }
+    if (!readFully(size)) {
+      return false;
+    }
+    try {
+      frame.read(buffer);
+    } catch (BufferUnderflowException
+        | IndexOutOfBoundsException
+        | NegativeArraySizeException e) {
+      throw new IOException("Malformed session log frame", e);
+    }
+    if (buffer.hasRemaining()) {
+      throw new IOException("Malformed session log: " + buffer.remaining() + " bytes left");
+    }
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  // Reads exactly the given number of bytes into the buffer, and flips it. Returns false at the
+  // end of the stream, even if some bytes were read.
+  private boolean readFully(int length) throws IOException {
+    if (buffer.capacity() < length) {
+      buffer = ByteBuffer.allocate(Math.max(length, 2 * buffer.capacity()));
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    byte[] bytes = buffer.array();
+    int read = 0;
+    while (read < length) {
+      int count = in.read(bytes, read, length - read);
+      if (count < 0) {
+        return false;
+      }
+      read += count;
+    }
+    buffer.clear();
+    buffer.limit(length);
+    return true;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes {@link FrameRecord}s to a session log, read back by {@link SessionReader}.
+ *
+ * <p>The log starts with a header of {@link #MAGIC} and {@link #VERSION}, followed by one entry
+ * per frame: its length in bytes, then the record. Everything is little-endian.
+ *
+ * <p>{@link #record} encodes the frame on the calling thread, typically the rendering thread, and
+ * a background thread writes it, so that the caller never waits for storage. Encoding buffers are
+ * pooled. When more than {@link #QUEUE_FRAMES} frames are waiting to be written, new frames are
+ * dropped and counted rather than queued.
+ */
+public final class SessionRecorder implements Closeable {
+  /** First bytes of a session log, "ARSL" in little-endian order. */
+  public static final int MAGIC = 0x4c535241;
+  /** Version of the log format. */
+  public static final int VERSION = 1;
+
+  private static final int QUEUE_FRAMES = 64;
+  private static final int HEADER_BYTES = 8;
+  private static final ByteBuffer END_OF_LOG = ByteBuffer.allocate(0);
+
+  private final OutputStream out;
+  private final BlockingQueue<ByteBuffer> pendingFrames = new ArrayBlockingQueue<>(QUEUE_FRAMES);
+  private final BlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<>(QUEUE_FRAMES + 1);
+  private final Thread writeThread;
+  private volatile IOException writeError;
+  private boolean closed;
+
+  private long recordedFrameCount;
+  private long droppedFrameCount;
+
+  /**
+   * Writes the header and starts the background thread.
+   *
+   * @param out Destination of the log, typically buffered. Closed by {@link #close}.
+   */
+  public SessionRecorder(OutputStream out) throws IOException {
+    this.out = out;
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC).putInt(VERSION);
+    out.write(header.array());
+    writeThread = new Thread(this::writeLoop, SessionRecorder.class.getSimpleName());
+    writeThread.start();
+  }
+
+  /** Queues a frame to be written. Must always be called from the same thread. */
+  public void record(FrameRecord frame) {
+    if (closed || writeError != null) {
+      return;
+    }
+    int size = 4 + frame.getEncodedSize();
+    ByteBuffer buffer = freeBuffers.poll();
+    if (buffer == null || buffer.capacity() < size) {
+      buffer = ByteBuffer.allocate(Math.max(size, buffer == null ? 0 : 2 * buffer.capacity()));
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    buffer.clear();
+    buffer.putInt(size - 4);
+    frame.write(buffer);
+    buffer.flip();
+    if (pendingFrames.offer(buffer)) {
+      recordedFrameCount++;
+    } else {
+      droppedFrameCount++;
+      freeBuffers.offer(buffer);
+    }
+  }
+
+  /** Returns the number of frames queued to be written. */
+  public long getRecordedFrameCount() {
+    return recordedFrameCount;
+  }
+
+  /** Returns the number of frames dropped because writing fell behind. */
+  public long getDroppedFrameCount() {
+    return droppedFrameCount;
+  }
+
+  /**
+   * Writes the queued frames and closes the stream. Must be called on the thread calling {@link
+   * #record}.
+   *
+   * @throws IOException If writing any frame failed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      pendingFrames.put(END_OF_LOG);
+      writeThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      writeThread.interrupt();
+    }
+    out.close();
+    if (writeError != null) {
+      throw writeError;
+    }
+  }
+
+  private void writeLoop() {
+    try {
+      while (true) {
+        ByteBuffer buffer = pendingFrames.take();
+        if (buffer == END_OF_LOG) {
+          break;
+        }
+        write(buffer.array(), buffer.limit());
+        freeBuffers.offer(buffer);
+      }
+      out.flush();
+    } catch (IOException e) {
+      writeError = e;
+    } catch (InterruptedException e) {
+      // Interrupted by close(); what was not written yet is lost.
+    }
+  }
+
+  // Writes unless a previous write failed. Frames are then discarded until the log is closed.
+  private void write(byte[] bytes, int length) {
+    if (writeError != null) {
+      return;
+    }
+    try {
+      out.write(bytes, 0, length);
+    } catch (IOException e) {
+      // Reported by close().
+      writeError = e;
+    }
+  }
+}
@@ -0,0 +1,518 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.spatial;
+
+import java.util.Arrays;
+
+/**
+ * Spatial index over anchor positions, backed by a hashed uniform grid.
+ *
+ * <p>Entries are identified by integer handles returned from {@link #add(float, float, float)}.
+ * Handles of removed entries are reused. Positions are updated in place with {@link #move(int,
+ * float, float, float)}, which only relinks the entry when it crosses into another cell, so the
+ * index can follow anchor poses as ARCore refines them every frame.
+ *
+ * <p>Queries write handles and distances into caller-provided arrays and return the number of
+ * results, so they do not allocate. Not thread safe.
+ */
+public class AnchorIndex {
+  private static final int INITIAL_CAPACITY = 32;
+  private static final int NONE = -1;
+
+  // Above this many candidate cells per live entry, a query scans all entries instead.
+  private static final int MAX_CELLS_PER_ENTRY = 4;
+
+  private final float cellSize;
+  private final float inverseCellSize;
+
+  // Per-entry data, indexed by handle.
+  private float[] positionX = new float[INITIAL_CAPACITY];
+  private float[] positionY = new float[INITIAL_CAPACITY];
+  private float[] positionZ = new float[INITIAL_CAPACITY];
+  private int[] cellX = new int[INITIAL_CAPACITY];
+  private int[] cellY = new int[INITIAL_CAPACITY];
+  private int[] cellZ = new int[INITIAL_CAPACITY];
+  // Doubly linked bucket lists. Free handles are chained through next.
+  private int[] next = new int[INITIAL_CAPACITY];
+  private int[] previous = new int[INITIAL_CAPACITY];
+  private boolean[] live = new boolean[INITIAL_CAPACITY];
+
+  private int[] bucketHeads = newBuckets(INITIAL_CAPACITY);
+  private int bucketMask = INITIAL_CAPACITY - 1;
+
+  private int highWater;
+  private int freeHead = NONE;
+  private int size;
+
+  // Conservative bounds of occupied cells. They only grow until the index becomes empty.
+  private int minCellX;
+  private int minCellY;
+  private int minCellZ;
+  private int maxCellX;
+  private int maxCellY;
+  private int maxCellZ;
+
+  private final Frustum frustum = new Frustum();
+
+  /**
+   * Creates an empty index.
+   *
+   * @param cellSize Edge length of a grid cell, in meters. Should be on the order of the typical
+   *     spacing between anchors.
+   */
+  public AnchorIndex(float cellSize) {
+    if (cellSize <= 0) {
+      throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+    }
+    this.cellSize = cellSize;
+    this.inverseCellSize = 1.0f / cellSize;
+  }
+
+  /** Returns the number of entries in the index. */
+  public int size() {
+    return size;
+  }
+
+  /** Removes all entries. Previously returned handles become invalid. */
+  public void clear() {
+    Arrays.fill(bucketHeads, NONE);
+    Arrays.fill(live, 0, highWater, false);
+    highWater = 0;
+    freeHead = NONE;
+    size = 0;
+  }
+
+  /**
+   * Adds an entry at the given world position.
+   *
+   * @return The handle identifying the entry, to be passed to {@link #move} and {@link #remove}.
+   */
+  public int add(float x, float y, float z) {
+    int handle;
+    if (freeHead != NONE) {
+      handle = freeHead;
+      freeHead = next[handle];
+    } else {
+      if (highWater == live.length) {
+        growEntries(live.length * 2);
+      }
+      handle = highWater++;
+    }
+    live[handle] = true;
+    positionX[handle] = x;
+    positionY[handle] = y;
+    positionZ[handle] = z;
+    setCell(handle, x, y, z);
+    if (size == 0) {
+      minCellX = maxCellX = cellX[handle];
+      minCellY = maxCellY = cellY[handle];
+      minCellZ = maxCellZ = cellZ[handle];
+    } else {
+      includeInBounds(handle);
+    }
+    link(handle);
+    size++;
+    if (size > bucketHeads.length) {
+      rehash(bucketHeads.length * 2);
+    }
+    return handle;
+  }
+
+  /** Updates the position of an entry. */
+  public void move(int handle, float x, float y, float z) {
+    checkLive(handle);
+    positionX[handle] = x;
+    positionY[handle] = y;
+    positionZ[handle] = z;
+    int newCellX = toCell(x);
+    int newCellY = toCell(y);
+    int newCellZ = toCell(z);
+    if (newCellX == cellX[handle] && newCellY == cellY[handle] && newCellZ == cellZ[handle]) {
+      return;
+    }
+    unlink(handle);
+    cellX[handle] = newCellX;
+    cellY[handle] = newCellY;
+    cellZ[handle] = newCellZ;
+    includeInBounds(handle);
+    link(handle);
+  }
+
+  /** Removes an entry. The handle may be returned again by a later {@link #add}. */
+  public void remove(int handle) {
+    checkLive(handle);
+    unlink(handle);
+    live[handle] = false;
+    next[handle] = freeHead;
+    freeHead = handle;
+    size--;
+  }
+
+  /** Copies the position of an entry into {@code out} starting at {@code offset}. */
+  public void getPosition(int handle, float[] out, int offset) {
+    checkLive(handle);
+    out[offset] = positionX[handle];
+    out[offset + 1] = positionY[handle];
+    out[offset + 2] = positionZ[handle];
+  }
+
+  /**
+   * Finds the {@code k} entries closest to a point.
+   *
+   * @param outHandles Receives the handles, closest first. Must hold at least {@code k} elements.
+   * @param outDistances Receives the matching distances in meters. Must hold at least {@code k}
+   *     elements.
+   * @return The number of entries found, at most {@code k}.
+   */
+  public int nearest(float x, float y, float z, int k, int[] outHandles, float[] outDistances) {
+    return nearest(x, y, z, k, null, 0, outHandles, outDistances);
+  }
+
+  /**
+   * Finds the {@code k} entries closest to a point among those whose bounding sphere intersects
+   * the view frustum.
+   *
+   * @param viewProjection A 4x4 view-projection matrix, in column-major order.
+   * @param radius Bounding sphere radius of an entry, in meters.
+   * @see #nearest(float, float, float, int, int[], float[])
+   */
+  public int nearest(
+      float x,
+      float y,
+      float z,
+      int k,
+      float[] viewProjection,
+      float radius,
+      int[] outHandles,
+      float[] outDistances) {
+    if (size == 0 || k <= 0) {
+      return 0;
+    }
+    Frustum filter = null;
+    if (viewProjection != null) {
+      frustum.set(viewProjection);
+      filter = frustum;
+    }
+
+    int queryX = toCell(x);
+    int queryY = toCell(y);
+    int queryZ = toCell(z);
+    int maxRing =
+        max(
+            Math.abs(queryX - minCellX),
+            Math.abs(queryX - maxCellX),
+            Math.abs(queryY - minCellY),
+            Math.abs(queryY - maxCellY),
+            Math.abs(queryZ - minCellZ),
+            Math.abs(queryZ - maxCellZ));
+
+    int found = 0;
+    for (int ring = 0; ring <= maxRing; ++ring) {
+      long side = 2L * ring + 1;
+      if (side * side * side > (long) size * MAX_CELLS_PER_ENTRY) {
+        // Searching cell by cell would cost more than looking at every entry.
+        return nearestByScan(x, y, z, k, filter, radius, outHandles, outDistances);
+      }
+      for (int dx = -ring; dx <= ring; ++dx) {
+        for (int dy = -ring; dy <= ring; ++dy) {
+          boolean onShell = Math.abs(dx) == ring || Math.abs(dy) == ring;
+          int dzStep = onShell || ring == 0 ? 1 : 2 * ring;
+          for (int dz = -ring; dz <= ring; dz += dzStep) {
+            found =
+                nearestInCell(
+                    queryX + dx,
+                    queryY + dy,
+                    queryZ + dz,
+                    x,
+                    y,
+                    z,
+                    k,
+                    found,
+                    filter,
+                    radius,
+                    outHandles,
+                    outDistances);
+          }
+        }
+      }
+      // Entries in cells outside this ring are at least ring * cellSize away.
+      if (found == k && outDistances[k - 1] <= ring * cellSize) {
+        break;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Finds all entries within a distance of a point. Results are not sorted.
+   *
+   * @param outHandles Receives the handles. Results beyond its length are dropped.
+   * @param outDistances Receives the matching distances in meters, or null if not needed.
+   * @return The number of handles written to {@code outHandles}.
+   */
+  public int withinRadius(
+      float x, float y, float z, float radius, int[] outHandles, float[] outDistances) {
+    if (size == 0 || radius < 0) {
+      return 0;
+    }
+    int fromX = Math.max(toCell(x - radius), minCellX);
+    int toX = Math.min(toCell(x + radius), maxCellX);
+    int fromY = Math.max(toCell(y - radius), minCellY);
+    int toY = Math.min(toCell(y + radius), maxCellY);
+    int fromZ = Math.max(toCell(z - radius), minCellZ);
+    int toZ = Math.min(toCell(z + radius), maxCellZ);
+    if (fromX > toX || fromY > toY || fromZ > toZ) {
+      return 0;
+    }
+    long cells = (long) (toX - fromX + 1) * (toY - fromY + 1) * (toZ - fromZ + 1);
+    float radiusSquared = radius * radius;
+    int count = 0;
+    if (cells > (long) size * MAX_CELLS_PER_ENTRY) {
+      for (int handle = 0; handle < highWater && count < outHandles.length; ++handle) {
+        if (live[handle]) {
+          count = collectIfWithin(handle, x, y, z, radiusSquared, count, outHandles, outDistances);
+        }
+      }
+      return count;
+    }
+    for (int cx = fromX; cx <= toX; ++cx) {
+      for (int cy = fromY; cy <= toY; ++cy) {
+        for (int cz = fromZ; cz <= toZ; ++cz) {
+          for (int handle = bucketHeads[bucket(cx, cy, cz)];
+              handle != NONE && count < outHandles.length;
+              handle = next[handle]) {
+            if (cellX[handle] == cx && cellY[handle] == cy && cellZ[handle] == cz) {
+              count =
+                  collectIfWithin(handle, x, y, z, radiusSquared, count, outHandles, outDistances);
+            }
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Finds all entries whose bounding sphere intersects the view frustum. Entries behind the camera
+   * are never reported.
+   *
+   * @param viewProjection A 4x4 view-projection matrix, in column-major order.
+   * @param radius Bounding sphere radius of an entry, in meters.
+   * @param outHandles Receives the handles, in handle order. Results beyond its length are
+   *     dropped.
+   * @return The number of handles written to {@code outHandles}.
+   */
+  public int inFrustum(float[] viewProjection, float radius, int[] outHandles) {
+    frustum.set(viewProjection);
+    int count = 0;
+    for (int handle = 0; handle < highWater && count < outHandles.length; ++handle) {
+      if (live[handle]
+          && frustum.intersectsSphere(
+              positionX[handle], positionY[handle], positionZ[handle], radius)) {
+        outHandles[count++] = handle;
+      }
+    }
+    return count;
+  }
+
+  private int nearestInCell(
+      int cx,
+      int cy,
+      int cz,
+      float x,
+      float y,
+      float z,
+      int k,
+      int found,
+      Frustum filter,
+      float radius,
+      int[] outHandles,
+      float[] outDistances) {
+    if (cx < minCellX || cx > maxCellX
+        || cy < minCellY || cy > maxCellY
+        || cz < minCellZ || cz > maxCellZ) {
+      return found;
+    }
+    for (int handle = bucketHeads[bucket(cx, cy, cz)]; handle != NONE; handle = next[handle]) {
+      // Several cells can share a bucket; only consider entries that are really in this cell.
+      if (cellX[handle] == cx && cellY[handle] == cy && cellZ[handle] == cz) {
+        found = offerNearest(handle, x, y, z, k, found, filter, radius, outHandles, outDistances);
+      }
+    }
+    return found;
+  }
+
+  private int nearestByScan(
+      float x,
+      float y,
+      float z,
+      int k,
+      Frustum filter,
+      float radius,
+      int[] outHandles,
+      float[] outDistances) {
+    int found = 0;
+    for (int handle = 0; handle < highWater; ++handle) {
+      if (live[handle]) {
+        found = offerNearest(handle, x, y, z, k, found, filter, radius, outHandles, outDistances);
+      }
+    }
+    return found;
+  }
+
+  // Inserts the entry into the sorted top-k result arrays if it qualifies.
+  private int offerNearest(
+      int handle,
+      float x,
+      float y,
+      float z,
+      int k,
+      int found,
+      Frustum filter,
+      float radius,
+      int[] outHandles,
+      float[] outDistances) {
+    float px = positionX[handle];
+    float py = positionY[handle];
+    float pz = positionZ[handle];
+    float dx = px - x;
+    float dy = py - y;
+    float dz = pz - z;
+    float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    if (found == k && distance >= outDistances[k - 1]) {
+      return found;
+    }
+    if (filter != null && !filter.intersectsSphere(px, py, pz, radius)) {
+      return found;
+    }
+    int i = found == k ? k - 1 : found++;
+    while (i > 0 && outDistances[i - 1] > distance) {
+      outDistances[i] = outDistances[i - 1];
+      outHandles[i] = outHandles[i - 1];
+      --i;
+    }
+    outDistances[i] = distance;
+    outHandles[i] = handle;
+    return found;
+  }
+
+  private int collectIfWithin(
+      int handle,
+      float x,
+      float y,
+      float z,
+      float radiusSquared,
+      int count,
+      int[] outHandles,
+      float[] outDistances) {
+    float dx = positionX[handle] - x;
+    float dy = positionY[handle] - y;
+    float dz = positionZ[handle] - z;
+    float distanceSquared = dx * dx + dy * dy + dz * dz;
+    if (distanceSquared > radiusSquared) {
+      return count;
+    }
+    outHandles[count] = handle;
+    if (outDistances != null) {
+      outDistances[count] = (float) Math.sqrt(distanceSquared);
+    }
+    return count + 1;
+  }
+
+  private int toCell(float coordinate) {
+    return (int) Math.floor(coordinate * inverseCellSize);
+  }
+
+  private void setCell(int handle, float x, float y, float z) {
+    cellX[handle] = toCell(x);
+    cellY[handle] = toCell(y);
+    cellZ[handle] = toCell(z);
+  }
+
+  private void includeInBounds(int handle) {
+    minCellX = Math.min(minCellX, cellX[handle]);
+    maxCellX = Math.max(maxCellX, cellX[handle]);
+    minCellY = Math.min(minCellY, cellY[handle]);
+    maxCellY = Math.max(maxCellY, cellY[handle]);
+    minCellZ = Math.min(minCellZ, cellZ[handle]);
+    maxCellZ = Math.max(maxCellZ, cellZ[handle]);
+  }
+
+  private int bucket(int cx, int cy, int cz) {
+    return (cx * 73856093 ^ cy * 19349663 ^ cz * 83492791) & bucketMask;
+  }
+
+  private void link(int handle) {
+    int b = bucket(cellX[handle], cellY[handle], cellZ[handle]);
+    int head = bucketHeads[b];
+    previous[handle] = NONE;
+    next[handle] = head;
+    if (head != NONE) {
+      previous[head] = handle;
+    }
+    bucketHeads[b] = handle;
+  }
+
+  private void unlink(int handle) {
+    int before = previous[handle];
+    int after = next[handle];
+    if (before != NONE) {
+      next[before] = after;
+    } else {
+      bucketHeads[bucket(cellX[handle], cellY[handle], cellZ[handle])] = after;
+    }
+    if (after != NONE) {
+      previous[after] = before;
+    }
+  }
+
+  private void rehash(int bucketCount) {
+    bucketHeads = newBuckets(bucketCount);
+    bucketMask = bucketCount - 1;
+    for (int handle = 0; handle < highWater; ++handle) {
+      if (live[handle]) {
+        link(handle);
+      }
+    }
+  }
+
+  private void growEntries(int capacity) {
+    positionX = Arrays.copyOf(positionX, capacity);
+    positionY = Arrays.copyOf(positionY, capacity);
+    positionZ = Arrays.copyOf(positionZ, capacity);
+    cellX = Arrays.copyOf(cellX, capacity);
+    cellY = Arrays.copyOf(cellY, capacity);
+    cellZ = Arrays.copyOf(cellZ, capacity);
+    next = Arrays.copyOf(next, capacity);
+    previous = Arrays.copyOf(previous, capacity);
+    live = Arrays.copyOf(live, capacity);
+  }
+
+  private void checkLive(int handle) {
+    if (handle < 0 || handle >= highWater || !live[handle]) {
+      throw new IllegalArgumentException("Invalid anchor index handle: " + handle);
+    }
+  }
+
+  private static int[] newBuckets(int count) {
+    int[] buckets = new int[count];
+    Arrays.fill(buckets, NONE);
+    return buckets;
+  }
+
+  private static int max(int a, int b, int c, int d, int e, int f) {
+    return Math.max(Math.max(Math.max(a, b), Math.max(c, d)), Math.max(e, f));
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.spatial;
+
+/**
+ * The six clip planes of a view-projection matrix, in world space. Planes are stored normalized so
+ * that sphere tests can compare signed distances against a radius directly.
+ */
+public final class Frustum {
+  /** Number of planes: left, right, bottom, top, near, far. */
+  public static final int PLANE_COUNT = 6;
+
+  // {a, b, c, d} per plane; a point p is inside when a*p.x + b*p.y + c*p.z + d >= 0.
+  private final float[] planes = new float[PLANE_COUNT * 4];
+
+  public Frustum() {}
+
+  /**
+   * Extracts the frustum planes from a view-projection matrix.
+   *
+   * @param viewProjection A 4x4 view-projection matrix, in column-major order.
+   */
+  public void set(float[] viewProjection) {
+    float[] m = viewProjection;
+    // Row i of a column-major matrix is (m[i], m[4 + i], m[8 + i], m[12 + i]).
+    for (int i = 0; i < 3; ++i) {
+      setPlane(2 * i, m[3] + m[i], m[7] + m[4 + i], m[11] + m[8 + i], m[15] + m[12 + i]);
+      setPlane(2 * i + 1, m[3] - m[i], m[7] - m[4 + i], m[11] - m[8 + i], m[15] - m[12 + i]);
+    }
+  }
+
+  private void setPlane(int plane, float a, float b, float c, float d) {
+    float length = (float) Math.sqrt(a * a + b * b + c * c);
+    float reciprocalLength = length > 0 ? 1.0f / length : 0.0f;
+    int o = plane * 4;
+    planes[o] = a * reciprocalLength;
+    planes[o + 1] = b * reciprocalLength;
+    planes[o + 2] = c * reciprocalLength;
+    planes[o + 3] = d * reciprocalLength;
+  }
+
+  /**
+   * Returns whether a sphere intersects the frustum. Spheres behind the camera are always
+   * rejected by the near plane.
+   */
+  public boolean intersectsSphere(float x, float y, float z, float radius) {
+    float[] p = planes;
+    for (int o = 0; o < PLANE_COUNT * 4; o += 4) {
+      if (p[o] * x + p[o + 1] * y + p[o + 2] * z + p[o + 3] < -radius) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the plane array, laid out as {a, b, c, d} for each of the {@link #PLANE_COUNT}
+   * planes. The array is owned by this object and must not be modified.
+   */
+  public float[] getPlanes() {
+    return planes;
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.spatial;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Turns plane boundary polygons into the meshes planes are drawn with.
+ *
+ * <p>The boundary is first simplified to a vertex budget with a {@link PolygonSimplifier}. Each
+ * boundary vertex kept then becomes two mesh vertices: itself, and a copy pushed inwards, so that
+ * the plane fades out towards its edge. Vertices are {@code (x, z, alpha)} in plane space, and the
+ * indices describe a single triangle strip. The buffers are reused by every call. Not thread safe.
+ */
+public final class PlaneTriangulator {
+  /** Floats per mesh vertex: x, z, alpha. */
+  public static final int COORDS_PER_VERTEX = 3;
+
+  private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
+  private static final int BYTES_PER_SHORT = Short.SIZE / 8;
+
+  private static final int VERTS_PER_BOUNDARY_VERT = 2;
+  private static final int INDICES_PER_BOUNDARY_VERT = 3;
+  private static final int INITIAL_BUFFER_BOUNDARY_VERTS = 64;
+
+  private static final int INITIAL_VERTEX_BUFFER_SIZE_BYTES =
+      BYTES_PER_FLOAT * COORDS_PER_VERTEX * VERTS_PER_BOUNDARY_VERT * INITIAL_BUFFER_BOUNDARY_VERTS;
+
+  private static final int INITIAL_INDEX_BUFFER_SIZE_BYTES =
+      BYTES_PER_SHORT
+          * INDICES_PER_BOUNDARY_VERT
+          * INDICES_PER_BOUNDARY_VERT
+          * INITIAL_BUFFER_BOUNDARY_VERTS;
+
+  private static final float FADE_RADIUS_M = 0.25f;
+
+  private final PolygonSimplifier simplifier;
+
+  private FloatBuffer vertexBuffer =
+      ByteBuffer.allocateDirect(INITIAL_VERTEX_BUFFER_SIZE_BYTES)
+          .order(ByteOrder.nativeOrder())
+          .asFloatBuffer();
+  private ShortBuffer indexBuffer =
+      ByteBuffer.allocateDirect(INITIAL_INDEX_BUFFER_SIZE_BYTES)
+          .order(ByteOrder.nativeOrder())
+          .asShortBuffer();
+
+  // Temporary boundary polygons, allocated here to reduce the number of allocations per call.
+  private float[] boundaryScratch = new float[2 * INITIAL_BUFFER_BOUNDARY_VERTS];
+  private float[] simplifiedBoundary = new float[2 * INITIAL_BUFFER_BOUNDARY_VERTS];
+
+  /**
+   * @param toleranceMeters Largest distance between a removed boundary vertex and the simplified
+   *     boundary.
+   */
+  public PlaneTriangulator(float toleranceMeters) {
+    simplifier = new PolygonSimplifier(toleranceMeters);
+  }
+
+  public void setTolerance(float toleranceMeters) {
+    simplifier.setTolerance(toleranceMeters);
+  }
+
+  public float getTolerance() {
+    return simplifier.getTolerance();
+  }
+
+  /**
+   * Triangulates a plane polygon into {@link #getVertices()} and {@link #getIndices()}. Polygons
+   * with fewer than three vertices left after simplification produce an empty mesh.
+   *
+   * @param boundary Boundary vertices as {@code (x, z)} pairs in plane space, like {@code
+   *     Plane.getPolygon()}, or null. Its position is not used.
+   * @param extentX Extent of the plane along its X axis, which sets how far the fading edge is
+   *     inset.
+   * @param extentZ Extent of the plane along its Z axis.
+   * @param maxBoundaryVertices Boundary vertex budget.
+   * @return The number of indices.
+   */
+  public int triangulate(
+      FloatBuffer boundary, float extentX, float extentZ, int maxBoundaryVertices) {
+    int boundaryVertices = simplifyBoundary(boundary, maxBoundaryVertices);
+    triangulatePlane(extentX, extentZ, simplifiedBoundary, boundaryVertices);
+    vertexBuffer.rewind();
+    indexBuffer.rewind();
+    return indexBuffer.limit();
+  }
+
+  /**
+   * Returns the vertices of the last mesh, {@link #COORDS_PER_VERTEX} floats each, from position
+   * zero to the limit. Only valid until the next call to {@link #triangulate}.
+   */
+  public FloatBuffer getVertices() {
+    return vertexBuffer;
+  }
+
+  /** Returns the triangle strip indices of the last mesh, like {@link #getVertices()}. */
+  public ShortBuffer getIndices() {
+    return indexBuffer;
+  }
+
+  /**
+   * Simplifies a plane boundary polygon to a budget into {@link #simplifiedBoundary}. Returns its
+   * number of vertices.
+   */
+  private int simplifyBoundary(FloatBuffer boundary, int maxBoundaryVertices) {
+    if (boundary == null) {
+      return 0;
+    }
+    int length = boundary.limit();
+    if (boundaryScratch.length < length) {
+      boundaryScratch = new float[2 * length];
+      simplifiedBoundary = new float[2 * length];
+    }
+    boundary.rewind();
+    boundary.get(boundaryScratch, 0, length);
+    return simplifier.simplify(
+        boundaryScratch, length / 2, maxBoundaryVertices, simplifiedBoundary);
+  }
+
+  /**
+   * Triangulates a plane polygon into the vertex and index buffers.
+   *
+   * @param boundary Boundary vertices as {@code (x, z)} pairs, in plane space.
+   * @param boundaryVertices Number of vertices in {@code boundary}.
+   */
+  private void triangulatePlane(
+      float extentX, float extentZ, float[] boundary, int boundaryVertices) {
+    if (boundaryVertices < 3) {
+      vertexBuffer.limit(0);
+      indexBuffer.limit(0);
+      return;
+    }
+
+    // Generate a new set of vertices and a corresponding triangle strip index set so that
+    // the plane boundary polygon has a fading edge. This is done by making a copy of the
+    // boundary polygon vertices and scaling it down around center to push it inwards. Then
+    // the index buffer is setup accordingly.
+    int numVertices;
+    int numIndices;
+
+    numVertices = boundaryVertices * VERTS_PER_BOUNDARY_VERT;
+    // drawn as GL_TRIANGLE_STRIP with 3n-2 triangles (n-2 for fill, 2n for perimeter).
+    numIndices = boundaryVertices * INDICES_PER_BOUNDARY_VERT;
+
+    if (vertexBuffer.capacity() < numVertices * COORDS_PER_VERTEX) {
+      int size = vertexBuffer.capacity();
+      while (size < numVertices * COORDS_PER_VERTEX) {
+        size *= 2;
+      }
+      vertexBuffer =
+          ByteBuffer.allocateDirect(BYTES_PER_FLOAT * size)
+              .order(ByteOrder.nativeOrder())
+              .asFloatBuffer();
+    }
+    vertexBuffer.rewind();
+    vertexBuffer.limit(numVertices * COORDS_PER_VERTEX);
+
+    if (indexBuffer.capacity() < numIndices) {
+      int size = indexBuffer.capacity();
+      while (size < numIndices) {
+        size *= 2;
+      }
+      indexBuffer =
+          ByteBuffer.allocateDirect(BYTES_PER_SHORT * size)
+              .order(ByteOrder.nativeOrder())
+              .asShortBuffer();
+    }
+    indexBuffer.rewind();
+    indexBuffer.limit(numIndices);
+
+    // Note: when either dimension of the bounding box is smaller than 2*FADE_RADIUS_M we
+    // generate a bunch of 0-area triangles.  These don't get rendered though so it works
+    // out ok.
+    float xScale = Math.max((extentX - 2 * FADE_RADIUS_M) / extentX, 0.0f);
+    float zScale = Math.max((extentZ - 2 * FADE_RADIUS_M) / extentZ, 0.0f);
+
+    for (int i = 0; i < boundaryVertices; ++i) {
+      float x = boundary[2 * i];
+      float z = boundary[2 * i + 1];
+      vertexBuffer.put(x);
+      vertexBuffer.put(z);
+      vertexBuffer.put(0.0f);
+      vertexBuffer.put(x * xScale);
+      vertexBuffer.put(z * zScale);
+      vertexBuffer.put(1.0f);
+    }
+
+    // step 1, perimeter
+    indexBuffer.put((short) ((boundaryVertices - 1) * 2));
+    for (int i = 0; i < boundaryVertices; ++i) {
+      indexBuffer.put((short) (i * 2));
+      indexBuffer.put((short) (i * 2 + 1));
+    }
+    indexBuffer.put((short) 1);
+    // This leaves us on the interior edge of the perimeter between the inset vertices
+    // for boundary verts n-1 and 0.
+
+    // step 2, interior:
+    for (int i = 1; i < boundaryVertices / 2; ++i) {
+      indexBuffer.put((short) ((boundaryVertices - 1 - i) * 2 + 1));
+      indexBuffer.put((short) (i * 2 + 1));
+    }
+    if (boundaryVertices % 2 != 0) {
+      indexBuffer.put((short) ((boundaryVertices / 2) * 2 + 1));
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.spatial;
+
+/**
+ * Simplifies closed 2D polygons with the Douglas-Peucker algorithm, under a vertex budget.
+ *
+ * <p>The polygon is first split into two chains at its first vertex and the vertex farthest from
+ * it. Chains are then split at their farthest vertex from the segment joining their ends, always
+ * refining the chain with the largest error first, until every removed vertex lies within the
+ * tolerance of the simplified outline or the budget is reached. A budget therefore keeps the
+ * vertices that matter most for the shape rather than cutting the polygon off.
+ *
+ * <p>The input order and winding are preserved, and the output vertices are a subset of the input
+ * ones. Polygons keep at least three vertices unless all their vertices are collinear. Scratch
+ * arrays are reused between calls, so {@link #simplify} does not allocate once they have grown to
+ * the largest polygon seen. Not thread safe.
+ */
+public final class PolygonSimplifier {
+  private static final int INITIAL_CAPACITY = 64;
+  private static final int MIN_VERTICES = 3;
+
+  private float toleranceSquared;
+
+  private boolean[] keep = new boolean[INITIAL_CAPACITY];
+  // Chains still to be refined: their end vertices, farthest inner vertex and its squared error.
+  private int[] chainStart = new int[INITIAL_CAPACITY];
+  private int[] chainEnd = new int[INITIAL_CAPACITY];
+  private int[] chainFarthest = new int[INITIAL_CAPACITY];
+  private float[] chainError = new float[INITIAL_CAPACITY];
+  private int chainCount;
+
+  /**
+   * @param tolerance Largest distance allowed between a removed vertex and the simplified outline,
+   *     in the units of the polygon coordinates.
+   */
+  public PolygonSimplifier(float tolerance) {
+    setTolerance(tolerance);
+  }
+
+  public void setTolerance(float tolerance) {
+    if (tolerance < 0) {
+      throw new IllegalArgumentException("Negative tolerance: " + tolerance);
+    }
+    toleranceSquared = tolerance * tolerance;
+  }
+
+  public float getTolerance() {
+    return (float) Math.sqrt(toleranceSquared);
+  }
+
+  /**
+   * Splits a vertex budget shared by several polygons into equal per-polygon budgets.
+   *
+   * @param maxVerticesPerPolygon Budget of each polygon.
+   * @param maxVertices Budget shared by all polygons. Each gets an equal share, capped by {@code
+   *     maxVerticesPerPolygon}. As {@link #simplify} raises budgets below three, the total is only
+   *     enforced for up to {@code maxVertices / 3} polygons.
+   * @param polygonCount Number of polygons sharing the budget.
+   * @return The budget of each polygon, to pass to {@link #simplify}.
+   */
+  public static int shareBudget(int maxVerticesPerPolygon, int maxVertices, int polygonCount) {
+    return Math.min(maxVerticesPerPolygon, maxVertices / Math.max(1, polygonCount));
+  }
+
+  /**
+   * Simplifies a polygon.
+   *
+   * @param xy Vertex coordinates as {@code (x, y)} pairs.
+   * @param vertexCount Number of vertices in {@code xy}.
+   * @param maxVertices Vertex budget of the result. Budgets below three are raised to three.
+   * @param out Receives the kept vertices as {@code (x, y)} pairs. Must hold {@code 2 *
+   *     min(vertexCount, max(3, maxVertices))} floats. May not be {@code xy}.
+   * @return The number of vertices written to {@code out}.
+   */
+  public int simplify(float[] xy, int vertexCount, int maxVertices, float[] out) {
+    int budget = Math.max(MIN_VERTICES, maxVertices);
+    if (vertexCount <= MIN_VERTICES || (toleranceSquared == 0 && vertexCount <= budget)) {
+      System.arraycopy(xy, 0, out, 0, 2 * vertexCount);
+      return vertexCount;
+    }
+    ensureCapacity(vertexCount);
+    for (int i = 0; i < vertexCount; ++i) {
+      keep[i] = false;
+    }
+
+    // Split the closed polygon at vertex 0 and the vertex farthest from it.
+    int split = 0;
+    float splitDistance = -1;
+    for (int i = 1; i < vertexCount; ++i) {
+      float dx = xy[2 * i] - xy[0];
+      float dy = xy[2 * i + 1] - xy[1];
+      float distance = dx * dx + dy * dy;
+      if (distance > splitDistance) {
+        splitDistance = distance;
+        split = i;
+      }
+    }
+    keep[0] = true;
+    keep[split] = true;
+    int keptCount = 2;
+    chainCount = 0;
+    addChain(xy, vertexCount, 0, split);
+    addChain(xy, vertexCount, split, vertexCount);
+
+    while (keptCount < budget && chainCount > 0) {
+      int worst = 0;
+      for (int i = 1; i < chainCount; ++i) {
+        if (chainError[i] > chainError[worst]) {
+          worst = i;
+        }
+      }
+      // Keep splitting below the tolerance until the outline is at least a triangle.
+      float error = chainError[worst];
+      if (error <= toleranceSquared && (keptCount >= MIN_VERTICES || error == 0)) {
+        break;
+      }
+      int start = chainStart[worst];
+      int end = chainEnd[worst];
+      int farthest = chainFarthest[worst];
+      removeChain(worst);
+      keep[farthest] = true;
+      keptCount++;
+      addChain(xy, vertexCount, start, farthest);
+      addChain(xy, vertexCount, farthest, end);
+    }
+
+    int outCount = 0;
+    for (int i = 0; i < vertexCount; ++i) {
+      if (keep[i]) {
+        out[2 * outCount] = xy[2 * i];
+        out[2 * outCount + 1] = xy[2 * i + 1];
+        outCount++;
+      }
+    }
+    return outCount;
+  }
+
+  // Queues the chain of vertices strictly between start and end, if it has any. An end equal to
+  // vertexCount stands for vertex 0, closing the polygon.
+  private void addChain(float[] xy, int vertexCount, int start, int end) {
+    if (end - start < 2) {
+      return;
+    }
+    int endVertex = end == vertexCount ? 0 : end;
+    float ax = xy[2 * start];
+    float ay = xy[2 * start + 1];
+    float abx = xy[2 * endVertex] - ax;
+    float aby = xy[2 * endVertex + 1] - ay;
+    float lengthSquared = abx * abx + aby * aby;
+    float inverseLengthSquared = lengthSquared > 0 ? 1.0f / lengthSquared : 0.0f;
+
+    int farthest = start + 1;
+    float farthestError = -1;
+    for (int i = start + 1; i < end; ++i) {
+      float apx = xy[2 * i] - ax;
+      float apy = xy[2 * i + 1] - ay;
+      // Squared distance to the segment, clamping the projection to its ends.
+      float t = (apx * abx + apy * aby) * inverseLengthSquared;
+      t = t < 0 ? 0 : (t > 1 ? 1 : t);
+      float dx = apx - t * abx;
+      float dy = apy - t * aby;
+      float error = dx * dx + dy * dy;
+      if (error > farthestError) {
+        farthestError = error;
+        farthest = i;
+      }
+    }
+
+    chainStart[chainCount] = start;
+    chainEnd[chainCount] = end;
+    chainFarthest[chainCount] = farthest;
+    chainError[chainCount] = farthestError;
+    chainCount++;
+  }
+
+  private void removeChain(int chain) {
+    int last = --chainCount;
+    chainStart[chain] = chainStart[last];
+    chainEnd[chain] = chainEnd[last];
+    chainFarthest[chain] = chainFarthest[last];
+    chainError[chain] = chainError[last];
+  }
+
+  private void ensureCapacity(int vertexCount) {
+    if (keep.length >= vertexCount) {
+      return;
+    }
+    int capacity = keep.length;
+    while (capacity < vertexCount) {
+      capacity *= 2;
+    }
+    keep = new boolean[capacity];
+    // There are never more pending chains than vertices.
+    chainStart = new int[capacity];
+    chainEnd = new int[capacity];
+    chainFarthest = new int[capacity];
+    chainError = new float[capacity];
+  }
+}
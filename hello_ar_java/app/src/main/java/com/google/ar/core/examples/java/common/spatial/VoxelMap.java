@@ -0,0 +1,327 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.spatial;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Persistent map of the points seen over time, accumulated into a hash of fixed-size voxels.
+ *
+ * <p>Every point added is merged into the voxel containing it: the voxel position is the average
+ * of its points weighted by their confidence, and its confidence the average confidence of its
+ * points. When the map is full, the voxel that was updated least recently is evicted to make room.
+ *
+ * <p>Voxels are stored off-heap in slots {@code 0} to {@link #size()}{@code - 1}, as {@code (x, y,
+ * z, confidence)} floats in {@link #getVoxels()}, the same layout as ARCore point clouds, so they
+ * can be uploaded to OpenGL directly. Slots are grouped into chunks of {@link #getChunkSize()};
+ * chunks whose voxels changed are marked dirty until {@link #clearDirty(int)} is called, so that
+ * only they need to be uploaded again.
+ *
+ * <p>Adding points does not allocate. Not thread safe.
+ */
+public final class VoxelMap {
+  /** Floats per voxel in {@link #getVoxels()}: x, y, z, confidence. */
+  public static final int FLOATS_PER_VOXEL = 4;
+
+  private static final int EMPTY = 0;
+  private static final int NONE = -1;
+  // Bits per voxel coordinate in a key. Covers about +/-50 km at 5 cm voxels.
+  private static final int KEY_BITS = 21;
+  private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+
+  private final float voxelSize;
+  private final float inverseVoxelSize;
+  private final int capacity;
+  private final int chunkSize;
+  private float minConfidence;
+
+  // Per-slot data.
+  private final FloatBuffer voxels;
+  private final LongBuffer keys;
+  private final FloatBuffer weights;
+  private final IntBuffer counts;
+  // Recency list, most recently updated first.
+  private final IntBuffer newer;
+  private final IntBuffer older;
+  private int newest = NONE;
+  private int oldest = NONE;
+
+  // Open addressing hash table of slot + 1, with linear probing. EMPTY marks free entries.
+  private final IntBuffer table;
+  private final int tableMask;
+
+  private final long[] dirtyChunks;
+  private int size;
+  private long evictedCount;
+
+  /**
+   * @param voxelSize Edge length of the voxels, in meters.
+   * @param capacity Maximum number of voxels kept.
+   * @param chunkSize Number of voxels per chunk, the unit in which changes are tracked.
+   */
+  public VoxelMap(float voxelSize, int capacity, int chunkSize) {
+    if (voxelSize <= 0 || capacity <= 0 || chunkSize <= 0) {
+      throw new IllegalArgumentException("Voxel size, capacity and chunk size must be positive");
+    }
+    this.voxelSize = voxelSize;
+    this.inverseVoxelSize = 1.0f / voxelSize;
+    this.capacity = capacity;
+    this.chunkSize = chunkSize;
+
+    voxels = allocate(capacity * FLOATS_PER_VOXEL * 4).asFloatBuffer();
+    keys = allocate(capacity * 8).asLongBuffer();
+    weights = allocate(capacity * 4).asFloatBuffer();
+    counts = allocate(capacity * 4).asIntBuffer();
+    newer = allocate(capacity * 4).asIntBuffer();
+    older = allocate(capacity * 4).asIntBuffer();
+
+    // At most half full, to keep probe sequences short.
+    int tableSize = Integer.highestOneBit(Math.max(1, capacity - 1)) << 2;
+    table = allocate(tableSize * 4).asIntBuffer();
+    tableMask = tableSize - 1;
+
+    int chunkCount = (capacity + chunkSize - 1) / chunkSize;
+    dirtyChunks = new long[(chunkCount + 63) / 64];
+  }
+
+  /** Sets the confidence below which points are ignored. */
+  public void setMinConfidence(float minConfidence) {
+    this.minConfidence = minConfidence;
+  }
+
+  public float getVoxelSize() {
+    return voxelSize;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /** Returns the number of voxels in the map, which occupy the first slots. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the number of voxels evicted to make room for new ones. */
+  public long getEvictedCount() {
+    return evictedCount;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /** Returns the number of chunks holding voxels. */
+  public int getChunkCount() {
+    return (size + chunkSize - 1) / chunkSize;
+  }
+
+  /**
+   * Returns the voxel data, {@link #FLOATS_PER_VOXEL} floats per slot. The buffer is shared with
+   * the map and is only valid until points are added again. Its position and limit are undefined.
+   */
+  public FloatBuffer getVoxels() {
+    return voxels;
+  }
+
+  public boolean isChunkDirty(int chunk) {
+    return (dirtyChunks[chunk >>> 6] & (1L << chunk)) != 0;
+  }
+
+  public void clearDirty(int chunk) {
+    dirtyChunks[chunk >>> 6] &= ~(1L << chunk);
+  }
+
+  /** Removes every voxel. */
+  public void clear() {
+    for (int i = 0; i <= tableMask; ++i) {
+      table.put(i, EMPTY);
+    }
+    for (int chunk = 0; chunk < getChunkCount(); ++chunk) {
+      markDirty(chunk);
+    }
+    size = 0;
+    newest = NONE;
+    oldest = NONE;
+  }
+
+  /**
+   * Merges points into the map.
+   *
+   * @param points Points as {@code (x, y, z, confidence)} floats, from the position to the limit
+   *     of the buffer, like {@code PointCloud.getPoints()}. The position is not changed.
+   */
+  public void accumulate(FloatBuffer points) {
+    int end = points.limit();
+    for (int i = points.position(); i + FLOATS_PER_VOXEL <= end; i += FLOATS_PER_VOXEL) {
+      add(points.get(i), points.get(i + 1), points.get(i + 2), points.get(i + 3));
+    }
+  }
+
+  /** Merges a single point into the map. */
+  public void add(float x, float y, float z, float confidence) {
+    if (confidence < minConfidence || confidence <= 0) {
+      return;
+    }
+    long key = key(x, y, z);
+    int index = (int) mix(key) & tableMask;
+    int slot;
+    while (true) {
+      int entry = table.get(index);
+      if (entry == EMPTY) {
+        slot = insert(key, index);
+        break;
+      }
+      if (keys.get(entry - 1) == key) {
+        slot = entry - 1;
+        break;
+      }
+      index = (index + 1) & tableMask;
+    }
+
+    // Confidence-weighted running average of the position.
+    int base = slot * FLOATS_PER_VOXEL;
+    float weight = weights.get(slot) + confidence;
+    float blend = confidence / weight;
+    float meanX = voxels.get(base);
+    float meanY = voxels.get(base + 1);
+    float meanZ = voxels.get(base + 2);
+    voxels.put(base, meanX + (x - meanX) * blend);
+    voxels.put(base + 1, meanY + (y - meanY) * blend);
+    voxels.put(base + 2, meanZ + (z - meanZ) * blend);
+    int count = counts.get(slot) + 1;
+    voxels.put(base + 3, weight / count);
+    weights.put(slot, weight);
+    counts.put(slot, count);
+
+    touch(slot);
+    markDirty(slot / chunkSize);
+  }
+
+  // Adds a voxel for the key at a free table index, evicting the oldest voxel when full. Returns
+  // its slot, with zero weight.
+  private int insert(long key, int index) {
+    int slot;
+    if (size < capacity) {
+      slot = size++;
+    } else {
+      slot = oldest;
+      unlink(slot);
+      removeFromTable(keys.get(slot));
+      evictedCount++;
+      // Removal may have shifted entries into the free index, so probe again.
+      index = (int) mix(key) & tableMask;
+      while (table.get(index) != EMPTY) {
+        index = (index + 1) & tableMask;
+      }
+    }
+    table.put(index, slot + 1);
+    keys.put(slot, key);
+    weights.put(slot, 0);
+    counts.put(slot, 0);
+    voxels.put(slot * FLOATS_PER_VOXEL, 0);
+    voxels.put(slot * FLOATS_PER_VOXEL + 1, 0);
+    voxels.put(slot * FLOATS_PER_VOXEL + 2, 0);
+    newer.put(slot, NONE);
+    older.put(slot, NONE);
+    linkNewest(slot);
+    return slot;
+  }
+
+  // Removes a key from the table, shifting back the entries of its probe sequence.
+  private void removeFromTable(long key) {
+    int index = (int) mix(key) & tableMask;
+    while (keys.get(table.get(index) - 1) != key) {
+      index = (index + 1) & tableMask;
+    }
+    int hole = index;
+    index = (index + 1) & tableMask;
+    while (true) {
+      int entry = table.get(index);
+      if (entry == EMPTY) {
+        break;
+      }
+      int home = (int) mix(keys.get(entry - 1)) & tableMask;
+      // Move the entry into the hole unless its home lies cyclically in (hole, index].
+      if (((index - home) & tableMask) >= ((index - hole) & tableMask)) {
+        table.put(hole, entry);
+        hole = index;
+      }
+      index = (index + 1) & tableMask;
+    }
+    table.put(hole, EMPTY);
+  }
+
+  // Moves a slot to the newest end of the recency list.
+  private void touch(int slot) {
+    if (slot == newest) {
+      return;
+    }
+    unlink(slot);
+    linkNewest(slot);
+  }
+
+  private void linkNewest(int slot) {
+    newer.put(slot, NONE);
+    older.put(slot, newest);
+    if (newest != NONE) {
+      newer.put(newest, slot);
+    }
+    newest = slot;
+    if (oldest == NONE) {
+      oldest = slot;
+    }
+  }
+
+  private void unlink(int slot) {
+    int newerSlot = newer.get(slot);
+    int olderSlot = older.get(slot);
+    if (newerSlot != NONE) {
+      older.put(newerSlot, olderSlot);
+    } else {
+      newest = olderSlot;
+    }
+    if (olderSlot != NONE) {
+      newer.put(olderSlot, newerSlot);
+    } else {
+      oldest = newerSlot;
+    }
+  }
+
+  private void markDirty(int chunk) {
+    dirtyChunks[chunk >>> 6] |= 1L << chunk;
+  }
+
+  private long key(float x, float y, float z) {
+    long ix = (long) Math.floor(x * inverseVoxelSize) & KEY_MASK;
+    long iy = (long) Math.floor(y * inverseVoxelSize) & KEY_MASK;
+    long iz = (long) Math.floor(z * inverseVoxelSize) & KEY_MASK;
+    return (ix << (2 * KEY_BITS)) | (iy << KEY_BITS) | iz;
+  }
+
+  // Spreads the key bits so that neighboring voxels do not fill consecutive table entries.
+  private static long mix(long key) {
+    key *= 0x9E3779B97F4A7C15L;
+    return key ^ (key >>> 32);
+  }
+
+  private static ByteBuffer allocate(int bytes) {
+    return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+  }
+}
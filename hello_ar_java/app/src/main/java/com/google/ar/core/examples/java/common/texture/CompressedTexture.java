@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.texture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Block-compressed 2D texture with its mipmap levels, ready to be passed to {@code
+ * glCompressedTexImage2D}. Level 0 is the full-size image; every following level halves the size
+ * of the previous one, down to 1x1.
+ */
+public final class CompressedTexture {
+  /** {@code GL_ETC1_RGB8_OES}: ETC1, opaque RGB, 8 bytes per 4x4 block. */
+  public static final int ETC1_RGB8 = 0x8D64;
+  /** {@code GL_COMPRESSED_RGBA8_ETC2_EAC}: ETC2 with EAC alpha, 16 bytes per 4x4 block. */
+  public static final int RGBA8_ETC2_EAC = 0x9278;
+
+  private final int format;
+  private final int width;
+  private final int height;
+  private final ByteBuffer[] levels;
+
+  /**
+   * @param format {@link #ETC1_RGB8} or {@link #RGBA8_ETC2_EAC}.
+   * @param levels Compressed data of each mipmap level, largest first. Not copied.
+   */
+  public CompressedTexture(int format, int width, int height, ByteBuffer[] levels) {
+    if (format != ETC1_RGB8 && format != RGBA8_ETC2_EAC) {
+      throw new IllegalArgumentException("Unsupported format: 0x" + Integer.toHexString(format));
+    }
+    this.format = format;
+    this.width = width;
+    this.height = height;
+    this.levels = levels;
+  }
+
+  /** Returns the OpenGL internal format of the compressed data. */
+  public int getFormat() {
+    return format;
+  }
+
+  /** Returns whether the format stores an alpha channel. */
+  public boolean hasAlpha() {
+    return format == RGBA8_ETC2_EAC;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getLevelCount() {
+    return levels.length;
+  }
+
+  public int getLevelWidth(int level) {
+    return Math.max(1, width >> level);
+  }
+
+  public int getLevelHeight(int level) {
+    return Math.max(1, height >> level);
+  }
+
+  /** Returns the compressed data of a mipmap level. */
+  public ByteBuffer getLevel(int level) {
+    return levels[level];
+  }
+
+  /** Returns the size of the compressed data of all levels, in bytes. */
+  public long getSizeBytes() {
+    long size = 0;
+    for (ByteBuffer level : levels) {
+      size += level.remaining();
+    }
+    return size;
+  }
+
+  /** Returns the size of one 4x4 block of the given format, in bytes. */
+  public static int blockBytes(int format) {
+    return format == RGBA8_ETC2_EAC ? 16 : 8;
+  }
+
+  /** Returns the size of the compressed data of an image of the given size, in bytes. */
+  public static int imageBytes(int format, int width, int height) {
+    return ((width + 3) / 4) * ((height + 3) / 4) * blockBytes(format);
+  }
+}
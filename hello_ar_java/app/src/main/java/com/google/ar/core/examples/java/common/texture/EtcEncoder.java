@@ -0,0 +1,352 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.texture;
+
+/**
+ * Encodes images to ETC1 and to ETC2 with EAC alpha.
+ *
+ * <p>Each subblock's base color is its average color, and the modifier table and per-pixel
+ * modifiers are then chosen exhaustively; both subblock orientations and both the individual and
+ * differential base color modes are tried. Color blocks only use the modes defined by ETC1, which
+ * ETC2 decoders read identically, so the same encoder serves both formats. This trades some
+ * quality for speed compared to a full search, which is acceptable for the sample's textures.
+ *
+ * <p>Instances are not thread safe.
+ */
+public final class EtcEncoder {
+  private static final int[][] ETC1_MODIFIERS = {
+    {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}
+  };
+
+  private static final int[][] EAC_MODIFIERS = {
+    {-3, -6, -9, -15, 2, 5, 8, 14},
+    {-3, -7, -10, -13, 2, 6, 9, 12},
+    {-2, -5, -8, -13, 1, 4, 7, 12},
+    {-2, -4, -6, -13, 1, 3, 5, 12},
+    {-3, -6, -8, -12, 2, 5, 7, 11},
+    {-3, -7, -9, -11, 2, 6, 8, 10},
+    {-4, -7, -8, -11, 3, 6, 7, 10},
+    {-3, -5, -8, -11, 2, 4, 7, 10},
+    {-2, -6, -8, -10, 1, 5, 7, 9},
+    {-2, -5, -8, -10, 1, 4, 7, 9},
+    {-2, -4, -8, -10, 1, 3, 7, 9},
+    {-2, -5, -7, -10, 1, 4, 6, 9},
+    {-3, -4, -7, -10, 2, 3, 6, 9},
+    {-1, -2, -3, -10, 0, 1, 2, 9},
+    {-4, -6, -8, -9, 3, 5, 7, 8},
+    {-3, -5, -7, -9, 2, 4, 6, 8}
+  };
+
+  // EAC table whose fifth modifier is zero, used for blocks of uniform alpha.
+  private static final int EAC_UNIFORM_TABLE = 13;
+  private static final int EAC_UNIFORM_INDEX = 4;
+
+  // The 16 texels of the block being encoded, ARGB, in ETC's column-major order (x * 4 + y).
+  private final int[] block = new int[16];
+  private final int[] baseColor = new int[3];
+  private final int[] average1 = new int[3];
+  private final int[] average2 = new int[3];
+
+  // Table and index bits of both subblocks from the last encodeSubblocks call.
+  private long lastSubblockBits;
+  // Results of the last encodeSubblock call.
+  private int subblockTable;
+  private long subblockIndexBits;
+  private long subblockError;
+
+  /**
+   * Encodes an image to ETC1, 8 bytes per 4x4 block. Alpha is ignored.
+   *
+   * @param argb Pixels as packed {@code 0xAARRGGBB} ints, row by row from the top.
+   */
+  public byte[] encodeEtc1(int[] argb, int width, int height) {
+    return encode(argb, width, height, false);
+  }
+
+  /**
+   * Encodes an image to ETC2 RGBA8 with EAC alpha, 16 bytes per 4x4 block.
+   *
+   * @param argb Pixels as packed {@code 0xAARRGGBB} ints, row by row from the top.
+   */
+  public byte[] encodeEtc2Rgba(int[] argb, int width, int height) {
+    return encode(argb, width, height, true);
+  }
+
+  private byte[] encode(int[] argb, int width, int height, boolean withAlpha) {
+    int blocksWide = (width + 3) / 4;
+    int blocksHigh = (height + 3) / 4;
+    byte[] out = new byte[blocksWide * blocksHigh * (withAlpha ? 16 : 8)];
+    int offset = 0;
+    for (int by = 0; by < blocksHigh; ++by) {
+      for (int bx = 0; bx < blocksWide; ++bx) {
+        // Texels beyond the edge of the image repeat the last row or column.
+        for (int x = 0; x < 4; ++x) {
+          int px = Math.min(bx * 4 + x, width - 1);
+          for (int y = 0; y < 4; ++y) {
+            int py = Math.min(by * 4 + y, height - 1);
+            block[x * 4 + y] = argb[py * width + px];
+          }
+        }
+        if (withAlpha) {
+          putLong(out, offset, encodeAlphaBlock());
+          offset += 8;
+        }
+        putLong(out, offset, encodeColorBlock());
+        offset += 8;
+      }
+    }
+    return out;
+  }
+
+  private long encodeColorBlock() {
+    long bestBlock = 0;
+    long bestError = Long.MAX_VALUE;
+    for (int flip = 0; flip < 2; ++flip) {
+      averageColor(flip, 0, average1);
+      averageColor(flip, 1, average2);
+
+      // Individual mode: two 4-bit base colors.
+      int r1 = quantize(average1[0], 15);
+      int g1 = quantize(average1[1], 15);
+      int b1 = quantize(average1[2], 15);
+      int r2 = quantize(average2[0], 15);
+      int g2 = quantize(average2[1], 15);
+      int b2 = quantize(average2[2], 15);
+      long bits =
+          (long) r1 << 60
+              | (long) r2 << 56
+              | (long) g1 << 52
+              | (long) g2 << 48
+              | (long) b1 << 44
+              | (long) b2 << 40
+              | (long) flip << 32;
+      long error =
+          encodeSubblocks(
+              flip,
+              expand4(r1),
+              expand4(g1),
+              expand4(b1),
+              expand4(r2),
+              expand4(g2),
+              expand4(b2));
+      if (error < bestError) {
+        bestError = error;
+        bestBlock = bits | lastSubblockBits;
+      }
+
+      // Differential mode: a 5-bit base color and a 3-bit signed offset for the second subblock.
+      r1 = quantize(average1[0], 31);
+      g1 = quantize(average1[1], 31);
+      b1 = quantize(average1[2], 31);
+      int dr = clamp(quantize(average2[0], 31) - r1, -4, 3);
+      int dg = clamp(quantize(average2[1], 31) - g1, -4, 3);
+      int db = clamp(quantize(average2[2], 31) - b1, -4, 3);
+      r2 = r1 + dr;
+      g2 = g1 + dg;
+      b2 = b1 + db;
+      // Out of range sums select other modes in ETC2 and are invalid in ETC1.
+      if (r2 < 0 || r2 > 31 || g2 < 0 || g2 > 31 || b2 < 0 || b2 > 31) {
+        continue;
+      }
+      bits =
+          (long) r1 << 59
+              | (long) (dr & 7) << 56
+              | (long) g1 << 51
+              | (long) (dg & 7) << 48
+              | (long) b1 << 43
+              | (long) (db & 7) << 40
+              | 1L << 33
+              | (long) flip << 32;
+      error =
+          encodeSubblocks(
+              flip,
+              expand5(r1),
+              expand5(g1),
+              expand5(b1),
+              expand5(r2),
+              expand5(g2),
+              expand5(b2));
+      if (error < bestError) {
+        bestError = error;
+        bestBlock = bits | lastSubblockBits;
+      }
+    }
+    return bestBlock;
+  }
+
+  private long encodeSubblocks(int flip, int r1, int g1, int b1, int r2, int g2, int b2) {
+    baseColor[0] = r1;
+    baseColor[1] = g1;
+    baseColor[2] = b1;
+    encodeSubblock(flip, 0);
+    long bits = (long) subblockTable << 37 | subblockIndexBits;
+    long error = subblockError;
+
+    baseColor[0] = r2;
+    baseColor[1] = g2;
+    baseColor[2] = b2;
+    encodeSubblock(flip, 1);
+    lastSubblockBits = bits | (long) subblockTable << 34 | subblockIndexBits;
+    return error + subblockError;
+  }
+
+  // Picks the modifier table and per-pixel modifiers for one subblock around baseColor.
+  private void encodeSubblock(int flip, int subblock) {
+    subblockError = Long.MAX_VALUE;
+    for (int table = 0; table < ETC1_MODIFIERS.length; ++table) {
+      int small = ETC1_MODIFIERS[table][0];
+      int large = ETC1_MODIFIERS[table][1];
+      long error = 0;
+      long indexBits = 0;
+      for (int i = 0; i < 16 && error < subblockError; ++i) {
+        if (subblockOf(i, flip) != subblock) {
+          continue;
+        }
+        int pixel = block[i];
+        // Index codes: 0 is +small, 1 is +large, 2 is -small, 3 is -large.
+        int bestCode = 0;
+        long bestPixelError = Long.MAX_VALUE;
+        for (int code = 0; code < 4; ++code) {
+          int modifier = (code & 1) == 0 ? small : large;
+          if (code >= 2) {
+            modifier = -modifier;
+          }
+          long pixelError = colorError(pixel, modifier);
+          if (pixelError < bestPixelError) {
+            bestPixelError = pixelError;
+            bestCode = code;
+          }
+        }
+        error += bestPixelError;
+        indexBits |= (long) (bestCode >> 1) << (16 + i) | (long) (bestCode & 1) << i;
+      }
+      if (error < subblockError) {
+        subblockError = error;
+        subblockTable = table;
+        subblockIndexBits = indexBits;
+      }
+    }
+  }
+
+  private long colorError(int pixel, int modifier) {
+    int dr = clamp(baseColor[0] + modifier, 0, 255) - ((pixel >> 16) & 0xff);
+    int dg = clamp(baseColor[1] + modifier, 0, 255) - ((pixel >> 8) & 0xff);
+    int db = clamp(baseColor[2] + modifier, 0, 255) - (pixel & 0xff);
+    return dr * dr + dg * dg + db * db;
+  }
+
+  private void averageColor(int flip, int subblock, int[] average) {
+    int r = 0;
+    int g = 0;
+    int b = 0;
+    for (int i = 0; i < 16; ++i) {
+      if (subblockOf(i, flip) == subblock) {
+        r += (block[i] >> 16) & 0xff;
+        g += (block[i] >> 8) & 0xff;
+        b += block[i] & 0xff;
+      }
+    }
+    // Each subblock has 8 texels.
+    average[0] = (r + 4) / 8;
+    average[1] = (g + 4) / 8;
+    average[2] = (b + 4) / 8;
+  }
+
+  // Subblocks are the left and right halves of the block, or the top and bottom halves if flipped.
+  private static int subblockOf(int texel, int flip) {
+    int x = texel >> 2;
+    int y = texel & 3;
+    return (flip == 0 ? x : y) >> 1;
+  }
+
+  private long encodeAlphaBlock() {
+    int min = 255;
+    int max = 0;
+    for (int pixel : block) {
+      int alpha = pixel >>> 24;
+      min = Math.min(min, alpha);
+      max = Math.max(max, alpha);
+    }
+    if (min == max) {
+      long bits = (long) min << 56 | 1L << 52 | (long) EAC_UNIFORM_TABLE << 48;
+      for (int i = 0; i < 16; ++i) {
+        bits |= (long) EAC_UNIFORM_INDEX << (45 - 3 * i);
+      }
+      return bits;
+    }
+
+    long bestBlock = 0;
+    long bestError = Long.MAX_VALUE;
+    for (int table = 0; table < EAC_MODIFIERS.length; ++table) {
+      int[] modifiers = EAC_MODIFIERS[table];
+      int lowest = modifiers[3];
+      int range = modifiers[7] - lowest;
+      int multiplier = Math.round((float) (max - min) / range);
+      for (int m = Math.max(1, multiplier - 1); m <= Math.min(15, multiplier + 1); ++m) {
+        int centeredBase = min - lowest * m;
+        for (int base = centeredBase - 2; base <= centeredBase + 2; ++base) {
+          if (base < 0 || base > 255) {
+            continue;
+          }
+          long error = 0;
+          long bits = (long) base << 56 | (long) m << 52 | (long) table << 48;
+          for (int i = 0; i < 16 && error < bestError; ++i) {
+            int alpha = block[i] >>> 24;
+            int bestIndex = 0;
+            int bestPixelError = Integer.MAX_VALUE;
+            for (int index = 0; index < 8; ++index) {
+              int difference = clamp(base + modifiers[index] * m, 0, 255) - alpha;
+              int pixelError = difference * difference;
+              if (pixelError < bestPixelError) {
+                bestPixelError = pixelError;
+                bestIndex = index;
+              }
+            }
+            error += bestPixelError;
+            bits |= (long) bestIndex << (45 - 3 * i);
+          }
+          if (error < bestError) {
+            bestError = error;
+            bestBlock = bits;
+          }
+        }
+      }
+    }
+    return bestBlock;
+  }
+
+  private static int quantize(int value, int max) {
+    return (value * max + 127) / 255;
+  }
+
+  private static int expand4(int value) {
+    return value << 4 | value;
+  }
+
+  private static int expand5(int value) {
+    return value << 3 | value >> 2;
+  }
+
+  private static int clamp(int value, int min, int max) {
+    return value < min ? min : (value > max ? max : value);
+  }
+
+  // Blocks are stored as big-endian 64-bit words.
+  private static void putLong(byte[] out, int offset, long value) {
+    for (int i = 0; i < 8; ++i) {
+      out[offset + i] = (byte) (value >>> (56 - 8 * i));
+    }
+  }
+}
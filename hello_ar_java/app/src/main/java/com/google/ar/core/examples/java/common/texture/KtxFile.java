@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.texture;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Reads and writes compressed textures in the KTX 1.1 container format.
+ *
+ * <p>Only the subset produced at build time is supported: a single 2D image, no array elements or
+ * cube faces, in one of the {@link CompressedTexture} formats. Every mipmap level is preceded by
+ * its size in bytes. ETC block sizes are multiples of four bytes, so levels need no padding.
+ *
+ * <p>{@link #read(ByteBuffer)} only validates the header and slices the input; the compressed
+ * data is not copied.
+ */
+public final class KtxFile {
+  /** File name extension of compressed texture assets. */
+  public static final String EXTENSION = ".ktx";
+
+  private static final byte[] IDENTIFIER = {
+    (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+  };
+  private static final int ENDIANNESS = 0x04030201;
+  private static final int HEADER_SIZE = IDENTIFIER.length + 13 * 4;
+
+  private static final int GL_RGB = 0x1907;
+  private static final int GL_RGBA = 0x1908;
+
+  private KtxFile() {}
+
+  /**
+   * Returns the name of the compressed texture built from the given image file name, by replacing
+   * its extension.
+   */
+  public static String textureNameFor(String imageName) {
+    int dot = imageName.lastIndexOf('.');
+    int slash = imageName.lastIndexOf('/');
+    String base = dot > slash ? imageName.substring(0, dot) : imageName;
+    return base + EXTENSION;
+  }
+
+  /**
+   * Wraps a KTX file held in memory, typically a memory-mapped asset. The returned texture shares
+   * the content of {@code data}, which must stay valid while the texture is used.
+   *
+   * @throws IOException if the data is not a KTX file of a supported layout.
+   */
+  public static CompressedTexture read(ByteBuffer data) throws IOException {
+    ByteBuffer header = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int start = header.position();
+    if (header.remaining() < HEADER_SIZE) {
+      throw new IOException("Not a KTX file");
+    }
+    for (int i = 0; i < IDENTIFIER.length; ++i) {
+      if (header.get(start + i) != IDENTIFIER[i]) {
+        throw new IOException("Not a KTX file");
+      }
+    }
+    int fields = start + IDENTIFIER.length;
+    if (header.getInt(fields) != ENDIANNESS) {
+      header.order(ByteOrder.BIG_ENDIAN);
+      if (header.getInt(fields) != ENDIANNESS) {
+        throw new IOException("Corrupt KTX header");
+      }
+    }
+    int glType = header.getInt(fields + 4);
+    int glInternalFormat = header.getInt(fields + 16);
+    int width = header.getInt(fields + 24);
+    int height = header.getInt(fields + 28);
+    int depth = header.getInt(fields + 32);
+    int arrayElements = header.getInt(fields + 36);
+    int faces = header.getInt(fields + 40);
+    int levelCount = Math.max(1, header.getInt(fields + 44));
+    int keyValueBytes = header.getInt(fields + 48);
+    if (glType != 0
+        || (glInternalFormat != CompressedTexture.ETC1_RGB8
+            && glInternalFormat != CompressedTexture.RGBA8_ETC2_EAC)) {
+      throw new IOException("Unsupported KTX format 0x" + Integer.toHexString(glInternalFormat));
+    }
+    if (width <= 0 || height <= 0 || depth != 0 || arrayElements != 0 || faces != 1) {
+      throw new IOException("Unsupported KTX layout");
+    }
+
+    ByteBuffer[] levels = new ByteBuffer[levelCount];
+    long position = (long) start + HEADER_SIZE + keyValueBytes;
+    long end = start + header.remaining();
+    for (int level = 0; level < levelCount; ++level) {
+      if (position + 4 > end) {
+        throw new IOException("Truncated KTX file");
+      }
+      int imageSize = header.getInt((int) position);
+      int expectedSize =
+          CompressedTexture.imageBytes(
+              glInternalFormat, Math.max(1, width >> level), Math.max(1, height >> level));
+      if (imageSize != expectedSize || position + 4 + imageSize > end) {
+        throw new IOException("Corrupt KTX level " + level);
+      }
+      levels[level] = slice(data, (int) position + 4, imageSize);
+      position += 4 + imageSize;
+    }
+    return new CompressedTexture(glInternalFormat, width, height, levels);
+  }
+
+  /** Writes a texture in the KTX format. The stream is not closed. */
+  public static void write(CompressedTexture texture, OutputStream out) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.put(IDENTIFIER);
+    header.putInt(ENDIANNESS);
+    header.putInt(0); // glType, 0 for compressed data
+    header.putInt(1); // glTypeSize
+    header.putInt(0); // glFormat, 0 for compressed data
+    header.putInt(texture.getFormat());
+    header.putInt(texture.hasAlpha() ? GL_RGBA : GL_RGB);
+    header.putInt(texture.getWidth());
+    header.putInt(texture.getHeight());
+    header.putInt(0); // pixelDepth
+    header.putInt(0); // numberOfArrayElements
+    header.putInt(1); // numberOfFaces
+    header.putInt(texture.getLevelCount());
+    header.putInt(0); // bytesOfKeyValueData
+    header.flip();
+
+    WritableByteChannel channel = Channels.newChannel(out);
+    writeFully(channel, header);
+    ByteBuffer imageSize = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+    for (int level = 0; level < texture.getLevelCount(); ++level) {
+      ByteBuffer image = texture.getLevel(level).duplicate();
+      imageSize.clear();
+      imageSize.putInt(image.remaining()).flip();
+      writeFully(channel, imageSize);
+      writeFully(channel, image);
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer data, int position, int length) {
+    ByteBuffer view = data.duplicate();
+    view.limit(position + length);
+    view.position(position);
+    return view.slice();
+  }
+
+  private static void writeFully(WritableByteChannel channel, ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
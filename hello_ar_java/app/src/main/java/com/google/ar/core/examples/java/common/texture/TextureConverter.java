@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.texture;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts images to mipmapped {@link CompressedTexture}s and KTX files. Used by the {@code
+ * convertTextures} Gradle task at build time, which decodes the image assets and passes their
+ * pixels here.
+ *
+ * <p>Opaque images are encoded as ETC1, which every OpenGL ES 2.0 device on which ARCore runs can
+ * sample. Images with any transparent pixel are encoded as ETC2 with EAC alpha, which requires
+ * OpenGL ES 3.0.
+ */
+public final class TextureConverter {
+  private TextureConverter() {}
+
+  /**
+   * Builds the full mipmap chain of an image and compresses every level.
+   *
+   * @param argb Pixels as packed {@code 0xAARRGGBB} ints, row by row from the top.
+   */
+  public static CompressedTexture fromPixels(int[] argb, int width, int height) {
+    boolean hasAlpha = false;
+    for (int pixel : argb) {
+      if (pixel >>> 24 != 0xff) {
+        hasAlpha = true;
+        break;
+      }
+    }
+    int format = hasAlpha ? CompressedTexture.RGBA8_ETC2_EAC : CompressedTexture.ETC1_RGB8;
+    int levelCount = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    ByteBuffer[] levels = new ByteBuffer[levelCount];
+    EtcEncoder encoder = new EtcEncoder();
+    int levelWidth = width;
+    int levelHeight = height;
+    int[] pixels = argb;
+    for (int level = 0; level < levelCount; ++level) {
+      if (level > 0) {
+        int nextWidth = Math.max(1, levelWidth / 2);
+        int nextHeight = Math.max(1, levelHeight / 2);
+        pixels = downsample(pixels, levelWidth, levelHeight, nextWidth, nextHeight);
+        levelWidth = nextWidth;
+        levelHeight = nextHeight;
+      }
+      byte[] data =
+          hasAlpha
+              ? encoder.encodeEtc2Rgba(pixels, levelWidth, levelHeight)
+              : encoder.encodeEtc1(pixels, levelWidth, levelHeight);
+      levels[level] = ByteBuffer.wrap(data);
+    }
+    return new CompressedTexture(format, width, height, levels);
+  }
+
+  /** Compresses an image to a KTX file, creating parent directories as needed. */
+  public static void convert(int[] argb, int width, int height, File ktxFile) throws IOException {
+    CompressedTexture texture = fromPixels(argb, width, height);
+    File parent = ktxFile.getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Could not create " + parent);
+    }
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(ktxFile))) {
+      KtxFile.write(texture, out);
+    }
+  }
+
+  // Box-filters an image to the next mipmap level, like glGenerateMipmap does on most drivers.
+  private static int[] downsample(int[] argb, int width, int height, int newWidth, int newHeight) {
+    int[] result = new int[newWidth * newHeight];
+    for (int y = 0; y < newHeight; ++y) {
+      int y0 = Math.min(2 * y, height - 1);
+      int y1 = Math.min(2 * y + 1, height - 1);
+      for (int x = 0; x < newWidth; ++x) {
+        int x0 = Math.min(2 * x, width - 1);
+        int x1 = Math.min(2 * x + 1, width - 1);
+        int p00 = argb[y0 * width + x0];
+        int p01 = argb[y0 * width + x1];
+        int p10 = argb[y1 * width + x0];
+        int p11 = argb[y1 * width + x1];
+        int pixel = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+          int sum =
+              ((p00 >>> shift) & 0xff)
+                  + ((p01 >>> shift) & 0xff)
+                  + ((p10 >>> shift) & 0xff)
+                  + ((p11 >>> shift) & 0xff);
+          pixel |= ((sum + 2) / 4) << shift;
+        }
+        result[y * newWidth + x] = pixel;
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar;
+
+import android.app.Activity;
+import android.widget.TextView;
+import com.google.ar.core.examples.java.common.helpers.AnchorStatusText;
+import com.google.ar.core.examples.java.common.profiling.TraceRecorder;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shows which anchors are in view, and the nearest one, in a {@link TextView}.
+ *
+ * <p>Every frame, the OpenGL thread describes what it sees with {@link #beginFrame}, {@link
+ * #addVisibleAnchor} and {@link #setNearestAnchor}, then calls {@link #publish}. The text is only
+ * rebuilt when that differs from what was last published, and at most once per display refresh; a
+ * change that comes sooner is published by a later frame. Text is built by {@link AnchorStatusText}
+ * in a reused builder and handed to the UI thread with a single reused runnable, which is not
+ * posted again while pending, so frames that change nothing neither allocate nor post to the UI
+ * thread.
+ */
+final class AnchorStatusPublisher {
+  private static final int TRACE_APPLY_TEXT = TraceRecorder.registerEvent("anchor text");
+
+  private final Activity activity;
+  private final TextView textView;
+  private final long minIntervalNanos;
+
+  private final AnchorStatusText status = new AnchorStatusText();
+  private long lastPublishNanos;
+  private int publishCount;
+
+  // Text for the UI thread, guarded by itself. TextView.setText() copies it.
+  private final StringBuilder text = new StringBuilder();
+  private final AtomicBoolean applyPending = new AtomicBoolean();
+  private final Runnable applyText = this::applyText;
+
+  /**
+   * @param activity Activity whose UI thread updates the view.
+   * @param textView View showing the text.
+   * @param refreshRateHz Refresh rate of the display, which bounds how often the text changes.
+   */
+  AnchorStatusPublisher(Activity activity, TextView textView, float refreshRateHz) {
+    this.activity = activity;
+    this.textView = textView;
+    this.minIntervalNanos = (long) (1e9 / Math.max(refreshRateHz, 1.0f));
+  }
+
+  /** Starts describing a frame, with no anchor in view. */
+  void beginFrame() {
+    status.beginFrame();
+  }
+
+  /** Adds an anchor in view, by the number shown to the user. */
+  void addVisibleAnchor(int id) {
+    status.addVisibleAnchor(id);
+  }
+
+  /** Sets the anchor nearest to the camera, and its distance. */
+  void setNearestAnchor(int id, float distanceMeters) {
+    status.setNearestAnchor(id, distanceMeters);
+  }
+
+  /**
+   * Publishes the state of the frame if it changed, unless the last publication is less than a
+   * display refresh old.
+   *
+   * @param nowNanos Current {@link System#nanoTime()}.
+   * @return Whether the text was updated.
+   */
+  boolean publish(long nowNanos) {
+    if (!status.hasChanged()
+        || (publishCount > 0 && nowNanos - lastPublishNanos < minIntervalNanos)) {
+      return false;
+    }
+    lastPublishNanos = nowNanos;
+    publishCount++;
+
+    synchronized (text) {
+      status.format(text);
+    }
+    if (applyPending.compareAndSet(false, true)) {
+      activity.runOnUiThread(applyText);
+    }
+    return true;
+  }
+
+  /** Returns the number of times the text was updated. */
+  int getPublishCount() {
+    return publishCount;
+  }
+
+  private void applyText() {
+    TraceRecorder.begin(TRACE_APPLY_TEXT);
+    // Cleared first, so that text published from now on is posted again.
+    applyPending.set(false);
+    synchronized (text) {
+      textView.setText(text);
+    }
+    TraceRecorder.end(TRACE_APPLY_TEXT);
+  }
+}
@@ -19,7 +19,6 @@ package com.google.ar.core.examples.java.helloar;
 import android.graphics.Color;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.util.DisplayMetrics;
@@ -40,16 +39,32 @@ import com.google.ar.core.Pose;
 import com.google.ar.core.Session;
 import com.google.ar.core.Trackable;
 import com.google.ar.core.TrackingState;
+import com.google.ar.core.examples.java.common.gl.AndroidGl;
+import com.google.ar.core.examples.java.common.gl.Gl;
+import com.google.ar.core.examples.java.common.gl.RecordingGl;
 import com.google.ar.core.examples.java.common.helpers.CameraPermissionHelper;
 import com.google.ar.core.examples.java.common.helpers.DisplayRotationHelper;
 import com.google.ar.core.examples.java.common.helpers.FullScreenHelper;
 import com.google.ar.core.examples.java.common.helpers.SnackbarHelper;
+import com.google.ar.core.examples.java.common.helpers.StencilConfigChooser;
 import com.google.ar.core.examples.java.common.helpers.TapHelper;
+import com.google.ar.core.examples.java.common.logging.RenderLog;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.PoseMath;
+import com.google.ar.core.examples.java.common.profiling.FrameProfiler;
+import com.google.ar.core.examples.java.common.profiling.TraceRecorder;
+import com.google.ar.core.examples.java.common.rendering.AnchorTracker;
+import com.google.ar.core.examples.java.common.rendering.AsyncAssetLoader;
 import com.google.ar.core.examples.java.common.rendering.BackgroundRenderer;
+import com.google.ar.core.examples.java.common.rendering.FrameArena;
+import com.google.ar.core.examples.java.common.rendering.GpuAssetCache;
 import com.google.ar.core.examples.java.common.rendering.ObjectRenderer;
 import com.google.ar.core.examples.java.common.rendering.ObjectRenderer.BlendMode;
 import com.google.ar.core.examples.java.common.rendering.PlaneRenderer;
+import com.google.ar.core.examples.java.common.rendering.PointCloudMapRenderer;
 import com.google.ar.core.examples.java.common.rendering.PointCloudRenderer;
+import com.google.ar.core.examples.java.common.rendering.ProgramBinaryCache;
+import com.google.ar.core.examples.java.common.spatial.VoxelMap;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 import com.google.ar.core.exceptions.UnavailableApkTooOldException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
@@ -59,13 +74,15 @@ import com.google.ar.core.exceptions.UnavailableUserDeclinedInstallationExceptio
 
 import com.google.ar.sceneform.ux.TransformableNode;
 import com.google.ar.sceneform.ux.ArFragment;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.Locale;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -78,6 +95,23 @@ import javax.microedition.khronos.opengles.GL10;
 public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.Renderer {
   private static final String TAG = HelloArActivity.class.getSimpleName();
 
+  // Messages logged every frame or every tap, on the rendering thread.
+  private static final int LOG_ANCHORS_IN_VIEW =
+      RenderLog.register(TAG, Log.DEBUG, "Anchors in view: %d", 1000);
+  private static final int LOG_ANCHOR_VISIBLE =
+      RenderLog.register(TAG, Log.VERBOSE, "Anchor %d is visible on the screen", 1000);
+  private static final int LOG_NO_TAP = RenderLog.register(TAG, Log.VERBOSE, "No tap", 5000);
+  private static final int LOG_TAP = RenderLog.register(TAG, Log.DEBUG, "Tap received", 0);
+  private static final int LOG_ANCHOR_ADDED =
+      RenderLog.register(TAG, Log.DEBUG, "Adding anchor %d to %d anchors", 0);
+  private static final int LOG_ANCHOR_COUNTS =
+      RenderLog.register(TAG, Log.DEBUG, "Anchor index size %d, anchor list size %d", 0);
+  private static final int LOG_ANCHOR_ID =
+      RenderLog.register(TAG, Log.VERBOSE, "Anchor %d has id %d", 0);
+
+  // Trace event of the timing overlay updates posted to the UI thread.
+  private static final int TRACE_TIMING_OVERLAY = TraceRecorder.registerEvent("timing overlay");
+
   // Rendering. The Renderers are created here, and initialized when the GL surface is created.
   private GLSurfaceView surfaceView;
 
@@ -88,15 +122,80 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
   private DisplayRotationHelper displayRotationHelper;
   private TapHelper tapHelper;
   private TextView textView;
-
-  private final BackgroundRenderer backgroundRenderer = new BackgroundRenderer();
-  private final ObjectRenderer virtualObject = new ObjectRenderer();
-  private final ObjectRenderer virtualObjectShadow = new ObjectRenderer();
-  private final PlaneRenderer planeRenderer = new PlaneRenderer();
-  private final PointCloudRenderer pointCloudRenderer = new PointCloudRenderer();
+  private AnchorStatusPublisher anchorStatusPublisher;
+
+  // Records the session for replay off the device. Long-pressing the anchor text starts or stops
+  // it. Used on the OpenGL thread only.
+  private final SessionCapture sessionCapture = new SessionCapture();
+
+  // OpenGL calls of the renderers, counted every frame in debug builds. Null in release builds.
+  private final RecordingGl recordingGl =
+      RecordingGl.ENABLED ? new RecordingGl(new AndroidGl()) : null;
+  // Where the renderers make their OpenGL calls.
+  private final Gl renderGl = recordingGl != null ? recordingGl : new AndroidGl();
+
+  // Time spent in each stage of onDrawFrame. The overlay shows the percentiles, and in debug builds
+  // the OpenGL calls of the last frame, twice a second. Tapping it writes the percentiles to a
+  // file, and long-pressing it starts or stops a trace.
+  private static final long TIMING_OVERLAY_INTERVAL_NANOS = 500_000_000L;
+  private final FrameProfiler frameProfiler = new FrameProfiler();
+  private final int stageFrame = frameProfiler.addStage("frame");
+  private final int stageUpdate = frameProfiler.addStage("update");
+  private final int stageTap = frameProfiler.addStage("tap");
+  private final int stageBackground = frameProfiler.addStage("background");
+  private final int stagePointCloud = frameProfiler.addStage("point cloud");
+  private final int stagePlanes = frameProfiler.addStage("planes");
+  private final int stageAnchors = frameProfiler.addStage("anchors");
+  private final int stageUiText = frameProfiler.addStage("ui text");
+  private TextView timingOverlay;
+  private long lastTimingOverlayNanos;
+  // Bytes of the last point cloud upload, written by the OpenGL thread for the overlay.
+  private volatile int pointCloudUploadBytes;
+  private final Runnable updateTimingOverlay =
+      () -> {
+        TraceRecorder.begin(TRACE_TIMING_OVERLAY);
+        String report =
+            frameProfiler.formatReport()
+                + String.format(
+                    Locale.US,
+                    "point cloud: %.1f KiB uploaded%n",
+                    pointCloudUploadBytes / 1024.0);
+        timingOverlay.setText(
+            RecordingGl.ENABLED ? report + recordingGl.formatLastFrame() : report);
+        TraceRecorder.end(TRACE_TIMING_OVERLAY);
+      };
+  private File traceFile;
+
+  // Scratch matrices and vectors shared by the renderers, reset at the start of every frame.
+  private final FrameArena frameArena = new FrameArena();
+
+  // Programs, textures and meshes shared by the renderers.
+  private final GpuAssetCache gpuAssetCache = new GpuAssetCache(renderGl);
+
+  private final BackgroundRenderer backgroundRenderer = new BackgroundRenderer(gpuAssetCache);
+  private final ObjectRenderer virtualObject = new ObjectRenderer(frameArena, gpuAssetCache);
+  private final ObjectRenderer virtualObjectShadow = new ObjectRenderer(frameArena, gpuAssetCache);
+  private final PlaneRenderer planeRenderer = new PlaneRenderer(frameArena, gpuAssetCache);
+  private final PointCloudRenderer pointCloudRenderer = new PointCloudRenderer(gpuAssetCache);
+
+  // Persistent map of the points seen so far, drawn along with the current point cloud.
+  private static final float POINT_MAP_VOXEL_SIZE_M = 0.05f;
+  private static final int POINT_MAP_CAPACITY = 65536;
+  private static final int POINT_MAP_CHUNK_SIZE = 4096;
+  private final VoxelMap pointCloudMap =
+      new VoxelMap(POINT_MAP_VOXEL_SIZE_M, POINT_MAP_CAPACITY, POINT_MAP_CHUNK_SIZE);
+  private final PointCloudMapRenderer pointCloudMapRenderer =
+      new PointCloudMapRenderer(gpuAssetCache);
+  private long lastMappedPointCloudTimestamp;
+
+  // Reads models and textures in the background and uploads them a little every frame, so that
+  // the camera image shows while they load.
+  private final AsyncAssetLoader assetLoader = new AsyncAssetLoader();
+  private long surfaceCreatedNanos;
+  private boolean renderersReady;
 
   // Temporary matrix allocated here to reduce number of allocations for each frame.
-  private final float[] anchorMatrix = new float[16];
+  private final float[] colorCorrectionRgba = new float[4];
   private static final float[] DEFAULT_COLOR = new float[] {0f, 0f, 0f, 0f};
 
   // View Matrix and Projection matrix used in onDrawFrame #function.
@@ -107,23 +206,38 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
     private final float[] modelMatrix = new float[16];
     private final float[] modelViewMatrix = new float[16];
     private final float[] modelViewProjectionMatrix = new float[16];
+    private final float[] viewProjectionMatrix = new float[16];
 
 
     // Anchors created from taps used for object placing with a given color.
   private static class ColoredAnchor {
     public final Anchor anchor;
     public final float[] color;
+    // Marker number shown to the user.
+    public final int id;
+    // Handle in anchorTracker while the anchor is tracking, AnchorTracker.NO_HANDLE otherwise.
+    public int trackerHandle = AnchorTracker.NO_HANDLE;
 
-    public ColoredAnchor(Anchor a, float[] color4f) {
+    public ColoredAnchor(Anchor a, float[] color4f, int id) {
       this.anchor = a;
       this.color = color4f;
+      this.id = id;
     }
   }
 
+  private static final int MAX_ANCHORS = 25;
+  // Grid cell size of the anchor index, roughly the spacing between markers.
+  private static final float ANCHOR_INDEX_CELL_SIZE_M = 0.5f;
+
   private final ArrayList<ColoredAnchor> anchors = new ArrayList<>();
 
-  private final HashMap<Integer, String> anchorLocationHmap = new HashMap<>();
-  private final HashMap<String, Anchor> anchorsInView = new HashMap<>();
+  // The planes of the session, copied once per frame into a list reused across frames.
+  private final ArrayList<Plane> planes = new ArrayList<>();
+
+  // Spatial index, culling and instance data of the tracking anchors, shared with the replay of
+  // recorded sessions. The pose of an anchor is copied into anchorPose to be tracked.
+  private final AnchorTracker anchorTracker = new AnchorTracker(ANCHOR_INDEX_CELL_SIZE_M);
+  private final float[] anchorPose = new float[PoseMath.FLOATS];
 
   private static int anchorCount = 0;
 
@@ -139,6 +253,21 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
     surfaceView = findViewById(R.id.surfaceview);
     textView = findViewById(R.id.textView);
     textView.setBackgroundColor(Color.BLACK);
+    anchorStatusPublisher =
+        new AnchorStatusPublisher(
+            this, textView, getWindowManager().getDefaultDisplay().getRefreshRate());
+    textView.setOnLongClickListener(
+        v -> {
+          surfaceView.queueEvent(this::toggleSessionCapture);
+          return true;
+        });
+    timingOverlay = findViewById(R.id.timingOverlay);
+    timingOverlay.setOnClickListener(v -> dumpFrameTimings());
+    timingOverlay.setOnLongClickListener(
+        v -> {
+          toggleTrace();
+          return true;
+        });
     displayRotationHelper = new DisplayRotationHelper(/*context=*/ this);
 
     getWindowManager().getDefaultDisplay().getMetrics(displayMetrics);
@@ -152,7 +281,8 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
     // Set up renderer.
     surfaceView.setPreserveEGLContextOnPause(true);
     surfaceView.setEGLContextClientVersion(2);
-    surfaceView.setEGLConfigChooser(8, 8, 8, 8, 16, 0); // Alpha used for plane blending.
+    // Stencil used for plane overlap; alpha is the fallback when no stencil config is available.
+    surfaceView.setEGLConfigChooser(new StencilConfigChooser(8));
     surfaceView.setRenderer(this);
     surfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
 
@@ -205,7 +335,7 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
 
       if (message != null) {
         messageSnackbarHelper.showError(this, message);
-        Log.e(TAG, "Exception creating session", exception);
+        RenderLog.e(TAG, "Exception creating session", exception);
         return;
       }
     }
@@ -238,9 +368,22 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
       displayRotationHelper.onPause();
       surfaceView.onPause();
       session.pause();
+      // The OpenGL thread is paused, so the capture can be stopped from here.
+      stopSessionCapture();
     }
   }
 
+  @Override
+  protected void onDestroy() {
+    assetLoader.shutdown();
+    try {
+      TraceRecorder.stop();
+    } catch (IOException e) {
+      RenderLog.e(TAG, "Failed to write trace", e);
+    }
+    super.onDestroy();
+  }
+
   @Override
   public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] results) {
     if (!CameraPermissionHelper.hasCameraPermission(this)) {
@@ -262,38 +405,78 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
 
   @Override
   public void onSurfaceCreated(GL10 gl, EGLConfig config) {
-    GLES20.glClearColor(0.1f, 0.1f, 0.1f, 1.0f);
+    // A new surface means a new GL context; names cached for the previous one are gone.
+    gpuAssetCache.invalidate();
+    assetLoader.cancelPending();
+    if (RecordingGl.ENABLED) {
+      recordingGl.reset();
+    }
+    surfaceCreatedNanos = System.nanoTime();
+    renderersReady = false;
+    renderGl.glClearColor(0.1f, 0.1f, 0.1f, 1.0f);
 
-    // Prepare the rendering objects. This involves reading shaders, so may throw an IOException.
+    // Prepare the rendering objects. The camera background and point cloud only need their
+    // shaders and are created right away, so that the camera image shows from the first frame.
+    // The models and textures are read in the background and uploaded over the next frames.
     try {
       // Create the texture and pass it to ARCore session to be filled during update().
       backgroundRenderer.createOnGlThread(/*context=*/ this);
-      planeRenderer.createOnGlThread(/*context=*/ this, "models/trigrid.png");
       pointCloudRenderer.createOnGlThread(/*context=*/ this);
+      pointCloudMapRenderer.createOnGlThread(/*context=*/ this);
+    } catch (IOException e) {
+      RenderLog.e(TAG, "Failed to read an asset file", e);
+    }
 
-      virtualObject.createOnGlThread(/*context=*/ this, "models/andy.obj", "models/andy.png");
-      virtualObject.setMaterialProperties(0.0f, 2.0f, 0.5f,   6.0f);
+    planeRenderer.createAsync(/*context=*/ this, assetLoader, "models/trigrid.png");
+    planeRenderer.setDrawMode(PlaneRenderer.DrawMode.MERGED);
 
-      virtualObjectShadow.createOnGlThread(
-          /*context=*/ this, "models/andy_shadow.obj", "models/andy_shadow.png");
-      virtualObjectShadow.setBlendMode(BlendMode.Shadow);
-      virtualObjectShadow.setMaterialProperties(1.0f, 0.0f, 0.0f, 1.0f);
+    virtualObject.createAsync(/*context=*/ this, assetLoader, "models/andy.obj", "models/andy.png");
+    virtualObject.setMaterialProperties(0.0f, 2.0f, 0.5f,   6.0f);
 
-    } catch (IOException e) {
-      Log.e(TAG, "Failed to read an asset file", e);
+    virtualObjectShadow.createAsync(
+        /*context=*/ this, assetLoader, "models/andy_shadow.obj", "models/andy_shadow.png");
+    virtualObjectShadow.setBlendMode(BlendMode.Shadow);
+    virtualObjectShadow.setMaterialProperties(1.0f, 0.0f, 0.0f, 1.0f);
+  }
+
+  // Uploads assets that finished loading in the background, and reports once every renderer is
+  // ready to draw.
+  private void runAssetUploads() {
+    assetLoader.runUploads();
+    if (renderersReady
+        || !backgroundRenderer.isReady()
+        || !pointCloudRenderer.isReady()
+        || !planeRenderer.isReady()
+        || !virtualObject.isReady()
+        || !virtualObjectShadow.isReady()) {
+      return;
     }
+    renderersReady = true;
+    ProgramBinaryCache programBinaries = gpuAssetCache.getProgramBinaryCache();
+    RenderLog.i(
+        TAG,
+        String.format(
+            "Renderers ready %.2f ms after surface creation. Program binaries: %d loaded, "
+                + "%d compiled, %d rejected, %.2f ms saved",
+            (System.nanoTime() - surfaceCreatedNanos) / 1e6,
+            programBinaries.getHitCount(),
+            programBinaries.getMissCount(),
+            programBinaries.getRejectedCount(),
+            programBinaries.getSavedNanos() / 1e6));
   }
 
   @Override
   public void onSurfaceChanged(GL10 gl, int width, int height) {
     displayRotationHelper.onSurfaceChanged(width, height);
-    GLES20.glViewport(0, 0, width, height);
+    renderGl.glViewport(0, 0, width, height);
   }
 
   @Override
   public void onDrawFrame(GL10 gl) {
     // Clear screen to notify driver it should not load any pixels from previous frame.
-    GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+    renderGl.glClear(
+        GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_STENCIL_BUFFER_BIT);
+    frameArena.reset();
 
     if (session == null) {
       return;
@@ -302,24 +485,41 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
     // the video background can be properly adjusted.
     displayRotationHelper.updateSessionIfNeeded(session);
 
+    frameProfiler.begin(stageFrame);
     try {
       session.setCameraTextureName(backgroundRenderer.getTextureId());
 
       // Obtain the current frame from ARSession. When the configuration is set to
       // UpdateMode.BLOCKING (it is by default), this will throttle the rendering to the
       // camera framerate.
+      frameProfiler.begin(stageUpdate);
       Frame frame = session.update();
+      frameProfiler.end(stageUpdate);
       Camera camera = frame.getCamera();
 
       // Handle one tap per frame.
+      frameProfiler.begin(stageTap);
       handleTap(frame, camera);
-        //camera.getProjectionMatrix();
-        Collection<Anchor> al = frame.getUpdatedAnchors();
-        for (Anchor a : al)
-            a.getPose();
+      frameProfiler.end(stageTap);
+
+      planes.clear();
+      planes.addAll(session.getAllTrackables(Plane.class));
+
+      if (sessionCapture.isRecording()) {
+        for (int i = 0; i < anchors.size(); i++) {
+          ColoredAnchor coloredAnchor = anchors.get(i);
+          sessionCapture.addAnchor(coloredAnchor.id, coloredAnchor.anchor);
+        }
+        sessionCapture.capture(frame, camera, planes);
+      }
 
       // Draw background.
+      frameProfiler.begin(stageBackground);
       backgroundRenderer.draw(frame);
+      frameProfiler.end(stageBackground);
+
+      // Finish loading the other renderers, which draw nothing until they are ready.
+      runAssetUploads();
 
       // If not tracking, don't draw 3d objects.
       if (camera.getTrackingState() == TrackingState.PAUSED) {
@@ -336,23 +536,33 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
       // Compute lighting from average intensity of the image.
       // The first three components are color scaling factors.
       // The last one is the average pixel intensity in gamma space.
-      final float[] colorCorrectionRgba = new float[4];
       frame.getLightEstimate().getColorCorrection(colorCorrectionRgba, 0);
 
       // Visualize tracked points.
+      frameProfiler.begin(stagePointCloud);
       PointCloud pointCloud = frame.acquirePointCloud();
       pointCloudRenderer.update(pointCloud);
+      pointCloudUploadBytes = pointCloudRenderer.getLastUploadBytes();
       pointCloudRenderer.draw(viewmtx, projmtx);
 
+      // Merge new points into the map, then upload the chunks of it that changed and draw it.
+      if (pointCloud.getTimestamp() != lastMappedPointCloudTimestamp) {
+        lastMappedPointCloudTimestamp = pointCloud.getTimestamp();
+        pointCloudMap.accumulate(pointCloud.getPoints());
+      }
+      pointCloudMapRenderer.update(pointCloudMap);
+      pointCloudMapRenderer.draw(viewmtx, projmtx);
+
       // Application is responsible for releasing the point cloud resources after
       // using it.
       pointCloud.release();
+      frameProfiler.end(stagePointCloud);
 
 
       // Check if we detected at least one plane. If so, hide the loading message.
       if (messageSnackbarHelper.isShowing()) {
-        for (Plane plane : session.getAllTrackables(Plane.class)) {
-          if (plane.getTrackingState() == TrackingState.TRACKING) {
+        for (int i = 0; i < planes.size(); i++) {
+          if (planes.get(i).getTrackingState() == TrackingState.TRACKING) {
             messageSnackbarHelper.hide(this);
             break;
           }
@@ -360,17 +570,21 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
       }
 
       // Visualize planes.
-      planeRenderer.drawPlanes(
-          session.getAllTrackables(Plane.class), camera.getDisplayOrientedPose(), projmtx);
+      frameProfiler.begin(stagePlanes);
+      planeRenderer.drawPlanes(planes, camera.getDisplayOrientedPose(), projmtx);
+      frameProfiler.end(stagePlanes);
 
       // Visualize anchors created by touch.
       float scaleFactor = 1.0f;
       //Log.e("vai:","Session.getAllAnchors="+session.getAllAnchors().size());
       //Log.e("vai:","anchors.size="+anchors.size());
-        anchorsInView.clear();
-        for (ColoredAnchor coloredAnchor : anchors) {
+        frameProfiler.begin(stageAnchors);
+        anchorTracker.beginFrame();
+        for (int i = 0; i < anchors.size(); i++) {
+        ColoredAnchor coloredAnchor = anchors.get(i);
         if (coloredAnchor.anchor.getTrackingState() != TrackingState.TRACKING) {
             //Log.e("apeks:",coloredAnchor.anchor.hashCode()+":"+coloredAnchor.anchor.getTrackingState());
+          coloredAnchor.trackerHandle = anchorTracker.remove(coloredAnchor.trackerHandle);
           continue;
         }
 
@@ -379,97 +593,161 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
         //coloredAnchor.anchor.
         // Get the current pose of an Anchor in world space. The Anchor pose is updated
         // during calls to session.update() as ARCore refines its estimate of the world.+
-        coloredAnchor.anchor.getPose().toMatrix(anchorMatrix, 0);
-        // Get the latest Pose of each anchor and store it in anchorMatrix
-        // Now pass this anchorMatrix to openGL functions to draw the 3D object.
-
-        // Update and draw the model and its shadow.
-        virtualObject.updateModelMatrix(anchorMatrix, scaleFactor);
-        virtualObjectShadow.updateModelMatrix(anchorMatrix, scaleFactor);
-/*
-          Log.e("TAG:","Projection Mat==");
-          for (int i =0;i<16;i++){
-              if(i%4 == 0)
-                  System.out.println("\n") ;
-              System.out.print(projmtx[i]+",");
-          }
-              //Log.e("TAG:", Arrays.toString(row));
-          Matrix.multiplyMM(modelViewMatrix, 0, viewmtx, 0, anchorMatrix, 0);
-          Matrix.multiplyMM(modelViewProjectionMatrix, 0, projmtx, 0, modelViewMatrix, 0);
-
-*/
-
-        float[] world2screenMatrix = virtualObject.getMyScreenMatrix(anchorMatrix,viewmtx, projmtx);
-        double[] anchor_2d = world2Screen(screenWidth,screenHeight,world2screenMatrix);
-
-          //Log.e("vaibh","ScreenWidth = "+screenWidth+" ScreenHeight = "+screenHeight);
-          //Log.e("vaibh","Anchor X = "+anchor_2d[0]+" Y = "+anchor_2d[1]);
-
-          virtualObject.draw(viewmtx, projmtx, colorCorrectionRgba, coloredAnchor.color);
-          virtualObjectShadow.draw(viewmtx, projmtx, colorCorrectionRgba, coloredAnchor.color);
-
-          if((anchor_2d[0] > 0 && anchor_2d[0] < screenWidth) && (anchor_2d[1] > 0 && anchor_2d[1] < screenHeight)) {
-              Log.e("apeks", "Anchor is visible on the screen::"+coloredAnchor.anchor.hashCode());
-              String anchorId = anchorLocationHmap.get(coloredAnchor.anchor.hashCode());
-              //Log.e("vaibh", "You're seeing Anchor: " + anchorId);
-              anchorsInView.put(anchorId, coloredAnchor.anchor);
-              //messageSnackbarHelper.showMessage(this,"You're seeing Anchor: " + anchorLocationHmap.get(coloredAnchor.anchor.hashCode()));
-          }
-          Log.e("apeks", "Anchor is NOT visible on the screen::"+coloredAnchor.anchor.hashCode());
+        Pose pose = coloredAnchor.anchor.getPose();
+        pose.getTranslation(anchorPose, 0);
+        pose.getRotationQuaternion(anchorPose, 3);
+        // The tracker keeps the index in sync and computes the model matrix of the anchor, which
+        // is passed to OpenGL to draw the 3D object.
+        coloredAnchor.trackerHandle =
+            anchorTracker.track(
+                coloredAnchor.trackerHandle, coloredAnchor.id, coloredAnchor.color, anchorPose, 0);
       }
 
-      /**
-        This is just a temporarily logic for demonstration pursposes...
-       */
-        Log.e("vaibh", "Anchors in View size = "+anchorsInView.size());
-        if(anchorsInView.size() > 0) {
-            String displayAnchorIds = "";
-
-            for (Map.Entry<String, Anchor> entry : anchorsInView.entrySet())
-                displayAnchorIds = displayAnchorIds + entry.getKey() + ", ";
-
-            displayAnchorIds = displayAnchorIds.substring(0,displayAnchorIds.length()-2);
-
-            if(anchorsInView.size() > 0){
-                String nearestAnchorId = getClosestAnchor(frame, camera, anchorsInView);
-                displayAnchorIds += "\nNearest Anchor: "+nearestAnchorId.split(":")[0
-                        ] +String.format("\nAt %.3f",Float.valueOf(nearestAnchorId.split(":")[1]))+" meters away.";
-            }
-            final String anchorsDisplayed = displayAnchorIds;
-            runOnUiThread(() -> textView.setText("I'm seeing Anchor: " + anchorsDisplayed));
+      // Cull all anchors at once against the model's bounding sphere, then draw only those that
+      // can be on screen. An anchor is in view when any part of its model is inside the frustum.
+      Mat4.multiply(viewProjectionMatrix, 0, projmtx, 0, viewmtx, 0);
+      float boundingRadius =
+          Math.max(virtualObject.getBoundingRadius(), virtualObjectShadow.getBoundingRadius())
+              * scaleFactor;
+      int anchorsInViewCount = anchorTracker.cull(viewProjectionMatrix, boundingRadius);
+      float[] visibleAnchorMatrices = anchorTracker.getVisibleMatrices();
+      float[] visibleAnchorColors = anchorTracker.getVisibleColors();
+
+      // Draw every visible model, then every shadow, with one instanced draw each.
+      virtualObject.drawInstances(
+          viewmtx,
+          projmtx,
+          colorCorrectionRgba,
+          visibleAnchorMatrices,
+          scaleFactor,
+          visibleAnchorColors,
+          anchorsInViewCount);
+      virtualObjectShadow.drawInstances(
+          viewmtx,
+          projmtx,
+          colorCorrectionRgba,
+          visibleAnchorMatrices,
+          scaleFactor,
+          visibleAnchorColors,
+          anchorsInViewCount);
+      frameProfiler.end(stageAnchors);
+
+      // Show which anchors are in view, and the nearest one. The text view is only updated when
+      // that changes.
+      frameProfiler.begin(stageUiText);
+      if (RenderLog.HOT_PATH_ENABLED) {
+        RenderLog.hot(LOG_ANCHORS_IN_VIEW, anchorsInViewCount);
+      }
+      anchorStatusPublisher.beginFrame();
+      for (int i = 0; i < anchorsInViewCount; i++) {
+        int id = anchorTracker.getVisibleId(i);
+        if (RenderLog.HOT_PATH_ENABLED) {
+          RenderLog.hot(LOG_ANCHOR_VISIBLE, id);
         }
-        else
-            runOnUiThread(() -> textView.setText("I don't see any markers on the screen :("));
-
-      Log.e("vaibh","anchorsInView size = "+anchorsInView.size());
+        anchorStatusPublisher.addVisibleAnchor(id);
+      }
+      if (anchorsInViewCount > 0) {
+        Pose devicePose = camera.getPose();
+        int nearestId =
+            anchorTracker.findNearestVisible(devicePose.tx(), devicePose.ty(), devicePose.tz());
+        if (nearestId >= 0) {
+          anchorStatusPublisher.setNearestAnchor(nearestId, anchorTracker.getNearestDistance());
+        }
+      }
+      anchorStatusPublisher.publish(System.nanoTime());
+      frameProfiler.end(stageUiText);
     } catch (Throwable t) {
       // Avoid crashing the application due to unhandled exceptions.
-      Log.e(TAG, "Exception on the OpenGL thread", t);
+      RenderLog.e(TAG, "Exception on the OpenGL thread", t);
+    } finally {
+      frameProfiler.end(stageFrame);
+      if (RecordingGl.ENABLED) {
+        recordingGl.endFrame();
+      }
+      long now = System.nanoTime();
+      if (now - lastTimingOverlayNanos >= TIMING_OVERLAY_INTERVAL_NANOS) {
+        lastTimingOverlayNanos = now;
+        // The report is built on the UI thread, so that this thread does not allocate for it.
+        runOnUiThread(updateTimingOverlay);
+      }
     }
   }
 
-  double[] world2Screen(int screenWidth, int screenHeight, float[] world2cameraMatrix)
-  {
-    float[] origin = {0f, 0f, 0f, 1f};
-    float[] deviceScreenMatrix = new float[4];
-    Matrix.multiplyMV(deviceScreenMatrix, 0,  world2cameraMatrix, 0,  origin, 0);
+  // Starts streaming a trace to a file in the app's external files directory, or stops it.
+  private void toggleTrace() {
+    try {
+      if (TraceRecorder.isRecording()) {
+        TraceRecorder.stop();
+        Toast.makeText(this, "Trace written to " + traceFile, Toast.LENGTH_LONG).show();
+      } else {
+        traceFile =
+            new File(getExternalFilesDir(null), "trace_" + System.currentTimeMillis() + ".json");
+        TraceRecorder.start(new BufferedWriter(new FileWriter(traceFile)));
+        Toast.makeText(this, "Recording a trace, long press again to stop", Toast.LENGTH_SHORT)
+            .show();
+      }
+    } catch (IOException e) {
+      RenderLog.e(TAG, "Failed to write trace", e);
+      Toast.makeText(this, "Could not write trace", Toast.LENGTH_LONG).show();
+    }
+  }
+
+  // Starts recording the session to a file in the app's external files directory, or stops it.
+  // Runs on the OpenGL thread.
+  private void toggleSessionCapture() {
+    if (sessionCapture.isRecording()) {
+      stopSessionCapture();
+      return;
+    }
+    File file =
+        new File(getExternalFilesDir(null), "session_" + System.currentTimeMillis() + ".bin");
+    try {
+      sessionCapture.start(file);
+      showToast("Recording the session, long press again to stop", Toast.LENGTH_SHORT);
+    } catch (IOException e) {
+      RenderLog.e(TAG, "Failed to record session", e);
+      showToast("Could not record session", Toast.LENGTH_LONG);
+    }
+  }
 
-    deviceScreenMatrix[0] = deviceScreenMatrix[0]/deviceScreenMatrix[3];
-    deviceScreenMatrix[1] = deviceScreenMatrix[1]/deviceScreenMatrix[3];
+  private void stopSessionCapture() {
+    try {
+      File file = sessionCapture.stop();
+      if (file != null) {
+        showToast("Session written to " + file, Toast.LENGTH_LONG);
+      }
+    } catch (IOException e) {
+      RenderLog.e(TAG, "Failed to write session", e);
+      showToast("Could not write session", Toast.LENGTH_LONG);
+    }
+  }
 
-    double[] pos_2d = new double[]{0,0};
-    pos_2d[0] = screenWidth  * ((deviceScreenMatrix[0] + 1.0)/2.0);
-    //pos_2d[1] = screenWidth  * ((deviceScreenMatrix[1] + 1.0)/2.0);
-    pos_2d[1] = screenHeight * (( 1.0 - deviceScreenMatrix[1])/2.0); // Optimised formula (not mine).
+  private void showToast(String text, int duration) {
+    runOnUiThread(() -> Toast.makeText(this, text, duration).show());
+  }
 
-    return pos_2d;
+  // Writes the frame timing percentiles to a file in the app's external files directory.
+  private void dumpFrameTimings() {
+    File file =
+        new File(getExternalFilesDir(null), "frame_timing_" + System.currentTimeMillis() + ".txt");
+    try (Writer writer = new FileWriter(file)) {
+      frameProfiler.writeReport(writer);
+      Toast.makeText(this, "Frame timings written to " + file, Toast.LENGTH_LONG).show();
+    } catch (IOException e) {
+      RenderLog.e(TAG, "Failed to write frame timings", e);
+      Toast.makeText(this, "Could not write frame timings", Toast.LENGTH_LONG).show();
+    }
   }
 
   // Handle only one tap per frame, as taps are usually low frequency compared to frame rate.
   private void handleTap(Frame frame, Camera camera) {
     MotionEvent tap = tapHelper.poll();
-    if (tap == null) Log.e("kala:","Null taps");
-    else Log.e("kala:","Good taps");
+    if (RenderLog.HOT_PATH_ENABLED) {
+      RenderLog.hot(tap == null ? LOG_NO_TAP : LOG_TAP);
+    }
+    if (tap != null && sessionCapture.isRecording()) {
+      sessionCapture.addTap(tap.getX(), tap.getY());
+    }
     if (tap != null && camera.getTrackingState() == TrackingState.TRACKING) {
       for (HitResult hit : frame.hitTest(tap)) {
         // Check if any plane was hit, and if it was hit inside the plane polygon
@@ -491,9 +769,11 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
           // Hits are sorted by depth. Consider only closest hit on a plane or oriented point.
           // Cap the number of objects created. This avoids overloading both the
           // rendering system and ARCore.
-          if (anchors.size() >= 25) {
-            anchors.get(0).anchor.detach();
-            anchorLocationHmap.remove(anchors.remove(0).anchor.hashCode()); // Remove corresponding entry here.
+          if (anchors.size() >= MAX_ANCHORS) {
+            ColoredAnchor oldest = anchors.remove(0);
+            oldest.anchor.detach();
+            // Remove corresponding entry here.
+            oldest.trackerHandle = anchorTracker.remove(oldest.trackerHandle);
           }
 
           // Assign a color to the object for rendering based on the trackable type
@@ -516,12 +796,16 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
           // Adding an Anchor tells ARCore that it should track this position in
           // space. This anchor is created on the Plane to place the 3D model
           // in the correct position relative both to the world and to the plane.
-          anchors.add(new ColoredAnchor(anc, objColor));
-          Log.e("TAG","Putting "+anc.hashCode() +":::"+ Integer.toString(anchorLocationHmap.size()));
-          anchorLocationHmap.put(anc.hashCode(), Integer.toString(++anchorCount)); // Store anchor hash and its distance from camera
-            Log.e("TAG","New size anchorLocHM= "+anchorLocationHmap.size()+":::anchors list="+anchors.size());
-            for (Map.Entry<Integer, String> e : anchorLocationHmap.entrySet())
-                Log.e("TAG","Key: "+e.getKey()+" Val: "+e.getValue());
+          if (RenderLog.HOT_PATH_ENABLED) {
+            RenderLog.hot(LOG_ANCHOR_ADDED, anc.hashCode(), anchors.size());
+          }
+          anchors.add(new ColoredAnchor(anc, objColor, ++anchorCount));
+          if (RenderLog.HOT_PATH_ENABLED) {
+            RenderLog.hot(LOG_ANCHOR_COUNTS, anchorTracker.size(), anchors.size());
+            for (ColoredAnchor a : anchors) {
+              RenderLog.hot(LOG_ANCHOR_ID, a.anchor.hashCode(), a.id);
+            }
+          }
           break;
 
           // Fuck this'nt not working........
@@ -530,57 +814,6 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
     }
   }
 
-    /**
-     *  Function to find the anchor closest to the device based on the set of visible anchors.
-     */
-    private String getClosestAnchor(Frame frame, Camera camera, HashMap<String, Anchor> anchorsIdsInView) {
-
-        float nearestAnchorDistance = Float.MAX_VALUE;
-        String nearestAnchorId = "Unknown";
-        Pose devicePose = camera.getPose();
-        Pose markerPose;
-
-        /*for (String s : anchorsIdsInView)
-            System.out.println("APEKS ## "+s);
-        */
-
-
-        for (Map.Entry<String, Anchor> entry : anchorsIdsInView.entrySet()) {
-            markerPose = entry.getValue().getPose();
-            float dx = markerPose.tx() - devicePose.tx();
-            float dy = markerPose.ty() - devicePose.ty();
-            float dz = markerPose.tz() - devicePose.tz();
-
-            float distanceMeters = (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
-
-            if (distanceMeters < nearestAnchorDistance) {
-                nearestAnchorDistance = distanceMeters;
-                nearestAnchorId = entry.getKey();
-                //Log.e("apeks:","Near ID: "+nearestAnchorId + " Distance= "+nearestAnchorDistance);
-            }
-
-        }
-
-        /*for (ColoredAnchor a: ca) {
-            Log.e("apeks:"," a = "+a.anchor.hashCode());
-            if (anchorsIdsInView.contains(Integer.toString(a.anchor.hashCode()))) {
-                markerPose = a.anchor.getPose();
-                float dx = markerPose.tx() - devicePose.tx();
-                float dy = markerPose.ty() - devicePose.ty();
-                float dz = markerPose.tz() - devicePose.tz();
-
-                float distanceMeters = (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
-
-                if (distanceMeters < nearestAnchorDistance) {
-                    nearestAnchorDistance = distanceMeters;
-                    nearestAnchorId = a.anchor.hashCode();
-                    Log.e("apeks:","Near ID: "+nearestAnchorId);
-                }
-            }
-        }*/
-        return nearestAnchorId+":"+nearestAnchorDistance;
-    }
-
     /**
      * Callback function that is invoked when the OK button in the resolve dialog is pressed.
      *
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar;
+
+import com.google.ar.core.Anchor;
+import com.google.ar.core.Camera;
+import com.google.ar.core.Frame;
+import com.google.ar.core.LightEstimate;
+import com.google.ar.core.Plane;
+import com.google.ar.core.PointCloud;
+import com.google.ar.core.Pose;
+import com.google.ar.core.TrackingState;
+import com.google.ar.core.examples.java.common.replay.FrameRecord;
+import com.google.ar.core.examples.java.common.replay.SessionRecorder;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records what {@link HelloArActivity} sees of each frame to a session log, which {@code
+ * ReplayEngine} replays off the device.
+ *
+ * <p>Each frame, taps and anchors are added as they are handled, then {@link #capture} adds the
+ * camera, light estimate, point cloud and planes and queues the frame. Must be used on the OpenGL
+ * thread only.
+ */
+final class SessionCapture {
+  private final FrameRecord record = new FrameRecord();
+  // Ids given to the planes, which ARCore does not number.
+  private final Map<Plane, Integer> planeIds = new HashMap<>();
+  private int nextPlaneId;
+  private SessionRecorder recorder;
+  private File file;
+
+  // Temporary pose allocated here to reduce the number of allocations for each frame.
+  private final float[] pose = new float[FrameRecord.POSE_FLOATS];
+
+  boolean isRecording() {
+    return recorder != null;
+  }
+
+  /** Starts recording to a file. Does nothing if already recording. */
+  void start(File file) throws IOException {
+    if (recorder != null) {
+      return;
+    }
+    recorder = new SessionRecorder(new BufferedOutputStream(new FileOutputStream(file)));
+    this.file = file;
+    record.clear();
+    planeIds.clear();
+    nextPlaneId = 0;
+  }
+
+  /**
+   * Stops recording and closes the file.
+   *
+   * @return The file recorded to, or null if not recording.
+   */
+  File stop() throws IOException {
+    if (recorder == null) {
+      return null;
+    }
+    SessionRecorder closing = recorder;
+    recorder = null;
+    closing.close();
+    return file;
+  }
+
+  void addTap(float x, float y) {
+    record.addTap(x, y);
+  }
+
+  void addAnchor(int id, Anchor anchor) {
+    copyPose(anchor.getPose());
+    record.addAnchor(id, trackingState(anchor.getTrackingState()), pose, 0);
+  }
+
+  /** Completes the frame with what ARCore reports of it, and queues it to be written. */
+  void capture(Frame frame, Camera camera, Collection<Plane> planes) {
+    record.timestampNanos = frame.getTimestamp();
+    record.cameraTrackingState = trackingState(camera.getTrackingState());
+    copyPose(camera.getPose());
+    System.arraycopy(pose, 0, record.cameraPose, 0, FrameRecord.POSE_FLOATS);
+    copyPose(camera.getDisplayOrientedPose());
+    System.arraycopy(pose, 0, record.displayOrientedPose, 0, FrameRecord.POSE_FLOATS);
+    camera.getViewMatrix(record.viewMatrix, 0);
+    camera.getProjectionMatrix(record.projectionMatrix, 0, 0.1f, 100.0f);
+
+    LightEstimate lightEstimate = frame.getLightEstimate();
+    record.lightEstimateValid = lightEstimate.getState() == LightEstimate.State.VALID;
+    lightEstimate.getColorCorrection(record.colorCorrection, 0);
+    record.pixelIntensity = lightEstimate.getPixelIntensity();
+
+    PointCloud pointCloud = frame.acquirePointCloud();
+    try {
+      record.setPointCloud(pointCloud.getTimestamp(), pointCloud.getPoints());
+    } finally {
+      pointCloud.release();
+    }
+
+    for (Plane plane : planes) {
+      Plane subsumedBy = plane.getSubsumedBy();
+      copyPose(plane.getCenterPose());
+      record.addPlane(
+          planeId(plane),
+          (byte) plane.getType().ordinal(),
+          trackingState(plane.getTrackingState()),
+          subsumedBy != null ? planeId(subsumedBy) : FrameRecord.NO_PLANE,
+          pose,
+          0,
+          plane.getExtentX(),
+          plane.getExtentZ(),
+          plane.getPolygon());
+      if (plane.getTrackingState() == TrackingState.STOPPED) {
+        // Recorded once as stopped, so that replay drops it too; ARCore never reports it again.
+        planeIds.remove(plane);
+      }
+    }
+
+    recorder.record(record);
+    record.clear();
+  }
+
+  private int planeId(Plane plane) {
+    Integer id = planeIds.get(plane);
+    if (id == null) {
+      id = nextPlaneId++;
+      planeIds.put(plane, id);
+    }
+    return id;
+  }
+
+  private void copyPose(Pose source) {
+    source.getTranslation(pose, 0);
+    source.getRotationQuaternion(pose, 3);
+  }
+
+  private static byte trackingState(TrackingState state) {
+    return (byte) state.ordinal();
+  }
+}
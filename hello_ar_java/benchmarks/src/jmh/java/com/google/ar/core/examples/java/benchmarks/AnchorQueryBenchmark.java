@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.benchmarks;
+
+import com.google.ar.core.examples.java.common.rendering.AnchorCuller;
+import com.google.ar.core.examples.java.common.spatial.AnchorIndex;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-frame anchor queries of the sample: culling every anchor against the view frustum, and
+ * finding the nearest anchor in view, either with the spatial index or by scanning the anchors in
+ * view like the original {@code getClosestAnchor}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AnchorQueryBenchmark {
+  // Bounding radius of the anchor model, in meters.
+  private static final float RADIUS = 0.2f;
+  // Cell size of the activity's anchor index, in meters.
+  private static final float CELL_SIZE = 0.5f;
+
+  @Param({"25", "1000", "10000"})
+  public int anchorCount;
+
+  private float[] positions;
+  private float[] viewProjection;
+  private final AnchorCuller culler = new AnchorCuller();
+  private final AnchorIndex index = new AnchorIndex(CELL_SIZE);
+  private final int[] nearestHandle = new int[1];
+  private final float[] nearestDistance = new float[1];
+
+  @Setup
+  public void setUp() {
+    positions = BenchmarkData.anchorPositions(anchorCount);
+    viewProjection = BenchmarkData.viewProjection();
+    for (int i = 0; i < positions.length; i += 3) {
+      culler.add(positions[i], positions[i + 1], positions[i + 2]);
+      index.add(positions[i], positions[i + 1], positions[i + 2]);
+    }
+  }
+
+  @Benchmark
+  public int cull() {
+    return culler.cull(viewProjection, RADIUS);
+  }
+
+  @Benchmark
+  public int nearestInViewIndexed() {
+    index.nearest(0, 0, 0, 1, viewProjection, RADIUS, nearestHandle, nearestDistance);
+    return nearestHandle[0];
+  }
+
+  @Benchmark
+  public int nearestInViewScan() {
+    culler.cull(viewProjection, RADIUS);
+    float nearestDistanceSquared = Float.MAX_VALUE;
+    int nearest = -1;
+    for (int slot = culler.nextVisible(0); slot >= 0; slot = culler.nextVisible(slot + 1)) {
+      float dx = positions[3 * slot];
+      float dy = positions[3 * slot + 1];
+      float dz = positions[3 * slot + 2];
+      float distanceSquared = dx * dx + dy * dy + dz * dz;
+      if (distanceSquared < nearestDistanceSquared) {
+        nearestDistanceSquared = distanceSquared;
+        nearest = slot;
+      }
+    }
+    return nearest;
+  }
+}
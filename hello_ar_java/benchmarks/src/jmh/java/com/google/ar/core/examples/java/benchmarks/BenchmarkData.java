@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.benchmarks;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+/** Synthetic scenes and assets shared by the benchmarks. */
+final class BenchmarkData {
+  /** Seed of the random generators, so that every run measures the same inputs. */
+  static final long SEED = 42;
+
+  // Near and far clip planes used by the sample.
+  private static final float NEAR = 0.1f;
+  private static final float FAR = 100.0f;
+
+  private BenchmarkData() {}
+
+  /**
+   * Returns the view-projection matrix of a camera at the origin looking down -Z, with a 60 degree
+   * vertical field of view and the aspect ratio of a phone in portrait.
+   */
+  static float[] viewProjection() {
+    float f = (float) (1.0 / Math.tan(Math.toRadians(60.0) / 2));
+    float aspect = 9.0f / 16.0f;
+    float[] m = new float[16];
+    m[0] = f / aspect;
+    m[5] = f;
+    m[10] = (FAR + NEAR) / (NEAR - FAR);
+    m[11] = -1;
+    m[14] = 2 * FAR * NEAR / (NEAR - FAR);
+    // The view is the identity, so this is also the view-projection matrix.
+    return m;
+  }
+
+  /** Returns a translation matrix, in column-major order. */
+  static float[] translation(float x, float y, float z) {
+    float[] m = new float[16];
+    m[0] = 1;
+    m[5] = 1;
+    m[10] = 1;
+    m[15] = 1;
+    m[12] = x;
+    m[13] = y;
+    m[14] = z;
+    return m;
+  }
+
+  /**
+   * Returns anchor positions as {@code (x, y, z)} triples, scattered within 5 m of the camera
+   * horizontally and 1 m vertically, so that roughly a sixth of them are in view.
+   */
+  static float[] anchorPositions(int count) {
+    Random random = new Random(SEED);
+    float[] positions = new float[3 * count];
+    for (int i = 0; i < positions.length; i += 3) {
+      positions[i] = 10 * random.nextFloat() - 5;
+      positions[i + 1] = 2 * random.nextFloat() - 1;
+      positions[i + 2] = 10 * random.nextFloat() - 5;
+    }
+    return positions;
+  }
+
+  /**
+   * Returns the boundary of a roughly elliptic plane as {@code (x, z)} pairs, like {@code
+   * Plane.getPolygon()}: noisy, densely sampled, and with many nearly collinear vertices.
+   */
+  static FloatBuffer planePolygon(int vertexCount, float extentX, float extentZ) {
+    Random random = new Random(SEED);
+    FloatBuffer polygon =
+        ByteBuffer.allocateDirect(2 * vertexCount * 4)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    for (int i = 0; i < vertexCount; i++) {
+      double angle = 2 * Math.PI * i / vertexCount;
+      float noise = 1 + 0.02f * (float) random.nextGaussian();
+      polygon.put((float) (0.5 * extentX * noise * Math.cos(angle)));
+      polygon.put((float) (0.5 * extentZ * noise * Math.sin(angle)));
+    }
+    polygon.rewind();
+    return polygon;
+  }
+
+  /**
+   * Returns point clouds as {@code (x, y, z, confidence)} floats, like {@code
+   * PointCloud.getPoints()}: points sampled around a camera walking across a 10 m room.
+   */
+  static FloatBuffer[] pointClouds(int cloudCount, int pointsPerCloud) {
+    Random random = new Random(SEED);
+    FloatBuffer[] clouds = new FloatBuffer[cloudCount];
+    for (int c = 0; c < cloudCount; c++) {
+      float cameraX = 10.0f * c / cloudCount - 5;
+      FloatBuffer points =
+          ByteBuffer.allocateDirect(4 * pointsPerCloud * 4)
+              .order(ByteOrder.nativeOrder())
+              .asFloatBuffer();
+      for (int i = 0; i < pointsPerCloud; i++) {
+        points.put(cameraX + 4 * random.nextFloat() - 2);
+        points.put(3 * random.nextFloat() - 1.5f);
+        points.put(-4 * random.nextFloat());
+        points.put(random.nextFloat());
+      }
+      points.rewind();
+      clouds[c] = points;
+    }
+    return clouds;
+  }
+
+  /**
+   * Reads an asset of the app. The assets directory is given by the {@code benchmark.assets}
+   * system property, which the build sets.
+   */
+  static ByteBuffer readAsset(String name) throws IOException {
+    byte[] bytes = Files.readAllBytes(new File(assetsDir(), name).toPath());
+    return ByteBuffer.wrap(bytes);
+  }
+
+  /**
+   * Returns a context with the assets of the app, to create renderers from, and the given cache
+   * directory.
+   */
+  static Context context(File cacheDir) {
+    return new Context(new AssetManager(assetsDir()), cacheDir);
+  }
+
+  /** Deletes a file, or a directory and everything in it, like a cache directory of a context. */
+  static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static File assetsDir() {
+    return new File(System.getProperty("benchmark.assets", "../app/src/main/assets"));
+  }
+}
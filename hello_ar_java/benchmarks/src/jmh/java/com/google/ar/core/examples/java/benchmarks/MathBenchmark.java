@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.benchmarks;
+
+import android.opengl.Matrix;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.PoseMath;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The batch entry points of the math library against one {@code android.opengl.Matrix} call per
+ * item: model-view-projection matrices of many models, points transformed by one matrix, and
+ * distances of the camera to many planes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MathBenchmark {
+  @Param({"16", "1024"})
+  public int count;
+
+  private final float[] viewProjection = BenchmarkData.viewProjection();
+  private final float[] cameraPosition = {0, 1.5f, 0};
+  private float[] models;
+  private float[] points;
+  private float[] poses;
+  private float[] matrices;
+  private float[] transformedPoints;
+  private float[] distances;
+  // Homogeneous point and result of the per-point baseline.
+  private final float[] point = new float[4];
+  private final float[] transformedPoint = new float[4];
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(BenchmarkData.SEED);
+    float[] positions = BenchmarkData.anchorPositions(count);
+    poses = new float[PoseMath.FLOATS * count];
+    for (int i = 0; i < count; ++i) {
+      int p = PoseMath.FLOATS * i;
+      System.arraycopy(positions, 3 * i, poses, p, 3);
+      // Rotated about Y, and slightly tilted about X.
+      double yaw = 2 * Math.PI * random.nextDouble();
+      double tilt = 0.2 * (random.nextDouble() - 0.5);
+      poses[p + 3] = (float) (Math.sin(tilt / 2) * Math.cos(yaw / 2));
+      poses[p + 4] = (float) (Math.cos(tilt / 2) * Math.sin(yaw / 2));
+      poses[p + 5] = (float) (-Math.sin(tilt / 2) * Math.sin(yaw / 2));
+      poses[p + 6] = (float) (Math.cos(tilt / 2) * Math.cos(yaw / 2));
+    }
+    models = new float[Mat4.FLOATS * count];
+    PoseMath.toMatrices(poses, 0, models, 0, count);
+    points = positions;
+    matrices = new float[Mat4.FLOATS * count];
+    transformedPoints = new float[3 * count];
+    distances = new float[count];
+    point[3] = 1;
+  }
+
+  @Benchmark
+  public float[] modelViewProjectionPerCall() {
+    for (int i = 0; i < count; ++i) {
+      Matrix.multiplyMM(matrices, Mat4.FLOATS * i, viewProjection, 0, models, Mat4.FLOATS * i);
+    }
+    return matrices;
+  }
+
+  @Benchmark
+  public float[] modelViewProjectionBatch() {
+    Mat4.multiplyBatch(matrices, 0, viewProjection, 0, models, 0, count);
+    return matrices;
+  }
+
+  @Benchmark
+  public float[] transformPointsPerCall() {
+    for (int i = 0; i < count; ++i) {
+      System.arraycopy(points, 3 * i, point, 0, 3);
+      Matrix.multiplyMV(transformedPoint, 0, models, 0, point, 0);
+      System.arraycopy(transformedPoint, 0, transformedPoints, 3 * i, 3);
+    }
+    return transformedPoints;
+  }
+
+  @Benchmark
+  public float[] transformPointsBatch() {
+    Mat4.transformPoints(transformedPoints, 0, models, 0, points, 0, count);
+    return transformedPoints;
+  }
+
+  @Benchmark
+  public float[] planeDistancesPerCall() {
+    for (int i = 0; i < count; ++i) {
+      PoseMath.planeDistances(
+          poses,
+          PoseMath.FLOATS * i,
+          1,
+          cameraPosition[0],
+          cameraPosition[1],
+          cameraPosition[2],
+          distances,
+          i);
+    }
+    return distances;
+  }
+
+  @Benchmark
+  public float[] planeDistancesBatch() {
+    PoseMath.planeDistances(
+        poses, 0, count, cameraPosition[0], cameraPosition[1], cameraPosition[2], distances, 0);
+    return distances;
+  }
+}
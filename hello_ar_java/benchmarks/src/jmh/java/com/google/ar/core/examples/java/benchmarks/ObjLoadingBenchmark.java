@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.benchmarks;
+
+import com.google.ar.core.examples.java.common.mesh.Mesh;
+import com.google.ar.core.examples.java.common.mesh.MeshConverter;
+import com.google.ar.core.examples.java.common.mesh.MeshFile;
+import com.google.ar.core.examples.java.common.mesh.ObjParser;
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Loading the sample's models into renderable arrays: the original path through {@link ObjReader}
+ * and {@link ObjData}, the parallel {@link ObjParser} on one and on all cores, and reading a
+ * precompiled {@link MeshFile}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ObjLoadingBenchmark {
+  @Param({"models/andy.obj", "models/andy_shadow.obj"})
+  public String model;
+
+  private byte[] objBytes;
+  private ByteBuffer objBuffer;
+  private ByteBuffer meshBuffer;
+  private ObjParser singleThreadParser;
+  private ForkJoinPool singleThreadPool;
+  private final ObjParser parallelParser = new ObjParser();
+
+  @Setup
+  public void setUp() throws IOException {
+    objBuffer = BenchmarkData.readAsset(model);
+    objBytes = objBuffer.array();
+    Mesh mesh = MeshConverter.fromObj(new ByteArrayInputStream(objBytes));
+    ByteArrayOutputStream meshBytes = new ByteArrayOutputStream();
+    MeshFile.write(mesh, meshBytes);
+    meshBuffer = ByteBuffer.wrap(meshBytes.toByteArray());
+    singleThreadPool = new ForkJoinPool(1);
+    singleThreadParser = new ObjParser(singleThreadPool);
+  }
+
+  @TearDown
+  public void tearDown() {
+    singleThreadPool.shutdown();
+  }
+
+  @Benchmark
+  public void objReader(Blackhole blackhole) throws IOException {
+    Obj obj = ObjUtils.convertToRenderable(ObjReader.read(new ByteArrayInputStream(objBytes)));
+    blackhole.consume(ObjData.getFaceVertexIndices(obj, 3));
+    blackhole.consume(ObjData.getVertices(obj));
+    blackhole.consume(ObjData.getTexCoords(obj, 2));
+    blackhole.consume(ObjData.getNormals(obj));
+  }
+
+  @Benchmark
+  public ObjParser.Result objParserSingleThread() throws IOException {
+    return singleThreadParser.parse(objBuffer);
+  }
+
+  @Benchmark
+  public ObjParser.Result objParserParallel() throws IOException {
+    return parallelParser.parse(objBuffer);
+  }
+
+  @Benchmark
+  public Mesh meshFile() throws IOException {
+    return MeshFile.read(meshBuffer);
+  }
+}
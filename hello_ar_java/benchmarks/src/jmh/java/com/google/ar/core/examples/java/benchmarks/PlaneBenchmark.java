@@ -0,0 +1,240 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.benchmarks;
+
+import com.google.ar.core.Plane;
+import com.google.ar.core.Pose;
+import com.google.ar.core.TrackingState;
+import com.google.ar.core.examples.java.common.gl.NoOpGl;
+import com.google.ar.core.examples.java.common.gl.RecordingGl;
+import com.google.ar.core.examples.java.common.rendering.FrameArena;
+import com.google.ar.core.examples.java.common.rendering.GpuAssetCache;
+import com.google.ar.core.examples.java.common.rendering.PlaneRenderer;
+import com.google.ar.core.examples.java.common.rendering.PlaneSorter;
+import com.google.ar.core.examples.java.common.spatial.PlaneTriangulator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The CPU side of {@code PlaneRenderer.drawPlanes}: the distance of each plane to the camera, the
+ * sort by distance, and the triangulation of a plane polygon, with and without simplification.
+ * {@link #drawPlanes} runs the whole of it on a {@link RecordingGl} over a {@link NoOpGl}, and
+ * prints the bytes it uploads per frame when a configuration ends.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlaneBenchmark {
+  // Simplification settings of PlaneRenderer.
+  private static final float TOLERANCE_M = 0.01f;
+  private static final int MAX_BOUNDARY_VERTICES = 64;
+
+  /** Planes of a frame, at random poses around the camera. */
+  @State(Scope.Thread)
+  public static class Planes {
+    @Param({"4", "32", "256"})
+    public int planeCount;
+
+    Pose[] planePoses;
+    final Pose cameraPose = new Pose(new float[] {0, 1.5f, 0}, new float[] {0, 0, 0, 1});
+    final PlaneSorter<Pose> sorter = new PlaneSorter<>();
+
+    @Setup
+    public void setUp() {
+      Random random = new Random(BenchmarkData.SEED);
+      planePoses = new Pose[planeCount];
+      for (int i = 0; i < planeCount; i++) {
+        // Mostly horizontal planes, slightly tilted about the X axis.
+        float angle = 0.2f * (random.nextFloat() - 0.5f);
+        float[] translation = {
+          10 * random.nextFloat() - 5, 3 * random.nextFloat(), 10 * random.nextFloat() - 5
+        };
+        float[] rotation = {(float) Math.sin(angle / 2), 0, 0, (float) Math.cos(angle / 2)};
+        planePoses[i] = new Pose(translation, rotation);
+      }
+    }
+  }
+
+  /** A plane polygon of ARCore's level of detail. */
+  @State(Scope.Thread)
+  public static class Polygon {
+    @Param({"16", "256", "2048"})
+    public int polygonVertices;
+
+    @Param({"true", "false"})
+    public boolean simplify;
+
+    FloatBuffer polygon;
+    PlaneTriangulator triangulator;
+    int maxBoundaryVertices;
+
+    @Setup
+    public void setUp() {
+      polygon = BenchmarkData.planePolygon(polygonVertices, 3.0f, 2.0f);
+      triangulator = new PlaneTriangulator(simplify ? TOLERANCE_M : 0);
+      maxBoundaryVertices = simplify ? MAX_BOUNDARY_VERTICES : polygonVertices;
+    }
+  }
+
+  /**
+   * A {@link PlaneRenderer} and the planes it draws, at random poses below the camera. Every
+   * frame, the boundary of each plane grows or shrinks by 1%, like ARCore refining its planes, so
+   * that every mesh is triangulated and uploaded again.
+   */
+  @State(Scope.Thread)
+  public static class Renderer {
+    @Param({"4", "32"})
+    public int planeCount;
+
+    @Param({"256", "2048"})
+    public int polygonVertices;
+
+    @Param({"true", "false"})
+    public boolean simplify;
+
+    final RecordingGl gl = new RecordingGl(new NoOpGl());
+    final Pose cameraPose = new Pose(new float[] {0, 1.5f, 0}, new float[] {0, 0, 0, 1});
+    final float[] projection = BenchmarkData.viewProjection();
+    final List<Plane> planes = new ArrayList<>();
+    // The two boundaries that planes alternate between, with their extents.
+    final float[][] polygons = new float[2][];
+    final float[] extents = {3.0f, 2.0f, 3.03f, 2.02f};
+    Pose[] planePoses;
+    PlaneRenderer planeRenderer;
+    int frameNumber;
+    File cacheDir;
+
+    // Since the setup.
+    long frameCount;
+    long drawCallCount;
+    long uploadedBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+      cacheDir = Files.createTempDirectory("benchmark").toFile();
+      planeRenderer = new PlaneRenderer(new FrameArena(), new GpuAssetCache(gl));
+      planeRenderer.createOnGlThread(BenchmarkData.context(cacheDir), "models/trigrid.png");
+      if (simplify) {
+        planeRenderer.setSimplification(
+            TOLERANCE_M, MAX_BOUNDARY_VERTICES, planeCount * MAX_BOUNDARY_VERTICES);
+      } else {
+        planeRenderer.setSimplification(0, polygonVertices, planeCount * polygonVertices);
+      }
+      for (int i = 0; i < polygons.length; i++) {
+        FloatBuffer polygon =
+            BenchmarkData.planePolygon(polygonVertices, extents[2 * i], extents[2 * i + 1]);
+        polygons[i] = new float[polygon.remaining()];
+        polygon.get(polygons[i]);
+      }
+      Random random = new Random(BenchmarkData.SEED);
+      planePoses = new Pose[planeCount];
+      for (int i = 0; i < planeCount; i++) {
+        float[] translation = {
+          10 * random.nextFloat() - 5, 1.2f * random.nextFloat(), 10 * random.nextFloat() - 5
+        };
+        planePoses[i] = new Pose(translation, new float[] {0, 0, 0, 1});
+        planes.add(new Plane(planePoses[i], 3.0f, 2.0f, polygons[0], TrackingState.TRACKING));
+      }
+    }
+
+    @TearDown
+    public void tearDown() {
+      System.out.printf(
+          Locale.US,
+          "%n%d planes of %d vertices, simplify %b: %.1f draw calls, %.1f KiB uploaded per frame%n",
+          planeCount,
+          polygonVertices,
+          simplify,
+          (double) drawCallCount / frameCount,
+          uploadedBytes / 1024.0 / frameCount);
+      planeRenderer.release();
+      BenchmarkData.deleteRecursively(cacheDir);
+    }
+  }
+
+  @Benchmark
+  public float distanceToPlanes(Planes planes) {
+    float sum = 0;
+    for (Pose planePose : planes.planePoses) {
+      sum += PlaneSorter.distanceToPlane(planePose, planes.cameraPose);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public Pose sortPlanes(Planes planes) {
+    PlaneSorter<Pose> sorter = planes.sorter;
+    sorter.clear();
+    for (Pose planePose : planes.planePoses) {
+      float distance = PlaneSorter.distanceToPlane(planePose, planes.cameraPose);
+      if (distance >= 0) {
+        sorter.add(distance, planePose);
+      }
+    }
+    sorter.sort();
+    Pose farthest = null;
+    for (int i = 0; i < sorter.size(); i++) {
+      farthest = sorter.take(i);
+    }
+    return farthest;
+  }
+
+  @Benchmark
+  public int triangulate(Polygon polygon) {
+    return polygon.triangulator.triangulate(
+        polygon.polygon, 3.0f, 2.0f, polygon.maxBoundaryVertices);
+  }
+
+  @Benchmark
+  public int drawPlanes(Renderer renderer) {
+    int variant = renderer.frameNumber++ % 2;
+    float[] polygon = renderer.polygons[variant];
+    float extentX = renderer.extents[2 * variant];
+    float extentZ = renderer.extents[2 * variant + 1];
+    for (int i = 0; i < renderer.planeCount; i++) {
+      renderer.planes.get(i).update(
+          renderer.planePoses[i],
+          extentX,
+          extentZ,
+          polygon,
+          0,
+          polygon.length,
+          TrackingState.TRACKING,
+          null);
+    }
+    renderer.planeRenderer.drawPlanes(renderer.planes, renderer.cameraPose, renderer.projection);
+    RecordingGl gl = renderer.gl;
+    gl.endFrame();
+    renderer.frameCount++;
+    renderer.drawCallCount += gl.getLastFrameDrawCallCount();
+    renderer.uploadedBytes += gl.getLastFrameUploadedBytes();
+    return gl.getLastFrameDrawCallCount();
+  }
+}
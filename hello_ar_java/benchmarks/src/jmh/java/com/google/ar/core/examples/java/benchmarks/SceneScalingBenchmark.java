@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.benchmarks;
+
+import com.google.ar.core.examples.java.common.gl.NoOpGl;
+import com.google.ar.core.examples.java.common.gl.RecordingGl;
+import com.google.ar.core.examples.java.common.replay.FrameRecord;
+import com.google.ar.core.examples.java.common.replay.ReplayEngine;
+import com.google.ar.core.examples.java.common.replay.ReplayRenderer;
+import com.google.ar.core.examples.java.common.replay.SceneGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * CPU cost of a frame as the scene grows, to find how many anchors the sample can keep. Each
+ * operation runs the CPU side of one frame of a synthetic scene through {@link ReplayEngine}:
+ * anchor bookkeeping, culling, nearest anchor, status text, plane triangulation and point cloud
+ * accumulation. It then draws the frame with the renderers of the sample, through a {@link
+ * ReplayRenderer}, on a {@link RecordingGl} over a {@link NoOpGl}: the point cloud and map, the
+ * planes, and the anchors in view with {@code ObjectRenderer.drawInstances}.
+ *
+ * <p>Scores are per frame. The allocation rate per frame is reported by the GC profiler, which the
+ * build enables, as {@code gc.alloc.rate.norm}. When a configuration ends, the draw calls and
+ * uploaded bytes per frame are printed, followed by the timings of each stage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SceneScalingBenchmark {
+  // Frames generated ahead and replayed in a loop, with increasing timestamps.
+  private static final int FRAME_COUNT = 16;
+
+  @Param({"25", "250", "2500", "25000", "50000"})
+  public int anchorCount;
+
+  @Param({"1", "50", "500"})
+  public int planeCount;
+
+  @Param({"1000", "10000", "100000"})
+  public int pointCount;
+
+  private final FrameRecord[] frames = new FrameRecord[FRAME_COUNT];
+  private final RecordingGl gl = new RecordingGl(new NoOpGl());
+  private File cacheDir;
+  private ReplayEngine engine;
+  private ReplayRenderer renderer;
+  private int frameNumber;
+
+  // Since the statistics were last reset.
+  private long frameCount;
+  private long drawCallCount;
+  private long uploadedBytes;
+
+  @Setup
+  public void setUp() throws IOException {
+    SceneGenerator generator =
+        new SceneGenerator(anchorCount, planeCount, pointCount, BenchmarkData.SEED);
+    engine = new ReplayEngine();
+    cacheDir = Files.createTempDirectory("benchmark").toFile();
+    renderer = new ReplayRenderer(BenchmarkData.context(cacheDir), gl, engine, FRAME_COUNT);
+    for (int i = 0; i < FRAME_COUNT; ++i) {
+      frames[i] = new FrameRecord();
+      generator.generate(i, frames[i]);
+      renderer.prepare(i, frames[i]);
+    }
+    // Add the anchors and planes to the engine and the renderers before measuring.
+    for (int i = 0; i < FRAME_COUNT; ++i) {
+      frame();
+    }
+    engine.resetStatistics();
+    frameCount = 0;
+    drawCallCount = 0;
+    uploadedBytes = 0;
+  }
+
+  @TearDown
+  public void tearDown() {
+    System.out.printf(
+        Locale.US,
+        "%n%d anchors, %d planes, %d points%n%.1f draw calls, %.1f KiB uploaded per frame%n%s",
+        anchorCount,
+        planeCount,
+        pointCount,
+        (double) drawCallCount / frameCount,
+        uploadedBytes / 1024.0 / frameCount,
+        engine.formatReport());
+    BenchmarkData.deleteRecursively(cacheDir);
+  }
+
+  @Benchmark
+  public int frame() {
+    int frameIndex = frameNumber % FRAME_COUNT;
+    FrameRecord frame = frames[frameIndex];
+    frameNumber++;
+    frame.timestampNanos = frameNumber * SceneGenerator.FRAME_INTERVAL_NANOS;
+    frame.pointCloudTimestampNanos = frame.timestampNanos;
+    engine.processFrame(frame);
+    renderer.draw(frameIndex, frame);
+    gl.endFrame();
+    frameCount++;
+    drawCallCount += gl.getLastFrameDrawCallCount();
+    uploadedBytes += gl.getLastFrameUploadedBytes();
+    return engine.getLastNearestAnchorId();
+  }
+}
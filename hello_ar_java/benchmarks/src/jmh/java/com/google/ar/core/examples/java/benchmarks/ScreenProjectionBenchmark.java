@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.benchmarks;
+
+import com.google.ar.core.examples.java.common.rendering.FrameArena;
+import com.google.ar.core.examples.java.common.rendering.ScreenProjection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Projection of an anchor to the screen, as done for every anchor in view: its
+ * model-view-projection matrix ({@code ObjectRenderer.getMyScreenMatrix}), then the screen position
+ * of its origin ({@code ScreenProjection.worldToScreen}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScreenProjectionBenchmark {
+  private static final int SCREEN_WIDTH = 1080;
+  private static final int SCREEN_HEIGHT = 1920;
+
+  private final FrameArena arena = new FrameArena();
+  private final float[] view = BenchmarkData.translation(0, 0, 0);
+  private final float[] projection = BenchmarkData.viewProjection();
+  private final float[] model = BenchmarkData.translation(0.3f, -0.5f, -2.0f);
+  private final float[] screenPosition = new float[2];
+  private float[] modelViewProjection;
+
+  @Setup
+  public void setUp() {
+    modelViewProjection = ScreenProjection.modelViewProjection(arena, model, view, projection);
+  }
+
+  @Benchmark
+  public float[] modelViewProjection() {
+    arena.reset();
+    return ScreenProjection.modelViewProjection(arena, model, view, projection);
+  }
+
+  @Benchmark
+  public float[] worldToScreen() {
+    ScreenProjection.worldToScreen(
+        arena, SCREEN_WIDTH, SCREEN_HEIGHT, modelViewProjection, screenPosition);
+    return screenPosition;
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.benchmarks;
+
+import com.google.ar.core.examples.java.common.spatial.VoxelMap;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Accumulating point clouds into the sample's voxel map. Each invocation feeds a walk across the
+ * room of {@link #CLOUD_COUNT} clouds, over a million points in all, so that the map fills up and
+ * evicts voxels. Scores are per point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VoxelMapBenchmark {
+  private static final int CLOUD_COUNT = 256;
+  private static final int POINTS_PER_CLOUD = 4096;
+
+  // Settings of the sample's point cloud map.
+  private static final int CAPACITY = 65536;
+  private static final int CHUNK_SIZE = 4096;
+
+  // The sample's 5 cm voxels, and 1 cm ones, which overflow the map and evict more.
+  @Param({"0.05", "0.01"})
+  public float voxelSize;
+
+  private FloatBuffer[] clouds;
+  private VoxelMap map;
+
+  @Setup
+  public void setUp() {
+    clouds = BenchmarkData.pointClouds(CLOUD_COUNT, POINTS_PER_CLOUD);
+    map = new VoxelMap(voxelSize, CAPACITY, CHUNK_SIZE);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CLOUD_COUNT * POINTS_PER_CLOUD)
+  public int accumulate() {
+    map.clear();
+    for (FloatBuffer cloud : clouds) {
+      map.accumulate(cloud);
+    }
+    return map.size();
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.replay;
+
+import android.content.Context;
+import com.google.ar.core.Plane;
+import com.google.ar.core.PointCloud;
+import com.google.ar.core.Pose;
+import com.google.ar.core.TrackingState;
+import com.google.ar.core.examples.java.common.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.AnchorTracker;
+import com.google.ar.core.examples.java.common.rendering.FrameArena;
+import com.google.ar.core.examples.java.common.rendering.GpuAssetCache;
+import com.google.ar.core.examples.java.common.rendering.ObjectRenderer;
+import com.google.ar.core.examples.java.common.rendering.PlaneRenderer;
+import com.google.ar.core.examples.java.common.rendering.PointCloudMapRenderer;
+import com.google.ar.core.examples.java.common.rendering.PointCloudRenderer;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Draws the frames processed by a {@link ReplayEngine} with the renderers of the sample, like
+ * {@code HelloArActivity} does: the point cloud and the point map, the planes, and the anchors in
+ * view in one instanced draw of the model and one of its shadow. The caller ends each frame of its
+ * {@link Gl}.
+ *
+ * <p>The ARCore types are the desktop shims. ARCore poses are immutable, so those of each frame
+ * are created by {@link #prepare} the first time the frame is seen, and reused when it is replayed
+ * again. Planes are updated in place, as ARCore does, so a frame seen before does not allocate.
+ */
+public final class ReplayRenderer {
+  private final ReplayEngine engine;
+  private final PointCloudRenderer pointCloudRenderer;
+  private final PointCloudMapRenderer pointCloudMapRenderer;
+  private final PlaneRenderer planeRenderer;
+  private final ObjectRenderer virtualObject;
+  private final ObjectRenderer virtualObjectShadow;
+
+  // A new point cloud every frame, like Frame.acquirePointCloud(), from two alternating ones.
+  private final PointCloud[] pointClouds = new PointCloud[2];
+  private final FloatBuffer[] pointBuffers = new FloatBuffer[2];
+
+  private final List<Plane> planes = new ArrayList<>();
+  private Plane[] planesById = new Plane[64];
+
+  // By frame: the display-oriented pose of the camera, and the center poses of the planes.
+  private final Pose[] cameraPoses;
+  private final Pose[][] planePoses;
+
+  /**
+   * Creates the renderers, on the calling thread, from the assets of the app.
+   *
+   * @param frameCount Number of distinct frames, numbered from 0, that will be drawn.
+   */
+  public ReplayRenderer(Context context, Gl gl, ReplayEngine engine, int frameCount)
+      throws IOException {
+    this.engine = engine;
+    cameraPoses = new Pose[frameCount];
+    planePoses = new Pose[frameCount][];
+    FrameArena arena = new FrameArena();
+    GpuAssetCache assetCache = new GpuAssetCache(gl);
+    pointCloudRenderer = new PointCloudRenderer(assetCache);
+    pointCloudRenderer.createOnGlThread(context);
+    pointCloudMapRenderer = new PointCloudMapRenderer(assetCache);
+    pointCloudMapRenderer.createOnGlThread(context);
+    planeRenderer = new PlaneRenderer(arena, assetCache);
+    planeRenderer.createOnGlThread(context, "models/trigrid.png");
+    virtualObject = new ObjectRenderer(arena, assetCache);
+    virtualObject.createOnGlThread(context, "models/andy.obj", "models/andy.png");
+    virtualObjectShadow = new ObjectRenderer(arena, assetCache);
+    virtualObjectShadow.createOnGlThread(
+        context, "models/andy_shadow.obj", "models/andy_shadow.png");
+    virtualObjectShadow.setBlendMode(ObjectRenderer.BlendMode.Shadow);
+    for (int i = 0; i < pointClouds.length; ++i) {
+      pointBuffers[i] = FloatBuffer.allocate(0);
+      pointClouds[i] = new PointCloud(pointBuffers[i]);
+    }
+  }
+
+  public PlaneRenderer getPlaneRenderer() {
+    return planeRenderer;
+  }
+
+  /** Creates the poses of a frame the first time it is seen. */
+  public void prepare(int frameIndex, FrameRecord frame) {
+    if (cameraPoses[frameIndex] != null) {
+      return;
+    }
+    cameraPoses[frameIndex] = pose(frame.displayOrientedPose, 0);
+    Pose[] poses = new Pose[frame.planeCount];
+    for (int i = 0; i < poses.length; ++i) {
+      poses[i] = pose(frame.planeCenterPoses, i * FrameRecord.POSE_FLOATS);
+    }
+    planePoses[frameIndex] = poses;
+  }
+
+  /**
+   * Draws a frame after {@link ReplayEngine#processFrame}, if the camera is tracking. The frame
+   * must have been {@link #prepare}d.
+   */
+  public void draw(int frameIndex, FrameRecord frame) {
+    if (frame.cameraTrackingState != FrameRecord.TRACKING) {
+      return;
+    }
+    float[] view = frame.viewMatrix;
+    float[] projection = frame.projectionMatrix;
+
+    int cloud = frameIndex % 2;
+    int length = frame.pointCount * FrameRecord.POINT_FLOATS;
+    if (pointBuffers[cloud].capacity() < length) {
+      pointBuffers[cloud] = FloatBuffer.allocate(length);
+      pointClouds[cloud] = new PointCloud(pointBuffers[cloud]);
+    }
+    FloatBuffer points = pointBuffers[cloud];
+    points.clear();
+    points.put(frame.points, 0, length);
+    points.flip();
+    pointCloudRenderer.update(pointClouds[cloud]);
+    pointCloudRenderer.draw(view, projection);
+    pointCloudMapRenderer.update(engine.getPointCloudMap());
+    pointCloudMapRenderer.draw(view, projection);
+
+    planes.clear();
+    Pose[] poses = planePoses[frameIndex];
+    for (int i = 0; i < frame.planeCount; ++i) {
+      int subsumedBy = frame.planeSubsumedBy[i];
+      Plane plane = plane(frame.planeIds[i]);
+      plane.update(
+          poses[i],
+          frame.planeExtents[2 * i],
+          frame.planeExtents[2 * i + 1],
+          frame.planePolygons,
+          frame.planePolygonStarts[i],
+          frame.getPlanePolygonLength(i),
+          trackingState(frame.planeTrackingStates[i]),
+          subsumedBy != FrameRecord.NO_PLANE ? plane(subsumedBy) : null);
+      planes.add(plane);
+    }
+    planeRenderer.drawPlanes(planes, cameraPoses[frameIndex], projection);
+
+    AnchorTracker anchors = engine.getAnchorTracker();
+    virtualObject.drawInstances(
+        view,
+        projection,
+        frame.colorCorrection,
+        anchors.getVisibleMatrices(),
+        1,
+        anchors.getVisibleColors(),
+        anchors.getVisibleCount());
+    virtualObjectShadow.drawInstances(
+        view,
+        projection,
+        frame.colorCorrection,
+        anchors.getVisibleMatrices(),
+        1,
+        anchors.getVisibleColors(),
+        anchors.getVisibleCount());
+  }
+
+  // Returns the plane with the given id, created the first time it is seen.
+  private Plane plane(int id) {
+    if (id >= planesById.length) {
+      planesById = Arrays.copyOf(planesById, Math.max(2 * planesById.length, id + 1));
+    }
+    if (planesById[id] == null) {
+      planesById[id] = new Plane(null, 0, 0, new float[0], TrackingState.PAUSED);
+    }
+    return planesById[id];
+  }
+
+  private static Pose pose(float[] poses, int offset) {
+    return new Pose(
+        Arrays.copyOfRange(poses, offset, offset + 3),
+        Arrays.copyOfRange(poses, offset + 3, offset + 7));
+  }
+
+  private static TrackingState trackingState(byte state) {
+    switch (state) {
+      case FrameRecord.TRACKING:
+        return TrackingState.TRACKING;
+      case FrameRecord.PAUSED:
+        return TrackingState.PAUSED;
+      default:
+        return TrackingState.STOPPED;
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content;
+
+import android.content.res.AssetManager;
+import java.io.File;
+
+/**
+ * Desktop stand-in for the Android class of the same name, over an asset and a cache directory.
+ * Only has the methods used by the benchmarked and tested sources.
+ */
+public class Context {
+  private final AssetManager assets;
+  private final File cacheDir;
+
+  public Context(AssetManager assets, File cacheDir) {
+    this.assets = assets;
+    this.cacheDir = cacheDir;
+  }
+
+  public AssetManager getAssets() {
+    return assets;
+  }
+
+  public File getCacheDir() {
+    return cacheDir;
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content.res;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Desktop stand-in for the Android class of the same name, describing a whole file. Only has the
+ * methods used by the benchmarked and tested sources.
+ */
+public class AssetFileDescriptor implements Closeable {
+  private final File file;
+
+  AssetFileDescriptor(File file) {
+    this.file = file;
+  }
+
+  public FileInputStream createInputStream() throws IOException {
+    return new FileInputStream(file);
+  }
+
+  public long getStartOffset() {
+    return 0;
+  }
+
+  public long getLength() {
+    return file.length();
+  }
+
+  @Override
+  public void close() {}
+}
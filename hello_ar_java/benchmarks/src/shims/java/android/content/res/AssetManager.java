@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content.res;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+
+/**
+ * Desktop stand-in for the Android class of the same name, reading the assets from a directory, in
+ * which none is compressed. Only has the methods used by the benchmarked and tested sources.
+ */
+public class AssetManager {
+  private final File directory;
+
+  /** @param directory Directory of the assets, such as {@code app/src/main/assets}. */
+  public AssetManager(File directory) {
+    this.directory = directory;
+  }
+
+  public InputStream open(String fileName) throws FileNotFoundException {
+    return new FileInputStream(new File(directory, fileName));
+  }
+
+  public AssetFileDescriptor openFd(String fileName) throws FileNotFoundException {
+    File file = new File(directory, fileName);
+    if (!file.isFile()) {
+      throw new FileNotFoundException(file.getPath());
+    }
+    return new AssetFileDescriptor(file);
+  }
+}
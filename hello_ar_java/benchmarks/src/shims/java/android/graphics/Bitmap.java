@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Desktop stand-in for the Android class of the same name, holding ARGB_8888 pixels. Only has the
+ * members used by the benchmarked and tested sources.
+ */
+public final class Bitmap {
+  /** Pixel formats. */
+  public enum Config {
+    ALPHA_8,
+    RGB_565,
+    ARGB_8888
+  }
+
+  private final int width;
+  private final int height;
+  // Pixels as 0xAARRGGBB, row by row.
+  private final int[] argb;
+
+  Bitmap(int width, int height, int[] argb) {
+    this.width = width;
+    this.height = height;
+    this.argb = argb;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getByteCount() {
+    return 4 * width * height;
+  }
+
+  public Config getConfig() {
+    return Config.ARGB_8888;
+  }
+
+  public Bitmap copy(Config config, boolean isMutable) {
+    return new Bitmap(width, height, argb.clone());
+  }
+
+  /** Writes the pixels as RGBA bytes, like Android does for ARGB_8888 bitmaps. */
+  public void copyPixelsToBuffer(ByteBuffer dst) {
+    for (int pixel : argb) {
+      dst.put((byte) (pixel >> 16)).put((byte) (pixel >> 8)).put((byte) pixel);
+      dst.put((byte) (pixel >>> 24));
+    }
+  }
+
+  public void recycle() {}
+}
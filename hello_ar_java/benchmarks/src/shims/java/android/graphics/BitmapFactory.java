@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.imageio.ImageIO;
+
+/**
+ * Desktop stand-in for the Android class of the same name, decoding with {@link ImageIO}. Only has
+ * the methods used by the benchmarked and tested sources.
+ */
+public class BitmapFactory {
+  private BitmapFactory() {}
+
+  /** Returns the decoded image, or null if it could not be decoded. */
+  public static Bitmap decodeStream(InputStream is) {
+    BufferedImage image;
+    try {
+      image = ImageIO.read(is);
+    } catch (IOException e) {
+      return null;
+    }
+    if (image == null) {
+      return null;
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    return new Bitmap(width, height, image.getRGB(0, 0, width, height, null, 0, width));
+  }
+}
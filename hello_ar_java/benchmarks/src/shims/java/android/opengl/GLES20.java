@@ -0,0 +1,329 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.opengl;
+
+import java.nio.Buffer;
+
+/**
+ * Desktop stand-in for the Android class of the same name. The constants have their OpenGL ES
+ * values; the methods, only called by {@code AndroidGl}, throw, as there is no OpenGL ES on the
+ * desktop. Renderers run on a {@code NoOpGl} instead. Only has the members used by the benchmarked
+ * and tested sources.
+ */
+public class GLES20 {
+  static final String NO_OPENGL = "OpenGL ES is not available on the desktop";
+
+  public static final int GL_NO_ERROR = 0;
+  public static final int GL_FALSE = 0;
+  public static final int GL_TRUE = 1;
+  public static final int GL_ZERO = 0;
+  public static final int GL_ONE = 1;
+  public static final int GL_SRC_ALPHA = 0x0302;
+  public static final int GL_ONE_MINUS_SRC_ALPHA = 0x0303;
+  public static final int GL_DST_ALPHA = 0x0304;
+  public static final int GL_POINTS = 0x0000;
+  public static final int GL_TRIANGLES = 0x0004;
+  public static final int GL_TRIANGLE_STRIP = 0x0005;
+  public static final int GL_EQUAL = 0x0202;
+  public static final int GL_KEEP = 0x1E00;
+  public static final int GL_INCR = 0x1E02;
+  public static final int GL_DEPTH_BUFFER_BIT = 0x00000100;
+  public static final int GL_STENCIL_BUFFER_BIT = 0x00000400;
+  public static final int GL_COLOR_BUFFER_BIT = 0x00004000;
+  public static final int GL_DEPTH_TEST = 0x0B71;
+  public static final int GL_STENCIL_TEST = 0x0B90;
+  public static final int GL_BLEND = 0x0BE2;
+  public static final int GL_STENCIL_BITS = 0x0D57;
+  public static final int GL_TEXTURE_2D = 0x0DE1;
+  public static final int GL_UNSIGNED_BYTE = 0x1401;
+  public static final int GL_UNSIGNED_SHORT = 0x1403;
+  public static final int GL_UNSIGNED_INT = 0x1405;
+  public static final int GL_FLOAT = 0x1406;
+  public static final int GL_ALPHA = 0x1906;
+  public static final int GL_RGB = 0x1907;
+  public static final int GL_RGBA = 0x1908;
+  public static final int GL_LUMINANCE = 0x1909;
+  public static final int GL_LUMINANCE_ALPHA = 0x190A;
+  public static final int GL_VENDOR = 0x1F00;
+  public static final int GL_RENDERER = 0x1F01;
+  public static final int GL_VERSION = 0x1F02;
+  public static final int GL_EXTENSIONS = 0x1F03;
+  public static final int GL_NEAREST = 0x2600;
+  public static final int GL_LINEAR = 0x2601;
+  public static final int GL_LINEAR_MIPMAP_LINEAR = 0x2703;
+  public static final int GL_TEXTURE_MAG_FILTER = 0x2800;
+  public static final int GL_TEXTURE_MIN_FILTER = 0x2801;
+  public static final int GL_TEXTURE_WRAP_S = 0x2802;
+  public static final int GL_TEXTURE_WRAP_T = 0x2803;
+  public static final int GL_CLAMP_TO_EDGE = 0x812F;
+  public static final int GL_TEXTURE0 = 0x84C0;
+  public static final int GL_ARRAY_BUFFER = 0x8892;
+  public static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+  public static final int GL_STREAM_DRAW = 0x88E0;
+  public static final int GL_STATIC_DRAW = 0x88E4;
+  public static final int GL_DYNAMIC_DRAW = 0x88E8;
+  public static final int GL_FRAGMENT_SHADER = 0x8B30;
+  public static final int GL_VERTEX_SHADER = 0x8B31;
+  public static final int GL_COMPILE_STATUS = 0x8B81;
+  public static final int GL_LINK_STATUS = 0x8B82;
+  public static final int GL_MAX_VERTEX_UNIFORM_VECTORS = 0x8DFB;
+
+  GLES20() {}
+
+  public static void glActiveTexture(int texture) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glAttachShader(int program, int shader) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glBindBuffer(int target, int buffer) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glBindTexture(int target, int texture) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glBlendFunc(int sfactor, int dfactor) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glBufferData(int target, int size, Buffer data, int usage) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glBufferSubData(int target, int offset, int size, Buffer data) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glClear(int mask) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glClearColor(float red, float green, float blue, float alpha) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glCompileShader(int shader) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static int glCreateProgram() {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static int glCreateShader(int type) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glDeleteBuffers(int n, int[] buffers, int offset) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glDeleteProgram(int program) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glDeleteShader(int shader) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glDeleteTextures(int n, int[] textures, int offset) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glDepthMask(boolean flag) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glDetachShader(int program, int shader) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glDisable(int cap) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glDisableVertexAttribArray(int index) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glDrawArrays(int mode, int first, int count) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glDrawElements(int mode, int count, int type, int offset) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glEnable(int cap) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glEnableVertexAttribArray(int index) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glGenBuffers(int n, int[] buffers, int offset) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glGenTextures(int n, int[] textures, int offset) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glGenerateMipmap(int target) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static int glGetAttribLocation(int program, String name) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static int glGetError() {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glGetIntegerv(int pname, int[] params, int offset) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static String glGetProgramInfoLog(int program) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static String glGetShaderInfoLog(int shader) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static String glGetString(int name) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static int glGetUniformLocation(int program, String name) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glLinkProgram(int program) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glShaderSource(int shader, String string) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glStencilFunc(int func, int ref, int mask) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glStencilOp(int fail, int zfail, int zpass) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int format,
+      int type,
+      Buffer pixels) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glTexParameteri(int target, int pname, int param) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glUniform1f(int location, float x) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glUniform1i(int location, int x) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glUniform3f(int location, float x, float y, float z) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glUniform4f(int location, float x, float y, float z, float w) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glUniform4fv(int location, int count, float[] v, int offset) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glUseProgram(int program) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer pointer) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glViewport(int x, int y, int width, int height) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.opengl;
+
+import java.nio.Buffer;
+
+/**
+ * Desktop stand-in for the Android class of the same name; see {@link GLES20}. Only has the members
+ * used by the benchmarked and tested sources.
+ */
+public class GLES30 extends GLES20 {
+  public static final int GL_PROGRAM_BINARY_RETRIEVABLE_HINT = 0x8257;
+  public static final int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+  public static final int GL_NUM_PROGRAM_BINARY_FORMATS = 0x87FE;
+  public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+
+  private GLES30() {}
+
+  public static void glDrawElementsInstanced(
+      int mode, int count, int type, int offset, int instanceCount) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glProgramParameteri(int program, int pname, int value) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+
+  public static void glVertexAttribDivisor(int index, int divisor) {
+    throw new UnsupportedOperationException(NO_OPENGL);
+  }
+}
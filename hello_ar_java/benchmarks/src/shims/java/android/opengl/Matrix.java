@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.opengl;
+
+/**
+ * Desktop stand-in for the Android class of the same name, with the same column-major semantics.
+ * Only has the methods used by the benchmarks and tests, as a baseline for the math library.
+ *
+ * <p>On Android, {@code multiplyMM} and {@code multiplyMV} are native, so absolute timings of code
+ * using them differ from the device; relative changes between commits are what the benchmarks
+ * measure.
+ */
+public class Matrix {
+  private Matrix() {}
+
+  public static void multiplyMM(
+      float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    // Like on Android, the result is undefined if it overlaps either operand.
+    for (int column = 0; column < 4; column++) {
+      for (int row = 0; row < 4; row++) {
+        float sum = 0;
+        for (int k = 0; k < 4; k++) {
+          sum += lhs[lhsOffset + k * 4 + row] * rhs[rhsOffset + column * 4 + k];
+        }
+        result[resultOffset + column * 4 + row] = sum;
+      }
+    }
+  }
+
+  public static void multiplyMV(
+      float[] resultVec,
+      int resultVecOffset,
+      float[] lhsMat,
+      int lhsMatOffset,
+      float[] rhsVec,
+      int rhsVecOffset) {
+    float x = rhsVec[rhsVecOffset];
+    float y = rhsVec[rhsVecOffset + 1];
+    float z = rhsVec[rhsVecOffset + 2];
+    float w = rhsVec[rhsVecOffset + 3];
+    for (int row = 0; row < 4; row++) {
+      resultVec[resultVecOffset + row] =
+          lhsMat[lhsMatOffset + row] * x
+              + lhsMat[lhsMatOffset + 4 + row] * y
+              + lhsMat[lhsMatOffset + 8 + row] * z
+              + lhsMat[lhsMatOffset + 12 + row] * w;
+    }
+  }
+
+  public static void setIdentityM(float[] sm, int smOffset) {
+    for (int i = 0; i < 16; i++) {
+      sm[smOffset + i] = 0;
+    }
+    for (int i = 0; i < 16; i += 5) {
+      sm[smOffset + i] = 1.0f;
+    }
+  }
+
+  public static void scaleM(
+      float[] sm, int smOffset, float[] m, int mOffset, float x, float y, float z) {
+    for (int i = 0; i < 4; i++) {
+      sm[smOffset + i] = m[mOffset + i] * x;
+      sm[smOffset + 4 + i] = m[mOffset + 4 + i] * y;
+      sm[smOffset + 8 + i] = m[mOffset + 8 + i] * z;
+      sm[smOffset + 12 + i] = m[mOffset + 12 + i];
+    }
+  }
+
+  public static void translateM(float[] m, int mOffset, float x, float y, float z) {
+    for (int i = 0; i < 4; i++) {
+      m[mOffset + 12 + i] += m[mOffset + i] * x + m[mOffset + 4 + i] * y + m[mOffset + 8 + i] * z;
+    }
+  }
+
+  /** Sets a rotation of {@code a} degrees about the axis {@code (x, y, z)}, of any length. */
+  public static void setRotateM(float[] rm, int rmOffset, float a, float x, float y, float z) {
+    rm[rmOffset + 3] = 0;
+    rm[rmOffset + 7] = 0;
+    rm[rmOffset + 11] = 0;
+    rm[rmOffset + 12] = 0;
+    rm[rmOffset + 13] = 0;
+    rm[rmOffset + 14] = 0;
+    rm[rmOffset + 15] = 1;
+    a *= (float) (Math.PI / 180.0f);
+    float s = (float) Math.sin(a);
+    float c = (float) Math.cos(a);
+    float length = (float) Math.sqrt(x * x + y * y + z * z);
+    if (length != 1.0f) {
+      float recipLength = 1.0f / length;
+      x *= recipLength;
+      y *= recipLength;
+      z *= recipLength;
+    }
+    float nc = 1.0f - c;
+    float xy = x * y;
+    float yz = y * z;
+    float zx = z * x;
+    float xs = x * s;
+    float ys = y * s;
+    float zs = z * s;
+    rm[rmOffset] = x * x * nc + c;
+    rm[rmOffset + 4] = xy * nc - zs;
+    rm[rmOffset + 8] = zx * nc + ys;
+    rm[rmOffset + 1] = xy * nc + zs;
+    rm[rmOffset + 5] = y * y * nc + c;
+    rm[rmOffset + 9] = yz * nc - xs;
+    rm[rmOffset + 2] = zx * nc - ys;
+    rm[rmOffset + 6] = yz * nc + xs;
+    rm[rmOffset + 10] = z * z * nc + c;
+  }
+
+  /**
+   * Inverts a general 4x4 matrix. Returns false, leaving {@code mInv} unchanged, if it is singular.
+   * Computed in double precision by Gauss-Jordan elimination with partial pivoting, rather than
+   * with the cofactors Android uses; results agree to float rounding.
+   */
+  public static boolean invertM(float[] mInv, int mInvOffset, float[] m, int mOffset) {
+    // Rows of [m | I], with m transposed from column-major storage.
+    double[][] a = new double[4][8];
+    for (int row = 0; row < 4; row++) {
+      for (int column = 0; column < 4; column++) {
+        a[row][column] = m[mOffset + 4 * column + row];
+      }
+      a[row][4 + row] = 1;
+    }
+    for (int column = 0; column < 4; column++) {
+      int pivot = column;
+      for (int row = column + 1; row < 4; row++) {
+        if (Math.abs(a[row][column]) > Math.abs(a[pivot][column])) {
+          pivot = row;
+        }
+      }
+      if (a[pivot][column] == 0) {
+        return false;
+      }
+      double[] swap = a[pivot];
+      a[pivot] = a[column];
+      a[column] = swap;
+      double scale = 1 / a[column][column];
+      for (int k = 0; k < 8; k++) {
+        a[column][k] *= scale;
+      }
+      for (int row = 0; row < 4; row++) {
+        if (row != column) {
+          double factor = a[row][column];
+          for (int k = 0; k < 8; k++) {
+            a[row][k] -= factor * a[column][k];
+          }
+        }
+      }
+    }
+    for (int row = 0; row < 4; row++) {
+      for (int column = 0; column < 4; column++) {
+        mInv[mInvOffset + 4 * column + row] = (float) a[row][4 + column];
+      }
+    }
+    return true;
+  }
+}
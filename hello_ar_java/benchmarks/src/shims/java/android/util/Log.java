@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.util;
+
+/**
+ * Desktop stand-in for the Android class of the same name, writing to standard error. Only has the
+ * members used by the benchmarked and tested sources.
+ */
+public final class Log {
+  public static final int VERBOSE = 2;
+  public static final int DEBUG = 3;
+  public static final int INFO = 4;
+  public static final int WARN = 5;
+  public static final int ERROR = 6;
+
+  private static final String LEVELS = "??VDIWE";
+
+  private Log() {}
+
+  public static int v(String tag, String msg) {
+    return println(VERBOSE, tag, msg);
+  }
+
+  public static int d(String tag, String msg) {
+    return println(DEBUG, tag, msg);
+  }
+
+  public static int i(String tag, String msg) {
+    return println(INFO, tag, msg);
+  }
+
+  public static int w(String tag, String msg) {
+    return println(WARN, tag, msg);
+  }
+
+  public static int w(String tag, String msg, Throwable tr) {
+    return println(WARN, tag, msg + '\n' + tr);
+  }
+
+  public static int e(String tag, String msg) {
+    return println(ERROR, tag, msg);
+  }
+
+  public static int e(String tag, String msg, Throwable tr) {
+    return println(ERROR, tag, msg + '\n' + tr);
+  }
+
+  public static int println(int priority, String tag, String msg) {
+    String line = LEVELS.charAt(priority) + "/" + tag + ": " + msg;
+    System.err.println(line);
+    return line.length();
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Desktop stand-in for the ARCore class of the same name, for a display that fits the camera image
+ * exactly. Only has the methods used by the benchmarked and tested sources.
+ */
+public class Frame {
+  private final boolean displayGeometryChanged;
+
+  public Frame(boolean displayGeometryChanged) {
+    this.displayGeometryChanged = displayGeometryChanged;
+  }
+
+  public boolean hasDisplayGeometryChanged() {
+    return displayGeometryChanged;
+  }
+
+  /** Copies the coordinates, as the display shows the whole camera image unrotated. */
+  public void transformDisplayUvCoords(FloatBuffer uvCoords, FloatBuffer outUvCoords) {
+    outUvCoords.duplicate().put(uvCoords.duplicate());
+  }
+}
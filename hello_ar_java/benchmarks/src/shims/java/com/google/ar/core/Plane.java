@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Desktop stand-in for the ARCore class of the same name. Only has the methods used by the
+ * benchmarked and tested sources, and {@link #update}, which stands for the refinement of a plane
+ * by {@code Session.update()}.
+ */
+public class Plane {
+  private Pose centerPose;
+  private float extentX;
+  private float extentZ;
+  private FloatBuffer polygon = FloatBuffer.allocate(0);
+  private TrackingState trackingState;
+  private Plane subsumedBy;
+
+  /**
+   * @param polygon Boundary as {@code (x, z)} pairs, in the coordinate system of {@code
+   *     centerPose}.
+   */
+  public Plane(
+      Pose centerPose, float extentX, float extentZ, float[] polygon, TrackingState trackingState) {
+    update(centerPose, extentX, extentZ, polygon, 0, polygon.length, trackingState, null);
+  }
+
+  /**
+   * Replaces the properties of the plane. The boundary is copied from {@code length} floats of
+   * {@code polygon} starting at {@code offset}, into a buffer that is only reallocated to grow.
+   */
+  public void update(
+      Pose centerPose,
+      float extentX,
+      float extentZ,
+      float[] polygon,
+      int offset,
+      int length,
+      TrackingState trackingState,
+      Plane subsumedBy) {
+    this.centerPose = centerPose;
+    this.extentX = extentX;
+    this.extentZ = extentZ;
+    if (this.polygon.capacity() < length) {
+      this.polygon = FloatBuffer.allocate(length);
+    }
+    this.polygon.clear();
+    this.polygon.put(polygon, offset, length);
+    this.polygon.flip();
+    this.trackingState = trackingState;
+    this.subsumedBy = subsumedBy;
+  }
+
+  public Pose getCenterPose() {
+    return centerPose;
+  }
+
+  public float getExtentX() {
+    return extentX;
+  }
+
+  public float getExtentZ() {
+    return extentZ;
+  }
+
+  /** Returns the boundary, rewound. The buffer is not copied, so that a frame does not allocate. */
+  public FloatBuffer getPolygon() {
+    polygon.rewind();
+    return polygon;
+  }
+
+  public TrackingState getTrackingState() {
+    return trackingState;
+  }
+
+  public Plane getSubsumedBy() {
+    return subsumedBy;
+  }
+}
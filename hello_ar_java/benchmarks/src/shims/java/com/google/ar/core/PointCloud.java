@@ -0,0 +1,36 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Desktop stand-in for the ARCore class of the same name. Only has the methods used by the
+ * benchmarked and tested sources.
+ */
+public class PointCloud {
+  private final FloatBuffer points;
+
+  /** @param points Points as {@code (x, y, z, confidence)}, from position 0 to the limit. */
+  public PointCloud(FloatBuffer points) {
+    this.points = points;
+  }
+
+  /** Returns the points, rewound. The buffer is not copied, so that a frame does not allocate. */
+  public FloatBuffer getPoints() {
+    points.rewind();
+    return points;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core;
+
+/**
+ * Desktop stand-in for the ARCore class of the same name: a rigid transformation from a
+ * translation and a unit quaternion. Only has the methods used by the benchmarked and tested
+ * sources.
+ */
+public class Pose {
+  private final float tx;
+  private final float ty;
+  private final float tz;
+  private final float qx;
+  private final float qy;
+  private final float qz;
+  private final float qw;
+
+  /**
+   * @param translation Translation as {@code (x, y, z)}.
+   * @param rotation Unit quaternion as {@code (x, y, z, w)}.
+   */
+  public Pose(float[] translation, float[] rotation) {
+    tx = translation[0];
+    ty = translation[1];
+    tz = translation[2];
+    qx = rotation[0];
+    qy = rotation[1];
+    qz = rotation[2];
+    qw = rotation[3];
+  }
+
+  public float tx() {
+    return tx;
+  }
+
+  public float ty() {
+    return ty;
+  }
+
+  public float tz() {
+    return tz;
+  }
+
+  public float qx() {
+    return qx;
+  }
+
+  public float qy() {
+    return qy;
+  }
+
+  public float qz() {
+    return qz;
+  }
+
+  public float qw() {
+    return qw;
+  }
+
+  /** Writes the translation as {@code (x, y, z)} to {@code dest}. */
+  public void getTranslation(float[] dest, int offset) {
+    dest[offset] = tx;
+    dest[offset + 1] = ty;
+    dest[offset + 2] = tz;
+  }
+
+  /** Writes the rotation as {@code (x, y, z, w)} to {@code dest}. */
+  public void getRotationQuaternion(float[] dest, int offset) {
+    dest[offset] = qx;
+    dest[offset + 1] = qy;
+    dest[offset + 2] = qz;
+    dest[offset + 3] = qw;
+  }
+
+  /** Writes the transformation as a column-major 4x4 matrix to {@code dest}. */
+  public void toMatrix(float[] dest, int offset) {
+    for (int axis = 0; axis < 3; ++axis) {
+      getTransformedAxis(axis, 1, dest, offset + 4 * axis);
+      dest[offset + 4 * axis + 3] = 0;
+    }
+    dest[offset + 12] = tx;
+    dest[offset + 13] = ty;
+    dest[offset + 14] = tz;
+    dest[offset + 15] = 1;
+  }
+
+  /** Writes the given axis of the rotated coordinate system, scaled, to {@code dest}. */
+  public void getTransformedAxis(int axis, float scale, float[] dest, int offset) {
+    float x;
+    float y;
+    float z;
+    switch (axis) {
+      case 0:
+        x = 1 - 2 * (qy * qy + qz * qz);
+        y = 2 * (qx * qy + qw * qz);
+        z = 2 * (qx * qz - qw * qy);
+        break;
+      case 1:
+        x = 2 * (qx * qy - qw * qz);
+        y = 1 - 2 * (qx * qx + qz * qz);
+        z = 2 * (qy * qz + qw * qx);
+        break;
+      case 2:
+        x = 2 * (qx * qz + qw * qy);
+        y = 2 * (qy * qz - qw * qx);
+        z = 1 - 2 * (qx * qx + qy * qy);
+        break;
+      default:
+        throw new IllegalArgumentException("Invalid axis " + axis);
+    }
+    dest[offset] = x * scale;
+    dest[offset + 1] = y * scale;
+    dest[offset + 2] = z * scale;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.gl;
+
+import static org.junit.Assert.assertEquals;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks when {@link RecordingGl} counts binds as redundant. */
+@RunWith(JUnit4.class)
+public final class RecordingGlTest {
+  private final RecordingGl gl = new RecordingGl(new NoOpGl());
+
+  @Test
+  public void rebindingTheSameObject_isRedundant() {
+    gl.glUseProgram(1);
+    gl.glUseProgram(1);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 3);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 3);
+    // Another unit has its own binding.
+    gl.glActiveTexture(GLES20.GL_TEXTURE0 + 1);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 3);
+    gl.endFrame();
+    assertEquals(3, gl.getLastFrameRedundantBindCount());
+    assertEquals(8, gl.getLastFrameStateChangeCount());
+  }
+
+  @Test
+  public void deletingAnObject_forgetsItsBinding() {
+    gl.glUseProgram(1);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 2);
+    gl.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 3);
+    gl.glDeleteProgram(1);
+    gl.glDeleteBuffers(1, new int[] {2}, 0);
+    gl.glDeleteTextures(1, new int[] {3}, 0);
+    // The names are reused by new objects.
+    gl.glUseProgram(1);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 2);
+    gl.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 3);
+    gl.endFrame();
+    assertEquals(0, gl.getLastFrameRedundantBindCount());
+  }
+
+  @Test
+  public void reset_forgetsAllBindings() {
+    gl.glUseProgram(1);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 3);
+    gl.reset();
+    gl.glUseProgram(1);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 3);
+    gl.endFrame();
+    assertEquals(0, gl.getLastFrameRedundantBindCount());
+  }
+
+  @Test
+  public void formatLastFrame_formatsTheLastEndedFrame() {
+    gl.glDrawArrays(GLES20.GL_POINTS, 0, 1);
+    gl.endFrame();
+    gl.glDrawArrays(GLES20.GL_POINTS, 0, 1);
+    assertEquals(
+        "gl: 1 draws, 0 state changes (0 redundant binds), 0.0 KiB uploaded",
+        gl.formatLastFrame());
+  }
+}
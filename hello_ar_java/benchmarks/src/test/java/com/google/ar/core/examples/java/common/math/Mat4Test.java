@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.math;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.opengl.Matrix;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Compares {@link Mat4} with {@link Matrix} on random inputs. Arguments and results are placed at
+ * random offsets in larger arrays, to check the offset arithmetic and that nothing outside the
+ * result is written.
+ */
+@RunWith(JUnit4.class)
+public final class Mat4Test {
+  private static final int ITERATIONS = 200;
+  // Inputs are within [-RANGE, RANGE], so products of two matrices are below 4 * RANGE^2.
+  private static final float RANGE = 10;
+  private static final float DELTA = 1e-4f;
+  // Value of the array elements that must not be written.
+  private static final float GUARD = -12345;
+
+  private final Random random = new Random(1);
+
+  @Test
+  public void setIdentity_matchesSetIdentityM() {
+    float[] expected = new float[16];
+    Matrix.setIdentityM(expected, 0);
+    int offset = offset();
+    float[] actual = randomArray(offset + 16 + 3);
+    Mat4.setIdentity(actual, offset);
+    assertArrayEquals(expected, Arrays.copyOfRange(actual, offset, offset + 16), 0);
+  }
+
+  @Test
+  public void multiply_matchesMultiplyMM() {
+    for (int i = 0; i < ITERATIONS; ++i) {
+      int lhsOffset = offset();
+      int rhsOffset = offset();
+      int resultOffset = offset();
+      float[] lhs = randomArray(lhsOffset + 16);
+      float[] rhs = randomArray(rhsOffset + 16);
+      float[] expected = new float[16];
+      Matrix.multiplyMM(expected, 0, lhs, lhsOffset, rhs, rhsOffset);
+
+      float[] result = guardedArray(resultOffset + 16 + 3);
+      Mat4.multiply(result, resultOffset, lhs, lhsOffset, rhs, rhsOffset);
+      assertRange(expected, result, resultOffset);
+    }
+  }
+
+  @Test
+  public void multiply_resultIsRhs_matchesMultiplyMM() {
+    for (int i = 0; i < ITERATIONS; ++i) {
+      int offset = offset();
+      float[] lhs = randomArray(16);
+      float[] rhs = randomArray(offset + 16);
+      float[] expected = new float[16];
+      Matrix.multiplyMM(expected, 0, lhs, 0, rhs, offset);
+
+      Mat4.multiply(rhs, offset, lhs, 0, rhs, offset);
+      assertArrayEquals(expected, Arrays.copyOfRange(rhs, offset, offset + 16), DELTA);
+    }
+  }
+
+  @Test
+  public void multiplyBatch_matchesMultiplyMM() {
+    for (int i = 0; i < ITERATIONS; ++i) {
+      int count = 1 + random.nextInt(8);
+      int lhsOffset = offset();
+      int rhsOffset = offset();
+      int resultOffset = offset();
+      float[] lhs = randomArray(lhsOffset + 16);
+      float[] rhs = randomArray(rhsOffset + 16 * count);
+      float[] expected = new float[16 * count];
+      for (int m = 0; m < count; ++m) {
+        Matrix.multiplyMM(expected, 16 * m, lhs, lhsOffset, rhs, rhsOffset + 16 * m);
+      }
+
+      float[] result = guardedArray(resultOffset + 16 * count + 3);
+      Mat4.multiplyBatch(result, resultOffset, lhs, lhsOffset, rhs, rhsOffset, count);
+      assertRange(expected, result, resultOffset);
+
+      // In place, as documented.
+      Mat4.multiplyBatch(rhs, rhsOffset, lhs, lhsOffset, rhs, rhsOffset, count);
+      assertArrayEquals(
+          expected, Arrays.copyOfRange(rhs, rhsOffset, rhsOffset + 16 * count), DELTA);
+    }
+  }
+
+  @Test
+  public void multiplyVector_matchesMultiplyMV() {
+    for (int i = 0; i < ITERATIONS; ++i) {
+      int matrixOffset = offset();
+      int vectorOffset = offset();
+      int resultOffset = offset();
+      float[] m = randomArray(matrixOffset + 16);
+      float[] v = randomArray(vectorOffset + 4);
+      float[] expected = new float[4];
+      Matrix.multiplyMV(expected, 0, m, matrixOffset, v, vectorOffset);
+
+      float[] result = guardedArray(resultOffset + 4 + 3);
+      Mat4.multiplyVector(result, resultOffset, m, matrixOffset, v, vectorOffset);
+      assertRange(expected, result, resultOffset);
+
+      // In place.
+      Mat4.multiplyVector(v, vectorOffset, m, matrixOffset, v, vectorOffset);
+      assertArrayEquals(expected, Arrays.copyOfRange(v, vectorOffset, vectorOffset + 4), DELTA);
+    }
+  }
+
+  @Test
+  public void transformPoints_matchesMultiplyMV() {
+    for (int i = 0; i < ITERATIONS; ++i) {
+      int count = 1 + random.nextInt(16);
+      int matrixOffset = offset();
+      int pointOffset = offset();
+      int resultOffset = offset();
+      float[] m = randomArray(matrixOffset + 16);
+      float[] points = randomArray(pointOffset + 3 * count);
+      float[] expected = new float[3 * count];
+      float[] point = new float[4];
+      float[] transformed = new float[4];
+      for (int p = 0; p < count; ++p) {
+        System.arraycopy(points, pointOffset + 3 * p, point, 0, 3);
+        point[3] = 1;
+        Matrix.multiplyMV(transformed, 0, m, matrixOffset, point, 0);
+        System.arraycopy(transformed, 0, expected, 3 * p, 3);
+      }
+
+      float[] result = guardedArray(resultOffset + 3 * count + 3);
+      Mat4.transformPoints(result, resultOffset, m, matrixOffset, points, pointOffset, count);
+      assertRange(expected, result, resultOffset);
+    }
+  }
+
+  @Test
+  public void scale_matchesScaleM() {
+    for (int i = 0; i < ITERATIONS; ++i) {
+      int matrixOffset = offset();
+      int resultOffset = offset();
+      float[] m = randomArray(matrixOffset + 16);
+      float s = randomFloat();
+      float[] expected = new float[16];
+      Matrix.scaleM(expected, 0, m, matrixOffset, s, s, s);
+
+      float[] result = guardedArray(resultOffset + 16 + 3);
+      Mat4.scale(result, resultOffset, m, matrixOffset, s);
+      assertRange(expected, result, resultOffset);
+    }
+  }
+
+  @Test
+  public void scaleBatch_matchesScaleM() {
+    for (int i = 0; i < ITERATIONS; ++i) {
+      int count = 1 + random.nextInt(8);
+      int matrixOffset = offset();
+      int resultOffset = offset();
+      float[] m = randomArray(matrixOffset + 16 * count);
+      float s = randomFloat();
+      float[] expected = new float[16 * count];
+      for (int k = 0; k < count; ++k) {
+        Matrix.scaleM(expected, 16 * k, m, matrixOffset + 16 * k, s, s, s);
+      }
+
+      float[] result = guardedArray(resultOffset + 16 * count + 3);
+      Mat4.scaleBatch(result, resultOffset, m, matrixOffset, s, count);
+      assertRange(expected, result, resultOffset);
+    }
+  }
+
+  @Test
+  public void invertRigid_matchesInvertM() {
+    for (int i = 0; i < ITERATIONS; ++i) {
+      int matrixOffset = offset();
+      int resultOffset = offset();
+      float[] m = new float[matrixOffset + 16];
+      randomRigid(m, matrixOffset);
+      float[] expected = new float[16];
+      assertTrue(Matrix.invertM(expected, 0, m, matrixOffset));
+
+      float[] result = guardedArray(resultOffset + 16 + 3);
+      Mat4.invertRigid(result, resultOffset, m, matrixOffset);
+      assertRange(expected, result, resultOffset);
+
+      // In place.
+      Mat4.invertRigid(m, matrixOffset, m, matrixOffset);
+      assertArrayEquals(expected, Arrays.copyOfRange(m, matrixOffset, matrixOffset + 16), DELTA);
+    }
+  }
+
+  // Writes a random rotation followed by a random translation at the offset.
+  private void randomRigid(float[] m, int offset) {
+    float[] rotation = new float[16];
+    Matrix.setRotateM(
+        rotation, 0, 360 * random.nextFloat(), randomFloat(), randomFloat(), randomFloat());
+    float[] translation = new float[16];
+    Matrix.setIdentityM(translation, 0);
+    Matrix.translateM(translation, 0, randomFloat(), randomFloat(), randomFloat());
+    Matrix.multiplyMM(m, offset, translation, 0, rotation, 0);
+  }
+
+  // Checks the result at the offset, and that the elements around it were not written.
+  private static void assertRange(float[] expected, float[] actual, int offset) {
+    assertArrayEquals(
+        expected, Arrays.copyOfRange(actual, offset, offset + expected.length), DELTA);
+    for (int i = 0; i < actual.length; ++i) {
+      if (i < offset || i >= offset + expected.length) {
+        assertEquals("element " + i, GUARD, actual[i], 0);
+      }
+    }
+  }
+
+  private int offset() {
+    return random.nextInt(20);
+  }
+
+  private float randomFloat() {
+    return RANGE * (2 * random.nextFloat() - 1);
+  }
+
+  private float[] randomArray(int length) {
+    float[] array = new float[length];
+    for (int i = 0; i < length; ++i) {
+      array[i] = randomFloat();
+    }
+    return array;
+  }
+
+  private static float[] guardedArray(int length) {
+    float[] array = new float[length];
+    Arrays.fill(array, GUARD);
+    return array;
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.math;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.opengl.Matrix;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Compares {@link PoseMath} with poses built from {@link Matrix#setRotateM} and {@link
+ * Matrix#translateM}, for random poses at random offsets.
+ */
+@RunWith(JUnit4.class)
+public final class PoseMathTest {
+  private static final int ITERATIONS = 200;
+  private static final float RANGE = 10;
+  private static final float DELTA = 1e-4f;
+
+  private final Random random = new Random(2);
+
+  @Test
+  public void toMatrices_matchesRotateThenTranslate() {
+    for (int i = 0; i < ITERATIONS; ++i) {
+      int count = 1 + random.nextInt(8);
+      int poseOffset = random.nextInt(20);
+      int matrixOffset = random.nextInt(20);
+      float[] poses = new float[poseOffset + PoseMath.FLOATS * count];
+      float[] expected = new float[16 * count];
+      for (int p = 0; p < count; ++p) {
+        randomPose(poses, poseOffset + PoseMath.FLOATS * p, expected, 16 * p);
+      }
+
+      float[] m = new float[matrixOffset + 16 * count];
+      PoseMath.toMatrices(poses, poseOffset, m, matrixOffset, count);
+      assertArrayEquals(
+          expected, Arrays.copyOfRange(m, matrixOffset, matrixOffset + 16 * count), DELTA);
+    }
+  }
+
+  @Test
+  public void planeDistances_matchesNormalFromMatrix() {
+    for (int i = 0; i < ITERATIONS; ++i) {
+      int count = 1 + random.nextInt(16);
+      int poseOffset = random.nextInt(20);
+      int distanceOffset = random.nextInt(20);
+      float x = randomFloat();
+      float y = randomFloat();
+      float z = randomFloat();
+      float[] poses = new float[poseOffset + PoseMath.FLOATS * count];
+      float[] expected = new float[count];
+      float[] matrix = new float[16];
+      float[] normal = new float[4];
+      for (int p = 0; p < count; ++p) {
+        randomPose(poses, poseOffset + PoseMath.FLOATS * p, matrix, 0);
+        // The plane normal is the Y axis of the pose.
+        Matrix.multiplyMV(normal, 0, matrix, 0, new float[] {0, 1, 0, 0}, 0);
+        expected[p] =
+            (x - matrix[12]) * normal[0]
+                + (y - matrix[13]) * normal[1]
+                + (z - matrix[14]) * normal[2];
+      }
+
+      float[] distances = new float[distanceOffset + count];
+      PoseMath.planeDistances(poses, poseOffset, count, x, y, z, distances, distanceOffset);
+      assertArrayEquals(
+          expected,
+          Arrays.copyOfRange(distances, distanceOffset, distanceOffset + count),
+          DELTA);
+    }
+  }
+
+  @Test
+  public void distanceAlongY_isSignedDistanceFromPlane() {
+    // Facing up, unrotated and after a quarter turn about Y.
+    float s = (float) Math.sqrt(0.5);
+    assertEquals(2, PoseMath.distanceAlongY(0, 0, 0, 1, 0, 2, 0), 0);
+    assertEquals(-0.5f, PoseMath.distanceAlongY(0, s, 0, s, 3, -0.5f, 4), DELTA);
+    // Facing down, after a half turn about X.
+    assertEquals(-2, PoseMath.distanceAlongY(1, 0, 0, 0, 0, 2, 0), 0);
+    // In the plane.
+    assertTrue(PoseMath.distanceAlongY(0, 0, 0, 1, 5, 0, 5) == 0);
+  }
+
+  /**
+   * Writes a random pose at {@code poseOffset} and its matrix, computed with {@link Matrix}, at
+   * {@code matrixOffset}.
+   */
+  private void randomPose(float[] poses, int poseOffset, float[] m, int matrixOffset) {
+    float ax = randomFloat();
+    float ay = randomFloat();
+    float az = randomFloat();
+    float length = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+    float angle = (float) (2 * Math.PI * random.nextFloat());
+    float sin = (float) Math.sin(angle / 2) / length;
+    float tx = randomFloat();
+    float ty = randomFloat();
+    float tz = randomFloat();
+    poses[poseOffset] = tx;
+    poses[poseOffset + 1] = ty;
+    poses[poseOffset + 2] = tz;
+    poses[poseOffset + 3] = ax * sin;
+    poses[poseOffset + 4] = ay * sin;
+    poses[poseOffset + 5] = az * sin;
+    poses[poseOffset + 6] = (float) Math.cos(angle / 2);
+
+    float[] rotation = new float[16];
+    Matrix.setRotateM(rotation, 0, (float) Math.toDegrees(angle), ax, ay, az);
+    float[] translation = new float[16];
+    Matrix.setIdentityM(translation, 0);
+    Matrix.translateM(translation, 0, tx, ty, tz);
+    Matrix.multiplyMM(m, matrixOffset, translation, 0, rotation, 0);
+  }
+
+  private float randomFloat() {
+    return RANGE * (2 * random.nextFloat() - 1);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.mesh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that {@link ObjParser} reads the bundled models exactly like {@link ObjReader}. */
+@RunWith(JUnit4.class)
+public final class ObjParserTest {
+  @Test
+  public void parallelParse_andy_matchesObjReader() throws IOException {
+    assertMatchesObjReader("models/andy.obj", new ObjParser());
+  }
+
+  @Test
+  public void singleThreadParse_andy_matchesObjReader() throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(1);
+    try {
+      assertMatchesObjReader("models/andy.obj", new ObjParser(pool));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void parse_andyShadow_matchesObjReader() throws IOException {
+    assertMatchesObjReader("models/andy_shadow.obj", new ObjParser());
+  }
+
+  @Test
+  public void parse_leavesBufferPositionAndLimit() throws IOException {
+    ByteBuffer data = readAsset("models/andy_shadow.obj");
+    data.position(0).limit(data.capacity());
+    new ObjParser().parse(data);
+    assertEquals(0, data.position());
+    assertEquals(data.capacity(), data.limit());
+  }
+
+  private static void assertMatchesObjReader(String asset, ObjParser parser) throws IOException {
+    ByteBuffer data = readAsset(asset);
+    Obj obj =
+        ObjUtils.convertToRenderable(ObjReader.read(new ByteArrayInputStream(data.array())));
+    ObjParser.Result result = parser.parse(data);
+
+    assertTrue(result.getVertexCount() > 0);
+    assertArrayEquals(toArray(ObjData.getVertices(obj)), result.getVertices(), 0);
+    assertArrayEquals(toArray(ObjData.getNormals(obj)), result.getNormals(), 0);
+    assertArrayEquals(toArray(ObjData.getTexCoords(obj, 2)), result.getTexCoords(), 0);
+    assertArrayEquals(
+        toArray(ObjData.getFaceVertexIndices(obj, 3)), result.getFaceVertexIndices());
+  }
+
+  private static ByteBuffer readAsset(String name) throws IOException {
+    File assets = new File(System.getProperty("benchmark.assets", "../app/src/main/assets"));
+    return ByteBuffer.wrap(Files.readAllBytes(new File(assets, name).toPath()));
+  }
+
+  private static float[] toArray(FloatBuffer buffer) {
+    float[] array = new float[buffer.remaining()];
+    buffer.get(array);
+    return array;
+  }
+
+  private static int[] toArray(IntBuffer buffer) {
+    int[] array = new int[buffer.remaining()];
+    buffer.get(array);
+    return array;
+  }
+}
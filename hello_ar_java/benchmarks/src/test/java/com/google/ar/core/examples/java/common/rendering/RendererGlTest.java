@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.opengl.Matrix;
+import com.google.ar.core.Frame;
+import com.google.ar.core.Plane;
+import com.google.ar.core.PointCloud;
+import com.google.ar.core.Pose;
+import com.google.ar.core.TrackingState;
+import com.google.ar.core.examples.java.common.gl.NoOpGl;
+import com.google.ar.core.examples.java.common.gl.RecordingGl;
+import com.google.ar.core.examples.java.common.spatial.VoxelMap;
+import java.io.File;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Draws one frame of each renderer on a {@link RecordingGl} over a {@link NoOpGl}, and checks its
+ * draw calls, state changes, redundant binds and uploaded bytes. The renderers are created from the
+ * app's assets, in a frame of their own.
+ */
+@RunWith(JUnit4.class)
+public final class RendererGlTest {
+  private static final float[] IDENTITY = new float[16];
+  private static final float[] WHITE = {1, 1, 1, 1};
+
+  static {
+    Matrix.setIdentityM(IDENTITY, 0);
+  }
+
+  @Rule public final TemporaryFolder cacheDir = new TemporaryFolder();
+
+  private final RecordingGl gl = new RecordingGl(new NoOpGl());
+  private final GpuAssetCache assetCache = new GpuAssetCache(gl);
+  private Context context;
+
+  @Before
+  public void setUp() {
+    File assets = new File(System.getProperty("benchmark.assets", "../app/src/main/assets"));
+    context = new Context(new AssetManager(assets), cacheDir.getRoot());
+  }
+
+  @Test
+  public void backgroundRenderer() throws Exception {
+    BackgroundRenderer renderer = new BackgroundRenderer(assetCache);
+    renderer.createOnGlThread(context);
+    gl.endFrame();
+
+    renderer.draw(new Frame(true));
+    // Depth test and mask off and back on, and the camera texture and program, which are still
+    // bound from creation.
+    assertLastFrame(1, 6, 2, 0);
+  }
+
+  @Test
+  public void pointCloudRenderer() throws Exception {
+    PointCloudRenderer renderer = new PointCloudRenderer(assetCache);
+    renderer.createOnGlThread(context);
+    gl.endFrame();
+
+    int pointCount = 100;
+    renderer.update(new PointCloud(points(pointCount)));
+    renderer.draw(IDENTITY, IDENTITY);
+    // The buffer is bound and unbound by both update and draw; the program is still bound.
+    assertLastFrame(1, 5, 1, 16 * pointCount);
+  }
+
+  @Test
+  public void pointCloudRenderer_confidenceThreshold() throws Exception {
+    PointCloudRenderer renderer = new PointCloudRenderer(assetCache);
+    renderer.createOnGlThread(context);
+    renderer.setConfidenceThreshold(0.5f);
+
+    int pointCount = 100;
+    renderer.update(new PointCloud(points(pointCount)));
+    assertEquals(16 * pointCount, renderer.getLastUploadBytes());
+
+    // Every other point is dropped, starting with the second one.
+    FloatBuffer points = points(pointCount);
+    for (int i = 1; i < pointCount; i += 2) {
+      points.put(4 * i + 3, 0.25f);
+    }
+    renderer.update(new PointCloud(points));
+    assertEquals(16 * pointCount / 2, renderer.getLastUploadBytes());
+  }
+
+  @Test
+  public void pointCloudMapRenderer() throws Exception {
+    PointCloudMapRenderer renderer = new PointCloudMapRenderer(assetCache);
+    renderer.createOnGlThread(context);
+    gl.endFrame();
+
+    // 40 voxels, in three chunks of up to 16.
+    VoxelMap map = new VoxelMap(0.1f, 64, 16);
+    for (int i = 0; i < 40; ++i) {
+      map.add(0.5f * i, 0, 0, 1);
+    }
+    renderer.update(map);
+    renderer.draw(IDENTITY, IDENTITY);
+    // Creation does not bind the program.
+    assertLastFrame(3, 9, 0, 16 * 40);
+  }
+
+  @Test
+  public void planeRenderer_perPlane() throws Exception {
+    PlaneRenderer renderer = new PlaneRenderer(new FrameArena(), assetCache);
+    renderer.createOnGlThread(context, "models/trigrid.png");
+    gl.endFrame();
+    // The 512x512 grid texture, as RGBA.
+    assertEquals(512 * 512 * 4, gl.getLastFrameUploadedBytes());
+
+    List<Plane> planes = planes();
+    Pose cameraPose = cameraPose();
+    renderer.drawPlanes(planes, cameraPose, IDENTITY);
+    // One draw per tracking plane, each uploading its new mesh.
+    assertLastFrame(3, 37, 1, 360);
+
+    renderer.drawPlanes(planes, cameraPose, IDENTITY);
+    // The meshes are unchanged, and kept.
+    assertLastFrame(3, 25, 1, 0);
+  }
+
+  @Test
+  public void planeRenderer_merged() throws Exception {
+    PlaneRenderer renderer = new PlaneRenderer(new FrameArena(), assetCache);
+    renderer.createOnGlThread(context, "models/trigrid.png");
+    renderer.setDrawMode(PlaneRenderer.DrawMode.MERGED);
+    gl.endFrame();
+
+    renderer.drawPlanes(planes(), cameraPose(), IDENTITY);
+    // All tracking planes in one draw, from a mesh rebuilt every frame.
+    assertLastFrame(1, 17, 0, 852);
+  }
+
+  @Test
+  public void objectRenderer() throws Exception {
+    ObjectRenderer renderer = new ObjectRenderer(new FrameArena(), assetCache);
+    renderer.createOnGlThread(context, "models/andy.obj", "models/andy.png");
+    renderer.updateModelMatrix(IDENTITY, 1);
+    gl.endFrame();
+
+    renderer.draw(IDENTITY, IDENTITY, WHITE);
+    assertLastFrame(1, 8, 0, 0);
+
+    int instanceCount = 5;
+    float[] modelMatrices = new float[16 * instanceCount];
+    for (int i = 0; i < instanceCount; ++i) {
+      Matrix.setIdentityM(modelMatrices, 16 * i);
+    }
+    renderer.drawInstances(
+        IDENTITY, IDENTITY, WHITE, modelMatrices, 1, new float[4 * instanceCount], instanceCount);
+    // NoOpGl is OpenGL ES 3.0, so all instances are drawn at once, from a matrix and a color each.
+    assertLastFrame(1, 9, 0, (16 + 4) * 4 * instanceCount);
+  }
+
+  // Ends the frame and checks its counts.
+  private void assertLastFrame(
+      int drawCalls, int stateChanges, int redundantBinds, long uploadedBytes) {
+    gl.endFrame();
+    assertEquals("draw calls", drawCalls, gl.getLastFrameDrawCallCount());
+    assertEquals("state changes", stateChanges, gl.getLastFrameStateChangeCount());
+    assertEquals("redundant binds", redundantBinds, gl.getLastFrameRedundantBindCount());
+    assertEquals("uploaded bytes", uploadedBytes, gl.getLastFrameUploadedBytes());
+  }
+
+  // Points along a line in front of the camera, all with full confidence.
+  private static FloatBuffer points(int count) {
+    FloatBuffer points = FloatBuffer.allocate(4 * count);
+    for (int i = 0; i < count; ++i) {
+      points.put(0.01f * i).put(0).put(-1).put(1);
+    }
+    points.flip();
+    return points;
+  }
+
+  // Three tracking planes below the camera, and a paused one, which is not drawn.
+  private static List<Plane> planes() {
+    float[] square = {-1, -1, 1, -1, 1, 1, -1, 1};
+    float[] unrotated = {0, 0, 0, 1};
+    List<Plane> planes = new ArrayList<>();
+    for (int i = 0; i < 3; ++i) {
+      Pose center = new Pose(new float[] {3 * i, 0, -2}, unrotated);
+      planes.add(new Plane(center, 2, 2, square, TrackingState.TRACKING));
+    }
+    Pose paused = new Pose(new float[] {0, 0, 5}, unrotated);
+    planes.add(new Plane(paused, 2, 2, square, TrackingState.PAUSED));
+    return planes;
+  }
+
+  private static Pose cameraPose() {
+    return new Pose(new float[] {0, 1.5f, 0}, new float[] {0, 0, 0, 1});
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import com.google.ar.core.examples.java.common.gl.NoOpGl;
+import com.google.ar.core.examples.java.common.gl.RecordingGl;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Checks that the replayed per-frame pipeline, and the renderers drawing its frames, do not
+ * allocate on the heap of the replaying thread once warmed up. Frames are drawn by a {@link
+ * ReplayRenderer} on a {@link RecordingGl} over a {@link NoOpGl}.
+ *
+ * <p>The JIT allocates on the thread when compiled code is replaced or deoptimized. The test
+ * therefore needs {@code -Xbatch}, set by the Gradle test task, under which methods are compiled in
+ * the foreground as soon as they get hot: a fixed number of warm-up passes over the log then
+ * compiles the same code in every run, and the one measured pass runs no compiler.
+ */
+@RunWith(JUnit4.class)
+public final class ReplayEngineAllocationTest {
+  // One walk around the room.
+  private static final int FRAMES = 300;
+  private static final int WARM_UP_PASSES = 3;
+
+  @Rule public final TemporaryFolder cacheDir = new TemporaryFolder();
+
+  private final RecordingGl gl = new RecordingGl(new NoOpGl());
+  // Of all frames drawn, to check that the measured pass draws something.
+  private long drawCallCount;
+
+  @Test
+  public void steadyStateFramesDoNotAllocate() throws Exception {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    List<String> jvmArguments = ManagementFactory.getRuntimeMXBean().getInputArguments();
+    assumeTrue("Needs -Xbatch", jvmArguments.contains("-Xbatch"));
+    threads.setThreadAllocatedMemoryEnabled(true);
+    long threadId = Thread.currentThread().getId();
+
+    byte[] log = recordSession(FRAMES);
+    ReplayEngine engine = new ReplayEngine();
+    File assets = new File(System.getProperty("benchmark.assets", "../app/src/main/assets"));
+    Context context = new Context(new AssetManager(assets), cacheDir.getRoot());
+    ReplayRenderer renderer = new ReplayRenderer(context, gl, engine, FRAMES);
+    FrameRecord frame = new FrameRecord();
+    for (int pass = 0; pass < WARM_UP_PASSES; ++pass) {
+      replay(log, engine, renderer, frame, threads, threadId);
+    }
+
+    long drawCallCount = this.drawCallCount;
+    assertEquals(0, replay(log, engine, renderer, frame, threads, threadId));
+    assertTrue(this.drawCallCount > drawCallCount);
+  }
+
+  // Replays and draws every frame of the log, and returns the bytes allocated while doing so.
+  private long replay(
+      byte[] log,
+      ReplayEngine engine,
+      ReplayRenderer renderer,
+      FrameRecord frame,
+      com.sun.management.ThreadMXBean threads,
+      long threadId)
+      throws IOException {
+    try (SessionReader reader = new SessionReader(new ByteArrayInputStream(log))) {
+      // Reading the counter may itself allocate; measure that with nothing in between.
+      long before = threads.getThreadAllocatedBytes(threadId);
+      long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+
+      long allocatedBytes = 0;
+      for (int i = 0; i < FRAMES; ++i) {
+        assertTrue(reader.next(frame));
+        renderer.prepare(i, frame);
+        before = threads.getThreadAllocatedBytes(threadId);
+        engine.processFrame(frame);
+        renderer.draw(i, frame);
+        gl.endFrame();
+        drawCallCount += gl.getLastFrameDrawCallCount();
+        allocatedBytes += threads.getThreadAllocatedBytes(threadId) - before - overhead;
+      }
+      return allocatedBytes;
+    }
+  }
+
+  // Records generated frames into a session log, so that replaying does not generate them.
+  private static byte[] recordSession(int frameCount) throws IOException, InterruptedException {
+    SceneGenerator generator = new SceneGenerator(100, 16, 1000, 1);
+    FrameRecord frame = new FrameRecord();
+    ByteArrayOutputStream log = new ByteArrayOutputStream();
+    try (SessionRecorder recorder = new SessionRecorder(log)) {
+      for (int i = 0; i < frameCount; ++i) {
+        generator.generate(i, frame);
+        long dropped = recorder.getDroppedFrameCount();
+        recorder.record(frame);
+        // Frames are dropped when writing falls behind; wait for the writer and try again.
+        while (recorder.getDroppedFrameCount() != dropped) {
+          Thread.sleep(1);
+          dropped = recorder.getDroppedFrameCount();
+          recorder.record(frame);
+        }
+      }
+    }
+    return log.toByteArray();
+  }
+}
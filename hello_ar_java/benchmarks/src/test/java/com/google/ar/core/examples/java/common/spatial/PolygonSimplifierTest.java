@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.spatial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.ar.core.examples.java.common.replay.FrameRecord;
+import com.google.ar.core.examples.java.common.replay.SceneGenerator;
+import com.google.ar.core.examples.java.common.replay.SessionReader;
+import com.google.ar.core.examples.java.common.replay.SessionRecorder;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests of {@link PolygonSimplifier} on plane boundary polygons read from a session log.
+ *
+ * <p>By default the log is generated with a {@link SceneGenerator}, whose boundaries are noisy
+ * ellipses of 24 to 64 vertices like those ARCore reports. Set the {@code polygon.session} system
+ * property to the path of a log recorded on a device to run the same checks on real boundaries.
+ */
+@RunWith(JUnit4.class)
+public final class PolygonSimplifierTest {
+  private static final float TOLERANCE_M = 0.01f;
+  // Slack for the float rounding of the distance computations.
+  private static final float EPSILON_M = 1e-5f;
+
+  private static List<float[]> polygons;
+
+  @BeforeClass
+  public static void readPolygons() throws IOException, InterruptedException {
+    String path = System.getProperty("polygon.session");
+    InputStream log =
+        path != null
+            ? new BufferedInputStream(new FileInputStream(path))
+            : new ByteArrayInputStream(generateSession());
+    polygons = new ArrayList<>();
+    FrameRecord frame = new FrameRecord();
+    try (SessionReader reader = new SessionReader(log)) {
+      while (reader.next(frame)) {
+        for (int i = 0; i < frame.planeCount; ++i) {
+          int start = frame.planePolygonStarts[i];
+          int length = frame.getPlanePolygonLength(i);
+          if (length >= 2 * 4) {
+            polygons.add(Arrays.copyOfRange(frame.planePolygons, start, start + length));
+          }
+        }
+      }
+    }
+    assertFalse(polygons.isEmpty());
+  }
+
+  @Test
+  public void simplify_removedVerticesLieWithinToleranceOfKeptOutline() {
+    for (float tolerance : new float[] {TOLERANCE_M, 0.05f, 0.2f}) {
+      PolygonSimplifier simplifier = new PolygonSimplifier(tolerance);
+      int removedCount = 0;
+      for (float[] polygon : polygons) {
+        int vertexCount = polygon.length / 2;
+        float[] out = new float[polygon.length];
+        int outCount = simplifier.simplify(polygon, vertexCount, vertexCount, out);
+
+        assertTrue(outCount >= 3);
+        assertTrue(outCount <= vertexCount);
+        removedCount += vertexCount - outCount;
+        int[] kept = keptIndices(polygon, vertexCount, out, outCount);
+        for (int k = 0; k < outCount; ++k) {
+          int from = kept[k];
+          int to = kept[(k + 1) % outCount];
+          // Vertices between consecutive kept vertices, wrapping around the end of the polygon.
+          for (int i = (from + 1) % vertexCount; i != to; i = (i + 1) % vertexCount) {
+            float distance = distanceToSegment(polygon, i, from, to);
+            assertTrue(
+                "vertex " + i + " is " + distance + " m from the outline",
+                distance <= tolerance + EPSILON_M);
+          }
+        }
+      }
+      assertTrue("nothing simplified at " + tolerance + " m", removedCount > 0);
+    }
+  }
+
+  @Test
+  public void simplify_zeroTolerance_keepsPolygonsWithinBudget() {
+    PolygonSimplifier simplifier = new PolygonSimplifier(0);
+    for (float[] polygon : polygons) {
+      int vertexCount = polygon.length / 2;
+      float[] out = new float[polygon.length];
+      assertEquals(vertexCount, simplifier.simplify(polygon, vertexCount, vertexCount, out));
+      assertArrayEquals(polygon, out, 0);
+    }
+  }
+
+  @Test
+  public void simplify_enforcesPerPolygonBudget() {
+    PolygonSimplifier simplifier = new PolygonSimplifier(0);
+    for (float[] polygon : polygons) {
+      int vertexCount = polygon.length / 2;
+      float[] out = new float[polygon.length];
+      for (int budget = 3; budget < vertexCount; ++budget) {
+        int outCount = simplifier.simplify(polygon, vertexCount, budget, out);
+        // Noisy boundaries have no collinear vertices, so the whole budget is used.
+        assertEquals(budget, outCount);
+        keptIndices(polygon, vertexCount, out, outCount);
+      }
+    }
+  }
+
+  @Test
+  public void shareBudget_enforcesGlobalBudget() {
+    PolygonSimplifier simplifier = new PolygonSimplifier(TOLERANCE_M);
+    float[] out = new float[2 * 1024];
+    int maxVertices = 256;
+    for (int planeCount = 1; planeCount <= maxVertices / 3; planeCount *= 2) {
+      int budget = PolygonSimplifier.shareBudget(64, maxVertices, planeCount);
+      assertTrue(budget <= 64);
+      int total = 0;
+      for (int i = 0; i < planeCount; ++i) {
+        float[] polygon = polygons.get(i % polygons.size());
+        int outCount = simplifier.simplify(polygon, polygon.length / 2, budget, out);
+        assertTrue(outCount <= budget);
+        total += outCount;
+      }
+      assertTrue(total + " vertices for " + planeCount + " planes", total <= maxVertices);
+    }
+  }
+
+  @Test
+  public void shareBudget_capsEachShare() {
+    assertEquals(64, PolygonSimplifier.shareBudget(64, 1024, 0));
+    assertEquals(64, PolygonSimplifier.shareBudget(64, 1024, 16));
+    assertEquals(32, PolygonSimplifier.shareBudget(64, 1024, 32));
+    assertEquals(3, PolygonSimplifier.shareBudget(64, 1024, 300));
+  }
+
+  @Test
+  public void simplify_fewerThanThreeVertices_copiesInput() {
+    PolygonSimplifier simplifier = new PolygonSimplifier(TOLERANCE_M);
+    float[] out = new float[4];
+    assertEquals(0, simplifier.simplify(new float[0], 0, 64, out));
+    assertEquals(1, simplifier.simplify(new float[] {1, 2}, 1, 64, out));
+    assertEquals(2, simplifier.simplify(new float[] {1, 2, 3, 4}, 2, 64, out));
+    assertArrayEquals(new float[] {1, 2, 3, 4}, out, 0);
+  }
+
+  @Test
+  public void simplify_triangle_keepsAllVertices() {
+    PolygonSimplifier simplifier = new PolygonSimplifier(10);
+    float[] triangle = {0, 0, 1, 0, 0, 1};
+    float[] out = new float[6];
+    assertEquals(3, simplifier.simplify(triangle, 3, 64, out));
+    assertArrayEquals(triangle, out, 0);
+  }
+
+  @Test
+  public void simplify_collinearVertices_keepsEnds() {
+    PolygonSimplifier simplifier = new PolygonSimplifier(TOLERANCE_M);
+    // Exactly representable, so that the distances to the line are exactly zero.
+    float[] line = new float[2 * 9];
+    for (int i = 0; i < 9; ++i) {
+      line[2 * i] = i;
+      line[2 * i + 1] = 1;
+    }
+    float[] out = new float[line.length];
+    assertEquals(2, simplifier.simplify(line, 9, 64, out));
+    assertArrayEquals(new float[] {0, 1, 8, 1}, Arrays.copyOf(out, 4), 0);
+  }
+
+  @Test
+  public void simplify_budgetBelowThree_keepsTriangle() {
+    PolygonSimplifier simplifier = new PolygonSimplifier(TOLERANCE_M);
+    float[] polygon = polygons.get(0);
+    int vertexCount = polygon.length / 2;
+    float[] out = new float[polygon.length];
+    for (int budget = -1; budget < 3; ++budget) {
+      int outCount = simplifier.simplify(polygon, vertexCount, budget, out);
+      assertEquals(3, outCount);
+      keptIndices(polygon, vertexCount, out, outCount);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void setTolerance_negative_throws() {
+    new PolygonSimplifier(-1);
+  }
+
+  // Generates frames of a scene whose planes grow, and records them as a session log.
+  private static byte[] generateSession() throws IOException, InterruptedException {
+    SceneGenerator generator = new SceneGenerator(0, 32, 0, 7);
+    FrameRecord frame = new FrameRecord();
+    ByteArrayOutputStream log = new ByteArrayOutputStream();
+    try (SessionRecorder recorder = new SessionRecorder(log)) {
+      for (int i = 0; i < 64; i += 8) {
+        generator.generate(i, frame);
+        recorder.record(frame);
+      }
+    }
+    return log.toByteArray();
+  }
+
+  // Returns the input index of each output vertex, checking that the output is an ordered subset
+  // of the input.
+  private static int[] keptIndices(float[] xy, int vertexCount, float[] out, int outCount) {
+    int[] kept = new int[outCount];
+    int i = 0;
+    for (int k = 0; k < outCount; ++k) {
+      while (i < vertexCount && (xy[2 * i] != out[2 * k] || xy[2 * i + 1] != out[2 * k + 1])) {
+        i++;
+      }
+      assertTrue("output vertex " + k + " is not an input vertex in order", i < vertexCount);
+      kept[k] = i++;
+    }
+    return kept;
+  }
+
+  private static float distanceToSegment(float[] xy, int point, int start, int end) {
+    double ax = xy[2 * start];
+    double ay = xy[2 * start + 1];
+    double abx = xy[2 * end] - ax;
+    double aby = xy[2 * end + 1] - ay;
+    double apx = xy[2 * point] - ax;
+    double apy = xy[2 * point + 1] - ay;
+    double lengthSquared = abx * abx + aby * aby;
+    double t = lengthSquared > 0 ? (apx * abx + apy * aby) / lengthSquared : 0;
+    t = Math.max(0, Math.min(1, t));
+    return (float) Math.hypot(apx - t * abx, apy - t * aby);
+  }
+}